@@ -0,0 +1,221 @@
+package org.ametiste.scm.log.archive;
+
+import org.ametiste.scm.log.journal.EventSerializer;
+import org.ametiste.scm.log.persistent.ConcatenatedEventIterator;
+import org.ametiste.scm.log.persistent.MergingEventIterator;
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.data.util.CloseableIterator;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Cold storage of events in compressed segment files on local disk.
+ * <p>
+ * Archive directory contains {@code EventSegment} files named after time range of their events:
+ * {@literal segment-<min timestamp>-<max timestamp>.seg}. Segment is written to temporary file and renamed after it is
+ * complete, so archive never opens partially written segment. Temporary files left by interrupted write are deleted on
+ * start.
+ * <p>
+ * Segments usually cover disjoint time ranges, but segment with late events might overlap previous ones. Read of time
+ * range opens only segments that overlap range: segments that don't overlap each other are read one by one, overlapping
+ * segments are merged by timestamp.
+ */
+public class EventArchive {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final int blockSize;
+    private final EventSerializer serializer;
+
+    /**
+     * Immutable list of segments ordered by min timestamp. List is replaced on change, so readers always see
+     * consistent state without locking.
+     */
+    private volatile List<EventSegment> segments;
+
+    /**
+     * Create instance of {@code EventArchive}. Creates archive directory if it doesn't exist and opens existing segments.
+     * @param directory archive directory.
+     * @param blockSize number of events in one compressed block of segment. Must be greater than zero.
+     * @param serializer serializer for events.
+     * @throws EventArchiveException if archive directory can't be initialized.
+     */
+    public EventArchive(Path directory, int blockSize, EventSerializer serializer) throws EventArchiveException {
+        isTrue(directory != null, "'directory' must be initialized!");
+        isTrue(blockSize > 0, "'blockSize' must be greater than zero!");
+        isTrue(serializer != null, "'serializer' must be initialized!");
+
+        this.directory = directory;
+        this.blockSize = blockSize;
+        this.serializer = serializer;
+
+        List<EventSegment> existing = new ArrayList<>();
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        Files.delete(file);
+                    } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                        existing.add(EventSegment.open(file, serializer));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new EventArchiveException("Failed to open archive in " + directory + ": " + e.getMessage(), e);
+        }
+        this.segments = sorted(existing);
+    }
+
+    /**
+     * Write events to new segment.
+     * @param events events ordered by timestamp.
+     * @return written segment or {@literal null} if there are no events.
+     * @throws EventArchiveException if segment can't be written.
+     */
+    public synchronized EventSegment write(Iterator<Event> events) throws EventArchiveException {
+        isTrue(events != null, "'events' must be initialized!");
+
+        Path temp = directory.resolve(SEGMENT_PREFIX + System.nanoTime() + TEMP_SUFFIX);
+        EventSegment written = EventSegment.write(temp, events, blockSize, serializer);
+        if (written == null) {
+            return null;
+        }
+
+        try {
+            Path file = segmentFile(written.getMinTimestamp(), written.getMaxTimestamp());
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+
+            EventSegment segment = EventSegment.open(file, serializer);
+            List<EventSegment> updated = new ArrayList<>(segments);
+            updated.add(segment);
+            segments = sorted(updated);
+            return segment;
+        } catch (IOException e) {
+            throw new EventArchiveException("Failed to complete segment " + temp + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return iterator over all archived events ordered by segments.
+     */
+    public CloseableIterator<Event> findAll() {
+        return new ConcatenatedEventIterator(segments.stream()
+                .map(segment -> (Supplier<CloseableIterator<Event>>) segment::read)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Returns archived events with timestamp in specified time interval ordered by timestamp.
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @return iterator that needs to be closed.
+     */
+    public CloseableIterator<Event> findAll(long from, long to) {
+        List<Supplier<CloseableIterator<Event>>> sources = new ArrayList<>();
+
+        // segments are sorted by min timestamp, group of overlapping segments ends when next one starts after all of them
+        List<EventSegment> group = new ArrayList<>();
+        long groupEnd = Long.MIN_VALUE;
+        for (EventSegment segment : overlapping(from, to)) {
+            if (!group.isEmpty() && segment.getMinTimestamp() > groupEnd) {
+                sources.add(merged(group, from, to));
+                group = new ArrayList<>();
+            }
+            group.add(segment);
+            groupEnd = Math.max(groupEnd, segment.getMaxTimestamp());
+        }
+        if (!group.isEmpty()) {
+            sources.add(merged(group, from, to));
+        }
+        return new ConcatenatedEventIterator(sources);
+    }
+
+    /**
+     * @return the number of archived events.
+     */
+    public long count() {
+        return segments.stream().mapToLong(EventSegment::getCount).sum();
+    }
+
+    /**
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @return the number of archived events with timestamp in specified time interval.
+     */
+    public long count(long from, long to) {
+        return overlapping(from, to).stream().mapToLong(segment -> segment.count(from, to)).sum();
+    }
+
+    /**
+     * Delete segments that contain only events with timestamp in specified time interval. Segments that are covered
+     * by interval partially are kept.
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @return number of deleted segments.
+     * @throws EventArchiveException if segment file can't be deleted.
+     */
+    public synchronized int delete(long from, long to) throws EventArchiveException {
+        int deleted = 0;
+        for (EventSegment segment : segments) {
+            if (from <= segment.getMinTimestamp() && segment.getMaxTimestamp() <= to) {
+                List<EventSegment> updated = new ArrayList<>(segments);
+                updated.remove(segment);
+                segments = Collections.unmodifiableList(updated);
+                try {
+                    Files.deleteIfExists(segment.getFile());
+                } catch (IOException e) {
+                    throw new EventArchiveException("Failed to delete segment " + segment.getFile() + ": "
+                            + e.getMessage(), e);
+                }
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * @return segments of archive ordered by min timestamp.
+     */
+    public List<EventSegment> getSegments() {
+        return segments;
+    }
+
+    private List<EventSegment> overlapping(long from, long to) {
+        return segments.stream().filter(segment -> segment.overlaps(from, to)).collect(Collectors.toList());
+    }
+
+    private static List<EventSegment> sorted(List<EventSegment> segments) {
+        segments.sort(Comparator.comparingLong(EventSegment::getMinTimestamp));
+        return Collections.unmodifiableList(segments);
+    }
+
+    private Supplier<CloseableIterator<Event>> merged(List<EventSegment> group, long from, long to) {
+        if (group.size() == 1) {
+            return () -> group.get(0).read(from, to);
+        }
+        return () -> new MergingEventIterator(group.stream()
+                .map(segment -> segment.read(from, to))
+                .collect(Collectors.toList()));
+    }
+
+    private Path segmentFile(long minTimestamp, long maxTimestamp) {
+        String name = SEGMENT_PREFIX + minTimestamp + "-" + maxTimestamp;
+        Path file = directory.resolve(name + SEGMENT_SUFFIX);
+        for (int i = 1; Files.exists(file); i++) {
+            file = directory.resolve(name + "-" + i + SEGMENT_SUFFIX);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,15 @@
+package org.ametiste.scm.log.archive;
+
+/**
+ * {@code EventArchiveException} signals about error that occurred during read or write of event archive.
+ */
+public class EventArchiveException extends RuntimeException {
+
+    public EventArchiveException(String message) {
+        super(message);
+    }
+
+    public EventArchiveException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
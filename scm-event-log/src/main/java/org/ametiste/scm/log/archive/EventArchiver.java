@@ -0,0 +1,117 @@
+package org.ametiste.scm.log.archive;
+
+import org.ametiste.scm.log.persistent.EventDAO;
+import org.ametiste.scm.log.persistent.PartitionPeriod;
+import org.ametiste.scm.messaging.data.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Background job that moves events older than retention age from store to {@code EventArchive}.
+ * <p>
+ * Events are archived by windows of {@code PartitionPeriod}: window is archived only when all its events are older
+ * than retention age. Events of window are streamed from store in timestamp order to new segment, and only after
+ * segment is complete the window is deleted from store. If job is interrupted between these steps events stay in both
+ * tiers and are archived again on next run, duplicates are skipped on read. With partitioned store and equal periods
+ * each archived window is whole partition, so it is dropped instead of deleted document by document.
+ * <p>
+ * Events with timestamp older than retention age that arrive while their window is archived might be deleted without
+ * archiving, so retention age should be much longer than possible delivery delay of events.
+ * <p>
+ * Job runs in single thread with fixed delay between runs. Failed run is logged and repeated on next schedule.
+ */
+public class EventArchiver {
+
+    private final Logger logger = LoggerFactory.getLogger(EventArchiver.class);
+
+    private final EventDAO store;
+    private final EventArchive archive;
+    private final PartitionPeriod period;
+    private final long retentionAge;
+    private final long checkPeriod;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Create instance of {@code EventArchiver}.
+     * @param store DAO of hot storage.
+     * @param archive archive of cold events.
+     * @param period length of archived window.
+     * @param retentionAge age of events (in milliseconds) when they are moved to archive. Must be greater than zero.
+     * @param checkPeriod delay between runs (in milliseconds). Must be greater than zero.
+     */
+    public EventArchiver(EventDAO store, EventArchive archive, PartitionPeriod period, long retentionAge,
+                         long checkPeriod) {
+        isTrue(store != null, "'store' must be initialized!");
+        isTrue(archive != null, "'archive' must be initialized!");
+        isTrue(period != null, "'period' must be initialized!");
+        isTrue(retentionAge > 0, "'retentionAge' must be greater than zero!");
+        isTrue(checkPeriod > 0, "'checkPeriod' must be greater than zero!");
+
+        this.store = store;
+        this.archive = archive;
+        this.period = period;
+        this.retentionAge = retentionAge;
+        this.checkPeriod = checkPeriod;
+    }
+
+    /**
+     * Start scheduled runs.
+     */
+    public void start() {
+        executor.scheduleWithFixedDelay(this::scheduledArchive, checkPeriod, checkPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop scheduler. Run in progress is interrupted, its window stays in store.
+     */
+    public void stop() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(checkPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Move to archive all windows that contain only events with timestamp before specified time.
+     * @param before time in milliseconds.
+     * @return number of archived events.
+     */
+    public long archive(long before) {
+        long cutoff = period.start(before) - 1;
+        long archived = 0;
+
+        List<Event> oldest = store.findAll(Long.MIN_VALUE, cutoff, null, 1, Sort.Direction.ASC);
+        while (!oldest.isEmpty() && !Thread.currentThread().isInterrupted()) {
+            long windowStart = period.start(oldest.get(0).getTimestamp());
+            long windowEnd = windowStart + period.getLength() - 1;
+
+            try (CloseableIterator<Event> events = store.findAll(windowStart, windowEnd)) {
+                EventSegment segment = archive.write(events);
+                if (segment != null) {
+                    archived += segment.getCount();
+                    logger.info("Archived {} events to {}", segment.getCount(), segment.getFile());
+                }
+            }
+            store.delete(windowStart, windowEnd);
+
+            oldest = store.findAll(windowEnd + 1, cutoff, null, 1, Sort.Direction.ASC);
+        }
+        return archived;
+    }
+
+    private void scheduledArchive() {
+        try {
+            archive(System.currentTimeMillis() - retentionAge);
+        } catch (RuntimeException e) {
+            logger.error("Failed to archive events: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package org.ametiste.scm.log.archive;
+
+import org.ametiste.scm.log.journal.EventSerializer;
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.data.util.CloseableIterator;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Immutable file of archived events ordered by timestamp.
+ * <p>
+ * Events are grouped into blocks of fixed number of events, each block is compressed with GZIP separately. Block
+ * content is sequence of records {@literal | length (int) | content (length bytes) |}. Blocks are followed by sparse
+ * index with one entry per block and footer:
+ * <pre>
+ *     | block 1 | ... | block N | index entry 1 | ... | index entry N | footer |
+ *     index entry: | first timestamp (long) | offset (long) | length (int) | number of events (int) |
+ *     footer:      | min timestamp (long) | max timestamp (long) | number of events (long) | index offset (long) |
+ *                  | number of blocks (int) | magic (int) |
+ * </pre>
+ * Index is loaded to memory on open, so read of time range decompresses only blocks that may contain events of range.
+ * Events with equal timestamps might span several blocks, so read starts from the last block which first timestamp
+ * is less than start of range.
+ */
+public class EventSegment {
+
+    private static final int MAGIC = 0x53434d41;
+    private static final int INDEX_ENTRY_SIZE = 24;
+    private static final int FOOTER_SIZE = 40;
+
+    private final Path file;
+    private final EventSerializer serializer;
+
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final long count;
+
+    private final long[] blockTimestamps;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final int[] blockCounts;
+
+    private EventSegment(Path file, EventSerializer serializer, long minTimestamp, long maxTimestamp, long count,
+                         ByteBuffer index, int blocks) {
+        this.file = file;
+        this.serializer = serializer;
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        this.count = count;
+
+        this.blockTimestamps = new long[blocks];
+        this.blockOffsets = new long[blocks];
+        this.blockLengths = new int[blocks];
+        this.blockCounts = new int[blocks];
+        for (int i = 0; i < blocks; i++) {
+            blockTimestamps[i] = index.getLong();
+            blockOffsets[i] = index.getLong();
+            blockLengths[i] = index.getInt();
+            blockCounts[i] = index.getInt();
+        }
+    }
+
+    /**
+     * Write events to new segment file. File content is forced to disk before method returns.
+     * @param file path of segment file. Existing file is overwritten.
+     * @param events events ordered by timestamp.
+     * @param blockSize number of events in one compressed block. Must be greater than zero.
+     * @param serializer serializer for events.
+     * @return written segment or {@literal null} if there are no events.
+     * @throws EventArchiveException if segment can't be written.
+     */
+    public static EventSegment write(Path file, Iterator<Event> events, int blockSize, EventSerializer serializer)
+            throws EventArchiveException {
+        isTrue(file != null, "'file' must be initialized!");
+        isTrue(events != null, "'events' must be initialized!");
+        isTrue(blockSize > 0, "'blockSize' must be greater than zero!");
+        isTrue(serializer != null, "'serializer' must be initialized!");
+
+        if (!events.hasNext()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream indexOut = new DataOutputStream(index);
+
+            long minTimestamp = Long.MAX_VALUE;
+            long maxTimestamp = Long.MIN_VALUE;
+            long count = 0;
+            int blocks = 0;
+
+            while (events.hasNext()) {
+                ByteArrayOutputStream block = new ByteArrayOutputStream();
+                long blockTimestamp = 0;
+                int blockCount = 0;
+
+                try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(block))) {
+                    while (blockCount < blockSize && events.hasNext()) {
+                        Event event = events.next();
+                        isTrue(event.getTimestamp() >= maxTimestamp, "events must be ordered by timestamp!");
+                        if (blockCount == 0) {
+                            blockTimestamp = event.getTimestamp();
+                        }
+                        byte[] content = serializer.serialize(event);
+                        out.writeInt(content.length);
+                        out.write(content);
+
+                        minTimestamp = Math.min(minTimestamp, event.getTimestamp());
+                        maxTimestamp = Math.max(maxTimestamp, event.getTimestamp());
+                        blockCount++;
+                        count++;
+                    }
+                }
+
+                indexOut.writeLong(blockTimestamp);
+                indexOut.writeLong(channel.position());
+                indexOut.writeInt(block.size());
+                indexOut.writeInt(blockCount);
+                writeFully(channel, ByteBuffer.wrap(block.toByteArray()));
+                blocks++;
+            }
+
+            long indexOffset = channel.position();
+            writeFully(channel, ByteBuffer.wrap(index.toByteArray()));
+
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+            footer.putLong(minTimestamp).putLong(maxTimestamp).putLong(count).putLong(indexOffset)
+                    .putInt(blocks).putInt(MAGIC).flip();
+            writeFully(channel, footer);
+            channel.force(true);
+
+            return new EventSegment(file, serializer, minTimestamp, maxTimestamp, count,
+                    ByteBuffer.wrap(index.toByteArray()), blocks);
+        } catch (IOException e) {
+            throw new EventArchiveException("Failed to write segment " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Open existing segment file and load its index.
+     * @param file path of segment file.
+     * @param serializer serializer for events.
+     * @return opened segment.
+     * @throws EventArchiveException if segment can't be read or file is not complete segment.
+     */
+    public static EventSegment open(Path file, EventSerializer serializer) throws EventArchiveException {
+        isTrue(file != null, "'file' must be initialized!");
+        isTrue(serializer != null, "'serializer' must be initialized!");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < FOOTER_SIZE) {
+                throw new EventArchiveException("Segment " + file + " is truncated");
+            }
+
+            ByteBuffer footer = readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+            long minTimestamp = footer.getLong();
+            long maxTimestamp = footer.getLong();
+            long count = footer.getLong();
+            long indexOffset = footer.getLong();
+            int blocks = footer.getInt();
+            if (footer.getInt() != MAGIC || indexOffset + (long) blocks * INDEX_ENTRY_SIZE != size - FOOTER_SIZE) {
+                throw new EventArchiveException("Segment " + file + " has broken footer");
+            }
+
+            return new EventSegment(file, serializer, minTimestamp, maxTimestamp, count,
+                    readFully(channel, indexOffset, blocks * INDEX_ENTRY_SIZE), blocks);
+        } catch (IOException e) {
+            throw new EventArchiveException("Failed to open segment " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @return {@literal true} if segment may contain events of interval.
+     */
+    public boolean overlaps(long from, long to) {
+        return minTimestamp <= to && maxTimestamp >= from;
+    }
+
+    /**
+     * @return iterator over all events of segment.
+     */
+    public CloseableIterator<Event> read() {
+        return read(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns events with timestamp in specified time interval ordered by timestamp. Blocks are read and decompressed
+     * one by one on iteration.
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @return iterator that holds segment file open and needs to be closed.
+     * @throws EventArchiveException if segment can't be read.
+     */
+    public CloseableIterator<Event> read(long from, long to) throws EventArchiveException {
+        if (!overlaps(from, to)) {
+            return new BlockIterator(null, blockTimestamps.length, from, to);
+        }
+        try {
+            return new BlockIterator(FileChannel.open(file, StandardOpenOption.READ), firstBlock(from), from, to);
+        } catch (IOException e) {
+            throw new EventArchiveException("Failed to read segment " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the number of events with timestamp in specified time interval. Number of events of blocks that lie
+     * entirely inside interval is taken from index, only blocks on edges of interval are decompressed.
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @return the number of events.
+     * @throws EventArchiveException if segment can't be read.
+     */
+    public long count(long from, long to) throws EventArchiveException {
+        if (!overlaps(from, to)) {
+            return 0;
+        }
+        if (from <= minTimestamp && maxTimestamp <= to) {
+            return count;
+        }
+
+        long result = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int i = firstBlock(from); i < blockTimestamps.length && blockTimestamps[i] <= to; i++) {
+                long blockEnd = i + 1 < blockTimestamps.length ? blockTimestamps[i + 1] : maxTimestamp;
+                if (from <= blockTimestamps[i] && blockEnd <= to) {
+                    result += blockCounts[i];
+                } else {
+                    result += readBlock(channel, i).stream()
+                            .filter(event -> event.getTimestamp() >= from && event.getTimestamp() <= to)
+                            .count();
+                }
+            }
+        } catch (IOException e) {
+            throw new EventArchiveException("Failed to read segment " + file + ": " + e.getMessage(), e);
+        }
+        return result;
+    }
+
+    /**
+     * @return index of last block which first timestamp is less than specified time or first block.
+     */
+    private int firstBlock(long from) {
+        int low = 0;
+        int high = blockTimestamps.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (blockTimestamps[middle] < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return Math.max(low - 1, 0);
+    }
+
+    private List<Event> readBlock(FileChannel channel, int block) throws IOException {
+        ByteBuffer buffer = readFully(channel, blockOffsets[block], blockLengths[block]);
+        List<Event> events = new ArrayList<>(blockCounts[block]);
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(
+                new ByteArrayInputStream(buffer.array(), 0, buffer.limit())))) {
+            for (int i = 0; i < blockCounts[block]; i++) {
+                byte[] content = new byte[in.readInt()];
+                in.readFully(content);
+                events.add(serializer.deserialize(content));
+            }
+        }
+        return events;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of segment");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Iterator that decompresses blocks of segment one by one and filters events of requested interval.
+     */
+    private class BlockIterator implements CloseableIterator<Event> {
+
+        private final FileChannel channel;
+        private final long from;
+        private final long to;
+
+        private int block;
+        private Iterator<Event> events = Collections.emptyIterator();
+        private Event next;
+
+        private BlockIterator(FileChannel channel, int block, long from, long to) {
+            this.channel = channel;
+            this.block = block;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (!events.hasNext()) {
+                    if (block >= blockTimestamps.length || blockTimestamps[block] > to) {
+                        return false;
+                    }
+                    try {
+                        events = readBlock(channel, block++).iterator();
+                    } catch (IOException e) {
+                        throw new EventArchiveException("Failed to read segment " + file + ": " + e.getMessage(), e);
+                    }
+                    continue;
+                }
+
+                Event event = events.next();
+                if (event.getTimestamp() > to) {
+                    block = blockTimestamps.length;
+                    events = Collections.emptyIterator();
+                } else if (event.getTimestamp() >= from) {
+                    next = event;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Event next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Event event = next;
+            next = null;
+            return event;
+        }
+
+        @Override
+        public void close() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new EventArchiveException("Failed to close segment " + file + ": " + e.getMessage(), e);
+            }
+        }
+    }
+}
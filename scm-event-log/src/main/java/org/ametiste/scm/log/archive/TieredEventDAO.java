@@ -0,0 +1,289 @@
+package org.ametiste.scm.log.archive;
+
+import org.ametiste.scm.log.persistent.ConcatenatedEventIterator;
+import org.ametiste.scm.log.persistent.EventDAO;
+import org.ametiste.scm.log.persistent.EventFilter;
+import org.ametiste.scm.log.persistent.EventGrouping;
+import org.ametiste.scm.log.persistent.EventHistogram;
+import org.ametiste.scm.log.persistent.EventKey;
+import org.ametiste.scm.log.persistent.EventSummary;
+import org.ametiste.scm.log.persistent.FilteredEventIterator;
+import org.ametiste.scm.log.persistent.MergingEventIterator;
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Implementation of {@code EventDAO} that combines hot storage (Mongo) with cold {@code EventArchive}.
+ * <p>
+ * Events are written to store only and moved to archive later by {@code EventArchiver}. Time range streams and counts
+ * cover both tiers: part of range covered by archive is read as merge of archive and store (store might still have
+ * late events of archived time), rest of range is read from store. Store cursor of the rest is opened only after
+ * archived part is read, so long replay of archived range doesn't hold idle Mongo cursor.
+ * <p>
+ * Lookup by id, pages and keyset queries of informer read store only.
+ * <p>
+ * Filters are pushed down to store, archived events are filtered on read.
+ * <p>
+ * Histograms are aggregated by store, archived part of range is added to histogram on read.
+ * <p>
+ * Events of interrupted archive run stay in both tiers until run is repeated, counts and histograms count them once.
+ */
+public class TieredEventDAO implements EventDAO {
+
+    private final EventDAO store;
+    private final EventArchive archive;
+
+    /**
+     * Create instance of {@code TieredEventDAO}.
+     * @param store DAO of hot storage.
+     * @param archive archive of cold events.
+     */
+    public TieredEventDAO(EventDAO store, EventArchive archive) {
+        isTrue(store != null, "'store' must be initialized!");
+        isTrue(archive != null, "'archive' must be initialized!");
+
+        this.store = store;
+        this.archive = archive;
+    }
+
+    /**
+     * @return DAO of hot storage.
+     */
+    public EventDAO getStore() {
+        return store;
+    }
+
+    /**
+     * @return archive of cold events.
+     */
+    public EventArchive getArchive() {
+        return archive;
+    }
+
+    @Override
+    public <S extends Event> S insert(S entity) {
+        return store.insert(entity);
+    }
+
+    @Override
+    public <S extends Event> S save(S entity) {
+        return store.save(entity);
+    }
+
+    @Override
+    public Collection<Event> insert(Collection<Event> entities) {
+        return store.insert(entities);
+    }
+
+    @Override
+    public Collection<Event> save(Collection<Event> entities) {
+        return store.save(entities);
+    }
+
+    @Override
+    public Event findOne(UUID id) {
+        return store.findOne(id);
+    }
+
+    @Override
+    public List<Event> findAll(Collection<UUID> ids) {
+        return store.findAll(ids);
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll() {
+        return new ConcatenatedEventIterator(Arrays.asList(archive::findAll, store::findAll));
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll(long from, long to) {
+        return findAll(from, to, EventFilter.NONE);
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll(long from, long to, EventFilter filter) {
+        isTrue(filter != null, "'filter' must be initialized!");
+
+        long archived = archivedUntil();
+        if (archived < from) {
+            return findStored(from, to, filter);
+        }
+
+        long split = Math.min(to, archived);
+        Supplier<CloseableIterator<Event>> cold = () -> new MergingEventIterator(
+                Arrays.asList(findArchived(from, split, filter), findStored(from, split, filter)));
+        if (split == to) {
+            return cold.get();
+        }
+        return new ConcatenatedEventIterator(Arrays.asList(cold, () -> findStored(split + 1, to, filter)));
+    }
+
+    @Override
+    public Page<Event> findAll(Pageable pageable) {
+        return store.findAll(pageable);
+    }
+
+    @Override
+    public Page<Event> findAll(long from, long to, Pageable pageable) {
+        return store.findAll(from, to, pageable);
+    }
+
+    @Override
+    public Page<Event> findAll(long from, long to, EventFilter filter, Pageable pageable) {
+        return store.findAll(from, to, filter, pageable);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(Pageable pageable) {
+        return store.findSummaries(pageable);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(long from, long to, Pageable pageable) {
+        return store.findSummaries(from, to, pageable);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(long from, long to, EventFilter filter, Pageable pageable) {
+        return store.findSummaries(from, to, filter, pageable);
+    }
+
+    @Override
+    public List<Event> findAll(long from, long to, EventKey after, int limit, Sort.Direction direction) {
+        return store.findAll(from, to, after, limit, direction);
+    }
+
+    /**
+     * Events are removed from store, archive segments are removed only if interval covers them entirely.
+     */
+    @Override
+    public void delete(long from, long to) {
+        store.delete(from, to);
+        archive.delete(from, to);
+    }
+
+    @Override
+    public long count() {
+        if (archive.getSegments().isEmpty()) {
+            return store.count();
+        }
+        return count(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Override
+    public long count(long from, long to) {
+        return count(from, to, EventFilter.NONE);
+    }
+
+    /**
+     * Archived part of range is counted once even if interrupted archive run left its events in both tiers (or in
+     * several segments): such part is counted by merge of archive and store, otherwise by segment metadata.
+     */
+    @Override
+    public long count(long from, long to, EventFilter filter) {
+        isTrue(filter != null, "'filter' must be initialized!");
+
+        long archived = archivedUntil();
+        if (archived < from) {
+            return countStored(from, to, filter);
+        }
+
+        long split = Math.min(to, archived);
+        long count = countArchived(from, split, filter);
+        if (split < to) {
+            count += countStored(split + 1, to, filter);
+        }
+        return count;
+    }
+
+    @Override
+    public EventHistogram histogram(long from, long to, long bucketSize, EventGrouping grouping, EventFilter filter) {
+        isTrue(grouping != null, "'grouping' must be initialized!");
+        isTrue(filter != null, "'filter' must be initialized!");
+
+        long archived = archivedUntil();
+        if (archived < from) {
+            return store.histogram(from, to, bucketSize, grouping, filter);
+        }
+
+        long split = Math.min(to, archived);
+        EventHistogram histogram = new EventHistogram(from, to, bucketSize);
+        if (split < to) {
+            histogram.addAll(store.histogram(split + 1, to, bucketSize, grouping, filter));
+        }
+        try (CloseableIterator<Event> events = findAll(from, split, filter)) {
+            events.forEachRemaining(event -> histogram.add(grouping.groupOf(event), event.getTimestamp(), 1));
+        }
+        return histogram;
+    }
+
+    private long countStored(long from, long to, EventFilter filter) {
+        return filter.isEmpty() ? store.count(from, to) : store.count(from, to, filter);
+    }
+
+    /**
+     * Count events of archived time range. Segment metadata is used only if store has no events of range and segments
+     * don't overlap, otherwise the same event might be in both tiers or in several segments and merged stream is counted.
+     */
+    private long countArchived(long from, long to, EventFilter filter) {
+        boolean duplicates = store.count(from, to) > 0 || overlapping(from, to);
+        if (!duplicates && filter.isEmpty()) {
+            return archive.count(from, to);
+        }
+
+        long count = 0;
+        try (CloseableIterator<Event> events = duplicates ? findAll(from, to, filter) : findArchived(from, to, filter)) {
+            while (events.hasNext()) {
+                events.next();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return {@literal true} if some archive segments that overlap specified time range overlap each other.
+     */
+    private boolean overlapping(long from, long to) {
+        long end = Long.MIN_VALUE;
+        boolean first = true;
+        for (EventSegment segment : archive.getSegments()) {
+            if (!segment.overlaps(from, to)) {
+                continue;
+            }
+            if (!first && segment.getMinTimestamp() <= end) {
+                return true;
+            }
+            end = Math.max(end, segment.getMaxTimestamp());
+            first = false;
+        }
+        return false;
+    }
+
+    private CloseableIterator<Event> findStored(long from, long to, EventFilter filter) {
+        return filter.isEmpty() ? store.findAll(from, to) : store.findAll(from, to, filter);
+    }
+
+    private CloseableIterator<Event> findArchived(long from, long to, EventFilter filter) {
+        return filter.isEmpty() ? archive.findAll(from, to) : new FilteredEventIterator(archive.findAll(from, to), filter);
+    }
+
+    /**
+     * @return max timestamp of archived events or {@link Long#MIN_VALUE} if archive is empty.
+     */
+    private long archivedUntil() {
+        List<EventSegment> segments = archive.getSegments();
+        return segments.stream().mapToLong(EventSegment::getMaxTimestamp).max().orElse(Long.MIN_VALUE);
+    }
+}
@@ -0,0 +1,78 @@
+package org.ametiste.scm.log.boot.config;
+
+import org.ametiste.scm.log.persistent.PartitionPeriod;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties for archive of old events.
+ * <p>
+ * Defined properties are included ({@code org.ametiste.scm.log.archive.*}):
+ * <ul>
+ *     <li><b>enabled</b> - move old events from Mongo to compressed segment files on local disk. Default is {@literal false}.</li>
+ *     <li><b>directory</b> - directory for archive segment files. Default is {@literal "archive"}.</li>
+ *     <li><b>retentionAge</b> - age of events (in milliseconds) when they are moved to archive. Default is
+ *     {@literal 604800000} (7 days).</li>
+ *     <li><b>segmentPeriod</b> - time window of one segment ({@literal DAILY} or {@literal WEEKLY}), should be equal
+ *     to partition period of store. Default is {@literal DAILY}.</li>
+ *     <li><b>blockSize</b> - number of events in one compressed block of segment. Default is {@literal 1000}.</li>
+ *     <li><b>checkPeriod</b> - delay between runs of archive job (in milliseconds). Default is {@literal 3600000} (1 hour).</li>
+ * </ul>
+ */
+@ConfigurationProperties("org.ametiste.scm.log.archive")
+public class ArchiveProperties {
+
+    private boolean enabled = false;
+    private String directory = "archive";
+    private long retentionAge = 604800000;
+    private PartitionPeriod segmentPeriod = PartitionPeriod.DAILY;
+    private int blockSize = 1000;
+    private long checkPeriod = 3600000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public long getRetentionAge() {
+        return retentionAge;
+    }
+
+    public void setRetentionAge(long retentionAge) {
+        this.retentionAge = retentionAge;
+    }
+
+    public PartitionPeriod getSegmentPeriod() {
+        return segmentPeriod;
+    }
+
+    public void setSegmentPeriod(PartitionPeriod segmentPeriod) {
+        this.segmentPeriod = segmentPeriod;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public long getCheckPeriod() {
+        return checkPeriod;
+    }
+
+    public void setCheckPeriod(long checkPeriod) {
+        this.checkPeriod = checkPeriod;
+    }
+}
@@ -1,10 +1,26 @@
 package org.ametiste.scm.log.boot.config;
 
+import com.mongodb.MongoClientURI;
+import org.ametiste.scm.log.archive.EventArchive;
+import org.ametiste.scm.log.archive.EventArchiver;
+import org.ametiste.scm.log.archive.TieredEventDAO;
+import org.ametiste.scm.log.filestore.FileEventDAO;
+import org.ametiste.scm.log.journal.BsonEventSerializer;
+import org.ametiste.scm.log.journal.EventSerializer;
+import org.ametiste.scm.log.persistent.EventCodecRegistry;
+import org.ametiste.scm.log.persistent.EventCountersReconciler;
 import org.ametiste.scm.log.persistent.EventDAO;
+import org.ametiste.scm.log.persistent.EventLookupCache;
+import org.ametiste.scm.log.persistent.EventTailCache;
+import org.ametiste.scm.log.persistent.MongoEventCounters;
 import org.ametiste.scm.log.persistent.MongoEventDAO;
+import org.ametiste.scm.log.persistent.PartitionedEventDAO;
+import org.ametiste.scm.log.persistent.ShardedEventDAO;
 import org.ametiste.scm.messaging.data.mongo.event.EventDocument;
 import org.ametiste.scm.messaging.data.mongo.event.factory.DefaultEventToDocumentConverterMapFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -12,35 +28,259 @@ import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.IndexOperations;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
 import org.springframework.data.mongodb.core.index.Index;
 
 import javax.annotation.PostConstruct;
+import java.net.UnknownHostException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Configuration define data access object to event repository.
  * It contains {@code EvenDAO} object for Mongo DB repository and ensure indices created if property allow this.
+ * Compound index on {@code (timestamp, _id)} serves time range and keyset queries of informer, compound indices on
+ * {@code (type, timestamp)}, {@code (instanceId, timestamp)} and {@code (nodeId, timestamp)} serve filtered queries. If counters are enabled DAO maintains
+ * pre-aggregated number of events per time bucket and answers range counts from them, counters are verified against
+ * stored events by {@code EventCountersReconciler} in background. If codecs are enabled event
+ * documents are written and read with hand-written codecs. If partitioning is enabled events are stored in
+ * time-partitioned collections by {@code PartitionedEventDAO} and indices are ensured for each partition.
+ * <p>
+ * If archive is enabled ({@literal org.ametiste.scm.log.archive.enabled}) DAO reads both Mongo and {@code EventArchive}
+ * and {@code EventArchiver} periodically moves events older than retention age from Mongo to archive segment files.
+ * <p>
+ * If shard URIs are specified ({@literal org.ametiste.scm.log.store.shardUris}) events are distributed by id between
+ * Mongo databases of shards by {@code ShardedEventDAO}. Each shard has own indices, counters and partitions, default
+ * Mongo database is not used for events. Shard clients and writer threads are created by this configuration outside of
+ * bean definitions, so they are closed when configuration is destroyed (after beans that use them).
+ * <p>
+ * If tail cache is enabled ({@literal org.ametiste.scm.log.store.tailCacheEnabled}) the most recent events are kept in
+ * memory by {@code EventTailCache}, logger feeds it with written events and informer serves recent events from it.
+ * <p>
+ * If lookup cache is enabled ({@literal org.ametiste.scm.log.store.lookupCacheEnabled}) events looked up by informer
+ * are cached by {@code EventLookupCache}, logger invalidates ids of written events.
+ * <p>
+ * Optional components are registered only if their properties enable them, so other configurations inject them with
+ * {@code @Autowired(required = false)}. Bean methods of optional components are invoked within this configuration
+ * only under the same property checks.
+ * <p>
+ * If {@literal FILE} storage engine is selected events are stored in local segment files by {@code FileEventDAO},
+ * Mongo collections, indices and counters are not used for events.
  */
 @Configuration
 @Import(MongoDbConfiguration.class)
-@EnableConfigurationProperties(StoreProperties.class)
-public class EventPersistentConfiguration {
+@EnableConfigurationProperties({ StoreProperties.class, ArchiveProperties.class })
+public class EventPersistentConfiguration implements DisposableBean {
+
+    private static final String TIMESTAMP_INDEX = "timestamp_1";
 
     @Autowired
     private StoreProperties properties;
 
+    @Autowired
+    private ArchiveProperties archiveProperties;
+
     @Autowired
     private MongoOperations mongoOperations;
 
+    private final Map<MongoEventCounters, EventDAO> counterStores = new LinkedHashMap<>();
+    private final List<SimpleMongoDbFactory> shardFactories = new ArrayList<>();
+    private ShardedEventDAO shardedEventDAO;
+
     @Bean
     public EventDAO mongoEventDAO() {
-        return new MongoEventDAO(mongoOperations, new DefaultEventToDocumentConverterMapFactory());
+        EventArchive archive = archiveProperties.isEnabled() ? eventArchive() : null;
+        if (properties.getEngine() == StorageEngine.FILE) {
+            EventDAO eventDAO = fileEventDAO();
+            return archive != null ? new TieredEventDAO(eventDAO, archive) : eventDAO;
+        }
+
+        EventDAO eventDAO;
+        if (properties.getShardUris().isEmpty()) {
+            eventDAO = storeDAO(mongoOperations, properties.isCountersEnabled() ? eventCounters() : null);
+        } else {
+            List<EventDAO> shards = new ArrayList<>();
+            for (String uri : properties.getShardUris()) {
+                MongoOperations shardOperations = shardOperations(uri);
+                if (properties.isAllowCreateIndex() && !properties.isPartitioningEnabled()) {
+                    ensureIndices(shardOperations.indexOps(EventDocument.class));
+                }
+                shards.add(storeDAO(shardOperations, properties.isCountersEnabled()
+                        ? new MongoEventCounters(shardOperations, properties.getCounterBucketSize(),
+                                properties.getCounterPendingTimeout()) : null));
+            }
+            shardedEventDAO = new ShardedEventDAO(shards);
+            eventDAO = shardedEventDAO;
+        }
+
+        return archive != null ? new TieredEventDAO(eventDAO, archive) : eventDAO;
+    }
+
+    /**
+     * Cache is warmed with the most recent events of DAO on creation.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "org.ametiste.scm.log.store", name = "tail-cache-enabled")
+    public EventTailCache eventTailCache() {
+        EventTailCache cache = new EventTailCache(properties.getTailCacheSize());
+        cache.warm(mongoEventDAO());
+        return cache;
+    }
+
+    /**
+     * Weight of cached event is size of its serialized representation.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "org.ametiste.scm.log.store", name = "lookup-cache-enabled")
+    public EventLookupCache eventLookupCache() {
+        EventSerializer serializer = eventSerializer();
+        return new EventLookupCache(properties.getLookupCacheSize(), properties.getLookupCacheWeight(),
+                properties.getLookupCacheNegativeTtl(), event -> serializer.serialize(event).length);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "org.ametiste.scm.log.store", name = "engine", havingValue = "FILE")
+    public FileEventDAO fileEventDAO() {
+        return new FileEventDAO(Paths.get(properties.getFileDirectory()), properties.getFileSegmentSize(),
+                properties.getFileIndexInterval(), eventSerializer());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "org.ametiste.scm.log.archive", name = "enabled")
+    public EventArchive eventArchive() {
+        return new EventArchive(Paths.get(archiveProperties.getDirectory()), archiveProperties.getBlockSize(),
+                eventSerializer());
+    }
+
+    /**
+     * Archiver moves events from Mongo store, that is wrapped by {@code TieredEventDAO} when archive is enabled.
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(prefix = "org.ametiste.scm.log.archive", name = "enabled")
+    public EventArchiver eventArchiver() {
+        TieredEventDAO eventDAO = (TieredEventDAO) mongoEventDAO();
+        return new EventArchiver(eventDAO.getStore(), eventDAO.getArchive(), archiveProperties.getSegmentPeriod(),
+                archiveProperties.getRetentionAge(), archiveProperties.getCheckPeriod());
+    }
+
+    /**
+     * Reconciler verifies counters of all Mongo stores created by {@link #mongoEventDAO()}, counters verify only events
+     * in Mongo.
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(prefix = "org.ametiste.scm.log.store", name = "counters-enabled")
+    public EventCountersReconciler eventCountersReconciler() {
+        mongoEventDAO();
+        return new EventCountersReconciler(counterStores, properties.getCounterReconcilePeriod());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "org.ametiste.scm.log.store", name = "codecs-enabled")
+    public EventCodecRegistry eventCodecRegistry() {
+        return new EventCodecRegistry();
+    }
+
+    /**
+     * Counters of default Mongo database. They are not used for events if file engine is selected or events are
+     * sharded (each shard has own counters).
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "org.ametiste.scm.log.store", name = "counters-enabled")
+    public MongoEventCounters eventCounters() {
+        return new MongoEventCounters(mongoOperations, properties.getCounterBucketSize(),
+                properties.getCounterPendingTimeout());
+    }
+
+    /**
+     * Stop writer threads of sharded DAO and close clients of shard databases.
+     */
+    @Override
+    public void destroy() throws Exception {
+        if (shardedEventDAO != null) {
+            shardedEventDAO.close();
+        }
+        for (SimpleMongoDbFactory factory : shardFactories) {
+            factory.destroy();
+        }
+    }
+
+    private EventSerializer eventSerializer() {
+        return new BsonEventSerializer(mongoOperations.getConverter(), new DefaultEventToDocumentConverterMapFactory(),
+                eventCodecs());
+    }
+
+    private EventCodecRegistry eventCodecs() {
+        return properties.isCodecsEnabled() ? eventCodecRegistry() : null;
+    }
+
+    /**
+     * Create DAO for events of one Mongo database. DAO with counters is registered for verification of counters.
+     */
+    private EventDAO storeDAO(MongoOperations operations, MongoEventCounters counters) {
+        EventCodecRegistry codecs = eventCodecs();
+
+        EventDAO eventDAO;
+        if (properties.isPartitioningEnabled()) {
+            eventDAO = new PartitionedEventDAO(operations, properties.getPartitionPeriod(),
+                    operations.getCollectionName(EventDocument.class),
+                    collectionName -> partitionDAO(operations, collectionName, counters, codecs), counters);
+        } else {
+            eventDAO = new MongoEventDAO(operations, new DefaultEventToDocumentConverterMapFactory(), counters,
+                    codecs, null, properties.getStreamBatchSize(), properties.getStreamPrefetchDepth());
+        }
+
+        if (counters != null) {
+            counterStores.put(counters, eventDAO);
+        }
+        return eventDAO;
+    }
+
+    /**
+     * Create {@code MongoOperations} for shard database. Shard documents are mapped with the same converter as
+     * documents of default database. Client of shard is closed on {@link #destroy()}.
+     */
+    private MongoOperations shardOperations(String uri) {
+        try {
+            SimpleMongoDbFactory factory = new SimpleMongoDbFactory(new MongoClientURI(uri));
+            shardFactories.add(factory);
+            return new MongoTemplate(factory, mongoOperations.getConverter());
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Unknown host of shard '" + uri + "': " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Create DAO for partition collection. Indices of partition are ensured on first access to partition.
+     */
+    private MongoEventDAO partitionDAO(MongoOperations operations, String collectionName, MongoEventCounters counters,
+                                       EventCodecRegistry codecs) {
+        if (properties.isAllowCreateIndex()) {
+            ensureIndices(operations.indexOps(collectionName));
+        }
+        return new MongoEventDAO(operations, new DefaultEventToDocumentConverterMapFactory(), counters, codecs,
+                collectionName, properties.getStreamBatchSize(), properties.getStreamPrefetchDepth());
     }
 
     @PostConstruct
     private void initializeIndices() {
-        if (properties.isAllowCreateIndex()) {
-            IndexOperations operations = mongoOperations.indexOps(EventDocument.class);
-            operations.ensureIndex(new Index().on("timestamp", Sort.Direction.ASC));
+        if (properties.isAllowCreateIndex() && !properties.isPartitioningEnabled()
+                && properties.getEngine() == StorageEngine.MONGO && properties.getShardUris().isEmpty()) {
+            ensureIndices(mongoOperations.indexOps(EventDocument.class));
+        }
+    }
+
+    private static void ensureIndices(IndexOperations operations) {
+        // single-field timestamp index of previous versions is a prefix of (timestamp, _id) and only slows down writes
+        if (operations.getIndexInfo().stream().anyMatch(index -> TIMESTAMP_INDEX.equals(index.getName()))) {
+            operations.dropIndex(TIMESTAMP_INDEX);
         }
+        operations.ensureIndex(new Index().on("timestamp", Sort.Direction.ASC).on("_id", Sort.Direction.ASC));
+        operations.ensureIndex(new Index().on("type", Sort.Direction.ASC).on("timestamp", Sort.Direction.ASC));
+        operations.ensureIndex(new Index().on("instanceId", Sort.Direction.ASC).on("timestamp", Sort.Direction.ASC));
+        operations.ensureIndex(new Index().on("nodeId", Sort.Direction.ASC).on("timestamp", Sort.Direction.ASC));
     }
 }
@@ -1,10 +1,15 @@
 package org.ametiste.scm.log.boot.config;
 
 import org.ametiste.scm.log.controller.EventInfoController;
+import org.ametiste.scm.log.metrics.InformerPublicMetrics;
 import org.ametiste.scm.log.persistent.EventDAO;
+import org.ametiste.scm.log.persistent.EventLookupCache;
+import org.ametiste.scm.log.persistent.EventTailCache;
+import org.ametiste.scm.log.persistent.LookupCachingEventDAO;
 import org.ametiste.scm.log.service.EventInformer;
 import org.ametiste.scm.log.service.EventInformerImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
 import org.springframework.context.annotation.*;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
@@ -14,7 +19,9 @@ import static org.springframework.context.annotation.ComponentScan.Filter;
  * Configuration for Informer Feature.
  * <p>
  * Configuration defines {@code EventInformer} instance and enable {@code EventInfoController} by component scan
- * annotation to allow info requests.
+ * annotation to allow info requests. If tail cache is enabled informer serves recent events from it. If lookup cache is
+ * enabled informer looks up events by id through it, statistics of cache are published with
+ * {@code InformerPublicMetrics}.
  */
 @Configuration
 @EnableWebMvc
@@ -26,8 +33,20 @@ public class InformerFeatureConfiguration {
     @Autowired
     private EventDAO eventDAO;
 
+    @Autowired(required = false)
+    private EventTailCache eventTailCache;
+
+    @Autowired(required = false)
+    private EventLookupCache eventLookupCache;
+
     @Bean
     public EventInformer eventInformerService() {
-        return new EventInformerImpl(eventDAO);
+        EventDAO informerDAO = eventLookupCache != null ? new LookupCachingEventDAO(eventDAO, eventLookupCache) : eventDAO;
+        return new EventInformerImpl(informerDAO, eventTailCache);
+    }
+
+    @Bean
+    public PublicMetrics informerPublicMetrics() {
+        return new InformerPublicMetrics(eventLookupCache);
     }
 }
@@ -1,19 +1,49 @@
 package org.ametiste.scm.log.boot.config;
 
 import org.ametiste.scm.coordinator.config.ScmEventSubscriberConfiguration;
+import org.ametiste.scm.log.controller.ReceiverBackpressureInterceptor;
+import org.ametiste.scm.log.journal.BsonEventSerializer;
+import org.ametiste.scm.log.journal.EventJournal;
+import org.ametiste.scm.log.journal.MappedEventJournal;
+import org.ametiste.scm.log.metrics.IngestionMetrics;
+import org.ametiste.scm.log.metrics.IngestionPublicMetrics;
+import org.ametiste.scm.log.persistent.EventCodecRegistry;
 import org.ametiste.scm.log.persistent.EventDAO;
+import org.ametiste.scm.log.persistent.EventLookupCache;
+import org.ametiste.scm.log.persistent.LookupCachingEventDAO;
+import org.ametiste.scm.log.persistent.EventTailCache;
+import org.ametiste.scm.log.persistent.TailCachingEventDAO;
+import org.ametiste.scm.log.persistent.TimedEventDAO;
+import org.ametiste.scm.log.service.AdaptiveFlushPolicy;
+import org.ametiste.scm.log.service.EventFlushScheduler;
 import org.ametiste.scm.log.service.EventLogger;
 import org.ametiste.scm.log.service.EventLoggerImpl;
+import org.ametiste.scm.log.service.EventRingBuffer;
+import org.ametiste.scm.log.service.EventRingDispatcher;
+import org.ametiste.scm.log.service.RecentEventFilter;
+import org.ametiste.scm.log.util.NodeRateLimiter;
 import org.ametiste.scm.messaging.data.event.Event;
+import org.ametiste.scm.messaging.data.mongo.event.factory.DefaultEventToDocumentConverterMapFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.scheduling.annotation.EnableScheduling;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import java.nio.file.Paths;
+
+import static org.ametiste.scm.log.util.EventReceiverURLBuilder.EVENT_RECEIVER_PATH;
 
 /**
  * Configuration for Event Logging Feature.
@@ -24,34 +54,156 @@ import org.springframework.web.servlet.config.annotation.EnableWebMvc;
  * publish it with Spring ApplicationEventPublisher.<p>
  * Method {@link #onEventReceived} registered as event listener for all {@code Event} objects and store events with
  * {@code EventLogger} instance.<p>
- * Method {@link #flushEvents} scheduled with fixed delay parameter that defines by property
- * {@literal org.ametiste.scm.log.store.flush-period}. It invokes {@code flush} method of {@code EventLogger} to store
- * events to persistent.
+ * {@code EventFlushScheduler} invokes {@code flush} method of {@code EventLogger} to store events to persistent. Flush
+ * executes with fixed delay defined by property {@literal org.ametiste.scm.log.store.flush-period} or as soon as buffer
+ * reach {@literal org.ametiste.scm.log.store.flush-size} events. With
+ * {@literal org.ametiste.scm.log.store.adaptive-flush-enabled} property period and size are adjusted by scheduler from
+ * observed flush duration and arrival rate within configured bounds. Buffer might be split into
+ * {@literal org.ametiste.scm.log.store.stripes} stripes that are written concurrently by
+ * {@literal org.ametiste.scm.log.store.flush-workers} threads. Redelivered events that are recently persisted might be
+ * dropped before buffering with filter enabled by {@literal org.ametiste.scm.log.store.duplicate-filter-enabled}.
  * Delay parameter of scheduler must have reasonable value. High value lead to rise load to persistent, low value
- * lead to increase risk lost data from temp on unexpected application crash.
+ * lead to increase risk lost data from temp on unexpected application crash. This risk is removed with write-ahead
+ * journal enabled by {@literal org.ametiste.scm.log.store.journal-enabled} property: events left in journal after
+ * crash are written to persistent on start before logger accepts new events.
+ * <p>
+ * {@code ReceiverBackpressureInterceptor} rejects incoming requests while logger is saturated and optionally limits
+ * request rate of each sender node (properties {@literal org.ametiste.scm.log.receiver.*}). With
+ * {@literal org.ametiste.scm.log.receiver.async-enabled} property received events are handed off to logger through
+ * {@code EventRingDispatcher}, so receiving threads don't wait for logger.
+ * <p>
+ * Buffer state, ingestion counters and latency histograms of flush and DAO write operations are published to Actuator
+ * {@literal /metrics} endpoint with {@code IngestionPublicMetrics}.
  */
 @Configuration
 @EnableWebMvc
 @EnableScheduling
 @ComponentScan("org.ametiste.scm.messaging.receiver")
 @Import({ EventPersistentConfiguration.class, ScmEventSubscriberConfiguration.class })
-public class LoggingFeatureConfiguration {
+@EnableConfigurationProperties(ReceiverProperties.class)
+public class LoggingFeatureConfiguration extends WebMvcConfigurerAdapter {
+
+    @Autowired
+    private StoreProperties properties;
+
+    @Autowired
+    private ReceiverProperties receiverProperties;
 
     @Autowired
     private EventDAO eventDAO;
 
+    @Autowired
+    private MongoOperations mongoOperations;
+
+    @Autowired(required = false)
+    private EventCodecRegistry eventCodecRegistry;
+
+    @Autowired(required = false)
+    private EventTailCache eventTailCache;
+
+    @Autowired(required = false)
+    private EventLookupCache eventLookupCache;
+
     @EventListener
     private void onEventReceived(Event event) {
-        eventLoggerService().store(event);
+        if (receiverProperties.isAsyncEnabled()) {
+            eventRingDispatcher().publish(event);
+        } else {
+            eventLoggerService().store(event);
+            eventFlushScheduler().onStored();
+        }
     }
 
-    @Scheduled(fixedDelayString = "${org.ametiste.scm.log.store.flush-period}", initialDelay = 1000)
-    private void flushEvents() {
-        eventLoggerService().flush();
+    @Bean(destroyMethod = "close")
+    public EventLogger eventLoggerService() {
+        EventJournal journal = null;
+        if (properties.isJournalEnabled()) {
+            journal = new MappedEventJournal(Paths.get(properties.getJournalDirectory()), properties.getJournalSegmentSize(),
+                    new BsonEventSerializer(mongoOperations.getConverter(), new DefaultEventToDocumentConverterMapFactory(),
+                            eventCodecRegistry));
+        }
+
+        IngestionMetrics metrics = ingestionMetrics();
+        EventDAO loggerDAO = eventTailCache != null ? new TailCachingEventDAO(eventDAO, eventTailCache) : eventDAO;
+        if (eventLookupCache != null) {
+            loggerDAO = new LookupCachingEventDAO(loggerDAO, eventLookupCache);
+        }
+        EventLoggerImpl eventLogger = EventLoggerImpl.builder(
+                new TimedEventDAO(loggerDAO, metrics.getInsertLatency(), metrics.getSaveLatency()))
+                .journal(journal)
+                .duplicateFilter(recentEventFilter())
+                .metrics(metrics)
+                .batchSize(properties.getBatchSize())
+                .watermarks(properties.getHighWatermark(), properties.getLowWatermark())
+                .stripes(properties.getStripes())
+                .flushWorkers(properties.getFlushWorkers())
+                .build();
+        eventLogger.recover();
+        return eventLogger;
     }
 
     @Bean
-    public EventLogger eventLoggerService() {
-        return new EventLoggerImpl(eventDAO);
+    @ConditionalOnProperty(prefix = "org.ametiste.scm.log.store", name = "duplicate-filter-enabled")
+    public RecentEventFilter duplicateFilter() {
+        return new RecentEventFilter(properties.getDuplicateFilterCapacity(),
+                properties.getDuplicateFilterFalsePositiveRate(), properties.getDuplicateFilterConfirmSize());
+    }
+
+    /**
+     * Filter bean is registered only if it is enabled, so it is requested under the same property check.
+     */
+    private RecentEventFilter recentEventFilter() {
+        return properties.isDuplicateFilterEnabled() ? duplicateFilter() : null;
+    }
+
+    @Bean
+    public IngestionMetrics ingestionMetrics() {
+        return new IngestionMetrics();
+    }
+
+    @Bean
+    public PublicMetrics ingestionPublicMetrics() {
+        return new IngestionPublicMetrics(eventLoggerService(), eventFlushScheduler(), ingestionMetrics(),
+                recentEventFilter());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        NodeRateLimiter rateLimiter = null;
+        if (receiverProperties.getNodeRateLimit() > 0) {
+            rateLimiter = new NodeRateLimiter(receiverProperties.getNodeRateLimit(), receiverProperties.getNodeRateBurst());
+        }
+
+        registry.addInterceptor(new ReceiverBackpressureInterceptor(eventLoggerService(), rateLimiter,
+                receiverProperties.isRejectWhenSaturated(), receiverProperties.getSaturatedStatus(),
+                receiverProperties.getRetryAfter())).addPathPatterns(EVENT_RECEIVER_PATH);
+    }
+
+    /**
+     * Scheduler depends on logger explicitly to be stopped with last flush before logger is closed.
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @DependsOn("eventLoggerService")
+    public EventFlushScheduler eventFlushScheduler() {
+        AdaptiveFlushPolicy policy;
+        if (properties.isAdaptiveFlushEnabled()) {
+            policy = new AdaptiveFlushPolicy(properties.getMinFlushPeriod(), properties.getMaxFlushPeriod(),
+                    properties.getMinFlushSize(), properties.getMaxFlushSize(), properties.getFlushLatencyFactor());
+        } else {
+            policy = new AdaptiveFlushPolicy(properties.getFlushPeriod(), properties.getFlushSize());
+        }
+        return new EventFlushScheduler(eventLoggerService(), policy);
+    }
+
+    /**
+     * Dispatcher is created on first received event only if asynchronous hand-off is enabled. It is stopped before
+     * scheduler, so events left in ring are stored before last flush.
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @Lazy
+    @DependsOn("eventFlushScheduler")
+    public EventRingDispatcher eventRingDispatcher() {
+        return new EventRingDispatcher(new EventRingBuffer(receiverProperties.getRingSize()), eventLoggerService(),
+                eventFlushScheduler(), receiverProperties.getDispatchBatchSize(), receiverProperties.getWaitStrategy());
     }
 }
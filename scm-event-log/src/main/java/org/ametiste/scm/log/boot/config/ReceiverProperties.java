@@ -0,0 +1,109 @@
+package org.ametiste.scm.log.boot.config;
+
+import org.ametiste.scm.log.service.WaitStrategy;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties for event receiver endpoint.
+ * <p>
+ * Defined properties are included ({@code org.ametiste.scm.log.receiver.*}):
+ * <ul>
+ *     <li><b>rejectWhenSaturated</b> - reject incoming events while logger is saturated. Default is {@literal true}.</li>
+ *     <li><b>saturatedStatus</b> - HTTP status returned while logger is saturated. Default is {@literal 503}.</li>
+ *     <li><b>retryAfter</b> - value of Retry-After header for rejected requests (in seconds). Default is {@literal 1}.</li>
+ *     <li><b>nodeRateLimit</b> - maximum rate of requests from one sender node (requests per second). Zero disables
+ *     limit. Default is {@literal 0}.</li>
+ *     <li><b>nodeRateBurst</b> - number of requests that sender node may send at once above rate. Default is {@literal 100}.</li>
+ *     <li><b>asyncEnabled</b> - hand off received events to logger through ring buffer. Default is {@literal false}.</li>
+ *     <li><b>ringSize</b> - number of ring buffer slots, must be power of two. Default is {@literal 65536}.</li>
+ *     <li><b>waitStrategy</b> - wait strategy of ring buffer ({@literal BUSY_SPIN}, {@literal YIELD} or
+ *     {@literal PARK}). Default is {@literal PARK}.</li>
+ *     <li><b>dispatchBatchSize</b> - maximum number of events that taken from ring and stored to logger at once. Default
+ *     is {@literal 1000}.</li>
+ * </ul>
+ */
+@ConfigurationProperties("org.ametiste.scm.log.receiver")
+public class ReceiverProperties {
+
+    private boolean rejectWhenSaturated = true;
+    private int saturatedStatus = 503;
+    private int retryAfter = 1;
+    private double nodeRateLimit = 0;
+    private int nodeRateBurst = 100;
+    private boolean asyncEnabled = false;
+    private int ringSize = 65536;
+    private WaitStrategy waitStrategy = WaitStrategy.PARK;
+    private int dispatchBatchSize = 1000;
+
+    public boolean isRejectWhenSaturated() {
+        return rejectWhenSaturated;
+    }
+
+    public void setRejectWhenSaturated(boolean rejectWhenSaturated) {
+        this.rejectWhenSaturated = rejectWhenSaturated;
+    }
+
+    public int getSaturatedStatus() {
+        return saturatedStatus;
+    }
+
+    public void setSaturatedStatus(int saturatedStatus) {
+        this.saturatedStatus = saturatedStatus;
+    }
+
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(int retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    public double getNodeRateLimit() {
+        return nodeRateLimit;
+    }
+
+    public void setNodeRateLimit(double nodeRateLimit) {
+        this.nodeRateLimit = nodeRateLimit;
+    }
+
+    public int getNodeRateBurst() {
+        return nodeRateBurst;
+    }
+
+    public void setNodeRateBurst(int nodeRateBurst) {
+        this.nodeRateBurst = nodeRateBurst;
+    }
+
+    public boolean isAsyncEnabled() {
+        return asyncEnabled;
+    }
+
+    public void setAsyncEnabled(boolean asyncEnabled) {
+        this.asyncEnabled = asyncEnabled;
+    }
+
+    public int getRingSize() {
+        return ringSize;
+    }
+
+    public void setRingSize(int ringSize) {
+        this.ringSize = ringSize;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    public int getDispatchBatchSize() {
+        return dispatchBatchSize;
+    }
+
+    public void setDispatchBatchSize(int dispatchBatchSize) {
+        this.dispatchBatchSize = dispatchBatchSize;
+    }
+}
@@ -0,0 +1,17 @@
+package org.ametiste.scm.log.boot.config;
+
+/**
+ * Storage engine of events.
+ */
+public enum StorageEngine {
+
+    /**
+     * Events are stored in Mongo DB collections by {@code MongoEventDAO} or {@code PartitionedEventDAO}.
+     */
+    MONGO,
+
+    /**
+     * Events are stored in local append-only segment files by {@code FileEventDAO}.
+     */
+    FILE
+}
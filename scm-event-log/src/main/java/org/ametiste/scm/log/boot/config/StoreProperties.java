@@ -1,13 +1,73 @@
 package org.ametiste.scm.log.boot.config;
 
+import org.ametiste.scm.log.persistent.PartitionPeriod;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Configuration properties for persistent storage.
  * <p>
  * Defined properties are included ({@code org.ametiste.scm.log.store.*}):
  * <ul>
  *     <li><b>flushPeriod</b> - time interval between flush to external storage (in milliseconds). Default is {@literal 1000}.</li>
+ *     <li><b>flushSize</b> - number of buffered events that trigger flush before period elapsed. Default is {@literal 5000}.</li>
+ *     <li><b>adaptiveFlushEnabled</b> - choose flush period and size from observed flush duration and arrival rate
+ *     instead of fixed {@code flushPeriod} and {@code flushSize}. Default is {@literal false}.</li>
+ *     <li><b>minFlushPeriod</b> - minimum adaptive flush period (in milliseconds). Default is {@literal 100}.</li>
+ *     <li><b>maxFlushPeriod</b> - maximum adaptive flush period (in milliseconds). Default is {@literal 5000}.</li>
+ *     <li><b>minFlushSize</b> - minimum adaptive flush size. Default is {@literal 500}.</li>
+ *     <li><b>maxFlushSize</b> - maximum adaptive flush size. Default is {@literal 20000}.</li>
+ *     <li><b>flushLatencyFactor</b> - ratio between adaptive flush period and flush duration. Default is {@literal 10}.</li>
+ *     <li><b>batchSize</b> - maximum number of events written with one insert operation. Default is {@literal 1000}.</li>
+ *     <li><b>highWatermark</b> - buffer size when logger become saturated. Default is {@literal 50000}.</li>
+ *     <li><b>lowWatermark</b> - buffer size when logger leave saturated state. Default is {@literal 25000}.</li>
+ *     <li><b>stripes</b> - number of buffer stripes, events are distributed between stripes by id. Default is {@literal 1}.</li>
+ *     <li><b>flushWorkers</b> - number of threads that write buffer stripes concurrently. Default is {@literal 1}.</li>
+ *     <li><b>journalEnabled</b> - enable write-ahead journal for buffered events. Default is {@literal false}.</li>
+ *     <li><b>journalDirectory</b> - directory for journal segment files. Default is {@literal "journal"}.</li>
+ *     <li><b>journalSegmentSize</b> - size of journal segment file (in bytes). Default is {@literal 67108864} (64 Mb).</li>
+ *     <li><b>duplicateFilterEnabled</b> - drop stored events which ids are recently persisted. Default is {@literal false}.</li>
+ *     <li><b>duplicateFilterCapacity</b> - number of ids remembered by Bloom filter generation. Default is {@literal 1000000}.</li>
+ *     <li><b>duplicateFilterFalsePositiveRate</b> - expected false positive rate of Bloom filter. Default is {@literal 0.01}.</li>
+ *     <li><b>duplicateFilterConfirmSize</b> - number of ids in exact LRU set that confirms duplicates. Default is {@literal 100000}.</li>
+ *     <li><b>countersEnabled</b> - maintain pre-aggregated counters of events per time bucket and lifecycle event
+ *     type. Default is {@literal false}.</li>
+ *     <li><b>counterBucketSize</b> - size of counter time bucket (in milliseconds), should divide partition length.
+ *     Default is {@literal 3600000} (1 hour).</li>
+ *     <li><b>counterReconcilePeriod</b> - delay between runs of counters verification (in milliseconds). Default is
+ *     {@literal 600000} (10 min).</li>
+ *     <li><b>counterPendingTimeout</b> - time after the last write reservation of counter bucket when its pending events
+ *     are considered left by interrupted write (in milliseconds). Default is {@literal 600000} (10 min).</li>
+ *     <li><b>codecsEnabled</b> - write and read event documents with hand-written codecs instead of reflective
+ *     {@code MongoConverter} mapping. Default is {@literal false}.</li>
+ *     <li><b>partitioningEnabled</b> - store events in time-partitioned collections. Default is {@literal false}.</li>
+ *     <li><b>partitionPeriod</b> - length of time partition ({@literal DAILY} or {@literal WEEKLY}). Default is
+ *     {@literal DAILY}.</li>
+ *     <li><b>streamBatchSize</b> - number of documents fetched by cursor of event stream at once, {@literal 0} means
+ *     driver default. Default is {@literal 0}.</li>
+ *     <li><b>streamPrefetchDepth</b> - number of events of stream decoded ahead on background thread, {@literal 0}
+ *     disables read ahead. Default is {@literal 0}.</li>
+ *     <li><b>shardUris</b> - Mongo URIs of databases that store events distributed by event id, default Mongo
+ *     database is used if list is empty. Default is empty list.</li>
+ *     <li><b>tailCacheEnabled</b> - keep the most recent events in memory to serve informer requests. Cache should be
+ *     enabled only if events are written by one service instance. Default is {@literal false}.</li>
+ *     <li><b>tailCacheSize</b> - number of the most recent events kept in tail cache. Default is {@literal 10000}.</li>
+ *     <li><b>lookupCacheEnabled</b> - cache events looked up by id. Misses are cached per service instance, so
+ *     event written by other instance might be not found until negative entry expires. Default is
+ *     {@literal false}.</li>
+ *     <li><b>lookupCacheSize</b> - maximum number of events cached for lookup by id. Default is {@literal 10000}.</li>
+ *     <li><b>lookupCacheWeight</b> - maximum total size of serialized events cached for lookup by id (in bytes).
+ *     Default is {@literal 16777216} (16 Mb).</li>
+ *     <li><b>lookupCacheNegativeTtl</b> - time to live of cached misses of lookup by id (in milliseconds), {@literal 0}
+ *     disables caching of misses. Default is {@literal 5000}.</li>
+ *     <li><b>engine</b> - storage engine of events ({@literal MONGO} or {@literal FILE}). Default is {@literal MONGO}.</li>
+ *     <li><b>fileDirectory</b> - directory for segment files of {@literal FILE} engine. Default is {@literal "data"}.</li>
+ *     <li><b>fileSegmentSize</b> - size of segment file of {@literal FILE} engine (in bytes). Default is
+ *     {@literal 67108864} (64 Mb).</li>
+ *     <li><b>fileIndexInterval</b> - number of records in one entry of sparse timestamp index of {@literal FILE} engine.
+ *     Default is {@literal 256}.</li>
  *     <li><b>allowCreateIndex</b> - allow create indices on initialization. Default is {@literal true}.</li>
  * </ul>
  */
@@ -15,6 +75,45 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 public class StoreProperties {
 
     private int flushPeriod = 1000;
+    private int flushSize = 5000;
+    private boolean adaptiveFlushEnabled = false;
+    private int minFlushPeriod = 100;
+    private int maxFlushPeriod = 5000;
+    private int minFlushSize = 500;
+    private int maxFlushSize = 20000;
+    private double flushLatencyFactor = 10;
+    private int batchSize = 1000;
+    private int highWatermark = 50000;
+    private int lowWatermark = 25000;
+    private int stripes = 1;
+    private int flushWorkers = 1;
+    private boolean journalEnabled = false;
+    private String journalDirectory = "journal";
+    private int journalSegmentSize = 64 * 1024 * 1024;
+    private boolean duplicateFilterEnabled = false;
+    private int duplicateFilterCapacity = 1000000;
+    private double duplicateFilterFalsePositiveRate = 0.01;
+    private int duplicateFilterConfirmSize = 100000;
+    private boolean countersEnabled = false;
+    private long counterBucketSize = 3600000;
+    private long counterReconcilePeriod = 600000;
+    private long counterPendingTimeout = 600000;
+    private boolean codecsEnabled = false;
+    private boolean partitioningEnabled = false;
+    private PartitionPeriod partitionPeriod = PartitionPeriod.DAILY;
+    private int streamBatchSize = 0;
+    private int streamPrefetchDepth = 0;
+    private List<String> shardUris = new ArrayList<>();
+    private boolean tailCacheEnabled = false;
+    private int tailCacheSize = 10000;
+    private boolean lookupCacheEnabled = false;
+    private int lookupCacheSize = 10000;
+    private long lookupCacheWeight = 16 * 1024 * 1024;
+    private long lookupCacheNegativeTtl = 5000;
+    private StorageEngine engine = StorageEngine.MONGO;
+    private String fileDirectory = "data";
+    private int fileSegmentSize = 64 * 1024 * 1024;
+    private int fileIndexInterval = 256;
     private boolean allowCreateIndex = true;
 
     public int getFlushPeriod() {
@@ -25,6 +124,318 @@ public class StoreProperties {
         this.flushPeriod = flushPeriod;
     }
 
+    public int getFlushSize() {
+        return flushSize;
+    }
+
+    public void setFlushSize(int flushSize) {
+        this.flushSize = flushSize;
+    }
+
+    public boolean isAdaptiveFlushEnabled() {
+        return adaptiveFlushEnabled;
+    }
+
+    public void setAdaptiveFlushEnabled(boolean adaptiveFlushEnabled) {
+        this.adaptiveFlushEnabled = adaptiveFlushEnabled;
+    }
+
+    public int getMinFlushPeriod() {
+        return minFlushPeriod;
+    }
+
+    public void setMinFlushPeriod(int minFlushPeriod) {
+        this.minFlushPeriod = minFlushPeriod;
+    }
+
+    public int getMaxFlushPeriod() {
+        return maxFlushPeriod;
+    }
+
+    public void setMaxFlushPeriod(int maxFlushPeriod) {
+        this.maxFlushPeriod = maxFlushPeriod;
+    }
+
+    public int getMinFlushSize() {
+        return minFlushSize;
+    }
+
+    public void setMinFlushSize(int minFlushSize) {
+        this.minFlushSize = minFlushSize;
+    }
+
+    public int getMaxFlushSize() {
+        return maxFlushSize;
+    }
+
+    public void setMaxFlushSize(int maxFlushSize) {
+        this.maxFlushSize = maxFlushSize;
+    }
+
+    public double getFlushLatencyFactor() {
+        return flushLatencyFactor;
+    }
+
+    public void setFlushLatencyFactor(double flushLatencyFactor) {
+        this.flushLatencyFactor = flushLatencyFactor;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+
+    public void setHighWatermark(int highWatermark) {
+        this.highWatermark = highWatermark;
+    }
+
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    public void setLowWatermark(int lowWatermark) {
+        this.lowWatermark = lowWatermark;
+    }
+
+    public int getStripes() {
+        return stripes;
+    }
+
+    public void setStripes(int stripes) {
+        this.stripes = stripes;
+    }
+
+    public int getFlushWorkers() {
+        return flushWorkers;
+    }
+
+    public void setFlushWorkers(int flushWorkers) {
+        this.flushWorkers = flushWorkers;
+    }
+
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    public void setJournalEnabled(boolean journalEnabled) {
+        this.journalEnabled = journalEnabled;
+    }
+
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    public void setJournalDirectory(String journalDirectory) {
+        this.journalDirectory = journalDirectory;
+    }
+
+    public int getJournalSegmentSize() {
+        return journalSegmentSize;
+    }
+
+    public void setJournalSegmentSize(int journalSegmentSize) {
+        this.journalSegmentSize = journalSegmentSize;
+    }
+
+    public boolean isDuplicateFilterEnabled() {
+        return duplicateFilterEnabled;
+    }
+
+    public void setDuplicateFilterEnabled(boolean duplicateFilterEnabled) {
+        this.duplicateFilterEnabled = duplicateFilterEnabled;
+    }
+
+    public int getDuplicateFilterCapacity() {
+        return duplicateFilterCapacity;
+    }
+
+    public void setDuplicateFilterCapacity(int duplicateFilterCapacity) {
+        this.duplicateFilterCapacity = duplicateFilterCapacity;
+    }
+
+    public double getDuplicateFilterFalsePositiveRate() {
+        return duplicateFilterFalsePositiveRate;
+    }
+
+    public void setDuplicateFilterFalsePositiveRate(double duplicateFilterFalsePositiveRate) {
+        this.duplicateFilterFalsePositiveRate = duplicateFilterFalsePositiveRate;
+    }
+
+    public int getDuplicateFilterConfirmSize() {
+        return duplicateFilterConfirmSize;
+    }
+
+    public void setDuplicateFilterConfirmSize(int duplicateFilterConfirmSize) {
+        this.duplicateFilterConfirmSize = duplicateFilterConfirmSize;
+    }
+
+    public boolean isCountersEnabled() {
+        return countersEnabled;
+    }
+
+    public void setCountersEnabled(boolean countersEnabled) {
+        this.countersEnabled = countersEnabled;
+    }
+
+    public long getCounterBucketSize() {
+        return counterBucketSize;
+    }
+
+    public void setCounterBucketSize(long counterBucketSize) {
+        this.counterBucketSize = counterBucketSize;
+    }
+
+    public long getCounterReconcilePeriod() {
+        return counterReconcilePeriod;
+    }
+
+    public void setCounterReconcilePeriod(long counterReconcilePeriod) {
+        this.counterReconcilePeriod = counterReconcilePeriod;
+    }
+
+    public long getCounterPendingTimeout() {
+        return counterPendingTimeout;
+    }
+
+    public void setCounterPendingTimeout(long counterPendingTimeout) {
+        this.counterPendingTimeout = counterPendingTimeout;
+    }
+
+    public boolean isCodecsEnabled() {
+        return codecsEnabled;
+    }
+
+    public void setCodecsEnabled(boolean codecsEnabled) {
+        this.codecsEnabled = codecsEnabled;
+    }
+
+    public boolean isPartitioningEnabled() {
+        return partitioningEnabled;
+    }
+
+    public void setPartitioningEnabled(boolean partitioningEnabled) {
+        this.partitioningEnabled = partitioningEnabled;
+    }
+
+    public PartitionPeriod getPartitionPeriod() {
+        return partitionPeriod;
+    }
+
+    public void setPartitionPeriod(PartitionPeriod partitionPeriod) {
+        this.partitionPeriod = partitionPeriod;
+    }
+
+    public int getStreamBatchSize() {
+        return streamBatchSize;
+    }
+
+    public void setStreamBatchSize(int streamBatchSize) {
+        this.streamBatchSize = streamBatchSize;
+    }
+
+    public int getStreamPrefetchDepth() {
+        return streamPrefetchDepth;
+    }
+
+    public void setStreamPrefetchDepth(int streamPrefetchDepth) {
+        this.streamPrefetchDepth = streamPrefetchDepth;
+    }
+
+    public List<String> getShardUris() {
+        return shardUris;
+    }
+
+    public void setShardUris(List<String> shardUris) {
+        this.shardUris = shardUris;
+    }
+
+    public boolean isTailCacheEnabled() {
+        return tailCacheEnabled;
+    }
+
+    public void setTailCacheEnabled(boolean tailCacheEnabled) {
+        this.tailCacheEnabled = tailCacheEnabled;
+    }
+
+    public int getTailCacheSize() {
+        return tailCacheSize;
+    }
+
+    public void setTailCacheSize(int tailCacheSize) {
+        this.tailCacheSize = tailCacheSize;
+    }
+
+    public boolean isLookupCacheEnabled() {
+        return lookupCacheEnabled;
+    }
+
+    public void setLookupCacheEnabled(boolean lookupCacheEnabled) {
+        this.lookupCacheEnabled = lookupCacheEnabled;
+    }
+
+    public int getLookupCacheSize() {
+        return lookupCacheSize;
+    }
+
+    public void setLookupCacheSize(int lookupCacheSize) {
+        this.lookupCacheSize = lookupCacheSize;
+    }
+
+    public long getLookupCacheWeight() {
+        return lookupCacheWeight;
+    }
+
+    public void setLookupCacheWeight(long lookupCacheWeight) {
+        this.lookupCacheWeight = lookupCacheWeight;
+    }
+
+    public long getLookupCacheNegativeTtl() {
+        return lookupCacheNegativeTtl;
+    }
+
+    public void setLookupCacheNegativeTtl(long lookupCacheNegativeTtl) {
+        this.lookupCacheNegativeTtl = lookupCacheNegativeTtl;
+    }
+
+    public StorageEngine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(StorageEngine engine) {
+        this.engine = engine;
+    }
+
+    public String getFileDirectory() {
+        return fileDirectory;
+    }
+
+    public void setFileDirectory(String fileDirectory) {
+        this.fileDirectory = fileDirectory;
+    }
+
+    public int getFileSegmentSize() {
+        return fileSegmentSize;
+    }
+
+    public void setFileSegmentSize(int fileSegmentSize) {
+        this.fileSegmentSize = fileSegmentSize;
+    }
+
+    public int getFileIndexInterval() {
+        return fileIndexInterval;
+    }
+
+    public void setFileIndexInterval(int fileIndexInterval) {
+        this.fileIndexInterval = fileIndexInterval;
+    }
+
     public boolean isAllowCreateIndex() {
         return allowCreateIndex;
     }
@@ -1,26 +1,66 @@
 package org.ametiste.scm.log.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.ametiste.scm.log.data.info.CursorPage;
 import org.ametiste.scm.log.data.info.EventInfoResponse;
+import org.ametiste.scm.log.persistent.EventFilter;
+import org.ametiste.scm.log.persistent.EventGrouping;
+import org.ametiste.scm.log.persistent.EventHistogram;
 import org.ametiste.scm.log.service.EventInformer;
+import org.ametiste.scm.log.service.InvalidCursorException;
+import org.ametiste.scm.log.service.InvalidRequestException;
+import org.ametiste.scm.messaging.data.event.Event;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Controller provide mapping for info requests:
  * <ul>
  *     <li>get event by id;</li>
+ *     <li>get events by list of ids;</li>
  *     <li>get last N events;</li>
  *     <li>get event for specified time period;</li>
+ *     <li>get event for specified time period with cursor;</li>
+ *     <li>export events for specified time period as newline-delimited JSON;</li>
+ *     <li>get number of events per time bucket for specified time period;</li>
  *     <li>get total count of stored events.</li>
  * </ul>
  * <p>
  * Controller provides default value almost for all requests parameters. It makes easier handle default requests.
+ * <p>
+ * Listings of last events and events for time period accept {@literal view=summary} parameter. With it response
+ * contains {@code EventSummary} elements (id, type, timestamp and instance) read with projection instead of full
+ * events. Listing of events for time period accepts filter parameters {@literal type}, {@literal instanceId} and
+ * {@literal nodeId}, that are pushed down to storage query.
+ * <p>
+ * Export writes events of time period directly from storage cursor to response, one {@code EventInfoResponse} JSON
+ * object per line. Response has no content length, so it is sent with chunked transfer encoding, and it is compressed
+ * with GZIP if client accepts it. Memory usage of export doesn't depend on length of period. Error while streaming
+ * aborts response, so client should check that last line is complete.
+ * <p>
+ * Events requested by list of ids are looked up with batch queries to storage and returned in order of ids. List
+ * size is limited with {@code MAX_LOOKUP_IDS}, longer list is rejected with {@literal 400 Bad Request}.
+ * <p>
+ * Histogram is calculated by storage and returned in columnar form (see {@code EventHistogram}). Request of period
+ * with too many buckets is rejected with {@literal 400 Bad Request}.
  */
 @RestController
 @RequestMapping("/informer")
@@ -28,10 +68,20 @@ public class EventInfoController {
 
     public static final String DEFAULT_PAGE_SIZE = "50";
     public static final String DEFAULT_SORT_DIRECTION = "DESC";
+    public static final String DEFAULT_VIEW = "full";
+    public static final String SUMMARY_VIEW = "summary";
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+    public static final int MAX_LOOKUP_IDS = 10000;
+
+    private static final int GZIP_BUFFER_SIZE = 8192;
 
     @Autowired
     private EventInformer informer;
 
+    private final ObjectMapper exportMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final ObjectWriter exportWriter = exportMapper.writerWithType(EventInfoResponse.class)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
     /**
      * Search event in storage by id.
      * @param id event id.
@@ -43,16 +93,39 @@ public class EventInfoController {
         return new EventInfoResponse(informer.find(id));
     }
 
+    /**
+     * Return events with specified ids.
+     * @param ids list of event ids.
+     * @return list of {@link EventInfoResponse} in order of ids. If event with id not find list contains
+     *         {@code EventInfoResponse} with {@literal null} values at position of id.
+     */
+    @RequestMapping(value = "/event/lookup", method = RequestMethod.POST)
+    public List<EventInfoResponse> getEventInfos(@RequestBody List<UUID> ids) {
+        if (ids.size() > MAX_LOOKUP_IDS) {
+            throw new InvalidRequestException(String.format("number of ids must not be greater than %d!",
+                    MAX_LOOKUP_IDS));
+        }
+        if (ids.contains(null)) {
+            throw new InvalidRequestException("ids must not contain null!");
+        }
+        return informer.find(ids).stream().map(EventInfoResponse::new).collect(Collectors.toList());
+    }
+
     /**
      * Return last N events from storage.
      * @param count number of events to fetch (required).
      * @param direction sort direction. If absent used {@code DEFAULT_SORT_DIRECTION} value.
+     * @param view {@code SUMMARY_VIEW} to return event summaries. If absent full events are returned.
      */
     @RequestMapping(value = "/event/last", method = RequestMethod.GET)
-    public Collection<EventInfoResponse> getLastEvents(
+    public Collection<?> getLastEvents(
             @RequestParam(value = "count") Integer count,
-            @RequestParam(value = "sort", defaultValue = DEFAULT_SORT_DIRECTION) String direction) {
+            @RequestParam(value = "sort", defaultValue = DEFAULT_SORT_DIRECTION) String direction,
+            @RequestParam(value = "view", defaultValue = DEFAULT_VIEW) String view) {
 
+        if (SUMMARY_VIEW.equalsIgnoreCase(view)) {
+            return informer.getLastEventSummaries(count, Sort.Direction.fromString(direction));
+        }
         return informer.getLastEvents(count, Sort.Direction.fromString(direction)).stream()
                 .map(EventInfoResponse::new)
                 .collect(Collectors.toList());
@@ -65,22 +138,136 @@ public class EventInfoController {
      * @param page zero-based page number. If absent set to zero.
      * @param size page size. If absent set to {@code DEFAULT_PAGE_SIZE}.
      * @param direction elements sort direction. If absent
+     * @param view {@code SUMMARY_VIEW} to return event summaries. If absent full events are returned.
+     * @param type lifecycle event type filter. If absent events of all types are returned.
+     * @param instanceId instance id filter. If absent events of all instances are returned.
+     * @param nodeId node id filter. If absent events of all nodes are returned.
      * @return {@code Page} with target content.
      *
      * @see Page
      */
     @RequestMapping(value = "/event", method = RequestMethod.GET)
-    public Page<EventInfoResponse> getEventsForTimePeriod(
+    public Page<?> getEventsForTimePeriod(
             @RequestParam(value = "start", defaultValue = "-1") int startTime,
             @RequestParam(value = "end", defaultValue = "-1") int endTime,
             @RequestParam(value = "page", defaultValue = "0") int page,
             @RequestParam(value = "size", defaultValue = DEFAULT_PAGE_SIZE) int size,
+            @RequestParam(value = "sort", defaultValue = DEFAULT_SORT_DIRECTION) String direction,
+            @RequestParam(value = "view", defaultValue = DEFAULT_VIEW) String view,
+            @RequestParam(value = "type", required = false) String type,
+            @RequestParam(value = "instanceId", required = false) String instanceId,
+            @RequestParam(value = "nodeId", required = false) String nodeId) {
+
+        EventFilter filter = new EventFilter(type, instanceId, nodeId);
+        if (SUMMARY_VIEW.equalsIgnoreCase(view)) {
+            return informer.getEventSummariesForTime(startTime, endTime, filter, page, size,
+                    Sort.Direction.fromString(direction));
+        }
+        return informer.getEventsForTime(startTime, endTime, filter, page, size, Sort.Direction.fromString(direction))
+                .map(EventInfoResponse::new);
+    }
+
+    /**
+     * Search events for specified time interval with keyset pagination.
+     * @param startTime start time point in seconds. If absent set to {@literal -1}.
+     * @param endTime end time point in seconds. If absent set to {@literal -1}.
+     * @param cursor cursor token from previous page. If absent first page is returned.
+     * @param size page size. If absent set to {@code DEFAULT_PAGE_SIZE}.
+     * @param direction elements sort direction. If absent used {@code DEFAULT_SORT_DIRECTION} value.
+     * @return {@code CursorPage} with target content and cursor of next page.
+     */
+    @RequestMapping(value = "/event/seek", method = RequestMethod.GET)
+    public CursorPage<EventInfoResponse> seekEventsForTimePeriod(
+            @RequestParam(value = "start", defaultValue = "-1") int startTime,
+            @RequestParam(value = "end", defaultValue = "-1") int endTime,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = DEFAULT_PAGE_SIZE) int size,
             @RequestParam(value = "sort", defaultValue = DEFAULT_SORT_DIRECTION) String direction) {
 
-        return informer.getEventsForTime(startTime, endTime, page, size, Sort.Direction.fromString(direction))
+        return informer.getEventsForTime(startTime, endTime, cursor, size, Sort.Direction.fromString(direction))
                 .map(EventInfoResponse::new);
     }
 
+    /**
+     * Export events for specified time interval in ascending order of timestamp as newline-delimited JSON.
+     * @param startTime start time point in seconds. If absent set to {@literal -1}.
+     * @param endTime end time point in seconds. If absent set to {@literal -1}.
+     * @param type lifecycle event type filter. If absent events of all types are exported.
+     * @param instanceId instance id filter. If absent events of all instances are exported.
+     * @param nodeId node id filter. If absent events of all nodes are exported.
+     * @param acceptEncoding encodings accepted by client. Response is compressed if it contains {@literal gzip}.
+     */
+    @RequestMapping(value = "/event/export", method = RequestMethod.GET)
+    public void exportEventsForTimePeriod(
+            @RequestParam(value = "start", defaultValue = "-1") int startTime,
+            @RequestParam(value = "end", defaultValue = "-1") int endTime,
+            @RequestParam(value = "type", required = false) String type,
+            @RequestParam(value = "instanceId", required = false) String instanceId,
+            @RequestParam(value = "nodeId", required = false) String nodeId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response) throws IOException {
+
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        response.setContentType(NDJSON_CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        EventFilter filter = new EventFilter(type, instanceId, nodeId);
+        try (CloseableIterator<Event> events = informer.streamEventsForTime(startTime, endTime, filter);
+             OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), GZIP_BUFFER_SIZE)
+                     : response.getOutputStream();
+             JsonGenerator generator = exportMapper.getFactory().createGenerator(out)) {
+
+            generator.setRootValueSeparator(null);
+            while (events.hasNext()) {
+                exportWriter.writeValue(generator, new EventInfoResponse(events.next()));
+                generator.writeRaw('\n');
+            }
+        }
+    }
+
+    /**
+     * Return number of events per time bucket grouped by lifecycle event type, instance or node.
+     * @param startTime start time point in seconds. If absent set to {@literal -1}.
+     * @param endTime end time point in seconds. If absent set to {@literal -1}.
+     * @param bucketSize size of time bucket in seconds. If absent set to {@literal 3600}.
+     * @param grouping field that groups events. If absent events are grouped by lifecycle event type.
+     * @param type lifecycle event type filter. If absent events of all types are counted.
+     * @param instanceId instance id filter. If absent events of all instances are counted.
+     * @param nodeId node id filter. If absent events of all nodes are counted.
+     */
+    @RequestMapping(value = "/event/histogram", method = RequestMethod.GET)
+    public EventHistogram getHistogramForTimePeriod(
+            @RequestParam(value = "start", defaultValue = "-1") int startTime,
+            @RequestParam(value = "end", defaultValue = "-1") int endTime,
+            @RequestParam(value = "bucket", defaultValue = "3600") int bucketSize,
+            @RequestParam(value = "groupBy", defaultValue = "TYPE") EventGrouping grouping,
+            @RequestParam(value = "type", required = false) String type,
+            @RequestParam(value = "instanceId", required = false) String instanceId,
+            @RequestParam(value = "nodeId", required = false) String nodeId) {
+
+        if (bucketSize <= 0) {
+            throw new InvalidRequestException("bucket size must be greater than zero!");
+        }
+        return informer.getHistogramForTime(startTime, endTime, bucketSize, grouping,
+                new EventFilter(type, instanceId, nodeId));
+    }
+
+    @ExceptionHandler(InvalidCursorException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public String handleInvalidCursorException(InvalidCursorException e) {
+        return e.getMessage();
+    }
+
+    @ExceptionHandler(InvalidRequestException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public String handleInvalidRequestException(InvalidRequestException e) {
+        return e.getMessage();
+    }
+
     /**
      * Return total count of stored events.
      */
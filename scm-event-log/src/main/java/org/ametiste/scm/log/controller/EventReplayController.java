@@ -40,7 +40,8 @@ public class EventReplayController {
     public UUID submitReplayTask(@RequestBody ReplayTaskRequest request) {
         isTrue(request.getReceiverUrl() != null, "'Request must contains correct receiver URI.");
 
-        return replayer.replay(request.getReceiverUrl(), request.getStartTime(), request.getEndTime());
+        return replayer.replay(request.getReceiverUrl(), request.getStartTime(), request.getEndTime(),
+                request.getFilter());
     }
 
     @RequestMapping(value = "/replay/active", method = RequestMethod.GET)
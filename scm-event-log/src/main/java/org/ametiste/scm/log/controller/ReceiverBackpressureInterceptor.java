@@ -0,0 +1,69 @@
+package org.ametiste.scm.log.controller;
+
+import org.ametiste.scm.log.service.EventLogger;
+import org.ametiste.scm.log.util.NodeRateLimiter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Interceptor for event receiver endpoint that protects logger from overload.
+ * <p>
+ * While logger is saturated requests are rejected with configured status (503 by default). Optional
+ * {@code NodeRateLimiter} limits rate of requests from each sender node (identified by remote address); requests
+ * above limit are rejected with 429 status. Both responses contain {@code Retry-After} header, so senders can back off.
+ */
+public class ReceiverBackpressureInterceptor extends HandlerInterceptorAdapter {
+
+    private final EventLogger eventLogger;
+    private final NodeRateLimiter rateLimiter;
+    private final boolean rejectWhenSaturated;
+    private final int saturatedStatus;
+    private final int retryAfter;
+
+    /**
+     * Create interceptor.
+     * @param eventLogger logger that receives events.
+     * @param rateLimiter limiter of requests from sender nodes. Might be {@literal null}.
+     * @param rejectWhenSaturated reject requests while logger is saturated.
+     * @param saturatedStatus HTTP status of response while logger is saturated.
+     * @param retryAfter value of {@code Retry-After} header for saturated logger (in seconds). Must be positive number.
+     */
+    public ReceiverBackpressureInterceptor(EventLogger eventLogger, NodeRateLimiter rateLimiter,
+                                           boolean rejectWhenSaturated, int saturatedStatus, int retryAfter) {
+        isTrue(eventLogger != null, "'eventLogger' must be initialized!");
+        isTrue(retryAfter > 0, "'retryAfter' must be greater than zero!");
+
+        this.eventLogger = eventLogger;
+        this.rateLimiter = rateLimiter;
+        this.rejectWhenSaturated = rejectWhenSaturated;
+        this.saturatedStatus = HttpStatus.valueOf(saturatedStatus).value();
+        this.retryAfter = retryAfter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (rejectWhenSaturated && eventLogger.isSaturated()) {
+            return reject(response, saturatedStatus, retryAfter);
+        }
+
+        if (rateLimiter != null) {
+            long wait = rateLimiter.tryAcquire(request.getRemoteAddr());
+            if (wait > 0) {
+                return reject(response, HttpStatus.TOO_MANY_REQUESTS.value(), (int) ((wait + 999) / 1000));
+            }
+        }
+        return true;
+    }
+
+    private boolean reject(HttpServletResponse response, int status, int retryAfter) {
+        response.setStatus(status);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        return false;
+    }
+}
@@ -0,0 +1,51 @@
+package org.ametiste.scm.log.data.info;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Data model to represent page of keyset pagination.
+ * <p>
+ * Page contains content and cursor token to request next page. Token is {@literal null} if page is the last one.
+ * Unlike {@code org.springframework.data.domain.Page} it doesn't contain total number of elements and pages, because
+ * counting them costs as much as skipping all preceding elements.
+ *
+ * @param <T> type of content elements.
+ */
+public class CursorPage<T> {
+
+    private final List<T> content;
+    private final String next;
+
+    public CursorPage(List<T> content, String next) {
+        this.content = Collections.unmodifiableList(content);
+        this.next = next;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public int getNumberOfElements() {
+        return content.size();
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public boolean isLast() {
+        return next == null;
+    }
+
+    /**
+     * @param converter converter of content elements.
+     * @param <R> target type of content elements.
+     * @return new page with converted content and the same cursor token.
+     */
+    public <R> CursorPage<R> map(Function<? super T, ? extends R> converter) {
+        return new CursorPage<>(content.stream().map(converter).collect(Collectors.toList()), next);
+    }
+}
@@ -1,6 +1,7 @@
 package org.ametiste.scm.log.data.replay;
 
 import org.ametiste.scm.log.controller.EventReplayController;
+import org.ametiste.scm.log.persistent.EventFilter;
 
 import java.net.URI;
 
@@ -11,6 +12,8 @@ import java.net.URI;
  * {@literal receiverUrl} is required and must be valid URI string representation.
  * Time interval parameters ({@literal startTime} and {@literal endTime}) are optional and by default set to -1
  * that corresponds to replay all events. In usual mode they contains timestamp value in seconds from Epoch start.
+ * Filter parameters ({@literal type}, {@literal instanceId} and {@literal nodeId}) are optional and restrict replayed
+ * events.
  *
  * @see EventReplayController#submitReplayTask(ReplayTaskRequest)
  */
@@ -21,6 +24,9 @@ public class ReplayTaskRequest {
     private URI receiverUrl;
     private int startTime = -1;
     private int endTime = -1;
+    private String type;
+    private String instanceId;
+    private String nodeId;
 
     public URI getReceiverUrl() {
         return receiverUrl;
@@ -56,4 +62,35 @@ public class ReplayTaskRequest {
         isTrue(endTime > 0, "'startTime' must be greater that zero!");
         this.endTime = endTime;
     }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(String instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * @return filter of replayed events built from filter parameters.
+     */
+    public EventFilter getFilter() {
+        return new EventFilter(type, instanceId, nodeId);
+    }
 }
@@ -0,0 +1,648 @@
+package org.ametiste.scm.log.filestore;
+
+import org.ametiste.scm.log.journal.EventSerializer;
+import org.ametiste.scm.log.persistent.DuplicateEventsException;
+import org.ametiste.scm.log.persistent.EventDAO;
+import org.ametiste.scm.log.persistent.EventKey;
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.util.CloseableIterator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Implementation of {@code EventDAO} that stores events in append-only segment files on local disk.
+ * <p>
+ * Events are appended to active {@code LogSegment}, when segment reaches configured size new one is started. Each
+ * write operation is forced to disk before it returns. Two indices are kept in memory:
+ * <ul>
+ *     <li><b>id index</b> - {@code UuidIndex} hash table from event id to location (segment and offset) of its latest
+ *     record. It serves lookup by id and duplicate check of insert, and defines which records are live: record
+ *     superseded by save or removed by tombstone is skipped by all reads;</li>
+ *     <li><b>timestamp index</b> - sparse index of each segment with time range and number of live records of every
+ *     chunk of records. Range reads and counts touch only chunks that overlap requested range.</li>
+ * </ul>
+ * Both indices are restored on start from record headers without deserialization of events.
+ * <p>
+ * Range reads return records ordered by (timestamp, id) and read events lazily one by one. Records of range are
+ * streamed with k-way merge of timestamp index chunks: chunk is read and sorted only when merge reaches its time range,
+ * so memory holds records of chunks that overlap current position rather than whole range.
+ * <p>
+ * {@link #delete(long, long)} removes whole segments when possible and writes tombstones for other events. Space of
+ * superseded and removed records is not reclaimed until their segment is removed.
+ */
+public class FileEventDAO implements EventDAO {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 16;
+
+    private static final Comparator<Entry> ORDER = Comparator.<Entry>comparingLong(entry -> entry.timestamp)
+            .thenComparing(entry -> entry.id);
+
+    private final Path directory;
+    private final long segmentSize;
+    private final int indexInterval;
+    private final EventSerializer serializer;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<Long, LogSegment> segments = new TreeMap<>();
+    private final UuidIndex index = new UuidIndex(INITIAL_INDEX_CAPACITY);
+    private LogSegment active;
+
+    /**
+     * Create instance of {@code FileEventDAO}. Creates store directory if it doesn't exist and restores indices of
+     * existing segments.
+     * @param directory store directory.
+     * @param segmentSize size of segment file in bytes. Must be greater than record header size.
+     * @param indexInterval number of records in one entry of sparse timestamp index. Must be greater than zero.
+     * @param serializer serializer for events.
+     * @throws FileStoreException if store can't be opened.
+     */
+    public FileEventDAO(Path directory, long segmentSize, int indexInterval, EventSerializer serializer)
+            throws FileStoreException {
+        isTrue(directory != null, "'directory' must be initialized!");
+        isTrue(segmentSize > LogSegment.HEADER_SIZE && segmentSize <= OFFSET_MASK,
+                "'segmentSize' must be greater than " + LogSegment.HEADER_SIZE + "!");
+        isTrue(indexInterval > 0, "'indexInterval' must be greater than zero!");
+        isTrue(serializer != null, "'serializer' must be initialized!");
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.indexInterval = indexInterval;
+        this.serializer = serializer;
+
+        try {
+            Files.createDirectories(directory);
+            for (Long sequence : listSegments()) {
+                segments.put(sequence, restore(sequence));
+            }
+            active = segments.isEmpty() ? createSegment(0) : segments.lastEntry().getValue();
+        } catch (IOException e) {
+            throw new FileStoreException("Failed to open store in " + directory + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public <S extends Event> S insert(S entity) {
+        isTrue(entity != null, "Entity must not be null!");
+        insert(Collections.singletonList(entity));
+        return entity;
+    }
+
+    @Override
+    public <S extends Event> S save(S entity) {
+        isTrue(entity != null, "Entity must not be null!");
+        save(Collections.singletonList(entity));
+        return entity;
+    }
+
+    @Override
+    public Collection<Event> insert(Collection<Event> entities) {
+        isTrue(entities != null, "The given collection of entities must not be null!");
+
+        List<Event> duplicates = new ArrayList<>();
+        write(() -> {
+            for (Event event : entities) {
+                if (index.get(event.getId()) != UuidIndex.ABSENT) {
+                    duplicates.add(event);
+                } else {
+                    index.put(event.getId(), append(event));
+                }
+            }
+        });
+
+        if (!duplicates.isEmpty()) {
+            throw new DuplicateEventsException(duplicates.size() + " of " + entities.size() + " events already exist",
+                    duplicates);
+        }
+        return entities;
+    }
+
+    @Override
+    public Collection<Event> save(Collection<Event> entities) {
+        isTrue(entities != null, "The given collection of entities must not be null!");
+
+        write(() -> {
+            for (Event event : entities) {
+                release(index.put(event.getId(), append(event)));
+            }
+        });
+        return entities;
+    }
+
+    @Override
+    public Event findOne(UUID id) {
+        isTrue(id != null, "The given uuid must not be null!");
+
+        byte[] content = read(() -> {
+            long location = index.get(id);
+            return location != UuidIndex.ABSENT ? segments.get(sequence(location)).read(offset(location)) : null;
+        });
+        return content != null ? serializer.deserialize(content) : null;
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll() {
+        return findAll(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll(long from, long to) {
+        return new EntryIterator(entries(from, to, Sort.Direction.ASC));
+    }
+
+    @Override
+    public Page<Event> findAll(Pageable pageable) {
+        return page(Long.MIN_VALUE, Long.MAX_VALUE, pageable);
+    }
+
+    @Override
+    public Page<Event> findAll(long from, long to, Pageable pageable) {
+        return page(from, to, pageable);
+    }
+
+    @Override
+    public List<Event> findAll(long from, long to, EventKey after, int limit, Sort.Direction direction) {
+        isTrue(limit > 0, "'limit' must be greater than zero!");
+        isTrue(direction != null, "'direction' must be initialized!");
+
+        Entry key = after != null ? new Entry(after.getTimestamp(), after.getId(), UuidIndex.ABSENT) : null;
+        int sign = direction == Sort.Direction.ASC ? 1 : -1;
+
+        // chunks that lie entirely before key are not read
+        long start = key != null && direction == Sort.Direction.ASC ? Math.max(from, key.timestamp) : from;
+        long end = key != null && direction == Sort.Direction.DESC ? Math.min(to, key.timestamp) : to;
+        Iterator<Entry> entries = entries(start, end, direction);
+
+        List<Event> result = new ArrayList<>();
+        while (result.size() < limit && entries.hasNext()) {
+            Entry entry = entries.next();
+            if (key != null && sign * ORDER.compare(entry, key) <= 0) {
+                continue;
+            }
+            byte[] content = readLive(entry);
+            if (content != null) {
+                result.add(serializer.deserialize(content));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Segments that contain only events of interval and no tombstones are removed entirely, other events of interval
+     * are removed with tombstones. Older records of events of removed segment (superseded by save) are removed with
+     * tombstones before segment file is deleted, otherwise they would become live again when indices are restored.
+     */
+    @Override
+    public void delete(long from, long to) {
+        write(() -> {
+            for (LogSegment segment : new ArrayList<>(segments.values())) {
+                if (segment.getMaxTimestamp() < from || segment.getMinTimestamp() > to) {
+                    continue;
+                }
+
+                if (segment != active && !segment.hasTombstones()
+                        && from <= segment.getMinTimestamp() && segment.getMaxTimestamp() <= to) {
+                    Set<UUID> removed = new HashSet<>();
+                    segment.scan(Long.MIN_VALUE, Long.MAX_VALUE, (offset, timestamp, id, tombstone) -> {
+                        if (index.get(id) == location(segment.getSequence(), offset)) {
+                            index.remove(id);
+                            removed.add(id);
+                        }
+                    });
+                    removeSuperseded(segment.getSequence(), removed);
+                    segments.remove(segment.getSequence());
+                    segment.delete();
+                } else {
+                    for (Entry entry : live(segment, from, to)) {
+                        appendTombstone(entry.timestamp, entry.id);
+                        release(index.remove(entry.id));
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public long count() {
+        return read(index::size);
+    }
+
+    @Override
+    public long count(long from, long to) {
+        return read(() -> {
+            long count = 0;
+            for (LogSegment segment : segments.values()) {
+                count += segment.count(from, to,
+                        (offset, id) -> index.get(id) == location(segment.getSequence(), offset));
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Force and close segment files.
+     */
+    public void close() {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            for (LogSegment segment : segments.values()) {
+                segment.force();
+                segment.close();
+            }
+        } catch (IOException e) {
+            throw new FileStoreException("Failed to close store in " + directory + ": " + e.getMessage(), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private Page<Event> page(long from, long to, Pageable pageable) {
+        long total = count(from, to);
+        if (pageable == null) {
+            return new PageImpl<>(Collections.emptyList(), null, total);
+        }
+
+        Sort.Order order = pageable.getSort() != null ? pageable.getSort().getOrderFor("timestamp") : null;
+        Sort.Direction direction = order != null ? order.getDirection() : Sort.Direction.ASC;
+        Iterator<Entry> entries = entries(from, to, direction);
+        for (long skip = pageable.getOffset(); skip > 0 && entries.hasNext(); skip--) {
+            entries.next();
+        }
+
+        List<Event> content = new ArrayList<>();
+        EntryIterator events = new EntryIterator(entries);
+        while (content.size() < pageable.getPageSize() && events.hasNext()) {
+            content.add(events.next());
+        }
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    /**
+     * @return live records of interval ordered in specified direction. Chunks of timestamp index that overlap
+     * interval are merged lazily (see {@link EntryMerger}), so only records of current position are kept in memory.
+     */
+    private Iterator<Entry> entries(long from, long to, Sort.Direction direction) {
+        List<ChunkSource> chunks = read(() -> {
+            List<ChunkSource> result = new ArrayList<>();
+            for (LogSegment segment : segments.values()) {
+                for (int i = 0; i < segment.getChunkCount(); i++) {
+                    if (segment.hasLive(i) && segment.getMinTimestamp(i) <= to && segment.getMaxTimestamp(i) >= from) {
+                        result.add(new ChunkSource(segment, i));
+                    }
+                }
+            }
+            return result;
+        });
+        return new EntryMerger(chunks, from, to, direction);
+    }
+
+    /**
+     * @return live records of chunk in interval or empty list if segment was removed.
+     */
+    private List<Entry> live(ChunkSource chunk, long from, long to) {
+        return read(() -> {
+            List<Entry> entries = new ArrayList<>();
+            LogSegment segment = chunk.segment;
+            if (segments.get(segment.getSequence()) != segment) {
+                return entries;
+            }
+
+            segment.scan(chunk.chunk, chunk.end, from, to, (offset, timestamp, id, tombstone) -> {
+                long location = location(segment.getSequence(), offset);
+                if (index.get(id) == location) {
+                    entries.add(new Entry(timestamp, id, location));
+                }
+            });
+            return entries;
+        });
+    }
+
+    private List<Entry> live(LogSegment segment, long from, long to) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        segment.scan(from, to, (offset, timestamp, id, tombstone) -> {
+            long location = location(segment.getSequence(), offset);
+            if (index.get(id) == location) {
+                entries.add(new Entry(timestamp, id, location));
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * @return content of record if it is still live or {@literal null}.
+     */
+    private byte[] readLive(Entry entry) {
+        return read(() -> {
+            LogSegment segment = segments.get(sequence(entry.location));
+            return index.get(entry.id) == entry.location ? segment.read(offset(entry.location)) : null;
+        });
+    }
+
+    private long append(Event event) throws IOException {
+        byte[] content = serializer.serialize(event);
+        roll(LogSegment.HEADER_SIZE + content.length);
+        return location(active.getSequence(), active.append(event.getTimestamp(), event.getId(), content));
+    }
+
+    private void appendTombstone(long timestamp, UUID id) throws IOException {
+        roll(LogSegment.HEADER_SIZE);
+        active.appendTombstone(timestamp, id);
+    }
+
+    private void roll(int recordSize) throws IOException {
+        if (active.getSize() > 0 && active.getSize() + recordSize > segmentSize) {
+            active.force();
+            active = createSegment(active.getSequence() + 1);
+            segments.put(active.getSequence(), active);
+        }
+    }
+
+    private void release(long location) {
+        if (location != UuidIndex.ABSENT) {
+            segments.get(sequence(location)).release(offset(location));
+        }
+    }
+
+    /**
+     * Write tombstones for records of removed events in segments before specified one. Only chunks that contain
+     * superseded records are read.
+     */
+    private void removeSuperseded(long sequence, Set<UUID> removed) throws IOException {
+        if (removed.isEmpty()) {
+            return;
+        }
+
+        for (LogSegment segment : new ArrayList<>(segments.headMap(sequence).values())) {
+            List<Entry> superseded = new ArrayList<>();
+            segment.scanReleased((offset, timestamp, id, tombstone) -> {
+                if (removed.remove(id)) {
+                    superseded.add(new Entry(timestamp, id, location(segment.getSequence(), offset)));
+                }
+            });
+            for (Entry entry : superseded) {
+                appendTombstone(entry.timestamp, entry.id);
+            }
+        }
+    }
+
+    private LogSegment restore(long sequence) throws IOException {
+        List<Long> released = new ArrayList<>();
+        LogSegment segment = LogSegment.open(sequence, segmentPath(sequence), indexInterval,
+                (offset, timestamp, id, tombstone) -> {
+                    long previous = tombstone ? index.remove(id) : index.put(id, location(sequence, offset));
+                    if (previous != UuidIndex.ABSENT && sequence(previous) == sequence) {
+                        released.add(offset(previous));
+                    } else {
+                        release(previous);
+                    }
+                });
+        released.forEach(segment::release);
+        return segment;
+    }
+
+    private LogSegment createSegment(long sequence) throws IOException {
+        LogSegment segment = LogSegment.create(sequence, segmentPath(sequence), indexInterval);
+        segments.put(sequence, segment);
+        return segment;
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private <T> T read(IOSupplier<T> operation) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return operation.get();
+        } catch (IOException e) {
+            throw new FileStoreException("Failed to read store in " + directory + ": " + e.getMessage(), e);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private void write(IORunnable operation) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            operation.run();
+            active.force();
+        } catch (IOException e) {
+            throw new FileStoreException("Failed to write store in " + directory + ": " + e.getMessage(), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static long location(long sequence, long offset) {
+        return sequence << OFFSET_BITS | offset;
+    }
+
+    private static long sequence(long location) {
+        return location >>> OFFSET_BITS;
+    }
+
+    private static long offset(long location) {
+        return location & OFFSET_MASK;
+    }
+
+    private interface IOSupplier<T> {
+
+        T get() throws IOException;
+    }
+
+    private interface IORunnable {
+
+        void run() throws IOException;
+    }
+
+    /**
+     * Live record found in index.
+     */
+    private static class Entry {
+
+        private final long timestamp;
+        private final UUID id;
+        private final long location;
+
+        private Entry(long timestamp, UUID id, long location) {
+            this.timestamp = timestamp;
+            this.id = id;
+            this.location = location;
+        }
+    }
+
+    /**
+     * Chunk of segment timestamp index with bounds taken when range read started. Records appended to chunk later are
+     * not read.
+     */
+    private static class ChunkSource {
+
+        private final LogSegment segment;
+        private final int chunk;
+        private final long end;
+        private final long minTimestamp;
+        private final long maxTimestamp;
+
+        private ChunkSource(LogSegment segment, int chunk) {
+            this.segment = segment;
+            this.chunk = chunk;
+            this.end = segment.getChunkEnd(chunk);
+            this.minTimestamp = segment.getMinTimestamp(chunk);
+            this.maxTimestamp = segment.getMaxTimestamp(chunk);
+        }
+    }
+
+    /**
+     * K-way merge of chunks of timestamp index. Records of chunk are not ordered, so chunk is read and sorted when
+     * merge reaches start of its time range (min timestamp for ascending order, max timestamp for descending), and
+     * sorted chunks are merged by their heads. Memory holds only chunks which time ranges overlap current position.
+     */
+    private class EntryMerger implements Iterator<Entry> {
+
+        private final long from;
+        private final long to;
+        private final Sort.Direction direction;
+        private final Comparator<Entry> order;
+        private final PriorityQueue<ChunkSource> pending;
+        private final PriorityQueue<Head> heads;
+
+        private EntryMerger(List<ChunkSource> chunks, long from, long to, Sort.Direction direction) {
+            this.from = from;
+            this.to = to;
+            this.direction = direction;
+            this.order = direction == Sort.Direction.ASC ? ORDER : ORDER.reversed();
+            this.pending = new PriorityQueue<>(Math.max(chunks.size(), 1), direction == Sort.Direction.ASC
+                    ? Comparator.<ChunkSource>comparingLong(chunk -> chunk.minTimestamp)
+                    : Comparator.<ChunkSource>comparingLong(chunk -> chunk.maxTimestamp).reversed());
+            this.pending.addAll(chunks);
+            this.heads = new PriorityQueue<>((first, second) -> order.compare(first.entry, second.entry));
+        }
+
+        @Override
+        public boolean hasNext() {
+            load();
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Head head = heads.poll();
+            Entry entry = head.entry;
+            if (head.advance()) {
+                heads.add(head);
+            }
+            return entry;
+        }
+
+        /**
+         * Read chunks that might contain records not after current head.
+         */
+        private void load() {
+            while (!pending.isEmpty() && (heads.isEmpty() || !precedes(heads.peek().entry, pending.peek()))) {
+                List<Entry> entries = live(pending.poll(), from, to);
+                if (!entries.isEmpty()) {
+                    entries.sort(order);
+                    Head head = new Head(entries.iterator());
+                    head.advance();
+                    heads.add(head);
+                }
+            }
+        }
+
+        private boolean precedes(Entry entry, ChunkSource chunk) {
+            return direction == Sort.Direction.ASC
+                    ? entry.timestamp < chunk.minTimestamp : entry.timestamp > chunk.maxTimestamp;
+        }
+    }
+
+    /**
+     * Current record of sorted chunk.
+     */
+    private static class Head {
+
+        private final Iterator<Entry> entries;
+        private Entry entry;
+
+        private Head(Iterator<Entry> entries) {
+            this.entries = entries;
+        }
+
+        private boolean advance() {
+            entry = entries.hasNext() ? entries.next() : null;
+            return entry != null;
+        }
+    }
+
+    /**
+     * Iterator that reads events of records one by one. Records that were superseded or removed after they were
+     * found are skipped.
+     */
+    private class EntryIterator implements CloseableIterator<Event> {
+
+        private final Iterator<Entry> entries;
+        private Event next;
+
+        private EntryIterator(Iterator<Entry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && entries.hasNext()) {
+                byte[] content = readLive(entries.next());
+                if (content != null) {
+                    next = serializer.deserialize(content);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Event next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Event event = next;
+            next = null;
+            return event;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
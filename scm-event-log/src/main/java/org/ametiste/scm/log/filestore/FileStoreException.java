@@ -0,0 +1,15 @@
+package org.ametiste.scm.log.filestore;
+
+/**
+ * {@code FileStoreException} signals about error that occurred during read or write of file event store.
+ */
+public class FileStoreException extends RuntimeException {
+
+    public FileStoreException(String message) {
+        super(message);
+    }
+
+    public FileStoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
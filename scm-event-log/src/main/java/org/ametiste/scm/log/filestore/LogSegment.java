@@ -0,0 +1,377 @@
+package org.ametiste.scm.log.filestore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only segment file of event store.
+ * <p>
+ * Each record has next layout:
+ * <pre>
+ *     | length (int) | CRC32 (int) | timestamp (long) | id most bits (long) | id least bits (long) | content |
+ * </pre>
+ * Checksum covers all fields after it. Tombstone record marks removal of event, it has length {@literal -1} and no
+ * content. Timestamp and id are kept in header, so index is restored on start without deserialization of events.
+ * <p>
+ * Segment keeps sparse timestamp index in memory: records are grouped into chunks of fixed number of records, and
+ * for each chunk start offset, min and max timestamp and number of live records are known. Range scan reads only
+ * chunks which timestamps overlap requested range.
+ * <p>
+ * Segment is not thread safe, access is guarded by {@code FileEventDAO}.
+ */
+class LogSegment {
+
+    static final int HEADER_SIZE = 32;
+
+    private static final int TOMBSTONE = -1;
+
+    private final long sequence;
+    private final Path file;
+    private final FileChannel channel;
+    private final int chunkSize;
+
+    private final List<Chunk> chunks = new ArrayList<>();
+    private long size;
+    private int tombstones;
+
+    private LogSegment(long sequence, Path file, FileChannel channel, int chunkSize) {
+        this.sequence = sequence;
+        this.file = file;
+        this.channel = channel;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Create new empty segment file.
+     */
+    static LogSegment create(long sequence, Path file, int chunkSize) throws IOException {
+        return new LogSegment(sequence, file, FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE), chunkSize);
+    }
+
+    /**
+     * Open existing segment file and restore its sparse index. Records are passed to visitor in order of append.
+     * Segment is truncated after last complete record, so torn write on crash is discarded.
+     */
+    static LogSegment open(long sequence, Path file, int chunkSize, RecordVisitor visitor) throws IOException {
+        LogSegment segment = new LogSegment(sequence, file, FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE), chunkSize);
+
+        long fileSize = segment.channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (segment.size + HEADER_SIZE <= fileSize) {
+            header.clear();
+            readFully(segment.channel, header, segment.size);
+            header.flip();
+
+            int length = header.getInt();
+            int checksum = header.getInt();
+            int contentLength = Math.max(length, 0);
+            if (length < TOMBSTONE || segment.size + HEADER_SIZE + contentLength > fileSize) {
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE - 8 + contentLength);
+            readFully(segment.channel, record, segment.size + 8);
+            if (checksum(record.array()) != checksum) {
+                break;
+            }
+
+            record.flip();
+            long timestamp = record.getLong();
+            UUID id = new UUID(record.getLong(), record.getLong());
+            long offset = segment.size;
+            segment.register(offset, timestamp, length == TOMBSTONE, HEADER_SIZE + contentLength);
+            visitor.visit(offset, timestamp, id, length == TOMBSTONE);
+        }
+
+        if (segment.size < fileSize) {
+            segment.channel.truncate(segment.size);
+        }
+        return segment;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * @return {@literal true} if segment contains tombstones of events.
+     */
+    boolean hasTombstones() {
+        return tombstones > 0;
+    }
+
+    /**
+     * @return min timestamp of records or {@link Long#MAX_VALUE} if segment has no records.
+     */
+    long getMinTimestamp() {
+        return chunks.stream().mapToLong(chunk -> chunk.minTimestamp).min().orElse(Long.MAX_VALUE);
+    }
+
+    /**
+     * @return max timestamp of records or {@link Long#MIN_VALUE} if segment has no records.
+     */
+    long getMaxTimestamp() {
+        return chunks.stream().mapToLong(chunk -> chunk.maxTimestamp).max().orElse(Long.MIN_VALUE);
+    }
+
+    /**
+     * Append event record.
+     * @return offset of record.
+     */
+    long append(long timestamp, UUID id, byte[] content) throws IOException {
+        return write(timestamp, id, content.length, content);
+    }
+
+    /**
+     * Append tombstone of event.
+     * @return offset of record.
+     */
+    long appendTombstone(long timestamp, UUID id) throws IOException {
+        return write(timestamp, id, TOMBSTONE, new byte[0]);
+    }
+
+    /**
+     * @return content of event record at specified offset.
+     */
+    byte[] read(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(channel, length, offset);
+        ByteBuffer content = ByteBuffer.allocate(length.getInt(0));
+        readFully(channel, content, offset + HEADER_SIZE);
+        return content.array();
+    }
+
+    /**
+     * Pass event records with timestamp in specified interval to visitor. Only chunks that overlap interval are read,
+     * tombstones are skipped.
+     */
+    void scan(long from, long to, RecordVisitor visitor) throws IOException {
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            if (chunk.live == 0 || chunk.maxTimestamp < from || chunk.minTimestamp > to) {
+                continue;
+            }
+
+            scanChunk(chunk, getChunkEnd(i), from, to, visitor);
+        }
+    }
+
+    /**
+     * Pass event records of chunk with timestamp in specified interval to visitor. Records after specified end offset
+     * (appended after chunk bounds were taken) are not read, tombstones are skipped.
+     */
+    void scan(int chunk, long end, long from, long to, RecordVisitor visitor) throws IOException {
+        scanChunk(chunks.get(chunk), end, from, to, visitor);
+    }
+
+    /**
+     * Pass event records of chunks that contain not live (superseded or removed) records to visitor. Live records of
+     * such chunks are passed too, tombstones are skipped.
+     */
+    void scanReleased(RecordVisitor visitor) throws IOException {
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            if (chunk.live < chunk.events) {
+                scanChunk(chunk, getChunkEnd(i), Long.MIN_VALUE, Long.MAX_VALUE, visitor);
+            }
+        }
+    }
+
+    int getChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * @return {@literal true} if chunk contains live records.
+     */
+    boolean hasLive(int chunk) {
+        return chunks.get(chunk).live > 0;
+    }
+
+    long getMinTimestamp(int chunk) {
+        return chunks.get(chunk).minTimestamp;
+    }
+
+    long getMaxTimestamp(int chunk) {
+        return chunks.get(chunk).maxTimestamp;
+    }
+
+    /**
+     * @return offset after last record of chunk.
+     */
+    long getChunkEnd(int chunk) {
+        return chunk + 1 < chunks.size() ? chunks.get(chunk + 1).offset : size;
+    }
+
+    /**
+     * Count live records in specified interval. Live counters of chunks that lie entirely inside interval are used,
+     * chunks on edges are scanned with live check.
+     */
+    long count(long from, long to, RecordFilter live) throws IOException {
+        long count = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            if (chunk.live == 0 || chunk.maxTimestamp < from || chunk.minTimestamp > to) {
+                continue;
+            }
+            if (from <= chunk.minTimestamp && chunk.maxTimestamp <= to) {
+                count += chunk.live;
+                continue;
+            }
+
+            long[] chunkCount = new long[1];
+            scanChunk(chunk, getChunkEnd(i), from, to, (offset, timestamp, id, tombstone) -> {
+                if (live.test(offset, id)) {
+                    chunkCount[0]++;
+                }
+            });
+            count += chunkCount[0];
+        }
+        return count;
+    }
+
+    /**
+     * Mark record at specified offset as not live (superseded or removed).
+     */
+    void release(long offset) {
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (chunks.get(middle).offset <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        chunks.get(low).live--;
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    private long write(long timestamp, UUID id, int length, byte[] content) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + content.length);
+        record.putInt(length).putInt(0).putLong(timestamp)
+                .putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).put(content);
+        record.putInt(4, checksum(record.array(), 8));
+        record.flip();
+
+        long offset = size;
+        while (record.hasRemaining()) {
+            channel.write(record, offset + record.position());
+        }
+        register(offset, timestamp, length == TOMBSTONE, HEADER_SIZE + content.length);
+        return offset;
+    }
+
+    private void register(long offset, long timestamp, boolean tombstone, int recordSize) {
+        Chunk chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.records == chunkSize) {
+            chunk = new Chunk(offset);
+            chunks.add(chunk);
+        }
+        chunk.records++;
+        if (tombstone) {
+            tombstones++;
+        } else {
+            chunk.events++;
+            chunk.live++;
+            chunk.minTimestamp = Math.min(chunk.minTimestamp, timestamp);
+            chunk.maxTimestamp = Math.max(chunk.maxTimestamp, timestamp);
+        }
+        size = offset + recordSize;
+    }
+
+    private void scanChunk(Chunk chunk, long end, long from, long to, RecordVisitor visitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - chunk.offset));
+        readFully(channel, buffer, chunk.offset);
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            long offset = chunk.offset + buffer.position();
+            int length = buffer.getInt();
+            buffer.getInt();
+            long timestamp = buffer.getLong();
+            UUID id = new UUID(buffer.getLong(), buffer.getLong());
+            if (length != TOMBSTONE) {
+                buffer.position(buffer.position() + length);
+                if (timestamp >= from && timestamp <= to) {
+                    visitor.visit(offset, timestamp, id, false);
+                }
+            }
+        }
+    }
+
+    private static int checksum(byte[] data) {
+        return checksum(data, 0);
+    }
+
+    private static int checksum(byte[] data, int offset) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, data.length - offset);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+        }
+    }
+
+    /**
+     * Consumer of record headers.
+     */
+    interface RecordVisitor {
+
+        void visit(long offset, long timestamp, UUID id, boolean tombstone) throws IOException;
+    }
+
+    /**
+     * Predicate that checks if record is live.
+     */
+    interface RecordFilter {
+
+        boolean test(long offset, UUID id);
+    }
+
+    private static class Chunk {
+
+        private final long offset;
+        private int records;
+        private int events;
+        private int live;
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+
+        private Chunk(long offset) {
+            this.offset = offset;
+        }
+    }
+}
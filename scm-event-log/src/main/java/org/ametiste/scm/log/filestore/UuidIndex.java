@@ -0,0 +1,151 @@
+package org.ametiste.scm.log.filestore;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Hash index from event id to location of its record.
+ * <p>
+ * Index is open addressing hash table with linear probing stored in three primitive arrays, so entry takes 24 bytes
+ * instead of two objects and map node of {@code HashMap}. Removed entries are filled by shifting following entries of
+ * probe chain back, so table never contains deleted markers. Table is doubled when it is more than half full.
+ * <p>
+ * Index is not thread safe.
+ */
+class UuidIndex {
+
+    static final long ABSENT = -1;
+
+    private long[] mostBits;
+    private long[] leastBits;
+    private long[] values;
+    private int size;
+
+    /**
+     * Create instance of {@code UuidIndex}.
+     * @param capacity initial capacity. Must be power of two.
+     */
+    UuidIndex(int capacity) {
+        isTrue(capacity > 0 && Integer.bitCount(capacity) == 1, "'capacity' must be power of two!");
+        allocate(capacity);
+    }
+
+    /**
+     * @return number of entries.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return location of record with specified id or {@link #ABSENT}.
+     */
+    long get(UUID id) {
+        int slot = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        return slot >= 0 ? values[slot] : ABSENT;
+    }
+
+    /**
+     * Associate id with location of record.
+     * @param id event id.
+     * @param location location of record. Must not be negative.
+     * @return previous location or {@link #ABSENT}.
+     */
+    long put(UUID id, long location) {
+        isTrue(location >= 0, "'location' must not be negative!");
+
+        long most = id.getMostSignificantBits();
+        long least = id.getLeastSignificantBits();
+        int slot = find(most, least);
+        if (slot >= 0) {
+            long previous = values[slot];
+            values[slot] = location;
+            return previous;
+        }
+
+        if ((size + 1) * 2 > values.length) {
+            resize();
+        }
+        insert(most, least, location);
+        size++;
+        return ABSENT;
+    }
+
+    /**
+     * Remove entry of specified id.
+     * @return removed location or {@link #ABSENT}.
+     */
+    long remove(UUID id) {
+        int slot = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (slot < 0) {
+            return ABSENT;
+        }
+        long previous = values[slot];
+        size--;
+
+        // shift entries of probe chain that can't be found after slot is freed
+        int mask = values.length - 1;
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (values[next] != ABSENT) {
+            int home = hash(mostBits[next], leastBits[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                mostBits[free] = mostBits[next];
+                leastBits[free] = leastBits[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[free] = ABSENT;
+        return previous;
+    }
+
+    private int find(long most, long least) {
+        int mask = values.length - 1;
+        for (int slot = hash(most, least) & mask; values[slot] != ABSENT; slot = (slot + 1) & mask) {
+            if (mostBits[slot] == most && leastBits[slot] == least) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(long most, long least, long location) {
+        int mask = values.length - 1;
+        int slot = hash(most, least) & mask;
+        while (values[slot] != ABSENT) {
+            slot = (slot + 1) & mask;
+        }
+        mostBits[slot] = most;
+        leastBits[slot] = least;
+        values[slot] = location;
+    }
+
+    private void resize() {
+        long[] oldMost = mostBits;
+        long[] oldLeast = leastBits;
+        long[] oldValues = values;
+
+        allocate(oldValues.length * 2);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != ABSENT) {
+                insert(oldMost[i], oldLeast[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mostBits = new long[capacity];
+        leastBits = new long[capacity];
+        values = new long[capacity];
+        Arrays.fill(values, ABSENT);
+    }
+
+    private static int hash(long most, long least) {
+        long hash = (most ^ least) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,82 @@
+package org.ametiste.scm.log.journal;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBDecoder;
+import org.ametiste.scm.log.persistent.EventCodecRegistry;
+import org.ametiste.scm.messaging.data.event.Event;
+import org.ametiste.scm.messaging.data.mongo.event.EventDocument;
+import org.ametiste.scm.messaging.data.mongo.event.factory.EventToDocumentConverterMapFactory;
+import org.bson.BSON;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Implementation of {@code EventSerializer} that writes events as BSON documents.
+ * <p>
+ * Serializer uses the same event document representation and {@code MongoConverter} as Mongo repository, so record
+ * content is identical to document stored in collection. If serializer has {@code EventCodecRegistry} events of types
+ * supported by codecs are written and read with codecs directly.
+ */
+public class BsonEventSerializer implements EventSerializer {
+
+    private final MongoConverter mongoConverter;
+    private final Map<Class, Function<Event, EventDocument>> converterMap;
+    private final EventCodecRegistry codecs;
+
+    /**
+     * Create instance of {@code BsonEventSerializer}.
+     * @param mongoConverter converter between document objects and {@code DBObject}.
+     * @param eventToDocumentConverterMapFactory factory that produce conversion map to convert Event to document DTO.
+     */
+    public BsonEventSerializer(MongoConverter mongoConverter,
+                               EventToDocumentConverterMapFactory eventToDocumentConverterMapFactory) {
+        this(mongoConverter, eventToDocumentConverterMapFactory, null);
+    }
+
+    /**
+     * Create instance of {@code BsonEventSerializer}.
+     * @param mongoConverter converter between document objects and {@code DBObject}.
+     * @param eventToDocumentConverterMapFactory factory that produce conversion map to convert Event to document DTO.
+     * @param codecs codecs that write and read event documents directly. Might be {@literal null}.
+     */
+    public BsonEventSerializer(MongoConverter mongoConverter,
+                               EventToDocumentConverterMapFactory eventToDocumentConverterMapFactory,
+                               EventCodecRegistry codecs) {
+        isTrue(mongoConverter != null, "'mongoConverter' must be initialized!");
+        isTrue(eventToDocumentConverterMapFactory != null, "ConverterMapFactory must be initialized!");
+
+        this.mongoConverter = mongoConverter;
+        this.converterMap = eventToDocumentConverterMapFactory.getMap();
+        this.codecs = codecs;
+    }
+
+    @Override
+    public byte[] serialize(Event event) {
+        isTrue(event != null, "'event' must not be null!");
+        if (codecs != null && codecs.canEncode(event.getClass())) {
+            return BSON.encode(codecs.encode(event));
+        }
+        isTrue(converterMap.containsKey(event.getClass()), "serializer can't map event type: " + event.getClass());
+
+        DBObject dbObject = new BasicDBObject();
+        mongoConverter.write(converterMap.get(event.getClass()).apply(event), dbObject);
+        return BSON.encode(dbObject);
+    }
+
+    @Override
+    public Event deserialize(byte[] data) {
+        isTrue(data != null, "'data' must not be null!");
+
+        DBObject dbObject = new DefaultDBDecoder().decode(data, (DBCollection) null);
+        if (codecs != null && codecs.canDecode(dbObject)) {
+            return codecs.decode(dbObject);
+        }
+        return mongoConverter.read(EventDocument.class, dbObject).convert();
+    }
+}
@@ -0,0 +1,59 @@
+package org.ametiste.scm.log.journal;
+
+import org.ametiste.scm.messaging.data.event.Event;
+
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+/**
+ * Append-only write-ahead journal for events that accepted by logger but not stored to persistent yet.
+ * <p>
+ * Each appended record gets logical position in journal. Position returned by {@link #position()} is monotonically
+ * increasing. {@link #checkpoint(long)} marks all records before specified position as persisted, so they will not be
+ * replayed after restart and journal may release space occupied by them.
+ * <p>
+ * Encoding is separated from append to allow callers serialize event outside of their own critical sections.
+ */
+public interface EventJournal extends Closeable {
+
+    /**
+     * Serialize event to journal record. Method is thread-safe and doesn't change journal state.
+     * @param event must not be {@literal null}.
+     * @return record content.
+     */
+    byte[] encode(Event event);
+
+    /**
+     * Append encoded record to journal.
+     * @param record record produced by {@link #encode(Event)}.
+     * @return position of journal after record appended.
+     * @throws EventJournalException if record can't be written.
+     */
+    long append(byte[] record) throws EventJournalException;
+
+    /**
+     * @return current position of journal (position after last appended record).
+     */
+    long position();
+
+    /**
+     * Mark all records before specified position as persisted.
+     * @param position position returned by {@link #position()} or {@link #append(byte[])}.
+     * @throws EventJournalException if checkpoint can't be saved.
+     */
+    void checkpoint(long position) throws EventJournalException;
+
+    /**
+     * Read all records that were appended after last checkpoint in previous runs.
+     * Should be invoked once on startup before first append.
+     * @param consumer consumer of recovered events.
+     * @throws EventJournalException if journal can't be read.
+     */
+    void replay(Consumer<Event> consumer) throws EventJournalException;
+
+    /**
+     * Force written records to disk and release journal resources.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,15 @@
+package org.ametiste.scm.log.journal;
+
+/**
+ * {@code EventJournalException} signals about error that occurred during read or write of event journal.
+ */
+public class EventJournalException extends RuntimeException {
+
+    public EventJournalException(String message) {
+        super(message);
+    }
+
+    public EventJournalException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,24 @@
+package org.ametiste.scm.log.journal;
+
+import org.ametiste.scm.messaging.data.event.Event;
+
+/**
+ * Converter of {@code Event} objects to binary representation and back.
+ */
+public interface EventSerializer {
+
+    /**
+     * Serialize event.
+     * @param event must not be {@literal null}.
+     * @return binary representation of event.
+     * @throws IllegalArgumentException if event type is not supported.
+     */
+    byte[] serialize(Event event);
+
+    /**
+     * Restore event from binary representation.
+     * @param data binary representation produced by {@link #serialize(Event)}.
+     * @return restored event.
+     */
+    Event deserialize(byte[] data);
+}
@@ -0,0 +1,224 @@
+package org.ametiste.scm.log.journal;
+
+import org.ametiste.scm.messaging.data.event.Event;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Implementation of {@code EventJournal} based on memory-mapped segment files.
+ * <p>
+ * Journal directory contains segment files of fixed size and checkpoint file. Segment file name contains logical
+ * position of its first byte. Each record in segment has next layout:
+ * <pre>
+ *     | length (int) | CRC32 of content (int) | content (length bytes) |
+ * </pre>
+ * Zero length marks end of written data in segment. When record doesn't fit remaining space of active segment journal
+ * starts new segment.
+ * <p>
+ * Records are written to mapped memory, so they survive process crash without explicit sync. Segments are forced to
+ * disk when they are completed and on close. Segments that contain only records before checkpoint are deleted.
+ * <p>
+ * On start journal never appends to segments of previous run: they are left for {@link #replay(Consumer)} and new
+ * active segment is created after them. Replay stops reading segment on first record with broken checksum, so torn
+ * write at the end of segment is ignored.
+ */
+public class MappedEventJournal implements EventJournal {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_SIZE = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final EventSerializer serializer;
+
+    private final List<Long> recoverableSegments;
+
+    private long checkpoint;
+    private long activeBase;
+    private MappedByteBuffer active;
+
+    /**
+     * Create instance of {@code MappedEventJournal}. Creates journal directory if it doesn't exist.
+     * @param directory journal directory.
+     * @param segmentSize size of segment file in bytes. Must be greater than record header size.
+     * @param serializer serializer for events.
+     * @throws EventJournalException if journal directory can't be initialized.
+     */
+    public MappedEventJournal(Path directory, int segmentSize, EventSerializer serializer) throws EventJournalException {
+        isTrue(directory != null, "'directory' must be initialized!");
+        isTrue(segmentSize > HEADER_SIZE, "'segmentSize' must be greater than " + HEADER_SIZE + "!");
+        isTrue(serializer != null, "'serializer' must be initialized!");
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.serializer = serializer;
+
+        try {
+            Files.createDirectories(directory);
+            this.checkpoint = readCheckpoint();
+            this.recoverableSegments = listSegments();
+        } catch (IOException e) {
+            throw new EventJournalException("Failed to open journal in " + directory + ": " + e.getMessage(), e);
+        }
+
+        long nextBase = recoverableSegments.isEmpty() ? 0 : recoverableSegments.get(recoverableSegments.size() - 1) + segmentSize;
+        this.activeBase = Math.max(nextBase, checkpoint);
+        this.active = openSegment(activeBase);
+    }
+
+    @Override
+    public byte[] encode(Event event) {
+        return serializer.serialize(event);
+    }
+
+    @Override
+    public synchronized long append(byte[] record) throws EventJournalException {
+        isTrue(record != null && record.length > 0, "'record' must not be empty!");
+        isTrue(record.length + HEADER_SIZE <= segmentSize, "Record size exceeds journal segment size!");
+
+        if (active.remaining() < record.length + HEADER_SIZE) {
+            roll();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+
+        active.putInt(record.length);
+        active.putInt((int) crc.getValue());
+        active.put(record);
+
+        return activeBase + active.position();
+    }
+
+    @Override
+    public synchronized long position() {
+        return activeBase + active.position();
+    }
+
+    @Override
+    public synchronized void checkpoint(long position) throws EventJournalException {
+        if (position <= checkpoint) {
+            return;
+        }
+
+        try {
+            writeCheckpoint(position);
+            checkpoint = position;
+
+            for (Long base : listSegments()) {
+                if (base != activeBase && base + segmentSize <= position) {
+                    Files.deleteIfExists(segmentPath(base));
+                }
+            }
+        } catch (IOException e) {
+            throw new EventJournalException("Failed to save journal checkpoint: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void replay(Consumer<Event> consumer) throws EventJournalException {
+        isTrue(consumer != null, "'consumer' must be initialized!");
+
+        for (Long base : recoverableSegments) {
+            if (base + segmentSize <= checkpoint) {
+                continue;
+            }
+
+            ByteBuffer segment;
+            try (FileChannel channel = FileChannel.open(segmentPath(base), StandardOpenOption.READ)) {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                throw new EventJournalException("Failed to read journal segment " + base + ": " + e.getMessage(), e);
+            }
+
+            segment.position((int) Math.min(Math.max(0, checkpoint - base), segment.limit()));
+            replaySegment(segment, consumer);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        active.force();
+    }
+
+    private void replaySegment(ByteBuffer segment, Consumer<Event> consumer) {
+        while (segment.remaining() >= HEADER_SIZE) {
+            int length = segment.getInt();
+            int checksum = segment.getInt();
+            if (length <= 0 || length > segment.remaining()) {
+                return;
+            }
+
+            byte[] record = new byte[length];
+            segment.get(record);
+
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            if ((int) crc.getValue() != checksum) {
+                return;
+            }
+
+            consumer.accept(serializer.deserialize(record));
+        }
+    }
+
+    private void roll() {
+        active.force();
+        activeBase += segmentSize;
+        active = openSegment(activeBase);
+    }
+
+    private MappedByteBuffer openSegment(long base) {
+        try (FileChannel channel = FileChannel.open(segmentPath(base),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException e) {
+            throw new EventJournalException("Failed to create journal segment " + base + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Path segmentPath(long base) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, base, SEGMENT_SUFFIX));
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(path)) {
+            byte[] content = Files.readAllBytes(path);
+            if (content.length == Long.BYTES) {
+                return ByteBuffer.wrap(content).getLong();
+            }
+        }
+        return 0;
+    }
+
+    private void writeCheckpoint(long position) throws IOException {
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.write(temp, ByteBuffer.allocate(Long.BYTES).putLong(position).array());
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
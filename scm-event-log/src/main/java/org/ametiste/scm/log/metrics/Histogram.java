@@ -0,0 +1,105 @@
+package org.ametiste.scm.log.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Histogram of values with fixed bucket bounds.
+ * <p>
+ * Each recorded value increments counter of first bucket which upper bound is not less than value. Values greater than
+ * last bound are counted in overflow bucket. Percentile is estimated as upper bound of bucket that contains it (or max
+ * value for overflow bucket), so precision is defined by bounds. Recording is lock-free.
+ */
+public class Histogram {
+
+    /**
+     * Bounds for latencies in milliseconds.
+     */
+    public static final long[] LATENCY_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+    /**
+     * Bounds for sizes of batches.
+     */
+    public static final long[] SIZE_BOUNDS = { 1, 10, 50, 100, 500, 1000, 5000, 10000, 50000 };
+
+    private final long[] bounds;
+    private final AtomicLongArray buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Create histogram.
+     * @param bounds upper bounds of buckets in ascending order. Must not be empty.
+     */
+    public Histogram(long... bounds) {
+        isTrue(bounds != null && bounds.length > 0, "'bounds' must not be empty!");
+        for (int i = 1; i < bounds.length; i++) {
+            isTrue(bounds[i - 1] < bounds[i], "'bounds' must be in ascending order!");
+        }
+
+        this.bounds = bounds.clone();
+        this.buckets = new AtomicLongArray(bounds.length + 1);
+    }
+
+    /**
+     * Record value.
+     * @param value non negative value.
+     */
+    public void record(long value) {
+        int bucket = 0;
+        while (bucket < bounds.length && bounds[bucket] < value) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return mean of recorded values or {@literal 0} if histogram is empty.
+     */
+    public double getMean() {
+        long total = count.sum();
+        return total == 0 ? 0 : (double) sum.sum() / total;
+    }
+
+    /**
+     * Estimate percentile of recorded values.
+     * @param quantile quantile in range (0, 1].
+     * @return upper bound of bucket that contains percentile or {@literal 0} if histogram is empty.
+     */
+    public long getPercentile(double quantile) {
+        isTrue(quantile > 0 && quantile <= 1, "'quantile' must be in range (0, 1]!");
+
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            total += buckets.get(i);
+        }
+        long rank = (long) Math.ceil(total * quantile);
+        if (rank == 0) {
+            return 0;
+        }
+
+        long seen = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(bounds[i], getMax());
+            }
+        }
+        return getMax();
+    }
+}
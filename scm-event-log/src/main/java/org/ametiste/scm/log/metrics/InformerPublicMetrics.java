@@ -0,0 +1,50 @@
+package org.ametiste.scm.log.metrics;
+
+import org.ametiste.scm.log.persistent.EventLookupCache;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publish metrics of event informer to Actuator {@literal /metrics} endpoint.
+ * <p>
+ * Published metrics (if lookup cache is enabled):
+ * <ul>
+ *     <li><b>gauge.eventlog.lookup.size</b>, <b>gauge.eventlog.lookup.weight</b> - number and total weight of cached
+ *     entries;</li>
+ *     <li><b>counter.eventlog.lookup.*</b> - hits, negative hits, misses and evictions of lookup cache.</li>
+ * </ul>
+ */
+public class InformerPublicMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "eventlog.lookup.";
+
+    private final EventLookupCache lookupCache;
+
+    /**
+     * Create instance of {@code InformerPublicMetrics}.
+     * @param lookupCache cache of events looked up by id. Might be {@literal null}.
+     */
+    public InformerPublicMetrics(EventLookupCache lookupCache) {
+        this.lookupCache = lookupCache;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> result = new ArrayList<>();
+        if (lookupCache == null) {
+            return result;
+        }
+
+        result.add(new Metric<>("gauge." + PREFIX + "size", lookupCache.size()));
+        result.add(new Metric<>("gauge." + PREFIX + "weight", lookupCache.weight()));
+        result.add(new Metric<>("counter." + PREFIX + "hits", lookupCache.getHits()));
+        result.add(new Metric<>("counter." + PREFIX + "negative-hits", lookupCache.getNegativeHits()));
+        result.add(new Metric<>("counter." + PREFIX + "misses", lookupCache.getMisses()));
+        result.add(new Metric<>("counter." + PREFIX + "evictions", lookupCache.getEvictions()));
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+package org.ametiste.scm.log.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms of event ingestion pipeline.
+ * <p>
+ * Metrics are updated by logger and DAO decorator and published with {@code IngestionPublicMetrics}.
+ */
+public class IngestionMetrics {
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder duplicateFallbacks = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+
+    private final Histogram flushDuration = new Histogram(Histogram.LATENCY_BOUNDS);
+    private final Histogram batchSize = new Histogram(Histogram.SIZE_BOUNDS);
+    private final Histogram insertLatency = new Histogram(Histogram.LATENCY_BOUNDS);
+    private final Histogram saveLatency = new Histogram(Histogram.LATENCY_BOUNDS);
+
+    public void onReceived(int count) {
+        received.add(count);
+    }
+
+    public void onDeduplicated() {
+        deduplicated.increment();
+    }
+
+    public void onPersisted(int count) {
+        persisted.add(count);
+    }
+
+    public void onDuplicateFallback() {
+        duplicateFallbacks.increment();
+    }
+
+    public void onFlush(long duration, boolean failed) {
+        flushDuration.record(duration);
+        if (failed) {
+            failedFlushes.increment();
+        }
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getDeduplicated() {
+        return deduplicated.sum();
+    }
+
+    public long getPersisted() {
+        return persisted.sum();
+    }
+
+    public long getDuplicateFallbacks() {
+        return duplicateFallbacks.sum();
+    }
+
+    public long getFailedFlushes() {
+        return failedFlushes.sum();
+    }
+
+    /**
+     * @return histogram of flush duration (in milliseconds).
+     */
+    public Histogram getFlushDuration() {
+        return flushDuration;
+    }
+
+    /**
+     * @return histogram of number of events written with one DAO operation.
+     */
+    public Histogram getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return histogram of {@code EventDAO} insert latency (in milliseconds).
+     */
+    public Histogram getInsertLatency() {
+        return insertLatency;
+    }
+
+    /**
+     * @return histogram of {@code EventDAO} save latency (in milliseconds).
+     */
+    public Histogram getSaveLatency() {
+        return saveLatency;
+    }
+}
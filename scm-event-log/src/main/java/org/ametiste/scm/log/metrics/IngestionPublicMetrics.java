@@ -0,0 +1,99 @@
+package org.ametiste.scm.log.metrics;
+
+import org.ametiste.scm.log.service.EventFlushScheduler;
+import org.ametiste.scm.log.service.EventLogger;
+import org.ametiste.scm.log.service.RecentEventFilter;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Publish metrics of event ingestion pipeline to Actuator {@literal /metrics} endpoint.
+ * <p>
+ * Published metrics:
+ * <ul>
+ *     <li><b>gauge.eventlog.buffer.size</b> - number of buffered events;</li>
+ *     <li><b>gauge.eventlog.buffer.oldest-age</b> - age of oldest buffered event (in milliseconds);</li>
+ *     <li><b>gauge.eventlog.buffer.saturated</b> - {@literal 1} if logger is saturated;</li>
+ *     <li><b>gauge.eventlog.flush.period</b>, <b>gauge.eventlog.flush.size</b> - current flush period and size of
+ *     scheduler;</li>
+ *     <li><b>counter.eventlog.events.*</b> - received, persisted and deduplicated events;</li>
+ *     <li><b>counter.eventlog.duplicate-fallbacks</b> - insert operations that failed with duplicate key;</li>
+ *     <li><b>counter.eventlog.flush.failed</b> - failed flushes;</li>
+ *     <li><b>counter.eventlog.filter.false-positives</b> - unconfirmed positives of duplicate filter;</li>
+ *     <li><b>histogram.eventlog.*</b> - count, mean, max and percentiles of flush duration, batch size and DAO
+ *     insert and save latencies.</li>
+ * </ul>
+ */
+public class IngestionPublicMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "eventlog.";
+
+    private final EventLogger eventLogger;
+    private final EventFlushScheduler flushScheduler;
+    private final IngestionMetrics metrics;
+    private final RecentEventFilter duplicateFilter;
+
+    /**
+     * Create instance of {@code IngestionPublicMetrics}.
+     * @param eventLogger logger to read buffer state.
+     * @param flushScheduler scheduler to read current flush settings.
+     * @param metrics ingestion metrics.
+     * @param duplicateFilter duplicate filter of logger. Might be {@literal null}.
+     */
+    public IngestionPublicMetrics(EventLogger eventLogger, EventFlushScheduler flushScheduler, IngestionMetrics metrics,
+                                  RecentEventFilter duplicateFilter) {
+        isTrue(eventLogger != null, "'eventLogger' must be initialized!");
+        isTrue(flushScheduler != null, "'flushScheduler' must be initialized!");
+        isTrue(metrics != null, "'metrics' must be initialized!");
+
+        this.eventLogger = eventLogger;
+        this.flushScheduler = flushScheduler;
+        this.metrics = metrics;
+        this.duplicateFilter = duplicateFilter;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> result = new ArrayList<>();
+
+        long oldest = eventLogger.oldestBufferedTime();
+        result.add(new Metric<>("gauge." + PREFIX + "buffer.size", eventLogger.bufferSize()));
+        result.add(new Metric<>("gauge." + PREFIX + "buffer.oldest-age",
+                oldest < 0 ? 0 : Math.max(0, System.currentTimeMillis() - oldest)));
+        result.add(new Metric<>("gauge." + PREFIX + "buffer.saturated", eventLogger.isSaturated() ? 1 : 0));
+        result.add(new Metric<>("gauge." + PREFIX + "flush.period", flushScheduler.getFlushPeriod()));
+        result.add(new Metric<>("gauge." + PREFIX + "flush.size", flushScheduler.getFlushSize()));
+
+        result.add(new Metric<>("counter." + PREFIX + "events.received", metrics.getReceived()));
+        result.add(new Metric<>("counter." + PREFIX + "events.persisted", metrics.getPersisted()));
+        result.add(new Metric<>("counter." + PREFIX + "events.deduplicated", metrics.getDeduplicated()));
+        result.add(new Metric<>("counter." + PREFIX + "duplicate-fallbacks", metrics.getDuplicateFallbacks()));
+        result.add(new Metric<>("counter." + PREFIX + "flush.failed", metrics.getFailedFlushes()));
+        if (duplicateFilter != null) {
+            result.add(new Metric<>("counter." + PREFIX + "filter.false-positives", duplicateFilter.getFalsePositives()));
+        }
+
+        addHistogram(result, "flush.duration", metrics.getFlushDuration());
+        addHistogram(result, "flush.batch-size", metrics.getBatchSize());
+        addHistogram(result, "dao.insert", metrics.getInsertLatency());
+        addHistogram(result, "dao.save", metrics.getSaveLatency());
+
+        return result;
+    }
+
+    private void addHistogram(List<Metric<?>> result, String name, Histogram histogram) {
+        String prefix = "histogram." + PREFIX + name + ".";
+        result.add(new Metric<>(prefix + "count", histogram.getCount()));
+        result.add(new Metric<>(prefix + "mean", histogram.getMean()));
+        result.add(new Metric<>(prefix + "max", histogram.getMax()));
+        result.add(new Metric<>(prefix + "p50", histogram.getPercentile(0.5)));
+        result.add(new Metric<>(prefix + "p95", histogram.getPercentile(0.95)));
+        result.add(new Metric<>(prefix + "p99", histogram.getPercentile(0.99)));
+    }
+}
@@ -0,0 +1,61 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * {@code CloseableIterator} that iterates over iterators of several sources one by one. Iterator of source is opened
+ * when previous one is exhausted, so only one cursor is open at the same time.
+ */
+public class ConcatenatedEventIterator implements CloseableIterator<Event> {
+
+    private final Iterator<Supplier<CloseableIterator<Event>>> sources;
+    private CloseableIterator<Event> current;
+
+    /**
+     * Create instance of {@code ConcatenatedEventIterator}.
+     * @param sources suppliers of source iterators in order of iteration.
+     */
+    public ConcatenatedEventIterator(List<Supplier<CloseableIterator<Event>>> sources) {
+        isTrue(sources != null, "'sources' must be initialized!");
+        this.sources = sources.iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (current == null || !current.hasNext()) {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+            if (!sources.hasNext()) {
+                return false;
+            }
+            current = sources.next().get();
+        }
+        return true;
+    }
+
+    @Override
+    public Event next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public void close() {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * {@code DuplicateEventsException} signals that part of inserted events already exist in repository.
+ * <p>
+ * Exception is thrown by bulk insert operation after all other events of bulk are written, so caller must handle only
+ * events returned by {@link #getDuplicates()}.
+ */
+public class DuplicateEventsException extends DuplicateKeyException {
+
+    private final Collection<Event> duplicates;
+
+    public DuplicateEventsException(String message, Collection<Event> duplicates) {
+        super(message);
+        this.duplicates = Collections.unmodifiableList(new ArrayList<>(duplicates));
+    }
+
+    public DuplicateEventsException(String message, Collection<Event> duplicates, Throwable cause) {
+        super(message, cause);
+        this.duplicates = Collections.unmodifiableList(new ArrayList<>(duplicates));
+    }
+
+    /**
+     * @return events that were not inserted because documents with the same id already exist.
+     */
+    public Collection<Event> getDuplicates() {
+        return duplicates;
+    }
+}
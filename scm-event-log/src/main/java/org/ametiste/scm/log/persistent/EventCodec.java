@@ -0,0 +1,39 @@
+package org.ametiste.scm.log.persistent;
+
+import com.mongodb.DBObject;
+import org.ametiste.scm.messaging.data.event.Event;
+
+/**
+ * Codec between event of specific type and its Mongo document.
+ * <p>
+ * Codec writes document fields directly from event and creates event directly from document fields, without
+ * intermediate {@code EventDocument} DTO and reflective mapping of {@code MongoConverter}. Layout of document must be
+ * the same as layout written by {@code MongoConverter} for corresponding {@code EventDocument} (including
+ * {@literal _class} type hint), so documents written by codec and by converter are interchangeable.
+ *
+ * @param <T> type of event.
+ */
+public interface EventCodec<T extends Event> {
+
+    /**
+     * @return class of events supported by codec.
+     */
+    Class<T> getEventClass();
+
+    /**
+     * @return value of {@literal _class} field of documents supported by codec.
+     */
+    String getDocumentType();
+
+    /**
+     * @param event must not be {@literal null}.
+     * @return document representation of event.
+     */
+    DBObject encode(T event);
+
+    /**
+     * @param document document with {@literal _class} field equal to {@link #getDocumentType()}.
+     * @return event restored from document.
+     */
+    T decode(DBObject document);
+}
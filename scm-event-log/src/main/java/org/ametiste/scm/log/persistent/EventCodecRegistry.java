@@ -0,0 +1,83 @@
+package org.ametiste.scm.log.persistent;
+
+import com.mongodb.DBObject;
+import org.ametiste.scm.messaging.data.event.Event;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Registry of {@code EventCodec} instances.
+ * <p>
+ * Codecs are chosen by event class for encoding and by {@literal _class} type hint of document for decoding.
+ */
+public class EventCodecRegistry {
+
+    public static final String TYPE_KEY = "_class";
+
+    private final Map<Class<?>, EventCodec<?>> encoders = new HashMap<>();
+    private final Map<String, EventCodec<?>> decoders = new HashMap<>();
+
+    /**
+     * Create registry with codecs for all event types supported by default converter map.
+     */
+    public EventCodecRegistry() {
+        this(Collections.<EventCodec<?>>singletonList(new InstanceLifecycleEventCodec()));
+    }
+
+    /**
+     * Create registry with specified codecs.
+     * @param codecs must not be {@literal null}.
+     */
+    public EventCodecRegistry(Collection<EventCodec<?>> codecs) {
+        isTrue(codecs != null, "'codecs' must be initialized!");
+
+        codecs.forEach(codec -> {
+            encoders.put(codec.getEventClass(), codec);
+            decoders.put(codec.getDocumentType(), codec);
+        });
+    }
+
+    /**
+     * @param eventClass class of event.
+     * @return {@literal true} if registry has codec for specified event class.
+     */
+    public boolean canEncode(Class<?> eventClass) {
+        return encoders.containsKey(eventClass);
+    }
+
+    /**
+     * @param document Mongo document.
+     * @return {@literal true} if registry has codec for type of specified document.
+     */
+    public boolean canDecode(DBObject document) {
+        return decoders.containsKey(document.get(TYPE_KEY));
+    }
+
+    /**
+     * @param event event supported by registry.
+     * @return document representation of event.
+     */
+    @SuppressWarnings("unchecked")
+    public DBObject encode(Event event) {
+        isTrue(event != null, "'event' must not be null!");
+        isTrue(canEncode(event.getClass()), "registry can't encode event type: " + event.getClass());
+
+        return ((EventCodec<Event>) encoders.get(event.getClass())).encode(event);
+    }
+
+    /**
+     * @param document document supported by registry.
+     * @return event restored from document.
+     */
+    public Event decode(DBObject document) {
+        isTrue(document != null, "'document' must not be null!");
+        isTrue(canDecode(document), "registry can't decode document type: " + document.get(TYPE_KEY));
+
+        return decoders.get(document.get(TYPE_KEY)).decode(document);
+    }
+}
@@ -0,0 +1,77 @@
+package org.ametiste.scm.log.persistent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Background job that verifies {@link MongoEventCounters} against stored events.
+ * <p>
+ * Each run verifies counters of all closed buckets (see {@link MongoEventCounters#verify(EventDAO, long)}), so counters
+ * of existing events are built after start without delaying it, and buckets left pending by interrupted writes are
+ * repaired. Until buckets are verified their events are counted exactly. Several stores (e.g. shards) might be verified
+ * by one job, each store with own counters.
+ * <p>
+ * Job runs in single thread with fixed delay between runs, the first run starts immediately. Failed run is logged and
+ * repeated on next schedule.
+ */
+public class EventCountersReconciler {
+
+    private final Logger logger = LoggerFactory.getLogger(EventCountersReconciler.class);
+
+    private final Map<MongoEventCounters, EventDAO> stores;
+    private final long period;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Create instance of {@code EventCountersReconciler}.
+     * @param stores map from counters to DAO of events they count. Must not be {@literal null}.
+     * @param period delay between runs (in milliseconds). Must be greater than zero.
+     */
+    public EventCountersReconciler(Map<MongoEventCounters, EventDAO> stores, long period) {
+        isTrue(stores != null, "'stores' must be initialized!");
+        isTrue(period > 0, "'period' must be greater than zero!");
+
+        this.stores = new LinkedHashMap<>(stores);
+        this.period = period;
+    }
+
+    /**
+     * Start scheduled runs.
+     */
+    public void start() {
+        executor.scheduleWithFixedDelay(this::scheduledVerify, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop scheduler. Run in progress is interrupted, not verified buckets are verified after next start.
+     */
+    public void stop() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Verify counters of all stores up to specified time.
+     * @param until end of verified time (exclusive).
+     */
+    public void verify(long until) {
+        stores.forEach((counters, eventDAO) -> counters.verify(eventDAO, until));
+    }
+
+    private void scheduledVerify() {
+        try {
+            verify(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            logger.error("Failed to verify event counters: " + e.getMessage(), e);
+        }
+    }
+}
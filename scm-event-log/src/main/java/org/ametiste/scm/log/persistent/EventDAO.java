@@ -2,11 +2,17 @@ package org.ametiste.scm.log.persistent;
 
 import org.ametiste.scm.messaging.data.event.Event;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.repository.Repository;
 import org.springframework.data.util.CloseableIterator;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -15,6 +21,9 @@ import java.util.UUID;
  * DAO includes both write and read operations. Insert operation mean insert new value without check for document already
  * exists. We consider all events that are insert in repository are unique (at least on {@code id} property with
  * {@code UUID} value).
+ * <p>
+ * Read operations with {@link EventFilter} have default implementations that check events of time interval on client
+ * side. Implementations that can push filter down to storage query should override them.
  */
 public interface EventDAO extends Repository<Event, UUID> {
 
@@ -42,6 +51,7 @@ public interface EventDAO extends Repository<Event, UUID> {
      *
      * @param entities must not be {@literal null}.
      * @return the saved entities collection
+     * @throws DuplicateEventsException if some of entities already exist. All other entities are inserted.
      */
     Collection<Event> insert(Collection<Event> entities);
 
@@ -63,6 +73,24 @@ public interface EventDAO extends Repository<Event, UUID> {
      */
     Event findOne(UUID id);
 
+    /**
+     * Retrieves entities by ids. Default implementation looks up each id with {@link #findOne(UUID)}, implementations
+     * that can read many documents with one query should override it.
+     *
+     * @param ids must not be {@literal null} and must not contain {@literal null}.
+     * @return found entities in any order. Entities of the same id are returned once, ids without entity are absent.
+     */
+    default List<Event> findAll(Collection<UUID> ids) {
+        List<Event> result = new ArrayList<>();
+        for (UUID id : new LinkedHashSet<>(ids)) {
+            Event event = findOne(id);
+            if (event != null) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
     /**
      * Retrieves all entities with iterator. Useful for processing large set of documents.
      *
@@ -98,10 +126,165 @@ public interface EventDAO extends Repository<Event, UUID> {
      */
     Page<Event> findAll(long from, long to, Pageable pageable);
 
+    /**
+     * Returns all instances of Event with timestamp in specified time interval that match filter.
+     *
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @param filter must not be {@literal null}.
+     * @return a {@link CloseableIterator} that wraps cursor statement that needs to be closed.
+     */
+    default CloseableIterator<Event> findAll(long from, long to, EventFilter filter) {
+        return filter.isEmpty() ? findAll(from, to) : new FilteredEventIterator(findAll(from, to), filter);
+    }
+
+    /**
+     * Returns a {@link Page} of events with timestamp in specified time interval that match filter. Pageable must be
+     * sorted by timestamp (or unsorted).
+     *
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @param filter must not be {@literal null}.
+     * @return a page of events
+     */
+    default Page<Event> findAll(long from, long to, EventFilter filter, Pageable pageable) {
+        if (filter.isEmpty()) {
+            return findAll(from, to, pageable);
+        }
+
+        List<Event> matched = new ArrayList<>();
+        try (CloseableIterator<Event> events = findAll(from, to, filter)) {
+            events.forEachRemaining(matched::add);
+        }
+        if (pageable == null) {
+            return new PageImpl<>(Collections.emptyList(), null, matched.size());
+        }
+
+        Sort.Order order = pageable.getSort() != null ? pageable.getSort().getOrderFor("timestamp") : null;
+        if (order != null && order.getDirection() == Sort.Direction.DESC) {
+            Collections.reverse(matched);
+        }
+        int start = (int) Math.min(pageable.getOffset(), matched.size());
+        int end = Math.min(start + pageable.getPageSize(), matched.size());
+        return new PageImpl<>(new ArrayList<>(matched.subList(start, end)), pageable, matched.size());
+    }
+
+    /**
+     * Returns a {@link Page} of event summaries meeting the paging restriction provided in the {@code Pageable} object.
+     * Implementations that can read only summary fields should override default implementation that reads whole
+     * events.
+     *
+     * @param pageable {@link Pageable} object that contains information about target slice of all documents to receive.
+     * @return a page of event summaries
+     */
+    default Page<EventSummary> findSummaries(Pageable pageable) {
+        return findAll(pageable).map(EventSummary::of);
+    }
+
+    /**
+     * Returns a {@link Page} of summaries of events with timestamp in specified time interval. Implementations that can
+     * read only summary fields should override default implementation that reads whole events.
+     *
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @return a page of event summaries
+     */
+    default Page<EventSummary> findSummaries(long from, long to, Pageable pageable) {
+        return findAll(from, to, pageable).map(EventSummary::of);
+    }
+
+    /**
+     * Returns a {@link Page} of summaries of events with timestamp in specified time interval that match filter.
+     *
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @param filter must not be {@literal null}.
+     * @return a page of event summaries
+     */
+    default Page<EventSummary> findSummaries(long from, long to, EventFilter filter, Pageable pageable) {
+        return filter.isEmpty() ? findSummaries(from, to, pageable)
+                : findAll(from, to, filter, pageable).map(EventSummary::of);
+    }
+
+    /**
+     * Returns number of events with timestamp in specified time interval that match filter per time bucket and group.
+     * Default implementation reads events of interval, implementations that can aggregate events in storage should
+     * override it.
+     *
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @param bucketSize size of time bucket (in milliseconds). Must be greater than zero.
+     * @param grouping field that groups events. Must not be {@literal null}.
+     * @param filter must not be {@literal null}.
+     * @return histogram of events
+     * @throws IllegalArgumentException if interval contains more than {@link EventHistogram#MAX_BUCKETS} buckets.
+     */
+    default EventHistogram histogram(long from, long to, long bucketSize, EventGrouping grouping, EventFilter filter) {
+        EventHistogram histogram = new EventHistogram(from, to, bucketSize);
+        try (CloseableIterator<Event> events = findAll(from, to, filter)) {
+            events.forEachRemaining(event -> histogram.add(grouping.groupOf(event), event.getTimestamp(), 1));
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns events with timestamp in specified time interval that follow specified key in order of (timestamp, id).
+     * Unlike {@link #findAll(long, long, Pageable)} query seeks to key with index instead of skipping documents, so
+     * cost of request doesn't depend on how far is key from start of interval.
+     *
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @param after key of last received event. If {@literal null} events are returned from the start of interval.
+     * @param limit maximum number of returned events. Must be greater than zero.
+     * @param direction order of events by timestamp and id.
+     * @return list of events ordered in specified direction.
+     */
+    List<Event> findAll(long from, long to, EventKey after, int limit, Sort.Direction direction);
+
+    /**
+     * Removes events with timestamp in specified time interval.
+     *
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     */
+    void delete(long from, long to);
+
     /**
      * Returns the number of entities available.
      *
      * @return the number of entities
      */
     long count();
+
+    /**
+     * Returns the number of events with timestamp in specified time interval.
+     *
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @return the number of events
+     */
+    long count(long from, long to);
+
+    /**
+     * Returns the number of events with timestamp in specified time interval that match filter.
+     *
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @param filter must not be {@literal null}.
+     * @return the number of events
+     */
+    default long count(long from, long to, EventFilter filter) {
+        if (filter.isEmpty()) {
+            return count(from, to);
+        }
+
+        long count = 0;
+        try (CloseableIterator<Event> events = findAll(from, to, filter)) {
+            while (events.hasNext()) {
+                events.next();
+                count++;
+            }
+        }
+        return count;
+    }
 }
@@ -0,0 +1,99 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.messaging.data.event.Event;
+import org.ametiste.scm.messaging.data.event.InstanceLifecycleEvent;
+
+import java.util.Objects;
+
+/**
+ * Criteria of events selection by lifecycle event type, instance id and node id.
+ * <p>
+ * Each criterion is optional ({@literal null} value matches any event), specified criteria are combined with AND.
+ * Criteria match fields of {@code InstanceLifecycleEvent}, so other events match only empty filter. Stores based on
+ * Mongo push criteria down to query that is served with compound indices {@code (type, timestamp)},
+ * {@code (instanceId, timestamp)} and {@code (nodeId, timestamp)}, other stores check events with
+ * {@link #test(Event)}.
+ */
+public class EventFilter {
+
+    /**
+     * Filter that matches all events.
+     */
+    public static final EventFilter NONE = new EventFilter(null, null, null);
+
+    private final String type;
+    private final String instanceId;
+    private final String nodeId;
+
+    /**
+     * Create instance of {@code EventFilter}.
+     * @param type name of lifecycle event type. Might be {@literal null}.
+     * @param instanceId id of event instance. Might be {@literal null}.
+     * @param nodeId id of event node. Might be {@literal null}.
+     */
+    public EventFilter(String type, String instanceId, String nodeId) {
+        this.type = type;
+        this.instanceId = instanceId;
+        this.nodeId = nodeId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return {@literal true} if filter has no criteria and matches all events.
+     */
+    public boolean isEmpty() {
+        return type == null && instanceId == null && nodeId == null;
+    }
+
+    /**
+     * @param event must not be {@literal null}.
+     * @return {@literal true} if event matches all criteria of filter.
+     */
+    public boolean test(Event event) {
+        if (isEmpty()) {
+            return true;
+        }
+        if (!(event instanceof InstanceLifecycleEvent)) {
+            return false;
+        }
+
+        InstanceLifecycleEvent lifecycleEvent = (InstanceLifecycleEvent) event;
+        return (type == null || (lifecycleEvent.getType() != null && type.equals(lifecycleEvent.getType().name())))
+                && (instanceId == null || instanceId.equals(lifecycleEvent.getInstanceId()))
+                && (nodeId == null || nodeId.equals(lifecycleEvent.getNodeId()));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        EventFilter filter = (EventFilter) o;
+        return Objects.equals(type, filter.type) && Objects.equals(instanceId, filter.instanceId)
+                && Objects.equals(nodeId, filter.nodeId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, instanceId, nodeId);
+    }
+
+    @Override
+    public String toString() {
+        return "EventFilter{type=" + type + ", instanceId=" + instanceId + ", nodeId=" + nodeId + "}";
+    }
+}
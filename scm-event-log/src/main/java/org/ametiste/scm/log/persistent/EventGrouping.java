@@ -0,0 +1,61 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.messaging.data.event.Event;
+import org.ametiste.scm.messaging.data.event.InstanceLifecycleEvent;
+
+/**
+ * Field of {@code InstanceLifecycleEvent} that groups events in {@link EventHistogram}.
+ * <p>
+ * Each grouping is named after document field of event, so Mongo based stores group events with aggregation on the
+ * same field. Events that are not {@code InstanceLifecycleEvent} or have no value of field have {@literal null} group.
+ */
+public enum EventGrouping {
+
+    /**
+     * Group by name of lifecycle event type (e.g. "STARTUP", "SHUTDOWN").
+     */
+    TYPE("type"),
+
+    /**
+     * Group by id of event instance.
+     */
+    INSTANCE("instanceId"),
+
+    /**
+     * Group by id of node where instance is run.
+     */
+    NODE("nodeId");
+
+    private final String field;
+
+    EventGrouping(String field) {
+        this.field = field;
+    }
+
+    /**
+     * @return name of event document field.
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @param event must not be {@literal null}.
+     * @return group of event or {@literal null} if event has no value of field.
+     */
+    public String groupOf(Event event) {
+        if (!(event instanceof InstanceLifecycleEvent)) {
+            return null;
+        }
+
+        InstanceLifecycleEvent lifecycleEvent = (InstanceLifecycleEvent) event;
+        switch (this) {
+            case TYPE:
+                return lifecycleEvent.getType() != null ? lifecycleEvent.getType().name() : null;
+            case INSTANCE:
+                return lifecycleEvent.getInstanceId();
+            default:
+                return lifecycleEvent.getNodeId();
+        }
+    }
+}
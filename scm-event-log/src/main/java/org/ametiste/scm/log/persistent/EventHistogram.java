@@ -0,0 +1,112 @@
+package org.ametiste.scm.log.persistent;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Number of events per time bucket and group in columnar form.
+ * <p>
+ * Buckets are aligned to multiples of bucket size (the same way as {@link MongoEventCounters} buckets), so edge buckets
+ * of interval might be partial. Histogram contains start time of each bucket and one series of counts per group, i-th
+ * count of series belongs to i-th bucket:
+ * <pre>
+ * { "bucketSize" : 60000, "buckets" : [ 1420070400000, 1420070460000 ],
+ *   "series" : { "SHUTDOWN" : [ 1, 2 ], "STARTUP" : [ 3, 0 ] } }
+ * </pre>
+ * Events without group are counted in series {@link #NO_GROUP}. Number of buckets is limited with {@link #MAX_BUCKETS}.
+ */
+public class EventHistogram {
+
+    public static final int MAX_BUCKETS = 10000;
+    public static final String NO_GROUP = "";
+
+    private final long bucketSize;
+    private final long first;
+    private final int length;
+    private final Map<String, long[]> series = new TreeMap<>();
+
+    /**
+     * Create empty histogram of specified time interval.
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive). Must not be less than {@code from}.
+     * @param bucketSize size of time bucket (in milliseconds). Must be greater than zero.
+     * @throws IllegalArgumentException if interval contains more than {@link #MAX_BUCKETS} buckets.
+     */
+    public EventHistogram(long from, long to, long bucketSize) {
+        isTrue(bucketSize > 0, "'bucketSize' must be greater than zero!");
+        isTrue(from <= to, "'from' must not be greater than 'to'!");
+
+        this.bucketSize = bucketSize;
+        this.first = Math.floorDiv(from, bucketSize) * bucketSize;
+        long buckets = buckets(from, to, bucketSize);
+        isTrue(buckets <= MAX_BUCKETS, "histogram must not contain more than %d buckets!", MAX_BUCKETS);
+        this.length = (int) buckets;
+    }
+
+    /**
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive). Must not be less than {@code from}.
+     * @param bucketSize size of time bucket (in milliseconds). Must be greater than zero.
+     * @return number of aligned buckets that cover time interval.
+     */
+    public static long buckets(long from, long to, long bucketSize) {
+        return Math.floorDiv(to, bucketSize) - Math.floorDiv(from, bucketSize) + 1;
+    }
+
+    /**
+     * Add events to bucket that contains specified time. Events outside of histogram interval are ignored.
+     * @param group group of events. Might be {@literal null}.
+     * @param timestamp time of events in milliseconds.
+     * @param count number of events.
+     */
+    public void add(String group, long timestamp, long count) {
+        long index = Math.floorDiv(timestamp - first, bucketSize);
+        if (index < 0 || index >= length || count == 0) {
+            return;
+        }
+        series.computeIfAbsent(group != null ? group : NO_GROUP, key -> new long[length])[(int) index] += count;
+    }
+
+    /**
+     * Add counts of other histogram with the same bucket size (e.g. histogram of storage partition).
+     * @param other histogram to add. Must not be {@literal null}.
+     */
+    public void addAll(EventHistogram other) {
+        isTrue(other != null, "'other' must be initialized!");
+        isTrue(other.bucketSize == bucketSize, "histograms must have the same bucket size!");
+
+        other.series.forEach((group, counts) -> {
+            for (int i = 0; i < counts.length; i++) {
+                add(group, other.first + i * bucketSize, counts[i]);
+            }
+        });
+    }
+
+    /**
+     * @return size of time bucket (in milliseconds).
+     */
+    public long getBucketSize() {
+        return bucketSize;
+    }
+
+    /**
+     * @return start times of buckets in ascending order.
+     */
+    public long[] getBuckets() {
+        long[] buckets = new long[length];
+        for (int i = 0; i < length; i++) {
+            buckets[i] = first + i * bucketSize;
+        }
+        return buckets;
+    }
+
+    /**
+     * @return map from group to counts of events per bucket. Groups without events are absent.
+     */
+    public Map<String, long[]> getSeries() {
+        return Collections.unmodifiableMap(series);
+    }
+}
@@ -0,0 +1,71 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.messaging.data.event.Event;
+
+import java.util.Objects;
+import java.util.UUID;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Position of event in timestamp order of repository.
+ * <p>
+ * Events with equal timestamp are ordered by id, so key identifies position of event uniquely and allows to resume
+ * range query right after last received event (keyset pagination) without skipping already read documents.
+ */
+public class EventKey {
+
+    private final long timestamp;
+    private final UUID id;
+
+    /**
+     * Create instance of {@code EventKey}.
+     * @param timestamp event timestamp in milliseconds.
+     * @param id event id.
+     */
+    public EventKey(long timestamp, UUID id) {
+        isTrue(id != null, "'id' must be initialized!");
+
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    /**
+     * @param event must not be {@literal null}.
+     * @return key of specified event.
+     */
+    public static EventKey of(Event event) {
+        isTrue(event != null, "'event' must not be null!");
+        return new EventKey(event.getTimestamp(), event.getId());
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        EventKey key = (EventKey) o;
+        return timestamp == key.timestamp && id.equals(key.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timestamp, id);
+    }
+
+    @Override
+    public String toString() {
+        return "EventKey{timestamp=" + timestamp + ", id=" + id + "}";
+    }
+}
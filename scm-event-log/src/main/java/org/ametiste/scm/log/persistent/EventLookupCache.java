@@ -0,0 +1,308 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.messaging.data.event.Event;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Bounded LRU cache of events looked up by id.
+ * <p>
+ * Cache is bounded by number of entries and by total weight of cached events (e.g. size of serialized event). Least
+ * recently used entries are evicted when any bound is exceeded, event heavier than weight bound is not cached. Misses of
+ * store are cached as negative entries that expire after {@code negativeTtl} milliseconds, so lookups of event that is
+ * not written yet go to store again soon.
+ * <p>
+ * Stored events are immutable, but they might be overwritten by save of duplicates, so saved ids must be invalidated
+ * with {@link #invalidate(Collection)} (see {@link LookupCachingEventDAO}). Loads of store in progress are tracked per
+ * id, result of load is not cached if its id was invalidated (or its interval removed) while it was running. Inserts
+ * don't invalidate anything, so lookups that run concurrently with ingest are cached as usual.
+ * <p>
+ * Cache is thread safe. Store is requested outside of cache lock, so concurrent misses of the same id might request
+ * store several times.
+ */
+public class EventLookupCache {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long negativeTtl;
+    private final ToLongFunction<Event> weigher;
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<UUID, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<UUID, Load> loads = new HashMap<>();
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create instance of {@code EventLookupCache}.
+     * @param maxEntries maximum number of cached entries. Must be greater than zero.
+     * @param maxWeight maximum total weight of cached events. Must be greater than zero.
+     * @param negativeTtl time to live of negative entries (in milliseconds), {@literal 0} disables negative caching.
+     * @param weigher function that calculates weight of event.
+     */
+    public EventLookupCache(int maxEntries, long maxWeight, long negativeTtl, ToLongFunction<Event> weigher) {
+        this(maxEntries, maxWeight, negativeTtl, weigher, System::currentTimeMillis);
+    }
+
+    EventLookupCache(int maxEntries, long maxWeight, long negativeTtl, ToLongFunction<Event> weigher,
+                     LongSupplier clock) {
+        isTrue(maxEntries > 0, "'maxEntries' must be greater than zero!");
+        isTrue(maxWeight > 0, "'maxWeight' must be greater than zero!");
+        isTrue(negativeTtl >= 0, "'negativeTtl' must not be negative!");
+        isTrue(weigher != null, "'weigher' must be initialized!");
+        isTrue(clock != null, "'clock' must be initialized!");
+
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.negativeTtl = negativeTtl;
+        this.weigher = weigher;
+        this.clock = clock;
+    }
+
+    /**
+     * Return cached event or load it with loader and cache result.
+     * @param id id of event. Must not be {@literal null}.
+     * @param loader function that reads event from store, returns {@literal null} if event doesn't exist.
+     * @return event or {@literal null} if event doesn't exist.
+     */
+    public Event find(UUID id, Function<UUID, Event> loader) {
+        isTrue(id != null, "'id' must be initialized!");
+
+        Load load;
+        synchronized (this) {
+            Entry entry = entries.get(id);
+            if (entry != null && entry.event != null) {
+                hits.increment();
+                return entry.event;
+            }
+            if (entry != null && entry.expires > clock.getAsLong()) {
+                negativeHits.increment();
+                return null;
+            }
+            if (entry != null) {
+                remove(id);
+            }
+            load = startLoad(id);
+        }
+
+        misses.increment();
+        Event event = null;
+        boolean succeeded = false;
+        try {
+            event = loader.apply(id);
+            succeeded = true;
+        } finally {
+            synchronized (this) {
+                if (finishLoad(id, load) && succeeded) {
+                    put(id, event);
+                }
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Return cached events and load all missed ones with one request of loader. Result of loader is cached, ids that
+     * are not found are cached as negative entries.
+     * @param ids ids of events. Must not be {@literal null} and must not contain {@literal null}.
+     * @param loader function that reads events of ids from store, returns found events only.
+     * @return map from id to event, ids of events that don't exist are absent.
+     */
+    public Map<UUID, Event> findAll(Collection<UUID> ids, Function<Collection<UUID>, List<Event>> loader) {
+        isTrue(ids != null, "'ids' must be initialized!");
+        isTrue(ids.stream().allMatch(Objects::nonNull), "'ids' must not contain null!");
+
+        Map<UUID, Event> result = new HashMap<>();
+        List<UUID> missed = new ArrayList<>();
+        List<Load> missedLoads = new ArrayList<>();
+        synchronized (this) {
+            for (UUID id : new LinkedHashSet<>(ids)) {
+                Entry entry = entries.get(id);
+                if (entry != null && entry.event != null) {
+                    hits.increment();
+                    result.put(id, entry.event);
+                } else if (entry != null && entry.expires > clock.getAsLong()) {
+                    negativeHits.increment();
+                } else {
+                    if (entry != null) {
+                        remove(id);
+                    }
+                    missed.add(id);
+                    missedLoads.add(startLoad(id));
+                }
+            }
+        }
+        if (missed.isEmpty()) {
+            return result;
+        }
+
+        misses.add(missed.size());
+        Map<UUID, Event> loaded = new HashMap<>();
+        boolean succeeded = false;
+        try {
+            loader.apply(missed).forEach(event -> loaded.put(event.getId(), event));
+            succeeded = true;
+        } finally {
+            synchronized (this) {
+                for (int i = 0; i < missed.size(); i++) {
+                    UUID id = missed.get(i);
+                    if (finishLoad(id, missedLoads.get(i)) && succeeded) {
+                        put(id, loaded.get(id));
+                    }
+                }
+            }
+        }
+        result.putAll(loaded);
+        return result;
+    }
+
+    /**
+     * Remove entries of overwritten events, results of their loads in progress are not cached.
+     * @param written events saved to store.
+     */
+    public synchronized void invalidate(Collection<? extends Event> written) {
+        isTrue(written != null, "'written' must be initialized!");
+
+        written.stream().filter(Objects::nonNull).forEach(event -> {
+            remove(event.getId());
+            Load load = loads.get(event.getId());
+            if (load != null) {
+                load.invalidated = true;
+            }
+        });
+    }
+
+    /**
+     * Remove cached events with timestamp in specified time interval and all negative entries.
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     */
+    public synchronized void remove(long from, long to) {
+        loads.values().forEach(load -> load.invalidated = true);
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.event == null || (entry.event.getTimestamp() >= from && entry.event.getTimestamp() <= to)) {
+                weight -= entry.weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return total weight of cached events.
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private void put(UUID id, Event event) {
+        if (event == null && negativeTtl == 0) {
+            return;
+        }
+
+        long eventWeight = event != null ? weigher.applyAsLong(event) : 0;
+        if (eventWeight > maxWeight) {
+            return;
+        }
+
+        remove(id);
+        entries.put(id, new Entry(event, eventWeight, event == null ? clock.getAsLong() + negativeTtl : 0));
+        weight += eventWeight;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || weight > maxWeight) {
+            Entry entry = eldest.next();
+            weight -= entry.weight;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private Load startLoad(UUID id) {
+        Load load = loads.computeIfAbsent(id, key -> new Load());
+        load.count++;
+        return load;
+    }
+
+    /**
+     * @return {@literal true} if result of load might be cached.
+     */
+    private boolean finishLoad(UUID id, Load load) {
+        if (--load.count == 0) {
+            loads.remove(id);
+        }
+        return !load.invalidated;
+    }
+
+    private void remove(UUID id) {
+        Entry entry = entries.remove(id);
+        if (entry != null) {
+            weight -= entry.weight;
+        }
+    }
+
+    /**
+     * Loads of store in progress for one id. Invalidated flag stays set until all of them finish.
+     */
+    private static class Load {
+
+        private int count;
+        private boolean invalidated;
+    }
+
+    /**
+     * Cached event or negative entry if event is {@literal null}.
+     */
+    private static class Entry {
+
+        private final Event event;
+        private final long weight;
+        private final long expires;
+
+        private Entry(Event event, long weight, long expires) {
+            this.event = event;
+            this.weight = weight;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.messaging.data.event.Event;
+import org.ametiste.scm.messaging.data.event.InstanceLifecycleEvent;
+
+import java.util.Objects;
+import java.util.UUID;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Short representation of event for listings: id, type, timestamp and instance.
+ * <p>
+ * Type is simple name of event class, the same as in {@code EventInfoResponse}. Instance is defined for
+ * {@code InstanceLifecycleEvent} only and is {@literal null} for other events.
+ */
+public class EventSummary {
+
+    private final UUID id;
+    private final String type;
+    private final long timestamp;
+    private final String instanceId;
+
+    /**
+     * Create instance of {@code EventSummary}.
+     * @param id event id.
+     * @param type simple name of event class.
+     * @param timestamp event timestamp in milliseconds.
+     * @param instanceId id of event instance. Might be {@literal null}.
+     */
+    public EventSummary(UUID id, String type, long timestamp, String instanceId) {
+        isTrue(id != null, "'id' must be initialized!");
+
+        this.id = id;
+        this.type = type;
+        this.timestamp = timestamp;
+        this.instanceId = instanceId;
+    }
+
+    /**
+     * @param event must not be {@literal null}.
+     * @return summary of specified event.
+     */
+    public static EventSummary of(Event event) {
+        isTrue(event != null, "'event' must not be null!");
+        String instanceId = event instanceof InstanceLifecycleEvent
+                ? ((InstanceLifecycleEvent) event).getInstanceId() : null;
+        return new EventSummary(event.getId(), event.getClass().getSimpleName(), event.getTimestamp(), instanceId);
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        EventSummary summary = (EventSummary) o;
+        return timestamp == summary.timestamp && id.equals(summary.id) && Objects.equals(type, summary.type)
+                && Objects.equals(instanceId, summary.instanceId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, type, timestamp, instanceId);
+    }
+
+    @Override
+    public String toString() {
+        return "EventSummary{id=" + id + ", type=" + type + ", timestamp=" + timestamp + ", instanceId=" + instanceId
+                + "}";
+    }
+}
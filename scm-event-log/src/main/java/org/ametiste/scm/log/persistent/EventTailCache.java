@@ -0,0 +1,163 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.*;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Bounded in-memory cache of the most recent events (hot tail of event store).
+ * <p>
+ * Cache keeps up to {@code capacity} events with the greatest timestamps ordered by (timestamp, id). It covers all
+ * stored events with timestamp not less than horizon: when event is evicted horizon is moved after its timestamp, and
+ * events older than horizon are not cached. So cache answers request for last events while it holds enough of them and
+ * request for time range that starts not earlier than horizon, otherwise it returns {@literal null} and request should
+ * be served by store.
+ * <p>
+ * Cache is loaded from store with {@link #warm(EventDAO)} and doesn't answer requests before it. After that it must be
+ * notified about all written and deleted events (see {@link TailCachingEventDAO}), so it is consistent with store only
+ * if store is written by one service instance.
+ * <p>
+ * Cache is thread safe. Returned lists are copies.
+ */
+public class EventTailCache {
+
+    private static final Comparator<EventKey> ORDER = Comparator.comparingLong(EventKey::getTimestamp)
+            .thenComparing(EventKey::getId);
+
+    private final int capacity;
+
+    private final NavigableMap<EventKey, Event> events = new TreeMap<>(ORDER);
+    private final Map<UUID, EventKey> keys = new HashMap<>();
+    private long horizon = Long.MIN_VALUE;
+    private boolean warmed;
+
+    /**
+     * Create instance of {@code EventTailCache}.
+     * @param capacity maximum number of cached events. Must be greater than zero.
+     */
+    public EventTailCache(int capacity) {
+        isTrue(capacity > 0, "'capacity' must be greater than zero!");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Load the most recent events from store. Events added before warm up are kept.
+     * @param eventDAO store of events.
+     */
+    public synchronized void warm(EventDAO eventDAO) {
+        isTrue(eventDAO != null, "'eventDAO' must be initialized!");
+
+        List<Event> latest = eventDAO.findAll(new PageRequest(0, capacity, new Sort(Sort.Direction.DESC, "timestamp")))
+                .getContent();
+        if (latest.size() == capacity) {
+            // store might contain more events with timestamp of the oldest loaded one
+            horizon = Math.max(horizon, latest.get(latest.size() - 1).getTimestamp() + 1);
+        }
+        latest.forEach(this::put);
+        trim();
+        warmed = true;
+    }
+
+    /**
+     * Add written events. Events older than horizon are ignored, event with id that is already cached replaces
+     * previous one.
+     * @param written events written to store.
+     */
+    public synchronized void addAll(Collection<? extends Event> written) {
+        isTrue(written != null, "'written' must be initialized!");
+        written.stream().filter(Objects::nonNull).forEach(this::put);
+        trim();
+    }
+
+    /**
+     * Remove events with timestamp in specified time interval.
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     */
+    public synchronized void remove(long from, long to) {
+        if (from > to) {
+            return;
+        }
+        NavigableMap<EventKey, Event> removed = events.subMap(
+                new EventKey(from, new UUID(Long.MIN_VALUE, Long.MIN_VALUE)), true,
+                new EventKey(to, new UUID(Long.MAX_VALUE, Long.MAX_VALUE)), true);
+        removed.keySet().forEach(key -> keys.remove(key.getId()));
+        removed.clear();
+    }
+
+    /**
+     * @param count number of events. Must be greater than zero.
+     * @return last events in descending order of timestamp or {@literal null} if cache can't answer request.
+     */
+    public synchronized List<Event> last(int count) {
+        isTrue(count > 0, "'count' must be greater than zero!");
+
+        if (!warmed || (count > events.size() && horizon != Long.MIN_VALUE)) {
+            return null;
+        }
+        List<Event> result = new ArrayList<>(Math.min(count, events.size()));
+        for (Event event : events.descendingMap().values()) {
+            if (result.size() == count) {
+                break;
+            }
+            result.add(event);
+        }
+        return result;
+    }
+
+    /**
+     * @param from start of time interval (inclusive).
+     * @param to end of time interval (inclusive).
+     * @return events with timestamp in specified time interval in ascending order of timestamp or {@literal null} if
+     * cache doesn't cover interval.
+     */
+    public synchronized List<Event> find(long from, long to) {
+        if (!warmed || from < horizon) {
+            return null;
+        }
+        if (from > to) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(events.subMap(
+                new EventKey(from, new UUID(Long.MIN_VALUE, Long.MIN_VALUE)), true,
+                new EventKey(to, new UUID(Long.MAX_VALUE, Long.MAX_VALUE)), true).values());
+    }
+
+    /**
+     * @return number of cached events.
+     */
+    public synchronized int size() {
+        return events.size();
+    }
+
+    private void put(Event event) {
+        if (event.getTimestamp() < horizon) {
+            return;
+        }
+        EventKey key = EventKey.of(event);
+        EventKey previous = keys.put(event.getId(), key);
+        if (previous != null) {
+            events.remove(previous);
+        }
+        events.put(key, event);
+    }
+
+    private void trim() {
+        evictBeforeHorizon();
+        while (events.size() > capacity) {
+            // events with timestamp of evicted one are not covered anymore
+            horizon = events.firstKey().getTimestamp() + 1;
+            evictBeforeHorizon();
+        }
+    }
+
+    private void evictBeforeHorizon() {
+        while (!events.isEmpty() && events.firstKey().getTimestamp() < horizon) {
+            keys.remove(events.pollFirstEntry().getKey().getId());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.NoSuchElementException;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * {@code CloseableIterator} that skips events of source iterator that don't match {@link EventFilter}.
+ */
+public class FilteredEventIterator implements CloseableIterator<Event> {
+
+    private final CloseableIterator<Event> source;
+    private final EventFilter filter;
+    private Event next;
+
+    /**
+     * Create instance of {@code FilteredEventIterator}.
+     * @param source iterator of all events.
+     * @param filter filter of returned events.
+     */
+    public FilteredEventIterator(CloseableIterator<Event> source, EventFilter filter) {
+        isTrue(source != null, "'source' must be initialized!");
+        isTrue(filter != null, "'filter' must be initialized!");
+
+        this.source = source;
+        this.filter = filter;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && source.hasNext()) {
+            Event event = source.next();
+            if (filter.test(event)) {
+                next = event;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public Event next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Event event = next;
+        next = null;
+        return event;
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+}
@@ -0,0 +1,128 @@
+package org.ametiste.scm.log.persistent;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.ametiste.scm.messaging.data.event.InstanceLifecycleEvent;
+import org.ametiste.scm.messaging.data.mongo.event.InstanceLifecycleEventDocument;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * {@code EventCodec} for {@code InstanceLifecycleEvent}.
+ * <p>
+ * Codec writes the same layout as {@code MappingMongoConverter} writes for {@code InstanceLifecycleEventDocument}:
+ * {@literal null} fields are omitted, enum is written by name and dots in keys of properties map (including nested
+ * maps) are replaced with {@literal +} as configured in {@code MongoDbConfiguration}. Converter has no conversion for
+ * {@code URI} and writes it as nested document of internal fields of {@code URI}, codec writes nested document with
+ * only {@literal string} field of the same name, which is the field both of them read.
+ */
+public class InstanceLifecycleEventCodec implements EventCodec<InstanceLifecycleEvent> {
+
+    private static final String MAP_KEY_DOT_REPLACEMENT = "+";
+
+    @Override
+    public Class<InstanceLifecycleEvent> getEventClass() {
+        return InstanceLifecycleEvent.class;
+    }
+
+    @Override
+    public String getDocumentType() {
+        return InstanceLifecycleEventDocument.class.getName();
+    }
+
+    @Override
+    public DBObject encode(InstanceLifecycleEvent event) {
+        isTrue(event != null, "'event' must not be null!");
+
+        BasicDBObject document = new BasicDBObject("_id", event.getId());
+        document.put(EventCodecRegistry.TYPE_KEY, getDocumentType());
+        document.put("timestamp", event.getTimestamp());
+        putIfNotNull(document, "type", event.getType() != null ? event.getType().name() : null);
+        putIfNotNull(document, "instanceId", event.getInstanceId());
+        putIfNotNull(document, "version", event.getVersion());
+        putIfNotNull(document, "properties", event.getProperties() != null ? writeMap(event.getProperties()) : null);
+        putIfNotNull(document, "nodeId", event.getNodeId());
+        putIfNotNull(document, "uri", event.getUri() != null ? writeUri(event.getUri()) : null);
+        return document;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public InstanceLifecycleEvent decode(DBObject document) {
+        isTrue(document != null, "'document' must not be null!");
+
+        Object type = document.get("type");
+        Object properties = document.get("properties");
+        return InstanceLifecycleEvent.builder()
+                .id((UUID) document.get("_id"))
+                .timestamp(((Number) document.get("timestamp")).longValue())
+                .type(type != null ? InstanceLifecycleEvent.Type.valueOf(type.toString()) : null)
+                .instanceId((String) document.get("instanceId"))
+                .version((String) document.get("version"))
+                .properties(properties != null ? (Map<String, Object>) readValue(properties) : null)
+                .nodeId((String) document.get("nodeId"))
+                .uri(readUri(document.get("uri")))
+                .build();
+    }
+
+    private static void putIfNotNull(DBObject document, String key, Object value) {
+        if (value != null) {
+            document.put(key, value);
+        }
+    }
+
+    private static DBObject writeMap(Map<?, ?> map) {
+        BasicDBObject document = new BasicDBObject();
+        map.forEach((key, value) -> document.put(key.toString().replace(".", MAP_KEY_DOT_REPLACEMENT), writeValue(value)));
+        return document;
+    }
+
+    private static Object writeValue(Object value) {
+        if (value instanceof Map) {
+            return writeMap((Map<?, ?>) value);
+        } else if (value instanceof Collection) {
+            BasicDBList list = new BasicDBList();
+            ((Collection<?>) value).forEach(element -> list.add(writeValue(element)));
+            return list;
+        }
+        return value;
+    }
+
+    private static Object readValue(Object value) {
+        if (value instanceof BasicDBList) {
+            BasicDBList list = (BasicDBList) value;
+            BasicDBList result = new BasicDBList();
+            list.forEach(element -> result.add(readValue(element)));
+            return result;
+        } else if (value instanceof DBObject) {
+            DBObject document = (DBObject) value;
+            Map<String, Object> map = new LinkedHashMap<>();
+            document.keySet().forEach(key ->
+                    map.put(key.replace(MAP_KEY_DOT_REPLACEMENT, "."), readValue(document.get(key))));
+            return map;
+        }
+        return value;
+    }
+
+    private static DBObject writeUri(URI uri) {
+        return new BasicDBObject("string", uri.toString());
+    }
+
+    /**
+     * Uri is stored as nested document with {@literal string} field (documents written by converter have other fields
+     * of {@code URI} too), documents written by earlier versions of codec store it as string.
+     */
+    private static URI readUri(Object value) {
+        if (value instanceof DBObject) {
+            value = ((DBObject) value).get("string");
+        }
+        return value != null ? URI.create(value.toString()) : null;
+    }
+}
@@ -0,0 +1,161 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Decorator of {@code EventDAO} that looks up events by id through {@link EventLookupCache}. Lookup of many ids
+ * requests decorated DAO once for all ids missed in cache.
+ * <p>
+ * Saved events are invalidated in cache after save operation (also failed one, because part of events might be
+ * overwritten), removed time intervals are removed from cache. Insert doesn't overwrite stored events, so it doesn't
+ * invalidate cache: misses of inserted events expire with negative entries. Other read operations are delegated
+ * without cache.
+ */
+public class LookupCachingEventDAO implements EventDAO {
+
+    private final EventDAO eventDAO;
+    private final EventLookupCache cache;
+
+    /**
+     * Create instance of {@code LookupCachingEventDAO}.
+     * @param eventDAO decorated DAO.
+     * @param cache cache of events looked up by id.
+     */
+    public LookupCachingEventDAO(EventDAO eventDAO, EventLookupCache cache) {
+        isTrue(eventDAO != null, "'eventDAO' must be initialized!");
+        isTrue(cache != null, "'cache' must be initialized!");
+
+        this.eventDAO = eventDAO;
+        this.cache = cache;
+    }
+
+    @Override
+    public <S extends Event> S insert(S entity) {
+        return eventDAO.insert(entity);
+    }
+
+    @Override
+    public <S extends Event> S save(S entity) {
+        try {
+            return eventDAO.save(entity);
+        } finally {
+            cache.invalidate(Collections.singleton(entity));
+        }
+    }
+
+    @Override
+    public Collection<Event> insert(Collection<Event> entities) {
+        return eventDAO.insert(entities);
+    }
+
+    @Override
+    public Collection<Event> save(Collection<Event> entities) {
+        try {
+            return eventDAO.save(entities);
+        } finally {
+            if (entities != null) {
+                cache.invalidate(entities);
+            }
+        }
+    }
+
+    @Override
+    public Event findOne(UUID id) {
+        isTrue(id != null, "The given uuid must not be null!");
+        return cache.find(id, eventDAO::findOne);
+    }
+
+    @Override
+    public List<Event> findAll(Collection<UUID> ids) {
+        isTrue(ids != null, "'ids' must be initialized!");
+        return new ArrayList<>(cache.findAll(ids, eventDAO::findAll).values());
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll() {
+        return eventDAO.findAll();
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll(long from, long to) {
+        return eventDAO.findAll(from, to);
+    }
+
+    @Override
+    public Page<Event> findAll(Pageable pageable) {
+        return eventDAO.findAll(pageable);
+    }
+
+    @Override
+    public Page<Event> findAll(long from, long to, Pageable pageable) {
+        return eventDAO.findAll(from, to, pageable);
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll(long from, long to, EventFilter filter) {
+        return eventDAO.findAll(from, to, filter);
+    }
+
+    @Override
+    public Page<Event> findAll(long from, long to, EventFilter filter, Pageable pageable) {
+        return eventDAO.findAll(from, to, filter, pageable);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(Pageable pageable) {
+        return eventDAO.findSummaries(pageable);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(long from, long to, Pageable pageable) {
+        return eventDAO.findSummaries(from, to, pageable);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(long from, long to, EventFilter filter, Pageable pageable) {
+        return eventDAO.findSummaries(from, to, filter, pageable);
+    }
+
+    @Override
+    public List<Event> findAll(long from, long to, EventKey after, int limit, Sort.Direction direction) {
+        return eventDAO.findAll(from, to, after, limit, direction);
+    }
+
+    @Override
+    public void delete(long from, long to) {
+        eventDAO.delete(from, to);
+        cache.remove(from, to);
+    }
+
+    @Override
+    public long count() {
+        return eventDAO.count();
+    }
+
+    @Override
+    public long count(long from, long to) {
+        return eventDAO.count(from, to);
+    }
+
+    @Override
+    public long count(long from, long to, EventFilter filter) {
+        return eventDAO.count(from, to, filter);
+    }
+
+    @Override
+    public EventHistogram histogram(long from, long to, long bucketSize, EventGrouping grouping, EventFilter filter) {
+        return eventDAO.histogram(from, to, bucketSize, grouping, filter);
+    }
+}
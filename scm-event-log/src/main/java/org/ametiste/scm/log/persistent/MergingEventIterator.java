@@ -0,0 +1,102 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.*;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * {@code CloseableIterator} that merges several iterators ordered by event timestamp into one ordered iterator.
+ * <p>
+ * Same event might be returned by more than one source (for example, when it was copied to another storage but not
+ * removed from previous one yet). Such duplicates have equal timestamps, so iterator remembers ids of events returned
+ * with current timestamp and skips repeated ones.
+ * <p>
+ * Events with equal timestamps are returned in order of sources. All sources are opened on first access and closed
+ * together when iterator is closed.
+ */
+public class MergingEventIterator implements CloseableIterator<Event> {
+
+    private final List<CloseableIterator<Event>> sources;
+    private final PriorityQueue<Head> heads = new PriorityQueue<>();
+    private final Set<UUID> returned = new HashSet<>();
+
+    private boolean initialized;
+    private long timestamp;
+    private Event next;
+
+    /**
+     * Create instance of {@code MergingEventIterator}.
+     * @param sources iterators of events ordered by timestamp.
+     */
+    public MergingEventIterator(List<CloseableIterator<Event>> sources) {
+        isTrue(sources != null, "'sources' must be initialized!");
+        this.sources = new ArrayList<>(sources);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!initialized) {
+            for (int i = 0; i < sources.size(); i++) {
+                advance(i);
+            }
+            initialized = true;
+        }
+
+        while (next == null && !heads.isEmpty()) {
+            Head head = heads.poll();
+            advance(head.source);
+
+            Event event = head.event;
+            if (event.getTimestamp() != timestamp) {
+                timestamp = event.getTimestamp();
+                returned.clear();
+            }
+            if (returned.add(event.getId())) {
+                next = event;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public Event next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Event event = next;
+        next = null;
+        return event;
+    }
+
+    @Override
+    public void close() {
+        sources.forEach(CloseableIterator::close);
+        heads.clear();
+    }
+
+    private void advance(int source) {
+        if (sources.get(source).hasNext()) {
+            heads.add(new Head(sources.get(source).next(), source));
+        }
+    }
+
+    private static class Head implements Comparable<Head> {
+
+        private final Event event;
+        private final int source;
+
+        private Head(Event event, int source) {
+            this.event = event;
+            this.source = source;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            int result = Long.compare(event.getTimestamp(), other.event.getTimestamp());
+            return result != 0 ? result : Integer.compare(source, other.source);
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package org.ametiste.scm.log.persistent;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.DuplicateKeyException;
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongBinaryOperator;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Pre-aggregated counters of stored events maintained in separate Mongo collection.
+ * <p>
+ * Time axis is split into buckets of fixed size. Each bucket is represented by one document with id equal to bucket
+ * start time. Document contains total number of events with timestamp inside bucket, numbers of events of each
+ * lifecycle event type (keyed by stored {@code type} field, see {@link EventGrouping#TYPE}), number of events that are
+ * being written to bucket and time of the last write reservation:
+ * <pre>
+ * { "_id" : 1420070400000, "total" : 15, "types" : { "STARTUP" : 10, "SHUTDOWN" : 5 }, "pending" : 0,
+ *   "reserved" : 1420071234567 }
+ * </pre>
+ * Writer reserves buckets with {@link #reserve(Collection)} before events are written and moves reserved events to
+ * total with {@link #increment(Collection, Collection)} after write. Bucket with pending events is counted exactly by
+ * {@link #count(long, long, String, LongBinaryOperator)}, so write interrupted between these steps (crash, failure of counters
+ * update) doesn't make counts wrong, it only makes bucket slower to count until it is reconciled.
+ * <p>
+ * Collection contains marker document with time until which buckets are verified against stored events. Only verified
+ * buckets are answered from counters, later time is counted exactly. {@link #verify(EventDAO, long)} moves marker
+ * forward by reconciling buckets that are not verified yet (on first run all buckets from the oldest stored event) and
+ * repairs buckets left pending by interrupted writes for longer than pending timeout. Bucket is reconciled by exact
+ * count of its events that replaces counter only if bucket document was not changed while events were counted, so
+ * reconciliation doesn't lose or double count concurrent writes. Buckets changed concurrently are skipped and
+ * reconciled on next attempt.
+ */
+public class MongoEventCounters {
+
+    public static final String COLLECTION_NAME = "eventCounters";
+    public static final long DEFAULT_PENDING_TIMEOUT = 600000;
+
+    private static final String VERIFIED_MARKER = "verified";
+    private static final String TYPES = "types";
+    private static final int RECONCILE_CHUNK_SIZE = 1000;
+
+    private final MongoOperations mongoOperations;
+    private final long bucketSize;
+    private final long pendingTimeout;
+    private final MongoExceptionTranslator exceptionTranslator = new MongoExceptionTranslator();
+
+    /**
+     * Create instance of {@code MongoEventCounters} with default pending timeout.
+     * @param mongoOperations {@code MongoOperations} object for communication with Mongo instance.
+     * @param bucketSize size of time bucket (in milliseconds). Must be greater than zero.
+     */
+    public MongoEventCounters(MongoOperations mongoOperations, long bucketSize) {
+        this(mongoOperations, bucketSize, DEFAULT_PENDING_TIMEOUT);
+    }
+
+    /**
+     * Create instance of {@code MongoEventCounters}.
+     * @param mongoOperations {@code MongoOperations} object for communication with Mongo instance.
+     * @param bucketSize size of time bucket (in milliseconds). Must be greater than zero.
+     * @param pendingTimeout time (in milliseconds) after the last reservation when pending events of bucket are
+     *                       considered left by interrupted write. Must be greater than zero.
+     */
+    public MongoEventCounters(MongoOperations mongoOperations, long bucketSize, long pendingTimeout) {
+        isTrue(mongoOperations != null, "'mongoOperations' must be initialized!");
+        isTrue(bucketSize > 0, "'bucketSize' must be greater than zero!");
+        isTrue(pendingTimeout > 0, "'pendingTimeout' must be greater than zero!");
+
+        this.mongoOperations = mongoOperations;
+        this.bucketSize = bucketSize;
+        this.pendingTimeout = pendingTimeout;
+    }
+
+    /**
+     * @return size of time bucket (in milliseconds).
+     */
+    public long getBucketSize() {
+        return bucketSize;
+    }
+
+    /**
+     * @param timestamp time in milliseconds.
+     * @return start time of bucket that contains specified time.
+     */
+    public long bucketOf(long timestamp) {
+        return Math.floorDiv(timestamp, bucketSize) * bucketSize;
+    }
+
+    /**
+     * Mark specified events as pending in their buckets. Should be invoked before events are written, failure of
+     * reservation should fail write. Events are grouped by bucket, so one update is sent for each affected bucket.
+     * @param events events to write. Must not be {@literal null}.
+     */
+    public void reserve(Collection<Event> events) {
+        isTrue(events != null, "'events' collection must not be null!");
+
+        long now = System.currentTimeMillis();
+        Map<Long, DBObject> updates = new HashMap<>();
+        countByBucket(events).forEach((bucket, count) -> updates.put(bucket,
+                new BasicDBObject("$inc", new BasicDBObject("pending", count))
+                        .append("$set", new BasicDBObject("reserved", now))));
+        update(updates, true);
+    }
+
+    /**
+     * Move reserved events out of pending and increment totals and type counters for events that were actually
+     * written. Events are grouped by bucket, so one update is sent for each affected bucket.
+     * @param reserved events reserved before write. Must not be {@literal null}.
+     * @param written events written to storage, subset of reserved events. Must not be {@literal null}.
+     */
+    public void increment(Collection<Event> reserved, Collection<Event> written) {
+        isTrue(reserved != null, "'reserved' collection must not be null!");
+        isTrue(written != null, "'written' collection must not be null!");
+
+        Map<Long, BasicDBObject> increments = new HashMap<>();
+        countByBucket(reserved).forEach((bucket, count) ->
+                increments.put(bucket, new BasicDBObject("pending", -count).append("total", 0)));
+        countByBucket(written).forEach((bucket, count) ->
+                increments.computeIfAbsent(bucket, key -> new BasicDBObject("pending", 0)).append("total", count));
+        for (Event event : written) {
+            String type = EventGrouping.TYPE.groupOf(event);
+            if (type != null) {
+                BasicDBObject increment = increments.get(bucketOf(event.getTimestamp()));
+                increment.put(TYPES + "." + type, increment.getInt(TYPES + "." + type, 0) + 1);
+            }
+        }
+
+        Map<Long, DBObject> updates = new HashMap<>();
+        increments.forEach((bucket, increment) -> updates.put(bucket, new BasicDBObject("$inc", increment)));
+        update(updates, false);
+    }
+
+    /**
+     * Count all events in buckets that start in specified time interval.
+     * @see #count(long, long, String, LongBinaryOperator)
+     */
+    public long count(long from, long to, LongBinaryOperator exactCount) {
+        return count(from, to, null, exactCount);
+    }
+
+    /**
+     * Count events in buckets that start in specified time interval. Buckets that are not verified or have pending
+     * events are counted with specified exact count.
+     * @param from start of interval (inclusive). Should be bucket start time.
+     * @param to end of interval (exclusive). Should be bucket start time.
+     * @param type name of lifecycle event type. If {@literal null} all events are counted.
+     * @param exactCount exact count of stored events (of specified type) with timestamp in interval (start inclusive,
+     *                   end exclusive).
+     * @return number of events.
+     */
+    public long count(long from, long to, String type, LongBinaryOperator exactCount) {
+        long verifiedUntil = Math.min(getVerifiedUntil(), to);
+
+        long total = 0;
+        if (from < verifiedUntil) {
+            try (DBCursor cursor = buckets(from, verifiedUntil)) {
+                for (DBObject bucket : cursor) {
+                    long start = number(bucket, "_id");
+                    total += isPending(bucket) ? exactCount.applyAsLong(start, start + bucketSize)
+                            : total(bucket, type);
+                }
+            }
+        }
+        long exactFrom = Math.max(from, verifiedUntil);
+        if (exactFrom < to) {
+            total += exactCount.applyAsLong(exactFrom, to);
+        }
+        return total;
+    }
+
+    /**
+     * @return start time of the first bucket that is not verified yet or {@link Long#MIN_VALUE} if counters were
+     * never verified.
+     */
+    public long getVerifiedUntil() {
+        DBObject marker = collection().findOne(new BasicDBObject("_id", VERIFIED_MARKER));
+        return marker != null ? number(marker, "until") : Long.MIN_VALUE;
+    }
+
+    /**
+     * Remove counters of buckets that start in specified time interval. Should be invoked when events of interval are
+     * removed from storage.
+     * @param from start of interval (inclusive). Should be bucket start time.
+     * @param to end of interval (exclusive). Should be bucket start time.
+     */
+    public void remove(long from, long to) {
+        try {
+            collection().remove(new BasicDBObject("_id", new BasicDBObject("$gte", from).append("$lt", to)));
+        } catch (RuntimeException e) {
+            throw translate(e);
+        }
+    }
+
+    /**
+     * Reconcile buckets that are not verified yet up to specified time and move verification marker forward, then
+     * reconcile verified buckets that have pending events for longer than pending timeout.
+     * @param eventDAO DAO of stored events that are counted. Must not be {@literal null}.
+     * @param until end of verified time (exclusive). Only buckets that end before it are verified.
+     */
+    public void verify(EventDAO eventDAO, long until) {
+        isTrue(eventDAO != null, "'eventDAO' must be initialized!");
+
+        long end = bucketOf(until);
+        long verifiedUntil = getVerifiedUntil();
+        long from = verifiedUntil;
+        if (from == Long.MIN_VALUE) {
+            List<Event> oldest = eventDAO.findAll(Long.MIN_VALUE, Long.MAX_VALUE, null, 1, Sort.Direction.ASC);
+            from = oldest.isEmpty() ? end : Math.min(bucketOf(oldest.get(0).getTimestamp()), end);
+        }
+        if (from < end || verifiedUntil == Long.MIN_VALUE) {
+            markVerified(reconcile(eventDAO, from, end));
+        }
+
+        long now = System.currentTimeMillis();
+        DBObject stale = new BasicDBObject("_id", new BasicDBObject("$lt", Math.min(verifiedUntil, end)))
+                .append("pending", new BasicDBObject("$ne", 0))
+                .append("reserved", new BasicDBObject("$lt", now - pendingTimeout));
+        try (DBCursor cursor = collection().find(stale, new BasicDBObject("_id", 1))) {
+            for (DBObject bucket : cursor) {
+                long start = number(bucket, "_id");
+                reconcile(eventDAO, start, start + bucketSize);
+            }
+        }
+    }
+
+    /**
+     * Replace counters of buckets that start in specified time interval with exact counts of stored events. Bucket
+     * with pending events is reconciled only if its last reservation is older than pending timeout. Bucket that is
+     * changed while its events are counted is skipped.
+     * @param eventDAO DAO of stored events that are counted. Must not be {@literal null}.
+     * @param from start of interval (inclusive). Should be bucket start time.
+     * @param to end of interval (exclusive). Should be bucket start time.
+     * @return start time of the first skipped bucket or {@code to} if all buckets are reconciled.
+     */
+    public long reconcile(EventDAO eventDAO, long from, long to) {
+        isTrue(eventDAO != null, "'eventDAO' must be initialized!");
+
+        long firstSkipped = to;
+        for (long start = from; start < to; start += RECONCILE_CHUNK_SIZE * bucketSize) {
+            long end = Math.min(to, start + RECONCILE_CHUNK_SIZE * bucketSize);
+
+            // bucket documents are read before events are counted, so any concurrent write fails comparison
+            Map<Long, DBObject> snapshot = new HashMap<>();
+            try (DBCursor cursor = buckets(start, end)) {
+                for (DBObject bucket : cursor) {
+                    snapshot.put(number(bucket, "_id"), bucket);
+                }
+            }
+
+            EventHistogram histogram = eventDAO.histogram(start, end - 1, bucketSize, EventGrouping.TYPE,
+                    EventFilter.NONE);
+            long[] buckets = histogram.getBuckets();
+            long[] counts = new long[buckets.length];
+            BasicDBObject[] types = new BasicDBObject[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                types[i] = new BasicDBObject();
+            }
+            histogram.getSeries().forEach((type, series) -> {
+                for (int i = 0; i < series.length; i++) {
+                    counts[i] += series[i];
+                    if (!type.equals(EventHistogram.NO_GROUP) && series[i] > 0) {
+                        types[i].append(type, series[i]);
+                    }
+                }
+            });
+
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < buckets.length; i++) {
+                if (!reconcile(buckets[i], counts[i], types[i], snapshot.get(buckets[i]), now)) {
+                    firstSkipped = Math.min(firstSkipped, buckets[i]);
+                }
+            }
+        }
+        return firstSkipped;
+    }
+
+    /**
+     * Replace counter of bucket if its document is equal to snapshot.
+     * @return {@literal true} if bucket is reconciled.
+     */
+    private boolean reconcile(long bucket, long count, DBObject types, DBObject snapshot, long now) {
+        try {
+            if (snapshot == null) {
+                if (count > 0) {
+                    collection().insert(new BasicDBObject("_id", bucket).append("total", count).append(TYPES, types)
+                            .append("pending", 0));
+                }
+                return true;
+            }
+            if (isPending(snapshot) && now - number(snapshot, "reserved") < pendingTimeout) {
+                return false;
+            }
+
+            DBObject unchanged = new BasicDBObject("_id", bucket)
+                    .append("total", snapshot.get("total"))
+                    .append("pending", snapshot.get("pending"))
+                    .append("reserved", snapshot.get("reserved"));
+            return collection().update(unchanged, new BasicDBObject("$set",
+                    new BasicDBObject("total", count).append(TYPES, types).append("pending", 0))).getN() == 1;
+        } catch (DuplicateKeyException e) {
+            return false;
+        } catch (RuntimeException e) {
+            throw translate(e);
+        }
+    }
+
+    private void markVerified(long until) {
+        try {
+            collection().update(new BasicDBObject("_id", VERIFIED_MARKER),
+                    new BasicDBObject("$max", new BasicDBObject("until", until)), true, false);
+        } catch (RuntimeException e) {
+            throw translate(e);
+        }
+    }
+
+    private void update(Map<Long, DBObject> updates, boolean upsert) {
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        BulkWriteOperation bulk = collection().initializeUnorderedBulkOperation();
+        updates.forEach((bucket, update) -> {
+            if (upsert) {
+                bulk.find(new BasicDBObject("_id", bucket)).upsert().updateOne(update);
+            } else {
+                bulk.find(new BasicDBObject("_id", bucket)).updateOne(update);
+            }
+        });
+
+        try {
+            bulk.execute();
+        } catch (RuntimeException e) {
+            throw translate(e);
+        }
+    }
+
+    private Map<Long, Integer> countByBucket(Collection<Event> events) {
+        Map<Long, Integer> buckets = new HashMap<>();
+        for (Event event : events) {
+            buckets.merge(bucketOf(event.getTimestamp()), 1, Integer::sum);
+        }
+        return buckets;
+    }
+
+    private DBCursor buckets(long from, long to) {
+        return collection().find(new BasicDBObject("_id", new BasicDBObject("$gte", from).append("$lt", to)));
+    }
+
+    private DBCollection collection() {
+        return mongoOperations.getCollection(COLLECTION_NAME);
+    }
+
+    private RuntimeException translate(RuntimeException e) {
+        RuntimeException translated = exceptionTranslator.translateExceptionIfPossible(e);
+        return translated != null ? translated : e;
+    }
+
+    private static boolean isPending(DBObject bucket) {
+        return number(bucket, "pending") != 0;
+    }
+
+    private static long total(DBObject bucket, String type) {
+        if (type == null) {
+            return number(bucket, "total");
+        }
+        Object types = bucket.get(TYPES);
+        return types instanceof DBObject ? number((DBObject) types, type) : 0;
+    }
+
+    private static long number(DBObject document, String field) {
+        Object value = document.get(field);
+        return value != null ? ((Number) value).longValue() : 0;
+    }
+}
@@ -1,14 +1,29 @@
 package org.ametiste.scm.log.persistent;
 
+import com.mongodb.AggregationOptions;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.BulkWriteUpsert;
+import com.mongodb.Cursor;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
 import org.ametiste.scm.messaging.data.event.Event;
 import org.ametiste.scm.messaging.data.mongo.event.EventDocument;
 import org.ametiste.scm.messaging.data.mongo.event.factory.EventToDocumentConverterMapFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.util.CloseableIterator;
 
@@ -26,107 +41,592 @@ import static org.springframework.data.mongodb.core.query.Criteria.where;
  * package. It is caused by that the {@code Event} subtype are not adapted to Spring Data Mongo model. For example, not
  * allowed default constructor, missed document annotations and so on.
  * {@code MongoEventDAO} provides conversion in both directions transparent to user.
+ * <p>
+ * Collections of events are written with one unordered bulk operation. If some of inserted events already exist, all
+ * other events are still written and {@link DuplicateEventsException} reports only duplicated ones. Save of collection
+ * replaces documents with upsert requests of one bulk operation.
+ * <p>
+ * Keyset queries are bounded by timestamp of last received event and resolve events with the same timestamp by id, so
+ * they are served with compound index on {@code (timestamp, _id)}.
+ * <p>
+ * If DAO has {@link MongoEventCounters} it reserves counter buckets before events are written and increments counters
+ * for each newly written event (inserted or upserted with collection save) after write, and answers count of time range
+ * (without filter or filtered by type only) from counters. Partial buckets at the edges of range and buckets that are
+ * not verified or have pending writes are counted with query to event collection. Failure to reserve buckets fails
+ * write operation. Failure to increment counters is logged and doesn't fail write operation, affected buckets stay
+ * pending until they are reconciled. Save of single event only reserves its bucket, because it is unknown whether
+ * document was inserted.
+ * <p>
+ * If DAO has {@link EventCodecRegistry} collections of events are written and all events are read with codecs directly
+ * to and from {@code DBObject}, without {@code EventDocument} DTO and {@code MongoConverter} mapping. Documents of types
+ * without codec are still mapped with converter. Single event insert and save always use {@code MongoOperations}.
+ * <p>
+ * DAO works with collection of {@code EventDocument} or with collection specified by name, so several DAO instances
+ * might serve separate collections of the same Mongo database (see {@link PartitionedEventDAO}).
+ * <p>
+ * Filters of events are pushed down to query as equality conditions on document fields, they are served with
+ * compound indices of filter fields and timestamp.
+ * <p>
+ * Histograms of events are calculated with aggregation of matching documents by bucket and group field, so only one
+ * document per bucket and group is returned. Aggregation is served with the same indices as filtered queries.
+ * <p>
+ * Lookup of many ids is split into chunks of ids, each chunk is read with one {@literal $in} query.
+ * <p>
+ * Summaries of events are read with projection of summary fields and are built from documents directly, without
+ * decoding of events. Type of summary is taken from {@literal _class} type hint by convention that document class is
+ * named as event class with {@literal Document} suffix.
+ * <p>
+ * Streams of events might be read with specified cursor batch size and read ahead on background thread by
+ * {@link PrefetchingIterator}, so fetch and decoding of documents overlaps with processing of events by consumer.
  */
 public class MongoEventDAO implements EventDAO {
 
     private static final Sort DEFAULT_SORT = new Sort(Sort.Direction.ASC, "timestamp");
 
+    private static final String[] SUMMARY_FIELDS = { "_id", EventCodecRegistry.TYPE_KEY, "timestamp", "instanceId" };
+    private static final String DOCUMENT_SUFFIX = "Document";
+
+    private static final int LOOKUP_CHUNK_SIZE = 1000;
+
+    private static final Set<Integer> DUPLICATE_KEY_CODES = new HashSet<>(Arrays.asList(11000, 11001, 12582));
+
+    private final Logger logger = LoggerFactory.getLogger(MongoEventDAO.class);
+
     private final MongoOperations mongoOperations;
     private final Map<Class, Function<Event, EventDocument>> converterMap;
+    private final MongoExceptionTranslator exceptionTranslator = new MongoExceptionTranslator();
+    private final MongoEventCounters counters;
+    private final EventCodecRegistry codecs;
+    private final String collectionName;
+    private final int batchSize;
+    private final int prefetchDepth;
 
     /**
-     * Create instance of {@code MongoEventDAO}.
+     * Create instance of {@code MongoEventDAO} without event counters.
      * @param mongoOperations {@code MongoOperations} object for communication with Mongo instance.
      * @param eventToDocumentConverterMapFactory factory that produce conversion map to convert Event to document DTO.
      */
     public MongoEventDAO(MongoOperations mongoOperations,
                          EventToDocumentConverterMapFactory eventToDocumentConverterMapFactory) {
+        this(mongoOperations, eventToDocumentConverterMapFactory, null);
+    }
+
+    /**
+     * Create instance of {@code MongoEventDAO}.
+     * @param mongoOperations {@code MongoOperations} object for communication with Mongo instance.
+     * @param eventToDocumentConverterMapFactory factory that produce conversion map to convert Event to document DTO.
+     * @param counters pre-aggregated event counters maintained by DAO. Might be {@literal null}.
+     */
+    public MongoEventDAO(MongoOperations mongoOperations,
+                         EventToDocumentConverterMapFactory eventToDocumentConverterMapFactory,
+                         MongoEventCounters counters) {
+        this(mongoOperations, eventToDocumentConverterMapFactory, counters, null);
+    }
+
+    /**
+     * Create instance of {@code MongoEventDAO}.
+     * @param mongoOperations {@code MongoOperations} object for communication with Mongo instance.
+     * @param eventToDocumentConverterMapFactory factory that produce conversion map to convert Event to document DTO.
+     * @param counters pre-aggregated event counters maintained by DAO. Might be {@literal null}.
+     * @param codecs codecs that write and read event documents directly. Might be {@literal null}.
+     */
+    public MongoEventDAO(MongoOperations mongoOperations,
+                         EventToDocumentConverterMapFactory eventToDocumentConverterMapFactory,
+                         MongoEventCounters counters,
+                         EventCodecRegistry codecs) {
+        this(mongoOperations, eventToDocumentConverterMapFactory, counters, codecs, null);
+    }
+
+    /**
+     * Create instance of {@code MongoEventDAO}.
+     * @param mongoOperations {@code MongoOperations} object for communication with Mongo instance.
+     * @param eventToDocumentConverterMapFactory factory that produce conversion map to convert Event to document DTO.
+     * @param counters pre-aggregated event counters maintained by DAO. Might be {@literal null}.
+     * @param codecs codecs that write and read event documents directly. Might be {@literal null}.
+     * @param collectionName name of events collection. If {@literal null} collection of {@code EventDocument} is used.
+     */
+    public MongoEventDAO(MongoOperations mongoOperations,
+                         EventToDocumentConverterMapFactory eventToDocumentConverterMapFactory,
+                         MongoEventCounters counters,
+                         EventCodecRegistry codecs,
+                         String collectionName) {
+        this(mongoOperations, eventToDocumentConverterMapFactory, counters, codecs, collectionName, 0, 0);
+    }
+
+    /**
+     * Create instance of {@code MongoEventDAO}.
+     * @param mongoOperations {@code MongoOperations} object for communication with Mongo instance.
+     * @param eventToDocumentConverterMapFactory factory that produce conversion map to convert Event to document DTO.
+     * @param counters pre-aggregated event counters maintained by DAO. Might be {@literal null}.
+     * @param codecs codecs that write and read event documents directly. Might be {@literal null}.
+     * @param collectionName name of events collection. If {@literal null} collection of {@code EventDocument} is used.
+     * @param batchSize number of documents fetched by cursor of stream at once. {@literal 0} means driver default.
+     * @param prefetchDepth number of events of stream read ahead on background thread. {@literal 0} disables read ahead.
+     */
+    public MongoEventDAO(MongoOperations mongoOperations,
+                         EventToDocumentConverterMapFactory eventToDocumentConverterMapFactory,
+                         MongoEventCounters counters,
+                         EventCodecRegistry codecs,
+                         String collectionName,
+                         int batchSize,
+                         int prefetchDepth) {
         isTrue(mongoOperations != null, "'mongoOperations' must be initialized!");
         isTrue(eventToDocumentConverterMapFactory != null, "ConverterMapFactory must be initialized!");
+        isTrue(batchSize >= 0, "'batchSize' must not be negative!");
+        isTrue(prefetchDepth >= 0, "'prefetchDepth' must not be negative!");
 
         this.mongoOperations = mongoOperations;
         this.converterMap = eventToDocumentConverterMapFactory.getMap();
+        this.counters = counters;
+        this.codecs = codecs;
+        this.collectionName = collectionName;
+        this.batchSize = batchSize;
+        this.prefetchDepth = prefetchDepth;
     }
 
     @Override
     public <S extends Event> S insert(S entity) {
         isTrue(entity != null, "Entity must not be null!");
-        mongoOperations.insert(convert(entity));
+        List<Event> events = Collections.singletonList(entity);
+        reserve(events);
+        mongoOperations.insert(convert(entity), getCollectionName());
+        increment(events, events);
         return entity;
     }
 
     @Override
     public <S extends Event> S save(S entity) {
         isTrue(entity != null, "Entity must not be null!");
-        mongoOperations.save(convert(entity));
+        reserve(Collections.singletonList(entity));
+        mongoOperations.save(convert(entity), getCollectionName());
         return entity;
     }
 
     @Override
     public Collection<Event> insert(Collection<Event> entities) {
         isTrue(entities != null, "The given collection of entities must not be null!");
-        mongoOperations.insert(convert(entities), EventDocument.class);
+        List<Event> events = supported(entities);
+
+        reserve(events);
+        BulkWriteOperation bulk = collection().initializeUnorderedBulkOperation();
+        events.forEach(event -> bulk.insert(toDBObject(event)));
+
+        try {
+            bulk.execute();
+        } catch (BulkWriteException e) {
+            if (e.getWriteConcernError() != null) {
+                throw translate(e);
+            }
+            Set<Integer> failed = e.getWriteErrors().stream().map(BulkWriteError::getIndex).collect(Collectors.toSet());
+            increment(events, exclude(events, failed));
+
+            if (!e.getWriteErrors().stream().allMatch(error -> DUPLICATE_KEY_CODES.contains(error.getCode()))) {
+                throw translate(e);
+            }
+            List<Event> duplicates = e.getWriteErrors().stream()
+                    .map(BulkWriteError::getIndex)
+                    .map(events::get)
+                    .collect(Collectors.toList());
+            throw new DuplicateEventsException(duplicates.size() + " of " + events.size() + " events already exist",
+                    duplicates, e);
+        } catch (RuntimeException e) {
+            throw translate(e);
+        }
+        increment(events, events);
         return entities;
     }
 
     @Override
     public Collection<Event> save(Collection<Event> entities) {
         isTrue(entities != null, "The given collection of entities must not be null!");
-        convert(entities).stream().forEach(mongoOperations::save);
+        List<Event> events = supported(entities);
+
+        reserve(events);
+        BulkWriteOperation bulk = collection().initializeUnorderedBulkOperation();
+        events.forEach(event -> {
+            DBObject dbObject = toDBObject(event);
+            bulk.find(new BasicDBObject("_id", dbObject.get("_id"))).upsert().replaceOne(dbObject);
+        });
+
+        BulkWriteResult result;
+        try {
+            result = bulk.execute();
+        } catch (RuntimeException e) {
+            throw translate(e);
+        }
+        increment(events, result.getUpserts().stream()
+                .map(BulkWriteUpsert::getIndex)
+                .map(events::get)
+                .collect(Collectors.toList()));
         return entities;
     }
 
     @Override
     public Event findOne(UUID id) {
         isTrue(id != null, "The given uuid must not be null!");
-        return Optional.ofNullable(mongoOperations.findById(id, EventDocument.class))
+        if (codecs != null) {
+            List<Event> found = find(new Query(where("_id").is(id)));
+            return found.isEmpty() ? null : found.get(0);
+        }
+        return Optional.ofNullable(mongoOperations.findById(id, EventDocument.class, getCollectionName()))
                 .filter(Objects::nonNull)
                 .map(EventDocument::convert)
                 .orElse(null);
     }
 
+    /**
+     * Ids are looked up with {@literal $in} queries of up to 1000 ids, each query is served with {@literal _id} index.
+     */
+    @Override
+    public List<Event> findAll(Collection<UUID> ids) {
+        isTrue(ids != null, "'ids' must be initialized!");
+        isTrue(ids.stream().allMatch(Objects::nonNull), "The given uuids must not contain null!");
+
+        List<UUID> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<Event> result = new ArrayList<>(distinct.size());
+        for (int i = 0; i < distinct.size(); i += LOOKUP_CHUNK_SIZE) {
+            List<UUID> chunk = distinct.subList(i, Math.min(distinct.size(), i + LOOKUP_CHUNK_SIZE));
+            result.addAll(find(new Query(where("_id").in(chunk))));
+        }
+        return result;
+    }
+
     @Override
     public CloseableIterator<Event> findAll() {
-        return new CloseableIteratorAdapter<>(
-                mongoOperations.stream(new Query().with(DEFAULT_SORT), EventDocument.class),
-                EventDocument::convert
-        );
+        return stream(new Query().with(DEFAULT_SORT));
     }
 
     @Override
     public CloseableIterator<Event> findAll(long from, long to) {
-        return new CloseableIteratorAdapter<>(
-                mongoOperations.stream(new Query(where("timestamp").gte(from).lte(to)).with(DEFAULT_SORT), EventDocument.class),
-                EventDocument::convert
-        );
+        return findAll(from, to, EventFilter.NONE);
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll(long from, long to, EventFilter filter) {
+        isTrue(filter != null, "'filter' must be initialized!");
+        return stream(new Query(criteria(from, to, filter)).with(DEFAULT_SORT));
     }
 
     @Override
     public Page<Event> findAll(Pageable pageable) {
         long count = count();
-        List<Event> result = mongoOperations.find(new Query().with(pageable), EventDocument.class)
-                .stream().map(EventDocument::convert).collect(Collectors.toList());
+        List<Event> result = find(new Query().with(pageable));
         return new PageImpl<>(result, pageable, count);
     }
 
     @Override
     public Page<Event> findAll(long from, long to, Pageable pageable) {
-        long queryCount = mongoOperations.count(new Query(where("timestamp").gte(from).lte(to)), EventDocument.class);
+        return findAll(from, to, EventFilter.NONE, pageable);
+    }
+
+    @Override
+    public Page<Event> findAll(long from, long to, EventFilter filter, Pageable pageable) {
+        isTrue(filter != null, "'filter' must be initialized!");
+        long queryCount = count(from, to, filter);
         List<Event> result;
 
         if (pageable == null) {
             result = Collections.emptyList();
         } else {
-            result = mongoOperations.find(new Query().with(pageable), EventDocument.class)
-                    .stream().map(EventDocument::convert).collect(Collectors.toList());
+            result = find(new Query(criteria(from, to, filter)).with(pageable));
+        }
+
+        return new PageImpl<>(result, pageable, queryCount);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(Pageable pageable) {
+        long count = count();
+        List<EventSummary> result = findSummaries(new Query().with(pageable));
+        return new PageImpl<>(result, pageable, count);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(long from, long to, Pageable pageable) {
+        return findSummaries(from, to, EventFilter.NONE, pageable);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(long from, long to, EventFilter filter, Pageable pageable) {
+        isTrue(filter != null, "'filter' must be initialized!");
+        long queryCount = count(from, to, filter);
+        List<EventSummary> result;
+
+        if (pageable == null) {
+            result = Collections.emptyList();
+        } else {
+            result = findSummaries(new Query(criteria(from, to, filter)).with(pageable));
         }
 
         return new PageImpl<>(result, pageable, queryCount);
     }
 
+    @Override
+    public List<Event> findAll(long from, long to, EventKey after, int limit, Sort.Direction direction) {
+        isTrue(limit > 0, "'limit' must be greater than zero!");
+        isTrue(direction != null, "'direction' must be initialized!");
+
+        Criteria criteria;
+        if (after == null) {
+            criteria = where("timestamp").gte(from).lte(to);
+        } else if (direction == Sort.Direction.ASC) {
+            criteria = where("timestamp").gte(Math.max(from, after.getTimestamp())).lte(to)
+                    .orOperator(where("timestamp").gt(after.getTimestamp()), where("_id").gt(after.getId()));
+        } else {
+            criteria = where("timestamp").gte(from).lte(Math.min(to, after.getTimestamp()))
+                    .orOperator(where("timestamp").lt(after.getTimestamp()), where("_id").lt(after.getId()));
+        }
+
+        return find(new Query(criteria).with(new Sort(direction, "timestamp", "_id")).limit(limit));
+    }
+
+    @Override
+    public EventHistogram histogram(long from, long to, long bucketSize, EventGrouping grouping, EventFilter filter) {
+        isTrue(grouping != null, "'grouping' must be initialized!");
+        isTrue(filter != null, "'filter' must be initialized!");
+
+        EventHistogram histogram = new EventHistogram(from, to, bucketSize);
+        DBObject bucket = new BasicDBObject("$subtract",
+                Arrays.asList("$timestamp", new BasicDBObject("$mod", Arrays.asList("$timestamp", bucketSize))));
+        List<DBObject> pipeline = Arrays.asList(
+                new BasicDBObject("$match", criteria(from, to, filter).getCriteriaObject()),
+                new BasicDBObject("$group", new BasicDBObject("_id",
+                        new BasicDBObject("bucket", bucket).append("group", "$" + grouping.getField()))
+                        .append("count", new BasicDBObject("$sum", 1))));
+        AggregationOptions options = AggregationOptions.builder()
+                .outputMode(AggregationOptions.OutputMode.CURSOR)
+                .allowDiskUse(true)
+                .build();
+
+        try (Cursor cursor = collection().aggregate(pipeline, options)) {
+            while (cursor.hasNext()) {
+                DBObject result = cursor.next();
+                DBObject id = (DBObject) result.get("_id");
+                Object group = id.get("group");
+                histogram.add(group != null ? group.toString() : null, ((Number) id.get("bucket")).longValue(),
+                        ((Number) result.get("count")).longValue());
+            }
+        } catch (RuntimeException e) {
+            throw translate(e);
+        }
+        return histogram;
+    }
+
+    /**
+     * Counters of buckets that lie entirely inside interval are removed with events, so interval bounds should be
+     * aligned to counter buckets.
+     */
+    @Override
+    public void delete(long from, long to) {
+        mongoOperations.remove(new Query(where("timestamp").gte(from).lte(to)), EventDocument.class,
+                getCollectionName());
+
+        if (counters != null) {
+            long firstBucket = -Math.floorDiv(-from, counters.getBucketSize()) * counters.getBucketSize();
+            long lastBucket = counters.bucketOf(to + 1);
+            if (firstBucket < lastBucket) {
+                counters.remove(firstBucket, lastBucket);
+            }
+        }
+    }
+
     @Override
     public long count() {
-        return mongoOperations.getCollection(mongoOperations.getCollectionName(EventDocument.class)).count();
+        return collection().count();
+    }
+
+    /**
+     * Count with filter by type only is answered from type counters of buckets. Count with filter by instance or node
+     * is always done with query to event collection, counters are not split by these fields.
+     */
+    @Override
+    public long count(long from, long to, EventFilter filter) {
+        isTrue(filter != null, "'filter' must be initialized!");
+
+        if (counters == null || filter.getInstanceId() != null || filter.getNodeId() != null) {
+            return countExactly(criteria(from, to, filter));
+        }
+        return countWithCounters(from, to, filter);
+    }
+
+    @Override
+    public long count(long from, long to) {
+        return count(from, to, EventFilter.NONE);
+    }
+
+    /**
+     * Count events of time range with filter by type only. Whole buckets are answered by counters, partial edge
+     * buckets are counted exactly.
+     */
+    private long countWithCounters(long from, long to, EventFilter filter) {
+        long firstBucket = -Math.floorDiv(-from, counters.getBucketSize()) * counters.getBucketSize();
+        long lastBucket = counters.bucketOf(to);
+        if (firstBucket >= lastBucket) {
+            return countExactly(criteria(from, to, filter));
+        }
+        return countExactly(filtered(where("timestamp").gte(from).lt(firstBucket), filter))
+                + counters.count(firstBucket, lastBucket, filter.getType(),
+                        (start, end) -> countExactly(filtered(where("timestamp").gte(start).lt(end), filter)))
+                + countExactly(criteria(lastBucket, to, filter));
+    }
+
+    /**
+     * @return name of events collection.
+     */
+    public String getCollectionName() {
+        return collectionName != null ? collectionName : mongoOperations.getCollectionName(EventDocument.class);
+    }
+
+    /**
+     * Find events with codecs if DAO has them or with {@code MongoOperations} otherwise. Query must use document field
+     * names, because codec path doesn't map query with entity metadata.
+     */
+    List<Event> find(Query query) {
+        if (codecs == null) {
+            return mongoOperations.find(query, EventDocument.class, getCollectionName())
+                    .stream().map(EventDocument::convert).collect(Collectors.toList());
+        }
+
+        List<Event> result = new ArrayList<>();
+        try (DBCursor cursor = cursor(query)) {
+            for (DBObject document : cursor) {
+                result.add(decode(document));
+            }
+        } catch (RuntimeException e) {
+            throw translate(e);
+        }
+        return result;
+    }
+
+    /**
+     * Find summaries of events. Only summary fields of documents are read. Query must use document field names.
+     */
+    List<EventSummary> findSummaries(Query query) {
+        for (String field : SUMMARY_FIELDS) {
+            query.fields().include(field);
+        }
+
+        List<EventSummary> result = new ArrayList<>();
+        try (DBCursor cursor = cursor(query)) {
+            for (DBObject document : cursor) {
+                result.add(summary(document));
+            }
+        } catch (RuntimeException e) {
+            throw translate(e);
+        }
+        return result;
+    }
+
+    /**
+     * {@code MongoOperations} can't stream documents of specified collection or with specified batch size, so if DAO
+     * has codecs, collection name or batch size stream is read from cursor of events collection directly. Documents
+     * without codec are mapped with converter.
+     */
+    private CloseableIterator<Event> stream(Query query) {
+        CloseableIterator<Event> iterator;
+        if (codecs == null && collectionName == null && batchSize == 0) {
+            iterator = new CloseableIteratorAdapter<>(mongoOperations.stream(query, EventDocument.class),
+                    EventDocument::convert);
+        } else {
+            DBCursor cursor = cursor(query);
+            if (batchSize > 0) {
+                cursor.batchSize(batchSize);
+            }
+            iterator = new CloseableIteratorAdapter<>(new DBCursorIterator(cursor), this::decode);
+        }
+        return prefetchDepth > 0 ? new PrefetchingIterator<>(iterator, prefetchDepth) : iterator;
+    }
+
+    private DBCursor cursor(Query query) {
+        DBObject fields = query.getFieldsObject();
+        DBCursor cursor = (fields != null ? collection().find(query.getQueryObject(), fields)
+                : collection().find(query.getQueryObject())).sort(query.getSortObject()).skip(query.getSkip());
+        return query.getLimit() > 0 ? cursor.limit(query.getLimit()) : cursor;
+    }
+
+    private Event decode(DBObject document) {
+        if (codecs != null && codecs.canDecode(document)) {
+            return codecs.decode(document);
+        }
+        return mongoOperations.getConverter().read(EventDocument.class, document).convert();
+    }
+
+    /**
+     * @return criteria of events in time interval that match filter. Filter fields are compared with document fields
+     * of the same name.
+     */
+    static Criteria criteria(long from, long to, EventFilter filter) {
+        return filtered(where("timestamp").gte(from).lte(to), filter);
+    }
+
+    private static Criteria filtered(Criteria criteria, EventFilter filter) {
+        if (filter.getType() != null) {
+            criteria = criteria.and("type").is(filter.getType());
+        }
+        if (filter.getInstanceId() != null) {
+            criteria = criteria.and("instanceId").is(filter.getInstanceId());
+        }
+        if (filter.getNodeId() != null) {
+            criteria = criteria.and("nodeId").is(filter.getNodeId());
+        }
+        return criteria;
+    }
+
+    private static EventSummary summary(DBObject document) {
+        Object documentType = document.get(EventCodecRegistry.TYPE_KEY);
+        String type = null;
+        if (documentType != null) {
+            type = documentType.toString().substring(documentType.toString().lastIndexOf('.') + 1);
+            if (type.endsWith(DOCUMENT_SUFFIX)) {
+                type = type.substring(0, type.length() - DOCUMENT_SUFFIX.length());
+            }
+        }
+        Object instanceId = document.get("instanceId");
+        return new EventSummary((UUID) document.get("_id"), type, ((Number) document.get("timestamp")).longValue(),
+                instanceId != null ? instanceId.toString() : null);
+    }
+
+    private long countExactly(Criteria criteria) {
+        return mongoOperations.count(new Query(criteria), EventDocument.class, getCollectionName());
+    }
+
+    /**
+     * Reserve counter buckets for events that are going to be written if DAO maintains counters.
+     */
+    private void reserve(List<Event> events) {
+        if (counters != null && !events.isEmpty()) {
+            counters.reserve(events);
+        }
+    }
+
+    /**
+     * Increment counters for written events if DAO maintains counters. Failure of counters doesn't fail write operation.
+     */
+    private void increment(List<Event> reserved, List<Event> written) {
+        if (counters == null || reserved.isEmpty()) {
+            return;
+        }
+        try {
+            counters.increment(reserved, written);
+        } catch (RuntimeException e) {
+            if (logger.isErrorEnabled()) {
+                logger.error("Failed to update counters of " + written.size() + " events: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static List<Event> exclude(List<Event> events, Set<Integer> indexes) {
+        List<Event> result = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            if (!indexes.contains(i)) {
+                result.add(events.get(i));
+            }
+        }
+        return result;
+    }
+
+    private DBCollection collection() {
+        return mongoOperations.getCollection(getCollectionName());
     }
 
     private EventDocument convert(Event event) {
@@ -139,17 +639,62 @@ public class MongoEventDAO implements EventDAO {
         }
     }
 
-    private Collection<EventDocument> convert(Collection<Event> events) {
-        List<EventDocument> docs = events.stream()
+    private List<Event> supported(Collection<Event> events) {
+        List<Event> supported = events.stream()
                 .filter(Objects::nonNull)
-                .filter(event -> converterMap.containsKey(event.getClass()))
-                .map(e -> converterMap.get(e.getClass()).apply(e))
+                .filter(event -> converterMap.containsKey(event.getClass())
+                        || (codecs != null && codecs.canEncode(event.getClass())))
                 .collect(Collectors.toList());
 
-        if (docs.isEmpty()) {
+        if (supported.isEmpty()) {
             throw new IllegalArgumentException("repository can't map any of taken event objects");
         }
-        return docs;
+        return supported;
+    }
+
+    /**
+     * Convert event to {@code DBObject} with the same type information as {@code MongoOperations} writes. Codec is
+     * used if DAO has codec for event type.
+     */
+    private DBObject toDBObject(Event event) {
+        if (codecs != null && codecs.canEncode(event.getClass())) {
+            return codecs.encode(event);
+        }
+        DBObject dbObject = new BasicDBObject();
+        mongoOperations.getConverter().write(convert(event), dbObject);
+        return dbObject;
+    }
+
+    private RuntimeException translate(RuntimeException e) {
+        RuntimeException translated = exceptionTranslator.translateExceptionIfPossible(e);
+        return translated != null ? translated : e;
+    }
+
+    /**
+     * Implementation of {@code CloseableIterator} interface over {@code DBCursor}.
+     */
+    static class DBCursorIterator implements CloseableIterator<DBObject> {
+
+        private final DBCursor cursor;
+
+        DBCursorIterator(DBCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public void close() {
+            cursor.close();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor.hasNext();
+        }
+
+        @Override
+        public DBObject next() {
+            return cursor.next();
+        }
     }
 
     /**
@@ -0,0 +1,72 @@
+package org.ametiste.scm.log.persistent;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Length of time partition of events storage.
+ * <p>
+ * Partitions are aligned to UTC days, weekly partitions start on Monday. Each partition is identified by date of its
+ * start in {@literal yyyyMMdd} format.
+ */
+public enum PartitionPeriod {
+
+    DAILY(TimeUnit.DAYS.toMillis(1), 0),
+    WEEKLY(TimeUnit.DAYS.toMillis(7), TimeUnit.DAYS.toMillis(3));
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final long length;
+    private final long offset;
+
+    /**
+     * @param length length of partition in milliseconds.
+     * @param offset shift of partition start relative to epoch (January 1, 1970 is Thursday, so week starts 3 days
+     *               before it).
+     */
+    PartitionPeriod(long length, long offset) {
+        this.length = length;
+        this.offset = offset;
+    }
+
+    /**
+     * @return length of partition in milliseconds.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @param timestamp time in milliseconds.
+     * @return start time of partition that contains specified time.
+     */
+    public long start(long timestamp) {
+        return Math.floorDiv(timestamp + offset, length) * length - offset;
+    }
+
+    /**
+     * @param start start time of partition.
+     * @return identifier of partition.
+     */
+    public String format(long start) {
+        return Instant.ofEpochMilli(start).atZone(ZoneOffset.UTC).toLocalDate().format(FORMATTER);
+    }
+
+    /**
+     * @param id identifier of partition.
+     * @return start time of partition or {@literal -1} if identifier doesn't identify partition of this period.
+     */
+    public long parse(String id) {
+        long start;
+        try {
+            start = LocalDate.parse(id, FORMATTER).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+        return start(start) == start ? start : -1;
+    }
+}
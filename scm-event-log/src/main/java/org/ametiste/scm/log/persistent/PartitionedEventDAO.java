@@ -0,0 +1,455 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Implementation of {@code EventDAO} that stores events in time-partitioned Mongo collections.
+ * <p>
+ * Each partition covers one {@link PartitionPeriod} and is stored in separate collection named
+ * {@literal <prefix>_<yyyyMMdd>} after start date of partition. Partition is served by its own {@code MongoEventDAO}
+ * created by partition factory on first access. Writes are routed to partitions by event timestamp. Range reads, counts
+ * and streams touch only partitions that overlap requested range. Partitions don't overlap, so results of partitions
+ * taken one by one in timestamp order are ordered by timestamp as well.
+ * <p>
+ * Whole partition is removed with {@link #dropPartitionsBefore(long)} that drops collection instead of deleting
+ * documents one by one.
+ * <p>
+ * Set of existing partitions is cached: partitions are added when they are accessed (collection is created by write) and removed when they are
+ * dropped by this DAO, and the whole set is reloaded from collection names of database after refresh period, so
+ * partitions created or dropped by other service instances become visible with that delay. DAO of partition is created
+ * outside of partitions map lock, so partition factory (that might ensure indices of collection) doesn't block access
+ * to other partitions, but might be invoked more than once for the same collection by concurrent callers.
+ * <p>
+ * Event id doesn't identify partition, so {@link #findOne(UUID)} searches partitions from the newest one.
+ * Events stored in single collection before partitioning was enabled are not read by this DAO.
+ */
+public class PartitionedEventDAO implements EventDAO {
+
+    public static final long DEFAULT_REFRESH_PERIOD = 60000;
+
+    private final MongoOperations mongoOperations;
+    private final PartitionPeriod period;
+    private final String prefix;
+    private final Function<String, MongoEventDAO> partitionFactory;
+    private final MongoEventCounters counters;
+    private final long refreshPeriod;
+
+    private final ConcurrentMap<Long, MongoEventDAO> partitions = new ConcurrentHashMap<>();
+    private final NavigableSet<Long> knownPartitions = new ConcurrentSkipListSet<>();
+    private volatile long refreshedAt = Long.MIN_VALUE;
+
+    /**
+     * Create instance of {@code PartitionedEventDAO} with default refresh period of partitions set.
+     * @param mongoOperations {@code MongoOperations} object for communication with Mongo instance.
+     * @param period length of partition.
+     * @param prefix prefix of partition collection names.
+     * @param partitionFactory factory that creates DAO for collection with specified name.
+     * @param counters pre-aggregated event counters shared by partitions. Might be {@literal null}.
+     */
+    public PartitionedEventDAO(MongoOperations mongoOperations,
+                               PartitionPeriod period,
+                               String prefix,
+                               Function<String, MongoEventDAO> partitionFactory,
+                               MongoEventCounters counters) {
+        this(mongoOperations, period, prefix, partitionFactory, counters, DEFAULT_REFRESH_PERIOD);
+    }
+
+    /**
+     * Create instance of {@code PartitionedEventDAO}.
+     * @param mongoOperations {@code MongoOperations} object for communication with Mongo instance.
+     * @param period length of partition.
+     * @param prefix prefix of partition collection names.
+     * @param partitionFactory factory that creates DAO for collection with specified name.
+     * @param counters pre-aggregated event counters shared by partitions. Might be {@literal null}.
+     * @param refreshPeriod time (in milliseconds) after which set of existing partitions is reloaded from database.
+     *                      Must be greater than zero.
+     */
+    public PartitionedEventDAO(MongoOperations mongoOperations,
+                               PartitionPeriod period,
+                               String prefix,
+                               Function<String, MongoEventDAO> partitionFactory,
+                               MongoEventCounters counters,
+                               long refreshPeriod) {
+        isTrue(mongoOperations != null, "'mongoOperations' must be initialized!");
+        isTrue(period != null, "'period' must be initialized!");
+        isTrue(prefix != null && !prefix.isEmpty(), "'prefix' must not be empty!");
+        isTrue(partitionFactory != null, "'partitionFactory' must be initialized!");
+        isTrue(refreshPeriod > 0, "'refreshPeriod' must be greater than zero!");
+
+        this.mongoOperations = mongoOperations;
+        this.period = period;
+        this.prefix = prefix;
+        this.partitionFactory = partitionFactory;
+        this.counters = counters;
+        this.refreshPeriod = refreshPeriod;
+    }
+
+    @Override
+    public <S extends Event> S insert(S entity) {
+        isTrue(entity != null, "Entity must not be null!");
+        return partition(period.start(entity.getTimestamp())).insert(entity);
+    }
+
+    @Override
+    public <S extends Event> S save(S entity) {
+        isTrue(entity != null, "Entity must not be null!");
+        return partition(period.start(entity.getTimestamp())).save(entity);
+    }
+
+    /**
+     * Events are inserted to each partition with separate bulk operation. Duplicates of all partitions are reported
+     * with one {@code DuplicateEventsException} after all partitions are written.
+     */
+    @Override
+    public Collection<Event> insert(Collection<Event> entities) {
+        isTrue(entities != null, "The given collection of entities must not be null!");
+
+        List<Event> duplicates = new ArrayList<>();
+        DuplicateEventsException cause = null;
+        for (Map.Entry<Long, List<Event>> group : groupByPartition(entities).entrySet()) {
+            try {
+                partition(group.getKey()).insert(group.getValue());
+            } catch (DuplicateEventsException e) {
+                duplicates.addAll(e.getDuplicates());
+                cause = cause != null ? cause : e;
+            }
+        }
+
+        if (!duplicates.isEmpty()) {
+            throw new DuplicateEventsException(duplicates.size() + " of " + entities.size() + " events already exist",
+                    duplicates, cause);
+        }
+        return entities;
+    }
+
+    @Override
+    public Collection<Event> save(Collection<Event> entities) {
+        isTrue(entities != null, "The given collection of entities must not be null!");
+
+        groupByPartition(entities).forEach((start, events) -> partition(start).save(events));
+        return entities;
+    }
+
+    @Override
+    public Event findOne(UUID id) {
+        isTrue(id != null, "The given uuid must not be null!");
+
+        for (Long start : existingPartitions().descendingSet()) {
+            Event event = partition(start).findOne(id);
+            if (event != null) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Partitions are requested from the newest one, each partition is requested only for ids that are not found yet.
+     */
+    @Override
+    public List<Event> findAll(Collection<UUID> ids) {
+        isTrue(ids != null, "'ids' must be initialized!");
+
+        Set<UUID> remaining = new LinkedHashSet<>(ids);
+        List<Event> result = new ArrayList<>();
+        for (Long start : existingPartitions().descendingSet()) {
+            if (remaining.isEmpty()) {
+                break;
+            }
+            List<Event> found = partition(start).findAll(remaining);
+            found.forEach(event -> remaining.remove(event.getId()));
+            result.addAll(found);
+        }
+        return result;
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll() {
+        return new ConcatenatedEventIterator(existingPartitions().stream()
+                .map(start -> (Supplier<CloseableIterator<Event>>) () -> partition(start).findAll())
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll(long from, long to) {
+        return new ConcatenatedEventIterator(overlapping(from, to).stream()
+                .map(start -> (Supplier<CloseableIterator<Event>>) () -> partition(start).findAll(from, to))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll(long from, long to, EventFilter filter) {
+        isTrue(filter != null, "'filter' must be initialized!");
+        return new ConcatenatedEventIterator(overlapping(from, to).stream()
+                .map(start -> (Supplier<CloseableIterator<Event>>) () -> partition(start).findAll(from, to, filter))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Pageable must be sorted by timestamp (or unsorted), because page is assembled from partitions taken in
+     * timestamp order.
+     */
+    @Override
+    public Page<Event> findAll(Pageable pageable) {
+        return page(Long.MIN_VALUE, Long.MAX_VALUE, EventFilter.NONE, pageable, MongoEventDAO::find);
+    }
+
+    /**
+     * Pageable must be sorted by timestamp (or unsorted), because page is assembled from partitions taken in
+     * timestamp order.
+     */
+    @Override
+    public Page<Event> findAll(long from, long to, Pageable pageable) {
+        return page(from, to, EventFilter.NONE, pageable, MongoEventDAO::find);
+    }
+
+    /**
+     * Pageable must be sorted by timestamp (or unsorted), because page is assembled from partitions taken in
+     * timestamp order.
+     */
+    @Override
+    public Page<Event> findAll(long from, long to, EventFilter filter, Pageable pageable) {
+        isTrue(filter != null, "'filter' must be initialized!");
+        return page(from, to, filter, pageable, MongoEventDAO::find);
+    }
+
+    /**
+     * Pageable must be sorted by timestamp (or unsorted), because page is assembled from partitions taken in
+     * timestamp order.
+     */
+    @Override
+    public Page<EventSummary> findSummaries(Pageable pageable) {
+        return page(Long.MIN_VALUE, Long.MAX_VALUE, EventFilter.NONE, pageable, MongoEventDAO::findSummaries);
+    }
+
+    /**
+     * Pageable must be sorted by timestamp (or unsorted), because page is assembled from partitions taken in
+     * timestamp order.
+     */
+    @Override
+    public Page<EventSummary> findSummaries(long from, long to, Pageable pageable) {
+        return page(from, to, EventFilter.NONE, pageable, MongoEventDAO::findSummaries);
+    }
+
+    /**
+     * Pageable must be sorted by timestamp (or unsorted), because page is assembled from partitions taken in
+     * timestamp order.
+     */
+    @Override
+    public Page<EventSummary> findSummaries(long from, long to, EventFilter filter, Pageable pageable) {
+        isTrue(filter != null, "'filter' must be initialized!");
+        return page(from, to, filter, pageable, MongoEventDAO::findSummaries);
+    }
+
+    @Override
+    public List<Event> findAll(long from, long to, EventKey after, int limit, Sort.Direction direction) {
+        isTrue(limit > 0, "'limit' must be greater than zero!");
+        isTrue(direction != null, "'direction' must be initialized!");
+
+        NavigableSet<Long> starts = overlapping(from, to);
+        if (after != null) {
+            // partitions before key in requested direction contain no events after key
+            long keyPartition = period.start(after.getTimestamp());
+            starts = direction == Sort.Direction.ASC ? starts.tailSet(keyPartition, true) : starts.headSet(keyPartition, true);
+        }
+
+        List<Event> result = new ArrayList<>();
+        for (Long start : direction == Sort.Direction.ASC ? starts : starts.descendingSet()) {
+            result.addAll(partition(start).findAll(from, to, after, limit - result.size(), direction));
+            if (result.size() == limit) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Partitions that lie entirely inside interval are dropped, events of partially covered partitions are removed
+     * from partition collection.
+     */
+    @Override
+    public void delete(long from, long to) {
+        for (Long start : overlapping(from, to)) {
+            if (from <= start && end(start) - 1 <= to) {
+                drop(start);
+            } else {
+                partition(start).delete(Math.max(from, start), Math.min(to, end(start) - 1));
+            }
+        }
+    }
+
+    @Override
+    public long count() {
+        return existingPartitions().stream().mapToLong(start -> partition(start).count()).sum();
+    }
+
+    @Override
+    public long count(long from, long to) {
+        return overlapping(from, to).stream()
+                .mapToLong(start -> partition(start).count(Math.max(from, start), Math.min(to, end(start) - 1)))
+                .sum();
+    }
+
+    @Override
+    public long count(long from, long to, EventFilter filter) {
+        isTrue(filter != null, "'filter' must be initialized!");
+        return overlapping(from, to).stream()
+                .mapToLong(start -> partition(start).count(Math.max(from, start), Math.min(to, end(start) - 1), filter))
+                .sum();
+    }
+
+    @Override
+    public EventHistogram histogram(long from, long to, long bucketSize, EventGrouping grouping, EventFilter filter) {
+        isTrue(grouping != null, "'grouping' must be initialized!");
+        isTrue(filter != null, "'filter' must be initialized!");
+
+        EventHistogram histogram = new EventHistogram(from, to, bucketSize);
+        overlapping(from, to).forEach(start -> histogram.addAll(partition(start)
+                .histogram(Math.max(from, start), Math.min(to, end(start) - 1), bucketSize, grouping, filter)));
+        return histogram;
+    }
+
+    /**
+     * Drop partitions that contain only events older than specified time. Counters of dropped partitions are removed.
+     * @param timestamp time in milliseconds.
+     * @return number of dropped partitions.
+     */
+    public int dropPartitionsBefore(long timestamp) {
+        int dropped = 0;
+        for (Long start : existingPartitions().headSet(period.start(timestamp), false)) {
+            drop(start);
+            dropped++;
+        }
+        return dropped;
+    }
+
+    /**
+     * @return start times of partitions that exist in database in ascending order. Set is reloaded from database if
+     * refresh period is passed since last reload.
+     */
+    public NavigableSet<Long> existingPartitions() {
+        long refreshed = refreshedAt;
+        if (refreshed == Long.MIN_VALUE || System.currentTimeMillis() - refreshed >= refreshPeriod) {
+            refreshPartitions();
+        }
+        return Collections.unmodifiableNavigableSet(knownPartitions);
+    }
+
+    /**
+     * Reload set of existing partitions from collection names of database.
+     */
+    public void refreshPartitions() {
+        // partitions that become known while names are loaded are kept
+        Set<Long> known = new HashSet<>(knownPartitions);
+        String partitionPrefix = prefix + "_";
+        Set<Long> existing = mongoOperations.getCollectionNames().stream()
+                .filter(name -> name.startsWith(partitionPrefix))
+                .map(name -> period.parse(name.substring(partitionPrefix.length())))
+                .filter(start -> start >= 0)
+                .collect(Collectors.toSet());
+
+        knownPartitions.addAll(existing);
+        known.removeAll(existing);
+        knownPartitions.removeAll(known);
+        refreshedAt = System.currentTimeMillis();
+    }
+
+    private <T> Page<T> page(long from, long to, EventFilter filter, Pageable pageable,
+                             BiFunction<MongoEventDAO, Query, List<T>> finder) {
+        boolean bounded = from != Long.MIN_VALUE || to != Long.MAX_VALUE || !filter.isEmpty();
+        Sort.Order order = pageable != null && pageable.getSort() != null
+                ? pageable.getSort().getOrderFor("timestamp") : null;
+        Sort.Direction direction = order != null ? order.getDirection() : Sort.Direction.ASC;
+
+        NavigableSet<Long> starts = bounded ? overlapping(from, to) : existingPartitions();
+        long total = 0;
+        long skip = pageable != null ? pageable.getOffset() : 0;
+        List<T> content = new ArrayList<>();
+
+        for (Long start : direction == Sort.Direction.ASC ? starts : starts.descendingSet()) {
+            MongoEventDAO partition = partition(start);
+            long count = bounded ? partition.count(Math.max(from, start), Math.min(to, end(start) - 1), filter)
+                    : partition.count();
+            total += count;
+
+            if (pageable == null || content.size() == pageable.getPageSize()) {
+                continue;
+            }
+            if (skip >= count) {
+                skip -= count;
+                continue;
+            }
+
+            Query query = bounded ? new Query(MongoEventDAO.criteria(from, to, filter)) : new Query();
+            content.addAll(finder.apply(partition, query.with(new Sort(direction, "timestamp"))
+                    .skip((int) skip).limit(pageable.getPageSize() - content.size())));
+            skip = 0;
+        }
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    private void drop(long start) {
+        mongoOperations.dropCollection(collectionName(start));
+        knownPartitions.remove(start);
+        partitions.remove(start);
+        if (counters != null) {
+            counters.remove(start, end(start));
+        }
+    }
+
+    private Map<Long, List<Event>> groupByPartition(Collection<Event> events) {
+        return events.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.groupingBy(event -> period.start(event.getTimestamp()), TreeMap::new,
+                        Collectors.toList()));
+    }
+
+    private NavigableSet<Long> overlapping(long from, long to) {
+        if (from > to) {
+            return new TreeSet<>();
+        }
+        return existingPartitions().subSet(period.start(from), true, period.start(to), true);
+    }
+
+    /**
+     * Partition becomes known on first access, because collection is created by write to it.
+     */
+    private MongoEventDAO partition(long start) {
+        MongoEventDAO partition = partitions.get(start);
+        if (partition == null) {
+            MongoEventDAO created = partitionFactory.apply(collectionName(start));
+            partition = partitions.putIfAbsent(start, created);
+            if (partition == null) {
+                partition = created;
+            }
+        }
+        knownPartitions.add(start);
+        return partition;
+    }
+
+    private String collectionName(long start) {
+        return prefix + "_" + period.format(start);
+    }
+
+    private long end(long start) {
+        return start + period.getLength();
+    }
+}
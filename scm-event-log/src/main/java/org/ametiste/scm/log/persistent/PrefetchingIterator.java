@@ -0,0 +1,159 @@
+package org.ametiste.scm.log.persistent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Implementation of {@code CloseableIterator} that reads source iterator ahead on background thread.
+ * <p>
+ * Elements of source (e.g. documents of cursor converted to events) are read by dedicated daemon thread and put to
+ * bounded queue, so reading of the next elements overlaps with processing of current ones by consumer. Reader waits
+ * when queue is full. Exception thrown by source is passed to consumer and thrown from {@link #hasNext()} after all
+ * elements read before it.
+ * <p>
+ * {@link #close()} cancels reading and returns when reader thread is finished and source is closed. If reader is
+ * blocked in source call, close waits until this call returns. Source is always closed by reader thread.
+ * <p>
+ * Iterator is intended to be consumed by one thread. Source must not return {@literal null} elements.
+ *
+ * @param <T> type of elements.
+ */
+public class PrefetchingIterator<T> implements CloseableIterator<T> {
+
+    private static final Object END = new Object();
+
+    private final Logger logger = LoggerFactory.getLogger(PrefetchingIterator.class);
+
+    private final CloseableIterator<T> source;
+    private final BlockingQueue<Object> queue;
+    private final Thread reader;
+
+    private volatile boolean closed;
+    private Object next;
+
+    /**
+     * Create instance of {@code PrefetchingIterator} and start reading of source.
+     * @param source iterator that is read ahead.
+     * @param depth maximum number of elements read ahead. Must be greater than zero.
+     */
+    public PrefetchingIterator(CloseableIterator<T> source, int depth) {
+        isTrue(source != null, "'source' must be initialized!");
+        isTrue(depth > 0, "'depth' must be greater than zero!");
+
+        this.source = source;
+        this.queue = new ArrayBlockingQueue<>(depth);
+        this.reader = new Thread(this::prefetch, "event-prefetch");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = closed ? END : take();
+        }
+        if (next instanceof Failure) {
+            Throwable cause = ((Failure) next).cause;
+            next = END;
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+        return next != END;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T element = (T) next;
+        next = null;
+        return element;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        next = END;
+        reader.interrupt();
+        queue.clear();
+
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void prefetch() {
+        try {
+            while (!closed && source.hasNext()) {
+                queue.put(source.next());
+            }
+            if (!closed) {
+                queue.put(END);
+            }
+        } catch (InterruptedException e) {
+            // reading is cancelled by close
+        } catch (RuntimeException | Error e) {
+            fail(e);
+        } finally {
+            closeSource();
+        }
+    }
+
+    private void fail(Throwable cause) {
+        if (closed) {
+            return;
+        }
+        try {
+            queue.put(new Failure(cause));
+        } catch (InterruptedException e) {
+            // reading is cancelled by close
+        }
+    }
+
+    private Object take() {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for prefetched element", e);
+        }
+    }
+
+    private void closeSource() {
+        try {
+            source.close();
+        } catch (RuntimeException e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Failed to close prefetched iterator: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Exception thrown by source.
+     */
+    private static class Failure {
+
+        private final Throwable cause;
+
+        private Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Implementation of {@code EventDAO} that distributes events between several independent stores (shards).
+ * <p>
+ * Each event is routed to shard by hash of its id, so {@link #findOne(UUID)} reads only one shard and lookup of many
+ * ids requests each shard once with its own ids. Collections of events
+ * are split by shard and written to all shards in parallel by pool of writer threads (one thread per shard). Duplicates
+ * of all shards are reported with one {@code DuplicateEventsException} after all shards are written.
+ * <p>
+ * Range streams are k-way merged by timestamp from streams of all shards. Pages are assembled from heads of shard pages:
+ * each shard returns first {@code offset + size} events of requested order, so cost of page grows with its number.
+ * Keyset queries merge results of shards in order of (timestamp, id) that matches order of {@literal _id} index of
+ * Mongo. Counts are sums of shard counts.
+ * <p>
+ * Number and order of shards must not change while they contain events, otherwise events are looked up in wrong shard
+ * by id.
+ */
+public class ShardedEventDAO implements EventDAO {
+
+    private final List<EventDAO> shards;
+    private final ExecutorService writers;
+
+    /**
+     * Create instance of {@code ShardedEventDAO}.
+     * @param shards stores of events. Must contain at least one store.
+     */
+    public ShardedEventDAO(List<? extends EventDAO> shards) {
+        isTrue(shards != null && !shards.isEmpty(), "'shards' must not be empty!");
+        isTrue(shards.stream().allMatch(Objects::nonNull), "'shards' must not contain null elements!");
+
+        this.shards = new ArrayList<>(shards);
+        this.writers = this.shards.size() > 1 ? Executors.newFixedThreadPool(this.shards.size(), writerFactory()) : null;
+    }
+
+    /**
+     * @return stores of events in order of routing.
+     */
+    public List<EventDAO> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    @Override
+    public <S extends Event> S insert(S entity) {
+        isTrue(entity != null, "Entity must not be null!");
+        return shard(entity.getId()).insert(entity);
+    }
+
+    @Override
+    public <S extends Event> S save(S entity) {
+        isTrue(entity != null, "Entity must not be null!");
+        return shard(entity.getId()).save(entity);
+    }
+
+    @Override
+    public Collection<Event> insert(Collection<Event> entities) {
+        isTrue(entities != null, "The given collection of entities must not be null!");
+
+        List<Event> duplicates = new ArrayList<>();
+        DuplicateEventsException cause = null;
+        RuntimeException failure = null;
+        for (RuntimeException e : write(entities, EventDAO::insert)) {
+            if (e instanceof DuplicateEventsException) {
+                duplicates.addAll(((DuplicateEventsException) e).getDuplicates());
+                cause = cause != null ? cause : (DuplicateEventsException) e;
+            } else {
+                failure = failure != null ? failure : e;
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        if (!duplicates.isEmpty()) {
+            throw new DuplicateEventsException(duplicates.size() + " of " + entities.size() + " events already exist",
+                    duplicates, cause);
+        }
+        return entities;
+    }
+
+    @Override
+    public Collection<Event> save(Collection<Event> entities) {
+        isTrue(entities != null, "The given collection of entities must not be null!");
+
+        List<RuntimeException> failures = write(entities, EventDAO::save);
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+        return entities;
+    }
+
+    @Override
+    public Event findOne(UUID id) {
+        isTrue(id != null, "The given uuid must not be null!");
+        return shard(id).findOne(id);
+    }
+
+    @Override
+    public List<Event> findAll(Collection<UUID> ids) {
+        isTrue(ids != null, "'ids' must be initialized!");
+        isTrue(ids.stream().allMatch(Objects::nonNull), "The given uuids must not contain null!");
+
+        List<Event> result = new ArrayList<>();
+        ids.stream().distinct().collect(Collectors.groupingBy(this::shard))
+                .forEach((shard, shardIds) -> result.addAll(shard.findAll(shardIds)));
+        return result;
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll() {
+        return new ConcatenatedEventIterator(shards.stream()
+                .map(shard -> (Supplier<CloseableIterator<Event>>) shard::findAll)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll(long from, long to) {
+        return merge(shard -> shard.findAll(from, to));
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll(long from, long to, EventFilter filter) {
+        isTrue(filter != null, "'filter' must be initialized!");
+        return merge(shard -> shard.findAll(from, to, filter));
+    }
+
+    /**
+     * Pageable must be sorted by timestamp (or unsorted), because page is merged from shard pages by timestamp.
+     */
+    @Override
+    public Page<Event> findAll(Pageable pageable) {
+        return page(pageable, EventDAO::findAll, Event::getTimestamp);
+    }
+
+    /**
+     * Pageable must be sorted by timestamp (or unsorted), because page is merged from shard pages by timestamp.
+     */
+    @Override
+    public Page<Event> findAll(long from, long to, Pageable pageable) {
+        return page(pageable, (shard, head) -> shard.findAll(from, to, head), Event::getTimestamp);
+    }
+
+    /**
+     * Pageable must be sorted by timestamp (or unsorted), because page is merged from shard pages by timestamp.
+     */
+    @Override
+    public Page<Event> findAll(long from, long to, EventFilter filter, Pageable pageable) {
+        isTrue(filter != null, "'filter' must be initialized!");
+        return page(pageable, (shard, head) -> shard.findAll(from, to, filter, head), Event::getTimestamp);
+    }
+
+    /**
+     * Pageable must be sorted by timestamp (or unsorted), because page is merged from shard pages by timestamp.
+     */
+    @Override
+    public Page<EventSummary> findSummaries(Pageable pageable) {
+        return page(pageable, EventDAO::findSummaries, EventSummary::getTimestamp);
+    }
+
+    /**
+     * Pageable must be sorted by timestamp (or unsorted), because page is merged from shard pages by timestamp.
+     */
+    @Override
+    public Page<EventSummary> findSummaries(long from, long to, Pageable pageable) {
+        return page(pageable, (shard, head) -> shard.findSummaries(from, to, head), EventSummary::getTimestamp);
+    }
+
+    /**
+     * Pageable must be sorted by timestamp (or unsorted), because page is merged from shard pages by timestamp.
+     */
+    @Override
+    public Page<EventSummary> findSummaries(long from, long to, EventFilter filter, Pageable pageable) {
+        isTrue(filter != null, "'filter' must be initialized!");
+        return page(pageable, (shard, head) -> shard.findSummaries(from, to, filter, head),
+                EventSummary::getTimestamp);
+    }
+
+    @Override
+    public List<Event> findAll(long from, long to, EventKey after, int limit, Sort.Direction direction) {
+        isTrue(limit > 0, "'limit' must be greater than zero!");
+        isTrue(direction != null, "'direction' must be initialized!");
+
+        Comparator<Event> order = Comparator.comparingLong(Event::getTimestamp)
+                .thenComparing(Event::getId, ShardedEventDAO::compareIds);
+        return shards.stream()
+                .flatMap(shard -> shard.findAll(from, to, after, limit, direction).stream())
+                .sorted(direction == Sort.Direction.ASC ? order : order.reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void delete(long from, long to) {
+        shards.forEach(shard -> shard.delete(from, to));
+    }
+
+    @Override
+    public long count() {
+        return shards.stream().mapToLong(EventDAO::count).sum();
+    }
+
+    @Override
+    public long count(long from, long to) {
+        return shards.stream().mapToLong(shard -> shard.count(from, to)).sum();
+    }
+
+    @Override
+    public long count(long from, long to, EventFilter filter) {
+        isTrue(filter != null, "'filter' must be initialized!");
+        return shards.stream().mapToLong(shard -> shard.count(from, to, filter)).sum();
+    }
+
+    @Override
+    public EventHistogram histogram(long from, long to, long bucketSize, EventGrouping grouping, EventFilter filter) {
+        isTrue(grouping != null, "'grouping' must be initialized!");
+        isTrue(filter != null, "'filter' must be initialized!");
+
+        EventHistogram histogram = new EventHistogram(from, to, bucketSize);
+        shards.forEach(shard -> histogram.addAll(shard.histogram(from, to, bucketSize, grouping, filter)));
+        return histogram;
+    }
+
+    /**
+     * Stop writer threads. Stores of shards are not closed.
+     */
+    public void close() {
+        if (writers != null) {
+            writers.shutdown();
+        }
+    }
+
+    /**
+     * @return shard that stores event with specified id.
+     */
+    EventDAO shard(UUID id) {
+        return shards.get(Math.floorMod(id.hashCode(), shards.size()));
+    }
+
+    /**
+     * Write events of each shard with specified operation. Shards are written in parallel if events of several shards
+     * are given. All shards are written even if some of them fail.
+     * @return exceptions thrown by shards.
+     */
+    private List<RuntimeException> write(Collection<Event> events, BiFunction<EventDAO, Collection<Event>, ?> operation) {
+        Map<EventDAO, List<Event>> groups = events.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.groupingBy(event -> shard(event.getId()), LinkedHashMap::new, Collectors.toList()));
+
+        List<RuntimeException> failures = new ArrayList<>();
+        if (groups.size() <= 1) {
+            groups.forEach((shard, group) -> run(() -> operation.apply(shard, group), failures::add));
+            return failures;
+        }
+
+        List<Future<?>> results = new ArrayList<>(groups.size());
+        groups.forEach((shard, group) -> results.add(writers.submit(() -> operation.apply(shard, group))));
+        for (Future<?> result : results) {
+            run(() -> await(result), failures::add);
+        }
+        return failures;
+    }
+
+    private CloseableIterator<Event> merge(Function<EventDAO, CloseableIterator<Event>> stream) {
+        List<CloseableIterator<Event>> sources = new ArrayList<>(shards.size());
+        try {
+            for (EventDAO shard : shards) {
+                sources.add(stream.apply(shard));
+            }
+        } catch (RuntimeException e) {
+            sources.forEach(CloseableIterator::close);
+            throw e;
+        }
+        return new MergingEventIterator(sources);
+    }
+
+    private <T> Page<T> page(Pageable pageable, BiFunction<EventDAO, Pageable, Page<T>> finder,
+                             ToLongFunction<T> timestamp) {
+        if (pageable == null) {
+            long total = shards.stream().mapToLong(shard -> finder.apply(shard, null).getTotalElements()).sum();
+            return new PageImpl<>(Collections.emptyList(), null, total);
+        }
+
+        Sort.Order order = pageable.getSort() != null ? pageable.getSort().getOrderFor("timestamp") : null;
+        Comparator<T> comparator = Comparator.comparingLong(timestamp);
+        if (order != null && order.getDirection() == Sort.Direction.DESC) {
+            comparator = comparator.reversed();
+        }
+
+        // each shard may hold all events of requested page, so heads of shards are read from the first element
+        Pageable head = new PageRequest(0, pageable.getOffset() + pageable.getPageSize(), pageable.getSort());
+        long total = 0;
+        List<T> merged = new ArrayList<>();
+        for (EventDAO shard : shards) {
+            Page<T> page = finder.apply(shard, head);
+            total += page.getTotalElements();
+            merged.addAll(page.getContent());
+        }
+        merged.sort(comparator);
+
+        int start = Math.min(pageable.getOffset(), merged.size());
+        int end = Math.min(start + pageable.getPageSize(), merged.size());
+        return new PageImpl<>(new ArrayList<>(merged.subList(start, end)), pageable, total);
+    }
+
+    private static void run(Runnable operation, Consumer<RuntimeException> failures) {
+        try {
+            operation.run();
+        } catch (RuntimeException e) {
+            failures.accept(e);
+        }
+    }
+
+    private static void await(Future<?> result) {
+        try {
+            result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("Failed to write events to shard: " + e.getCause().getMessage(),
+                    e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Write of events to shard is interrupted", e);
+        }
+    }
+
+    /**
+     * Compare ids in order of Mongo index. Driver writes {@code UUID} as binary of most and least significant bits in
+     * little-endian byte order (Java legacy representation) and Mongo compares binary values byte by byte.
+     */
+    static int compareIds(UUID first, UUID second) {
+        int result = Long.compareUnsigned(Long.reverseBytes(first.getMostSignificantBits()),
+                Long.reverseBytes(second.getMostSignificantBits()));
+        return result != 0 ? result : Long.compareUnsigned(Long.reverseBytes(first.getLeastSignificantBits()),
+                Long.reverseBytes(second.getLeastSignificantBits()));
+    }
+
+    private static ThreadFactory writerFactory() {
+        AtomicInteger number = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, "event-shard-writer-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
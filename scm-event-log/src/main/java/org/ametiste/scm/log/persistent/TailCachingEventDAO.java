@@ -0,0 +1,165 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Decorator of {@code EventDAO} that feeds {@link EventTailCache} with written events.
+ * <p>
+ * Events are added to cache after write operation succeeds. If collection insert reports duplicates, all other events
+ * are added (duplicates are expected to be saved by caller). Removed time intervals are removed from cache. Read
+ * operations are delegated without cache, cache is read by informer directly.
+ */
+public class TailCachingEventDAO implements EventDAO {
+
+    private final EventDAO eventDAO;
+    private final EventTailCache cache;
+
+    /**
+     * Create instance of {@code TailCachingEventDAO}.
+     * @param eventDAO decorated DAO.
+     * @param cache cache of the most recent events.
+     */
+    public TailCachingEventDAO(EventDAO eventDAO, EventTailCache cache) {
+        isTrue(eventDAO != null, "'eventDAO' must be initialized!");
+        isTrue(cache != null, "'cache' must be initialized!");
+
+        this.eventDAO = eventDAO;
+        this.cache = cache;
+    }
+
+    @Override
+    public <S extends Event> S insert(S entity) {
+        S inserted = eventDAO.insert(entity);
+        cache.addAll(Collections.singleton(entity));
+        return inserted;
+    }
+
+    @Override
+    public <S extends Event> S save(S entity) {
+        S saved = eventDAO.save(entity);
+        cache.addAll(Collections.singleton(entity));
+        return saved;
+    }
+
+    @Override
+    public Collection<Event> insert(Collection<Event> entities) {
+        Collection<Event> inserted;
+        try {
+            inserted = eventDAO.insert(entities);
+        } catch (DuplicateEventsException e) {
+            Set<UUID> duplicates = e.getDuplicates().stream().map(Event::getId).collect(Collectors.toSet());
+            cache.addAll(entities.stream()
+                    .filter(event -> event != null && !duplicates.contains(event.getId()))
+                    .collect(Collectors.toList()));
+            throw e;
+        }
+        cache.addAll(entities);
+        return inserted;
+    }
+
+    @Override
+    public Collection<Event> save(Collection<Event> entities) {
+        Collection<Event> saved = eventDAO.save(entities);
+        cache.addAll(entities);
+        return saved;
+    }
+
+    @Override
+    public Event findOne(UUID id) {
+        return eventDAO.findOne(id);
+    }
+
+    @Override
+    public List<Event> findAll(Collection<UUID> ids) {
+        return eventDAO.findAll(ids);
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll() {
+        return eventDAO.findAll();
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll(long from, long to) {
+        return eventDAO.findAll(from, to);
+    }
+
+    @Override
+    public Page<Event> findAll(Pageable pageable) {
+        return eventDAO.findAll(pageable);
+    }
+
+    @Override
+    public Page<Event> findAll(long from, long to, Pageable pageable) {
+        return eventDAO.findAll(from, to, pageable);
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll(long from, long to, EventFilter filter) {
+        return eventDAO.findAll(from, to, filter);
+    }
+
+    @Override
+    public Page<Event> findAll(long from, long to, EventFilter filter, Pageable pageable) {
+        return eventDAO.findAll(from, to, filter, pageable);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(Pageable pageable) {
+        return eventDAO.findSummaries(pageable);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(long from, long to, Pageable pageable) {
+        return eventDAO.findSummaries(from, to, pageable);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(long from, long to, EventFilter filter, Pageable pageable) {
+        return eventDAO.findSummaries(from, to, filter, pageable);
+    }
+
+    @Override
+    public List<Event> findAll(long from, long to, EventKey after, int limit, Sort.Direction direction) {
+        return eventDAO.findAll(from, to, after, limit, direction);
+    }
+
+    @Override
+    public void delete(long from, long to) {
+        eventDAO.delete(from, to);
+        cache.remove(from, to);
+    }
+
+    @Override
+    public long count() {
+        return eventDAO.count();
+    }
+
+    @Override
+    public long count(long from, long to) {
+        return eventDAO.count(from, to);
+    }
+
+    @Override
+    public long count(long from, long to, EventFilter filter) {
+        return eventDAO.count(from, to, filter);
+    }
+
+    @Override
+    public EventHistogram histogram(long from, long to, long bucketSize, EventGrouping grouping, EventFilter filter) {
+        return eventDAO.histogram(from, to, bucketSize, grouping, filter);
+    }
+}
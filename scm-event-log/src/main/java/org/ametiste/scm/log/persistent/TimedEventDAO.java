@@ -0,0 +1,158 @@
+package org.ametiste.scm.log.persistent;
+
+import org.ametiste.scm.log.metrics.Histogram;
+import org.ametiste.scm.messaging.data.event.Event;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Decorator of {@code EventDAO} that records latency of write operations.
+ * <p>
+ * Latency of insert and save operations (both successful and failed) is recorded to histograms in milliseconds. Read
+ * operations are delegated without measurement.
+ */
+public class TimedEventDAO implements EventDAO {
+
+    private final EventDAO eventDAO;
+    private final Histogram insertLatency;
+    private final Histogram saveLatency;
+
+    /**
+     * Create instance of {@code TimedEventDAO}.
+     * @param eventDAO decorated DAO.
+     * @param insertLatency histogram of insert latency.
+     * @param saveLatency histogram of save latency.
+     */
+    public TimedEventDAO(EventDAO eventDAO, Histogram insertLatency, Histogram saveLatency) {
+        isTrue(eventDAO != null, "'eventDAO' must be initialized!");
+        isTrue(insertLatency != null, "'insertLatency' must be initialized!");
+        isTrue(saveLatency != null, "'saveLatency' must be initialized!");
+
+        this.eventDAO = eventDAO;
+        this.insertLatency = insertLatency;
+        this.saveLatency = saveLatency;
+    }
+
+    @Override
+    public <S extends Event> S insert(S entity) {
+        return timed(insertLatency, () -> eventDAO.insert(entity));
+    }
+
+    @Override
+    public <S extends Event> S save(S entity) {
+        return timed(saveLatency, () -> eventDAO.save(entity));
+    }
+
+    @Override
+    public Collection<Event> insert(Collection<Event> entities) {
+        return timed(insertLatency, () -> eventDAO.insert(entities));
+    }
+
+    @Override
+    public Collection<Event> save(Collection<Event> entities) {
+        return timed(saveLatency, () -> eventDAO.save(entities));
+    }
+
+    @Override
+    public Event findOne(UUID id) {
+        return eventDAO.findOne(id);
+    }
+
+    @Override
+    public List<Event> findAll(Collection<UUID> ids) {
+        return eventDAO.findAll(ids);
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll() {
+        return eventDAO.findAll();
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll(long from, long to) {
+        return eventDAO.findAll(from, to);
+    }
+
+    @Override
+    public Page<Event> findAll(Pageable pageable) {
+        return eventDAO.findAll(pageable);
+    }
+
+    @Override
+    public Page<Event> findAll(long from, long to, Pageable pageable) {
+        return eventDAO.findAll(from, to, pageable);
+    }
+
+    @Override
+    public CloseableIterator<Event> findAll(long from, long to, EventFilter filter) {
+        return eventDAO.findAll(from, to, filter);
+    }
+
+    @Override
+    public Page<Event> findAll(long from, long to, EventFilter filter, Pageable pageable) {
+        return eventDAO.findAll(from, to, filter, pageable);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(Pageable pageable) {
+        return eventDAO.findSummaries(pageable);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(long from, long to, Pageable pageable) {
+        return eventDAO.findSummaries(from, to, pageable);
+    }
+
+    @Override
+    public Page<EventSummary> findSummaries(long from, long to, EventFilter filter, Pageable pageable) {
+        return eventDAO.findSummaries(from, to, filter, pageable);
+    }
+
+    @Override
+    public List<Event> findAll(long from, long to, EventKey after, int limit, Sort.Direction direction) {
+        return eventDAO.findAll(from, to, after, limit, direction);
+    }
+
+    @Override
+    public void delete(long from, long to) {
+        eventDAO.delete(from, to);
+    }
+
+    @Override
+    public long count() {
+        return eventDAO.count();
+    }
+
+    @Override
+    public long count(long from, long to) {
+        return eventDAO.count(from, to);
+    }
+
+    @Override
+    public long count(long from, long to, EventFilter filter) {
+        return eventDAO.count(from, to, filter);
+    }
+
+    @Override
+    public EventHistogram histogram(long from, long to, long bucketSize, EventGrouping grouping, EventFilter filter) {
+        return eventDAO.histogram(from, to, bucketSize, grouping, filter);
+    }
+
+    private <T> T timed(Histogram histogram, Supplier<T> operation) {
+        long start = System.nanoTime();
+        try {
+            return operation.get();
+        } finally {
+            histogram.record((System.nanoTime() - start) / 1000000);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.ametiste.scm.log.service;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Policy that chooses flush period and flush size from observed flushes.
+ * <p>
+ * Policy keeps exponentially weighted averages of flush duration and arrival rate of events:
+ * <ul>
+ *     <li><b>period</b> is {@code latencyFactor} times average flush duration, so write operations take about
+ *     {@code 1 / latencyFactor} of time. When storage is fast (idle service) period goes down to minimum and events are
+ *     written promptly. When writes slow down under load period grows and each flush takes more events.</li>
+ *     <li><b>flush size</b> is number of events expected to arrive during one period. Burst of events reaches it
+ *     before period elapsed and triggers flush with big batch.</li>
+ * </ul>
+ * Both values are kept within configured bounds. Policy with equal bounds works as fixed period and size.
+ * <p>
+ * Policy is updated by single scheduler thread, current values might be read from any thread.
+ */
+public class AdaptiveFlushPolicy {
+
+    private static final double SMOOTHING = 0.3;
+
+    private final long minPeriod;
+    private final long maxPeriod;
+    private final int minFlushSize;
+    private final int maxFlushSize;
+    private final double latencyFactor;
+
+    private double averageDuration = -1;
+    private double averageRate = -1;
+
+    private volatile long period;
+    private volatile int flushSize;
+
+    /**
+     * Create policy with fixed period and flush size.
+     * @param period flush period (in milliseconds). Must be positive number.
+     * @param flushSize flush size. Must be positive number.
+     */
+    public AdaptiveFlushPolicy(long period, int flushSize) {
+        this(period, period, flushSize, flushSize, 1);
+    }
+
+    /**
+     * Create adaptive policy. Policy starts with maximum period and minimum flush size.
+     * @param minPeriod minimum flush period (in milliseconds). Must be positive number.
+     * @param maxPeriod maximum flush period (in milliseconds). Must not be less than {@code minPeriod}.
+     * @param minFlushSize minimum flush size. Must be positive number.
+     * @param maxFlushSize maximum flush size. Must not be less than {@code minFlushSize}.
+     * @param latencyFactor ratio between flush period and flush duration. Must be positive number.
+     */
+    public AdaptiveFlushPolicy(long minPeriod, long maxPeriod, int minFlushSize, int maxFlushSize,
+                               double latencyFactor) {
+        isTrue(minPeriod > 0, "'minPeriod' must be greater than zero!");
+        isTrue(maxPeriod >= minPeriod, "'maxPeriod' must not be less than 'minPeriod'!");
+        isTrue(minFlushSize > 0, "'minFlushSize' must be greater than zero!");
+        isTrue(maxFlushSize >= minFlushSize, "'maxFlushSize' must not be less than 'minFlushSize'!");
+        isTrue(latencyFactor > 0, "'latencyFactor' must be greater than zero!");
+
+        this.minPeriod = minPeriod;
+        this.maxPeriod = maxPeriod;
+        this.minFlushSize = minFlushSize;
+        this.maxFlushSize = maxFlushSize;
+        this.latencyFactor = latencyFactor;
+        this.period = maxPeriod;
+        this.flushSize = minFlushSize;
+    }
+
+    /**
+     * Update policy with result of flush.
+     * @param events number of flushed events.
+     * @param duration duration of flush (in milliseconds).
+     * @param elapsed time since previous flush (in milliseconds).
+     */
+    public void update(int events, long duration, long elapsed) {
+        averageDuration = smooth(averageDuration, Math.max(0, duration));
+        if (elapsed > 0) {
+            averageRate = smooth(averageRate, (double) Math.max(0, events) / elapsed);
+        }
+
+        long nextPeriod = clamp(Math.round(averageDuration * latencyFactor), minPeriod, maxPeriod);
+        period = nextPeriod;
+        if (averageRate >= 0) {
+            flushSize = (int) clamp(Math.round(averageRate * nextPeriod), minFlushSize, maxFlushSize);
+        }
+    }
+
+    /**
+     * @return current flush period (in milliseconds).
+     */
+    public long getPeriod() {
+        return period;
+    }
+
+    /**
+     * @return current number of buffered events that trigger flush.
+     */
+    public int getFlushSize() {
+        return flushSize;
+    }
+
+    private static double smooth(double average, double value) {
+        return average < 0 ? value : average + SMOOTHING * (value - average);
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,151 @@
+package org.ametiste.scm.log.service;
+
+import org.ametiste.scm.log.journal.EventJournal;
+import org.ametiste.scm.messaging.data.event.Event;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Double buffer for events between store and flush operations.
+ * <p>
+ * Producers append events to active segment. Flusher takes ownership of whole active segment with {@link #drain()}
+ * that swaps it with fresh empty segment in constant time, so producers continue appending without waiting for flush.
+ * Drained segment is never touched by buffer again.
+ * <p>
+ * If buffer has {@code EventJournal} each event is appended to journal in the same critical section with segment, and
+ * drained segment carries journal position captured at the moment of swap. So all journal records before that position
+ * belong to drained segment or to segments drained earlier.
+ * <p>
+ * Buffer remembers time when first event was appended to active segment, so age of oldest buffered event is known.
+ */
+public class EventBuffer {
+
+    private final EventJournal journal;
+    private final Object lock = new Object();
+
+    private List<Event> active = new ArrayList<>();
+    private volatile long activeSince = -1;
+
+    /**
+     * Create buffer without journal.
+     */
+    public EventBuffer() {
+        this(null);
+    }
+
+    /**
+     * Create buffer.
+     * @param journal journal for buffered events. Might be {@literal null}.
+     */
+    public EventBuffer(EventJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Append event to active segment.
+     * @param event must not be {@literal null}.
+     */
+    public void add(Event event) {
+        isTrue(event != null, "'event' must not be null!");
+
+        byte[] record = journal != null ? journal.encode(event) : null;
+        synchronized (lock) {
+            if (record != null) {
+                journal.append(record);
+            }
+            markActive();
+            active.add(event);
+        }
+    }
+
+    /**
+     * Append all events to active segment.
+     * @param events must not be {@literal null} and must not contain {@literal null} elements.
+     */
+    public void addAll(Collection<Event> events) {
+        isTrue(events != null, "'events' collection must not be null!");
+
+        List<byte[]> records = new ArrayList<>(events.size());
+        if (journal != null) {
+            events.forEach(event -> records.add(journal.encode(event)));
+        }
+        synchronized (lock) {
+            for (byte[] record : records) {
+                journal.append(record);
+            }
+            if (!events.isEmpty()) {
+                markActive();
+            }
+            active.addAll(events);
+        }
+    }
+
+    /**
+     * Seal active segment and replace it with new one.
+     * @return sealed segment. Caller becomes exclusive owner of returned segment.
+     */
+    public Segment drain() {
+        Segment sealed;
+        synchronized (lock) {
+            sealed = new Segment(active, journal != null ? journal.position() : -1, activeSince);
+            active = new ArrayList<>();
+            activeSince = -1;
+        }
+        return sealed;
+    }
+
+    /**
+     * @return time (in milliseconds) when first event of active segment was appended or {@literal -1} if active
+     * segment is empty.
+     */
+    public long activeSince() {
+        return activeSince;
+    }
+
+    private void markActive() {
+        if (activeSince < 0) {
+            activeSince = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Sealed segment of buffer.
+     */
+    public static class Segment {
+
+        private final List<Event> events;
+        private final long journalPosition;
+        private final long since;
+
+        Segment(List<Event> events, long journalPosition, long since) {
+            this.events = events;
+            this.journalPosition = journalPosition;
+            this.since = since;
+        }
+
+        /**
+         * @return events of segment in order of appending.
+         */
+        public List<Event> getEvents() {
+            return events;
+        }
+
+        /**
+         * @return journal position after last record of segment or {@literal -1} if buffer has no journal.
+         */
+        public long getJournalPosition() {
+            return journalPosition;
+        }
+
+        /**
+         * @return time (in milliseconds) when first event of segment was appended or {@literal -1} if segment is empty.
+         */
+        public long getSince() {
+            return since;
+        }
+    }
+}
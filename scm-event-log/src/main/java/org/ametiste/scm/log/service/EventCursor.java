@@ -0,0 +1,61 @@
+package org.ametiste.scm.log.service;
+
+import org.ametiste.scm.log.persistent.EventKey;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Codec between {@code EventKey} and opaque cursor token returned to clients.
+ * <p>
+ * Token is URL-safe Base64 representation of event timestamp and id, so it might be passed as request parameter
+ * without escaping.
+ */
+public final class EventCursor {
+
+    private static final int TOKEN_BYTES = Long.BYTES * 3;
+
+    private EventCursor() {
+    }
+
+    /**
+     * @param key must not be {@literal null}.
+     * @return cursor token for specified key.
+     */
+    public static String encode(EventKey key) {
+        isTrue(key != null, "'key' must not be null!");
+
+        ByteBuffer buffer = ByteBuffer.allocate(TOKEN_BYTES);
+        buffer.putLong(key.getTimestamp());
+        buffer.putLong(key.getId().getMostSignificantBits());
+        buffer.putLong(key.getId().getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @param token cursor token.
+     * @return key encoded in token or {@literal null} if token is {@literal null} or empty.
+     * @throws InvalidCursorException if token is malformed.
+     */
+    public static EventKey decode(String token) throws InvalidCursorException {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("cursor token is malformed: " + token, e);
+        }
+        if (bytes.length != TOKEN_BYTES) {
+            throw new InvalidCursorException("cursor token is malformed: " + token);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new EventKey(buffer.getLong(), new UUID(buffer.getLong(), buffer.getLong()));
+    }
+}
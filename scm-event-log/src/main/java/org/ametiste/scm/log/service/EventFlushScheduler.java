@@ -0,0 +1,135 @@
+package org.ametiste.scm.log.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Scheduler that invokes {@code flush} of {@code EventLogger} by two triggers:
+ * <ul>
+ *     <li><b>time</b> - flush executes with delay between invocations;</li>
+ *     <li><b>size</b> - flush executes as soon as logger buffer reach flush size.</li>
+ * </ul>
+ * All flushes are executed in single scheduler thread, so time and size triggers never run concurrently. Size trigger
+ * requests are coalesced: while one request waits for execution all other are ignored.
+ * <p>
+ * Delay and flush size are defined by {@code AdaptiveFlushPolicy}. Result of each flush updates policy, and next time
+ * triggered flush is scheduled with current policy period.
+ * <p>
+ * On {@link #stop()} scheduler make last attempt to flush buffered events.
+ */
+public class EventFlushScheduler {
+
+    private static final long INITIAL_DELAY = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(EventFlushScheduler.class);
+
+    private final EventLogger eventLogger;
+    private final AdaptiveFlushPolicy policy;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private long lastFlush = System.currentTimeMillis();
+
+    /**
+     * Create new instance of {@code EventFlushScheduler} with fixed period and flush size.
+     * @param eventLogger logger to flush.
+     * @param flushPeriod delay between time triggered flushes (in milliseconds). Must be positive number.
+     * @param flushSize number of buffered events that trigger flush. Must be positive number.
+     */
+    public EventFlushScheduler(EventLogger eventLogger, long flushPeriod, int flushSize) {
+        this(eventLogger, new AdaptiveFlushPolicy(flushPeriod, flushSize));
+    }
+
+    /**
+     * Create new instance of {@code EventFlushScheduler}.
+     * @param eventLogger logger to flush.
+     * @param policy policy that defines flush period and size.
+     */
+    public EventFlushScheduler(EventLogger eventLogger, AdaptiveFlushPolicy policy) {
+        isTrue(eventLogger != null, "'eventLogger' must be initialized!");
+        isTrue(policy != null, "'policy' must be initialized!");
+
+        this.eventLogger = eventLogger;
+        this.policy = policy;
+    }
+
+    /**
+     * Start time triggered flushes.
+     */
+    public void start() {
+        executor.schedule(this::scheduledFlush, INITIAL_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop scheduler and flush events that left in buffer.
+     */
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(policy.getPeriod(), TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    /**
+     * Notify scheduler that new events were stored to logger. If buffer reach flush size scheduler submit flush.
+     */
+    public void onStored() {
+        if (eventLogger.bufferSize() >= policy.getFlushSize() && flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    flushRequested.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * @return current delay between time triggered flushes (in milliseconds).
+     */
+    public long getFlushPeriod() {
+        return policy.getPeriod();
+    }
+
+    /**
+     * @return current number of buffered events that trigger flush.
+     */
+    public int getFlushSize() {
+        return policy.getFlushSize();
+    }
+
+    private void scheduledFlush() {
+        flush();
+        try {
+            executor.schedule(this::scheduledFlush, policy.getPeriod(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // scheduler is stopped
+        }
+    }
+
+    private void flush() {
+        int events = eventLogger.bufferSize();
+        long start = System.currentTimeMillis();
+        try {
+            eventLogger.flush();
+        } catch (RuntimeException e) {
+            if (logger.isErrorEnabled()) {
+                logger.error("Failed to flush events: " + e.getMessage(), e);
+            }
+        }
+
+        long end = System.currentTimeMillis();
+        policy.update(events, end - start, end - lastFlush);
+        lastFlush = end;
+    }
+}
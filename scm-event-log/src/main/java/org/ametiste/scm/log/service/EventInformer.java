@@ -1,10 +1,17 @@
 package org.ametiste.scm.log.service;
 
+import org.ametiste.scm.log.data.info.CursorPage;
+import org.ametiste.scm.log.persistent.EventFilter;
+import org.ametiste.scm.log.persistent.EventGrouping;
+import org.ametiste.scm.log.persistent.EventHistogram;
+import org.ametiste.scm.log.persistent.EventSummary;
 import org.ametiste.scm.messaging.data.event.Event;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.util.CloseableIterator;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -25,6 +32,13 @@ public interface EventInformer {
      */
     Event find(UUID id);
 
+    /**
+     * Find events with specified ids. Events are looked up with batch requests to storage.
+     * @param ids target event ids. Must not be {@literal null} and must not contain {@literal null}.
+     * @return list of events in order of ids, element is {@literal null} if event with id absent.
+     */
+    List<Event> find(List<UUID> ids);
+
     /**
      * Retrieve last N stored events.
      * @param count number of events to retrieve.
@@ -33,6 +47,14 @@ public interface EventInformer {
      */
     Collection<Event> getLastEvents(int count, Sort.Direction direction);
 
+    /**
+     * Retrieve summaries of last N stored events. Only summary fields of events are read from storage.
+     * @param count number of events to retrieve.
+     * @param direction sort direction.
+     * @return collection with summaries of founded events.
+     */
+    Collection<EventSummary> getLastEventSummaries(int count, Sort.Direction direction);
+
     /**
      * Retrieve events for specified time period.
      * @param start start time point in seconds. If value is negative number informer search without lower time
@@ -45,4 +67,90 @@ public interface EventInformer {
      * @return {@code Page} with founded events content
      */
     Page<Event> getEventsForTime(int start, int end, int page, int pageSize, Sort.Direction direction);
+
+    /**
+     * Retrieve events for specified time period that match filter. Filter is pushed down to storage query.
+     * @param start start time point in seconds. If value is negative number informer search without lower time
+     *              period bound.
+     * @param end end time point in seconds. If value is negative number informer search with current time upper
+     *            time period bound.
+     * @param filter filter of events. Must not be {@literal null}.
+     * @param page zero-based page number.
+     * @param pageSize number of documents per page.
+     * @param direction sort direction.
+     * @return {@code Page} with founded events content
+     */
+    Page<Event> getEventsForTime(int start, int end, EventFilter filter, int page, int pageSize,
+                                 Sort.Direction direction);
+
+    /**
+     * Retrieve summaries of events for specified time period. Only summary fields of events are read from storage.
+     * @param start start time point in seconds. If value is negative number informer search without lower time
+     *              period bound.
+     * @param end end time point in seconds. If value is negative number informer search with current time upper
+     *            time period bound.
+     * @param page zero-based page number.
+     * @param pageSize number of documents per page.
+     * @param direction sort direction.
+     * @return {@code Page} with summaries of founded events
+     */
+    Page<EventSummary> getEventSummariesForTime(int start, int end, int page, int pageSize, Sort.Direction direction);
+
+    /**
+     * Retrieve summaries of events for specified time period that match filter.
+     * @param start start time point in seconds. If value is negative number informer search without lower time
+     *              period bound.
+     * @param end end time point in seconds. If value is negative number informer search with current time upper
+     *            time period bound.
+     * @param filter filter of events. Must not be {@literal null}.
+     * @param page zero-based page number.
+     * @param pageSize number of documents per page.
+     * @param direction sort direction.
+     * @return {@code Page} with summaries of founded events
+     */
+    Page<EventSummary> getEventSummariesForTime(int start, int end, EventFilter filter, int page, int pageSize,
+                                                Sort.Direction direction);
+
+    /**
+     * Retrieve events for specified time period with keyset pagination. Each page is requested with cursor taken from
+     * previous page, so request of any page costs the same as request of the first one.
+     * @param start start time point in seconds. If value is negative number informer search without lower time
+     *              period bound.
+     * @param end end time point in seconds. If value is negative number informer search with current time upper
+     *            time period bound.
+     * @param cursor cursor token of previous page. If {@literal null} or empty first page is returned.
+     * @param pageSize number of documents per page.
+     * @param direction sort direction. Must be the same as direction of request that returned cursor.
+     * @return {@code CursorPage} with founded events content.
+     * @throws InvalidCursorException if cursor token is malformed.
+     */
+    CursorPage<Event> getEventsForTime(int start, int end, String cursor, int pageSize, Sort.Direction direction);
+
+    /**
+     * Stream events for specified time period that match filter in ascending order of timestamp. Events are read from
+     * storage cursor while caller iterates them, so memory usage doesn't depend on length of period.
+     * @param start start time point in seconds. If value is negative number informer search without lower time
+     *              period bound.
+     * @param end end time point in seconds. If value is negative number informer search with current time upper
+     *            time period bound.
+     * @param filter filter of events. Must not be {@literal null}.
+     * @return {@link CloseableIterator} of events that needs to be closed.
+     */
+    CloseableIterator<Event> streamEventsForTime(int start, int end, EventFilter filter);
+
+    /**
+     * Count events for specified time period that match filter per time bucket and group. Buckets are aligned to
+     * multiples of bucket size.
+     * @param start start time point in seconds. If value is negative number histogram covers the last
+     *              {@link EventHistogram#MAX_BUCKETS} buckets before {@code end}.
+     * @param end end time point in seconds. If value is negative number informer search with current time upper
+     *            time period bound.
+     * @param bucketSize size of time bucket in seconds. Must be greater than zero.
+     * @param grouping field that groups events. Must not be {@literal null}.
+     * @param filter filter of events. Must not be {@literal null}.
+     * @return {@code EventHistogram} with number of events per bucket for each group.
+     * @throws InvalidRequestException if start is greater than end or period contains more than
+     * {@link EventHistogram#MAX_BUCKETS} buckets.
+     */
+    EventHistogram getHistogramForTime(int start, int end, int bucketSize, EventGrouping grouping, EventFilter filter);
 }
@@ -1,30 +1,54 @@
 package org.ametiste.scm.log.service;
 
+import org.ametiste.scm.log.data.info.CursorPage;
 import org.ametiste.scm.log.persistent.EventDAO;
+import org.ametiste.scm.log.persistent.EventFilter;
+import org.ametiste.scm.log.persistent.EventGrouping;
+import org.ametiste.scm.log.persistent.EventHistogram;
+import org.ametiste.scm.log.persistent.EventKey;
+import org.ametiste.scm.log.persistent.EventSummary;
+import org.ametiste.scm.log.persistent.EventTailCache;
 import org.ametiste.scm.messaging.data.event.Event;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.util.CloseableIterator;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.Validate.isTrue;
 
 /**
  * Default implementation of {@code EventInformer} interface.
+ * <p>
+ * If informer has {@link EventTailCache} last events and pages of time ranges covered by cache are served from memory
+ * without requests to event repository. Histograms of time ranges covered by cache are counted from cached events too.
  */
 public class EventInformerImpl implements EventInformer {
 
     private final EventDAO eventDAO;
+    private final EventTailCache cache;
 
     /**
      * Create new instance of {@code EventInformer}.
      * @param eventDAO DAO to access event repository.
      */
     public EventInformerImpl(EventDAO eventDAO) {
+        this(eventDAO, null);
+    }
+
+    /**
+     * Create new instance of {@code EventInformer}.
+     * @param eventDAO DAO to access event repository.
+     * @param cache cache of the most recent events. Might be {@literal null}.
+     */
+    public EventInformerImpl(EventDAO eventDAO, EventTailCache cache) {
         isTrue(eventDAO != null, "'eventDAO' must be initialized!");
         this.eventDAO = eventDAO;
+        this.cache = cache;
     }
 
     @Override
@@ -37,25 +61,171 @@ public class EventInformerImpl implements EventInformer {
         return eventDAO.findOne(id);
     }
 
+    @Override
+    public List<Event> find(List<UUID> ids) {
+        isTrue(ids != null, "'ids' must be initialized!");
+        isTrue(ids.stream().allMatch(Objects::nonNull), "'ids' must not contain null!");
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<UUID, Event> found = new HashMap<>();
+        eventDAO.findAll(ids).forEach(event -> found.put(event.getId(), event));
+        return ids.stream().map(found::get).collect(Collectors.toList());
+    }
+
     @Override
     public Collection<Event> getLastEvents(int count, Sort.Direction direction) {
+        List<Event> cached = cache != null ? cache.last(count) : null;
+        if (cached != null) {
+            return ordered(cached, direction);
+        }
 
         Pageable pageable = new PageRequest(0, count, new Sort(Sort.Direction.DESC, "timestamp"));
-        List<Event> result = eventDAO.findAll(pageable).getContent();
-        if (direction == Sort.Direction.DESC) {
-            return result;
-        } else {
-            List<Event> reversed = new LinkedList<>(result);
-            Collections.reverse(reversed);
-            return reversed;
+        return ordered(eventDAO.findAll(pageable).getContent(), direction);
+    }
+
+    @Override
+    public Collection<EventSummary> getLastEventSummaries(int count, Sort.Direction direction) {
+        List<Event> cached = cache != null ? cache.last(count) : null;
+        if (cached != null) {
+            return ordered(cached.stream().map(EventSummary::of).collect(Collectors.toList()), direction);
         }
+
+        Pageable pageable = new PageRequest(0, count, new Sort(Sort.Direction.DESC, "timestamp"));
+        return ordered(eventDAO.findSummaries(pageable).getContent(), direction);
     }
 
     @Override
     public Page<Event> getEventsForTime(int startTime, int endTime, int page, int pageSize, Sort.Direction direction) {
-        long start = startTime > 0 ? startTime * 1000 : 0;
-        long end = endTime > 0 ? endTime * 1000 : System.currentTimeMillis();
+        long start = startTime > 0 ? startTime * 1000L : 0;
+        long end = endTime > 0 ? endTime * 1000L : System.currentTimeMillis();
+        Pageable pageable = new PageRequest(page, pageSize, new Sort(direction, "timestamp"));
+
+        Page<Event> cached = cachedPage(start, end, EventFilter.NONE, pageable);
+        return cached != null ? cached : eventDAO.findAll(start, end, pageable);
+    }
+
+    @Override
+    public Page<Event> getEventsForTime(int startTime, int endTime, EventFilter filter, int page, int pageSize,
+                                       Sort.Direction direction) {
+        isTrue(filter != null, "'filter' must be initialized!");
+        long start = startTime > 0 ? startTime * 1000L : 0;
+        long end = endTime > 0 ? endTime * 1000L : System.currentTimeMillis();
+        Pageable pageable = new PageRequest(page, pageSize, new Sort(direction, "timestamp"));
+
+        Page<Event> cached = cachedPage(start, end, filter, pageable);
+        return cached != null ? cached : eventDAO.findAll(start, end, filter, pageable);
+    }
+
+    @Override
+    public Page<EventSummary> getEventSummariesForTime(int startTime, int endTime, int page, int pageSize,
+                                                       Sort.Direction direction) {
+        long start = startTime > 0 ? startTime * 1000L : 0;
+        long end = endTime > 0 ? endTime * 1000L : System.currentTimeMillis();
+        Pageable pageable = new PageRequest(page, pageSize, new Sort(direction, "timestamp"));
+
+        Page<Event> cached = cachedPage(start, end, EventFilter.NONE, pageable);
+        return cached != null ? cached.map(EventSummary::of) : eventDAO.findSummaries(start, end, pageable);
+    }
+
+    @Override
+    public Page<EventSummary> getEventSummariesForTime(int startTime, int endTime, EventFilter filter, int page,
+                                                       int pageSize, Sort.Direction direction) {
+        isTrue(filter != null, "'filter' must be initialized!");
+        long start = startTime > 0 ? startTime * 1000L : 0;
+        long end = endTime > 0 ? endTime * 1000L : System.currentTimeMillis();
+        Pageable pageable = new PageRequest(page, pageSize, new Sort(direction, "timestamp"));
+
+        Page<Event> cached = cachedPage(start, end, filter, pageable);
+        return cached != null ? cached.map(EventSummary::of) : eventDAO.findSummaries(start, end, filter, pageable);
+    }
+
+    @Override
+    public CursorPage<Event> getEventsForTime(int startTime, int endTime, String cursor, int pageSize,
+                                              Sort.Direction direction) {
+        isTrue(pageSize > 0, "'pageSize' must be greater than zero!");
+        long start = startTime > 0 ? startTime * 1000L : 0;
+        long end = endTime > 0 ? endTime * 1000L : System.currentTimeMillis();
+
+        // one extra event is requested to know whether next page exists
+        List<Event> events = eventDAO.findAll(start, end, EventCursor.decode(cursor), pageSize + 1, direction);
+        if (events.size() <= pageSize) {
+            return new CursorPage<>(events, null);
+        }
+
+        List<Event> content = events.subList(0, pageSize);
+        return new CursorPage<>(content, EventCursor.encode(EventKey.of(content.get(pageSize - 1))));
+    }
+
+    @Override
+    public CloseableIterator<Event> streamEventsForTime(int startTime, int endTime, EventFilter filter) {
+        isTrue(filter != null, "'filter' must be initialized!");
+        long start = startTime > 0 ? startTime * 1000L : 0;
+        long end = endTime > 0 ? endTime * 1000L : System.currentTimeMillis();
 
-        return eventDAO.findAll(start, end, new PageRequest(page, pageSize, new Sort(direction, "timestamp")));
+        return filter.isEmpty() ? eventDAO.findAll(start, end) : eventDAO.findAll(start, end, filter);
+    }
+
+    @Override
+    public EventHistogram getHistogramForTime(int startTime, int endTime, int bucketSize, EventGrouping grouping,
+                                              EventFilter filter) {
+        isTrue(bucketSize > 0, "'bucketSize' must be greater than zero!");
+        isTrue(grouping != null, "'grouping' must be initialized!");
+        isTrue(filter != null, "'filter' must be initialized!");
+        long end = endTime > 0 ? endTime * 1000L : System.currentTimeMillis();
+        // without lower bound histogram covers the last MAX_BUCKETS buckets, so default request is never rejected
+        long start = startTime > 0 ? startTime * 1000L : Math.max(0,
+                (Math.floorDiv(end, bucketSize * 1000L) - EventHistogram.MAX_BUCKETS + 1) * bucketSize * 1000L);
+        if (start > end) {
+            throw new InvalidRequestException("histogram start must not be greater than end!");
+        }
+        if (EventHistogram.buckets(start, end, bucketSize * 1000L) > EventHistogram.MAX_BUCKETS) {
+            throw new InvalidRequestException(String.format("histogram must not contain more than %d buckets!",
+                    EventHistogram.MAX_BUCKETS));
+        }
+
+        List<Event> cached = cache != null ? cache.find(start, end) : null;
+        if (cached == null) {
+            return eventDAO.histogram(start, end, bucketSize * 1000L, grouping, filter);
+        }
+
+        EventHistogram histogram = new EventHistogram(start, end, bucketSize * 1000L);
+        cached.stream().filter(filter::test)
+                .forEach(event -> histogram.add(grouping.groupOf(event), event.getTimestamp(), 1));
+        return histogram;
+    }
+
+    /**
+     * @return page of events from cache or {@literal null} if cache doesn't cover time interval.
+     */
+    private Page<Event> cachedPage(long start, long end, EventFilter filter, Pageable pageable) {
+        List<Event> events = cache != null ? cache.find(start, end) : null;
+        if (events == null) {
+            return null;
+        }
+
+        if (!filter.isEmpty()) {
+            events = events.stream().filter(filter::test).collect(Collectors.toList());
+        }
+        if (pageable.getSort().getOrderFor("timestamp").getDirection() == Sort.Direction.DESC) {
+            Collections.reverse(events);
+        }
+        int from = Math.min(pageable.getOffset(), events.size());
+        int to = Math.min(from + pageable.getPageSize(), events.size());
+        return new PageImpl<>(new ArrayList<>(events.subList(from, to)), pageable, events.size());
+    }
+
+    /**
+     * @param result elements in descending order.
+     */
+    private static <T> List<T> ordered(List<T> result, Sort.Direction direction) {
+        if (direction == Sort.Direction.DESC) {
+            return result;
+        } else {
+            List<T> reversed = new ArrayList<>(result);
+            Collections.reverse(reversed);
+            return reversed;
+        }
     }
 }
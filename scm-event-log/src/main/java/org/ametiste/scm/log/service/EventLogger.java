@@ -9,6 +9,10 @@ import java.util.Collection;
  * <p>
  * Any implementation of interface should be thread-safe. Store and flush operation can be executed in separate threads.
  * Recommended implement store operation with buffer to increase throughput and reduce connections with repository.
+ * <p>
+ * Buffered implementations expose their state with {@link #bufferSize()}, {@link #isSaturated()} and
+ * {@link #oldestBufferedTime()} methods. Producers can use saturation flag to slow down or reject incoming events
+ * until buffer is flushed.
  */
 public interface EventLogger {
 
@@ -31,4 +35,20 @@ public interface EventLogger {
      * @throws LoggingOperationException if any error occurred during flush.
      */
     void flush() throws LoggingOperationException;
+
+    /**
+     * @return number of events that accepted by logger but not stored to external storage yet.
+     */
+    int bufferSize();
+
+    /**
+     * Retrieve flag that indicate buffer reached high watermark and not dropped below low watermark yet.
+     * @return {@literal true} when buffer is saturated and {@literal false} in other case.
+     */
+    boolean isSaturated();
+
+    /**
+     * @return time (in milliseconds) when oldest buffered event was accepted or {@literal -1} if buffer is empty.
+     */
+    long oldestBufferedTime();
 }
@@ -1,16 +1,27 @@
 package org.ametiste.scm.log.service;
 
+import org.ametiste.scm.log.journal.EventJournal;
+import org.ametiste.scm.log.journal.EventJournalException;
+import org.ametiste.scm.log.metrics.IngestionMetrics;
+import org.ametiste.scm.log.persistent.DuplicateEventsException;
 import org.ametiste.scm.log.persistent.EventDAO;
 
 import org.ametiste.scm.messaging.data.event.Event;
 import org.springframework.dao.DuplicateKeyException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import static org.apache.commons.lang3.Validate.isTrue;
 
@@ -20,48 +31,456 @@ import static org.apache.commons.lang3.Validate.isTrue;
  * Flush has mechanism to resolve situation when we some how receive event with already existed id.
  * In this case we failed to write all events in each flush period and only service restart can fix this.
  * Assumes that event with same id is the same event. Logger retry do save operation instead insert and duplicated
- * event override itself. After that system will work normal.
+ * event override itself. After that system will work normal. If DAO reports which events are duplicated with
+ * {@code DuplicateEventsException} only these events are saved again.
+ * <p>
+ * Buffered events are written with bulks not greater than {@code batchSize}, so huge buffer doesn't turn into one huge
+ * insert operation. Logger marks itself as saturated when buffer size reach {@code highWatermark} and stay in this state
+ * until flush drain buffer to {@code lowWatermark}.
+ * <p>
+ * Incoming events are collected in {@code EventBuffer}. Flush takes whole buffered segment at once and producers continue
+ * to append events to new segment. Events that failed to write are retained by flusher and written first on next flush.
+ * <p>
+ * Optional {@code EventJournal} protects buffered events from loss on crash. Each stored event is appended to journal
+ * and flush makes checkpoint when all drained events are written. Events left in journal after crash are written to
+ * storage with {@link #recover()} on next start.
+ * <p>
+ * Buffer might be split into several stripes. Event is placed to stripe selected by hash of its id, so stripes are
+ * filled independently and producers contend only within one stripe. Each flush drains all stripes and writes them
+ * with pool of {@code flushWorkers} threads, so several bulk operations are executed concurrently. Failure of one
+ * stripe doesn't affect others: its events are retained and written on next flush. Journal is shared by all stripes
+ * and checkpoint is made at minimal position that is persisted by every stripe.
+ * <p>
+ * Optional {@code RecentEventFilter} remembers ids of persisted events. Stored events that are confirmed by filter as
+ * already persisted are dropped before they enter buffer.
  */
 public class EventLoggerImpl implements EventLogger {
 
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_HIGH_WATERMARK = 50000;
+    public static final int DEFAULT_LOW_WATERMARK = 25000;
+    public static final int DEFAULT_STRIPES = 1;
+    public static final int DEFAULT_FLUSH_WORKERS = 1;
+
     private final EventDAO eventDAO;
+    private final EventJournal journal;
+    private final RecentEventFilter duplicateFilter;
+    private final IngestionMetrics metrics;
+    private final int batchSize;
+    private final int highWatermark;
+    private final int lowWatermark;
 
-    private final ConcurrentLinkedQueue<Event> temporaryQueue;
+    private final Stripe[] stripes;
+    private final ExecutorService flushExecutor;
+    private final AtomicInteger bufferSize = new AtomicInteger();
+    private final Object flushLock = new Object();
+
+    private volatile boolean saturated;
 
     /**
-     * Create new instance of {@code EventLogger}.
+     * Create new instance of {@code EventLogger} with default batch size and watermarks.
      * @param eventDAO DAO to access event repository.
      */
     public EventLoggerImpl(EventDAO eventDAO) {
-        isTrue(eventDAO != null, "'eventDAO' must be initialized!");
+        this(eventDAO, DEFAULT_BATCH_SIZE, DEFAULT_HIGH_WATERMARK, DEFAULT_LOW_WATERMARK);
+    }
+
+    /**
+     * Create new instance of {@code EventLogger}.
+     * @param eventDAO DAO to access event repository.
+     * @param batchSize maximum number of events written with one insert operation. Must be positive number.
+     * @param highWatermark buffer size when logger become saturated. Must be positive number.
+     * @param lowWatermark buffer size when logger leave saturated state. Must be non negative number that less than
+     *                     {@code highWatermark}.
+     */
+    public EventLoggerImpl(EventDAO eventDAO, int batchSize, int highWatermark, int lowWatermark) {
+        this(eventDAO, null, batchSize, highWatermark, lowWatermark);
+    }
+
+    /**
+     * Create new instance of {@code EventLogger} with write-ahead journal.
+     * @param eventDAO DAO to access event repository.
+     * @param journal journal for buffered events. Might be {@literal null}, in this case buffered events are not
+     *                protected from loss on crash.
+     * @param batchSize maximum number of events written with one insert operation. Must be positive number.
+     * @param highWatermark buffer size when logger become saturated. Must be positive number.
+     * @param lowWatermark buffer size when logger leave saturated state. Must be non negative number that less than
+     *                     {@code highWatermark}.
+     */
+    public EventLoggerImpl(EventDAO eventDAO, EventJournal journal, int batchSize, int highWatermark, int lowWatermark) {
+        this(builder(eventDAO).journal(journal).batchSize(batchSize).watermarks(highWatermark, lowWatermark));
+    }
+
+    private EventLoggerImpl(Builder builder) {
+        isTrue(builder.eventDAO != null, "'eventDAO' must be initialized!");
+        isTrue(builder.batchSize > 0, "'batchSize' must be greater than zero!");
+        isTrue(builder.highWatermark > 0, "'highWatermark' must be greater than zero!");
+        isTrue(builder.lowWatermark >= 0 && builder.lowWatermark < builder.highWatermark,
+                "'lowWatermark' must be in range [0, highWatermark)!");
+        isTrue(builder.stripes > 0, "'stripes' must be greater than zero!");
+        isTrue(builder.flushWorkers > 0, "'flushWorkers' must be greater than zero!");
+
+        this.eventDAO = builder.eventDAO;
+        this.journal = builder.journal;
+        this.duplicateFilter = builder.duplicateFilter;
+        this.metrics = builder.metrics != null ? builder.metrics : new IngestionMetrics();
+        this.batchSize = builder.batchSize;
+        this.highWatermark = builder.highWatermark;
+        this.lowWatermark = builder.lowWatermark;
+
+        this.stripes = new Stripe[builder.stripes];
+        for (int i = 0; i < stripes.length; i++) {
+            this.stripes[i] = new Stripe(new EventBuffer(journal));
+        }
+        this.flushExecutor = builder.flushWorkers > 1 && stripes.length > 1
+                ? Executors.newFixedThreadPool(Math.min(builder.flushWorkers, stripes.length)) : null;
+    }
 
-        this.eventDAO = eventDAO;
-        this.temporaryQueue = new ConcurrentLinkedQueue<>();
+    /**
+     * Create builder of {@code EventLoggerImpl} with default settings.
+     * @param eventDAO DAO to access event repository.
+     * @return builder instance.
+     */
+    public static Builder builder(EventDAO eventDAO) {
+        return new Builder(eventDAO);
     }
 
     @Override
     public void store(Event event) throws LoggingOperationException {
         isTrue(event != null, "'event' must not be null!");
-        temporaryQueue.add(event);
+        metrics.onReceived(1);
+        if (isDuplicate(event)) {
+            return;
+        }
+        try {
+            stripeOf(event).buffer.add(event);
+        } catch (EventJournalException e) {
+            throw new LoggingOperationException("Failed to write event to journal: " + e.getMessage(), e);
+        }
+        acquire(1);
     }
 
     @Override
     public void store(Collection<Event> events) throws LoggingOperationException {
         isTrue(events != null, "'events' collection must not be null!");
-        temporaryQueue.addAll(events.stream().filter(Objects::nonNull).collect(Collectors.toList()));
+        List<Event> received = events.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        metrics.onReceived(received.size());
+        List<Event> accepted = duplicateFilter == null ? received
+                : received.stream().filter(event -> !isDuplicate(event)).collect(Collectors.toList());
+        if (stripes.length == 1) {
+            addAll(stripes[0], accepted);
+        } else {
+            Map<Stripe, List<Event>> distribution = accepted.stream().collect(Collectors.groupingBy(this::stripeOf));
+            distribution.forEach(this::addAll);
+        }
     }
 
     @Override
     public void flush() throws LoggingOperationException {
-        List<Event> storedEvents = StreamSupport.stream(temporaryQueue.spliterator(), false).collect(Collectors.toList());
-        Collection<Event> savedEvents;
-        if (storedEvents.size() > 0) {
-            try {
-                savedEvents = eventDAO.insert(storedEvents);
-            } catch (DuplicateKeyException e) {
-                savedEvents = eventDAO.save(storedEvents);
+        synchronized (flushLock) {
+            long start = System.nanoTime();
+            RuntimeException failure = null;
+            if (flushExecutor == null) {
+                for (Stripe stripe : stripes) {
+                    try {
+                        flush(stripe);
+                    } catch (RuntimeException e) {
+                        failure = failure == null ? e : failure;
+                    }
+                }
+            } else {
+                List<Future<?>> results = new ArrayList<>(stripes.length);
+                for (Stripe stripe : stripes) {
+                    results.add(flushExecutor.submit(() -> flush(stripe)));
+                }
+                for (Future<?> result : results) {
+                    RuntimeException e = await(result);
+                    failure = failure == null ? e : failure;
+                }
+            }
+
+            metrics.onFlush(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failure != null);
+            if (failure != null) {
+                throw failure;
+            }
+            if (journal != null) {
+                checkpoint(Arrays.stream(stripes).mapToLong(stripe -> stripe.persistedPosition).min().getAsLong());
             }
-            temporaryQueue.removeAll(savedEvents);
+        }
+    }
+
+    /**
+     * Write events that left in journal after previous run to storage. Must be invoked before logger accepts first
+     * event. Part of recovered events might be already persisted, so they are written with save operation.
+     * @return number of recovered events.
+     * @throws LoggingOperationException if journal can't be read.
+     */
+    public int recover() throws LoggingOperationException {
+        if (journal == null) {
+            return 0;
+        }
+
+        List<Event> recovered = new ArrayList<>();
+        try {
+            journal.replay(recovered::add);
+        } catch (EventJournalException e) {
+            throw new LoggingOperationException("Failed to recover events from journal: " + e.getMessage(), e);
+        }
+
+        for (int from = 0; from < recovered.size(); from += batchSize) {
+            List<Event> batch = recovered.subList(from, Math.min(from + batchSize, recovered.size()));
+            eventDAO.save(batch);
+            remember(batch);
+        }
+        checkpoint(journal.position());
+
+        return recovered.size();
+    }
+
+    /**
+     * Stop flush workers and release journal resources. Buffered events are not flushed.
+     */
+    public void close() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Override
+    public int bufferSize() {
+        return bufferSize.get();
+    }
+
+    @Override
+    public boolean isSaturated() {
+        return saturated;
+    }
+
+    @Override
+    public long oldestBufferedTime() {
+        long oldest = -1;
+        for (Stripe stripe : stripes) {
+            oldest = older(oldest, stripe.retainedSince);
+            oldest = older(oldest, stripe.buffer.activeSince());
+        }
+        return oldest;
+    }
+
+    private static long older(long time, long other) {
+        return time < 0 || (other >= 0 && other < time) ? other : time;
+    }
+
+    private boolean isDuplicate(Event event) {
+        if (duplicateFilter != null && duplicateFilter.contains(event.getId())) {
+            metrics.onDeduplicated();
+            return true;
+        }
+        return false;
+    }
+
+    private void remember(List<Event> persisted) {
+        if (duplicateFilter != null) {
+            persisted.forEach(event -> duplicateFilter.add(event.getId()));
+        }
+    }
+
+    private Stripe stripeOf(Event event) {
+        return stripes.length == 1 ? stripes[0] : stripes[Math.floorMod(event.getId().hashCode(), stripes.length)];
+    }
+
+    private void addAll(Stripe stripe, List<Event> events) {
+        try {
+            stripe.buffer.addAll(events);
+        } catch (EventJournalException e) {
+            throw new LoggingOperationException("Failed to write events to journal: " + e.getMessage(), e);
+        }
+        acquire(events.size());
+    }
+
+    /**
+     * Write drained segment of stripe together with events retained by previous flush. Journal position of segment
+     * becomes persisted position of stripe only if all events are written.
+     */
+    private void flush(Stripe stripe) {
+        EventBuffer.Segment segment = stripe.buffer.drain();
+        List<Event> events = segment.getEvents();
+        if (!stripe.retained.isEmpty()) {
+            stripe.retained.addAll(events);
+            events = stripe.retained;
+        } else {
+            stripe.retainedSince = segment.getSince();
+        }
+
+        int from = 0;
+        try {
+            while (from < events.size()) {
+                int to = Math.min(from + batchSize, events.size());
+                List<Event> batch = events.subList(from, to);
+                write(batch);
+                remember(batch);
+                metrics.onPersisted(batch.size());
+                release(to - from);
+                from = to;
+            }
+        } finally {
+            stripe.retained = from == 0 ? events : new ArrayList<>(events.subList(from, events.size()));
+            if (stripe.retained.isEmpty()) {
+                stripe.retainedSince = -1;
+            }
+        }
+        stripe.persistedPosition = segment.getJournalPosition();
+    }
+
+    private RuntimeException await(Future<?> result) {
+        try {
+            result.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new LoggingOperationException("Failed to flush events: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new LoggingOperationException("Flush is interrupted", e);
+        }
+    }
+
+    private void write(List<Event> batch) {
+        metrics.getBatchSize().record(batch.size());
+        try {
+            eventDAO.insert(batch);
+        } catch (DuplicateEventsException e) {
+            metrics.onDuplicateFallback();
+            eventDAO.save(e.getDuplicates());
+        } catch (DuplicateKeyException e) {
+            metrics.onDuplicateFallback();
+            eventDAO.save(batch);
+        }
+    }
+
+    private void checkpoint(long position) {
+        try {
+            journal.checkpoint(position);
+        } catch (EventJournalException e) {
+            throw new LoggingOperationException("Failed to save journal checkpoint: " + e.getMessage(), e);
+        }
+    }
+
+    private void acquire(int count) {
+        if (bufferSize.addAndGet(count) >= highWatermark) {
+            saturated = true;
+        }
+    }
+
+    private void release(int count) {
+        if (bufferSize.addAndGet(-count) <= lowWatermark) {
+            saturated = false;
+        }
+    }
+
+    /**
+     * Part of buffer with events retained after failed flush and journal position persisted by last successful flush.
+     * Fields are changed only by flush under logger flush lock. Time of oldest retained or written event is read
+     * by {@link #oldestBufferedTime()} from any thread.
+     */
+    private static class Stripe {
+
+        private final EventBuffer buffer;
+        private List<Event> retained = new ArrayList<>();
+        private volatile long retainedSince = -1;
+        private long persistedPosition;
+
+        Stripe(EventBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Builder of {@code EventLoggerImpl}. All settings except DAO are optional and have default values.
+     */
+    public static class Builder {
+
+        private final EventDAO eventDAO;
+        private EventJournal journal;
+        private RecentEventFilter duplicateFilter;
+        private IngestionMetrics metrics;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private int highWatermark = DEFAULT_HIGH_WATERMARK;
+        private int lowWatermark = DEFAULT_LOW_WATERMARK;
+        private int stripes = DEFAULT_STRIPES;
+        private int flushWorkers = DEFAULT_FLUSH_WORKERS;
+
+        private Builder(EventDAO eventDAO) {
+            this.eventDAO = eventDAO;
+        }
+
+        /**
+         * @param journal journal for buffered events. Might be {@literal null}, in this case buffered events are not
+         *                protected from loss on crash.
+         */
+        public Builder journal(EventJournal journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        /**
+         * @param duplicateFilter filter of recently persisted events. Stored events known to filter are dropped. Might
+         *                        be {@literal null}.
+         */
+        public Builder duplicateFilter(RecentEventFilter duplicateFilter) {
+            this.duplicateFilter = duplicateFilter;
+            return this;
+        }
+
+        /**
+         * @param metrics metrics of ingestion updated by logger. If {@literal null} logger uses own instance.
+         */
+        public Builder metrics(IngestionMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * @param batchSize maximum number of events written with one insert operation. Must be positive number.
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param highWatermark buffer size when logger become saturated. Must be positive number.
+         * @param lowWatermark buffer size when logger leave saturated state. Must be non negative number that less
+         *                     than {@code highWatermark}.
+         */
+        public Builder watermarks(int highWatermark, int lowWatermark) {
+            this.highWatermark = highWatermark;
+            this.lowWatermark = lowWatermark;
+            return this;
+        }
+
+        /**
+         * @param stripes number of buffer stripes. Must be positive number.
+         */
+        public Builder stripes(int stripes) {
+            this.stripes = stripes;
+            return this;
+        }
+
+        /**
+         * @param flushWorkers number of threads that write stripes concurrently. Must be positive number. If
+         *                     {@literal 1} stripes are written sequentially by thread that invokes flush.
+         */
+        public Builder flushWorkers(int flushWorkers) {
+            this.flushWorkers = flushWorkers;
+            return this;
+        }
+
+        public EventLoggerImpl build() {
+            return new EventLoggerImpl(this);
         }
     }
 }
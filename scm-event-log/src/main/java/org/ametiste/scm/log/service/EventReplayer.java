@@ -1,6 +1,7 @@
 package org.ametiste.scm.log.service;
 
 import org.ametiste.scm.log.data.replay.ReplayTaskStatus;
+import org.ametiste.scm.log.persistent.EventFilter;
 
 import java.net.URI;
 import java.util.Map;
@@ -33,6 +34,19 @@ public interface EventReplayer {
      */
     UUID replay(URI receiver, long startTime, long endTime) throws ReplayOperationException;
 
+    /**
+     * Submit replay time period task for events that match filter. Filter is pushed down to storage query.
+     * @param receiver event receiver endpoint url of target receiver.
+     * @param startTime lower time period bound (timestamp in seconds). If value is negative number lower time period
+     *                  bound set to zero.
+     * @param endTime lower time period bound (timestamp in seconds). If value is negative number upper time period
+     *                bound set to current time.
+     * @param filter filter of replayed events. Must not be {@literal null}.
+     * @return identifier of created task. Can be used for track task status.
+     * @throws ReplayOperationException if any error occurred during task creation.
+     */
+    UUID replay(URI receiver, long startTime, long endTime, EventFilter filter) throws ReplayOperationException;
+
     /**
      * Cancel or interrupt task execution.
      * @param taskId task identifier.
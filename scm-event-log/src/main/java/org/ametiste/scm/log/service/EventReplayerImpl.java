@@ -2,6 +2,7 @@ package org.ametiste.scm.log.service;
 
 import org.ametiste.scm.log.data.replay.ReplayTaskStatus;
 import org.ametiste.scm.log.persistent.EventDAO;
+import org.ametiste.scm.log.persistent.EventFilter;
 import org.ametiste.scm.log.util.EventReceiverURLBuilder;
 import org.ametiste.scm.messaging.data.event.Event;
 import org.ametiste.scm.messaging.data.transport.EventTransportMessage;
@@ -67,19 +68,28 @@ public class EventReplayerImpl implements EventReplayer {
 
     @Override
     public UUID replay(URI receiver, long startTime, long endTime) throws ReplayOperationException {
+        return replay(receiver, startTime, endTime, EventFilter.NONE);
+    }
+
+    @Override
+    public UUID replay(URI receiver, long startTime, long endTime, EventFilter filter)
+            throws ReplayOperationException {
         isTrue(receiver != null, "Receiver url must be not null!");
+        isTrue(filter != null, "'filter' must be initialized!");
 
         UUID id = UUID.randomUUID();
         Future future;
 
+        // status is registered before task is submitted, otherwise it might overwrite status of already running task
+        statuses.put(id, new ReplayTaskStatus(ReplayTaskStatus.State.WAIT, startTime, endTime, 0, 0));
         try {
-            future = executor.submit(() -> this.replayTask(id, receiver, startTime, endTime));
+            future = executor.submit(() -> this.replayTask(id, receiver, startTime, endTime, filter));
         } catch (RejectedExecutionException e) {
+            statuses.remove(id);
             throw new ReplayOperationException(e.getMessage(), e);
         }
 
         tasks.put(id, future);
-        statuses.put(id, new ReplayTaskStatus(ReplayTaskStatus.State.WAIT, startTime, endTime, 0, 0));
 
         return id;
     }
@@ -143,17 +153,18 @@ public class EventReplayerImpl implements EventReplayer {
         statuses.remove(taskId);
     }
 
-    private void replayTask(UUID id, URI receiver, long startTime, long endTime) {
+    private void replayTask(UUID id, URI receiver, long startTime, long endTime, EventFilter filter) {
         long start = startTime > 0 ? startTime * 1000 : 0;
         long end = endTime > 0 ? endTime * 1000 : System.currentTimeMillis();
-        long totalEventCount = eventDAO.findAll(start, end, null).getTotalElements();
+        long totalEventCount = filter.isEmpty() ? eventDAO.count(start, end) : eventDAO.count(start, end, filter);
         long replayedEventCount = 0;
 
         URI exclude = excludeUrlBuilder.build();
 
         updateStatus(id, ReplayTaskStatus.State.RUNNING, start, end, totalEventCount, replayedEventCount);
 
-        try (CloseableIterator<Event> iterator = eventDAO.findAll(start, end)) {
+        try (CloseableIterator<Event> iterator = filter.isEmpty() ? eventDAO.findAll(start, end)
+                : eventDAO.findAll(start, end, filter)) {
             while (iterator.hasNext()) {
                 List<TransportMessage<Event>> bulk = createBulk(iterator, exclude);
 
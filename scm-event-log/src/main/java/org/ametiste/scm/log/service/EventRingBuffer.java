@@ -0,0 +1,102 @@
+package org.ametiste.scm.log.service;
+
+import org.ametiste.scm.messaging.data.event.Event;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Bounded ring buffer with many producers and single consumer.
+ * <p>
+ * All slots are allocated on creation, so publishing doesn't allocate anything. Producer claims sequence number with
+ * CAS on shared counter, writes event to slot and marks slot as published with its sequence number. Consumer reads
+ * published slots in sequence order until first slot that is not published yet.
+ * <p>
+ * Methods {@link #drainTo(Collection, int)} and {@link #isEmpty()} must be invoked by single consumer thread.
+ */
+public class EventRingBuffer {
+
+    private final Event[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+
+    /**
+     * Create ring buffer.
+     * @param capacity number of slots. Must be power of two.
+     */
+    public EventRingBuffer(int capacity) {
+        isTrue(capacity > 0 && Integer.bitCount(capacity) == 1, "'capacity' must be power of two!");
+
+        this.slots = new Event[capacity];
+        this.published = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Publish event if ring has free slot.
+     * @param event must not be {@literal null}.
+     * @return {@literal false} if ring is full.
+     */
+    public boolean tryPublish(Event event) {
+        isTrue(event != null, "'event' must not be null!");
+
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= slots.length) {
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int index = (int) sequence & mask;
+        slots[index] = event;
+        published.lazySet(index, sequence);
+        return true;
+    }
+
+    /**
+     * Move published events to collection.
+     * @param target collection to add events.
+     * @param maxEvents maximum number of events to move.
+     * @return number of moved events.
+     */
+    public int drainTo(Collection<Event> target, int maxEvents) {
+        long sequence = consumed;
+        int count = 0;
+        while (count < maxEvents) {
+            int index = (int) sequence & mask;
+            if (published.get(index) != sequence) {
+                break;
+            }
+            target.add(slots[index]);
+            slots[index] = null;
+            sequence++;
+            count++;
+        }
+        consumed = sequence;
+        return count;
+    }
+
+    /**
+     * @return {@literal true} if there is no claimed slots that are not consumed yet.
+     */
+    public boolean isEmpty() {
+        return claimed.get() == consumed;
+    }
+
+    /**
+     * @return number of slots.
+     */
+    public int capacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,126 @@
+package org.ametiste.scm.log.service;
+
+import org.ametiste.scm.messaging.data.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Asynchronous hand-off of received events to {@code EventLogger}.
+ * <p>
+ * Receiving threads publish events to {@code EventRingBuffer} and return immediately. Dedicated consumer thread takes
+ * published events with batches up to {@code batchSize}, stores them to logger and notifies {@code EventFlushScheduler}.
+ * When ring is full publisher waits for free slot with configured {@code WaitStrategy}; consumer uses the same strategy
+ * to wait for new events.
+ * <p>
+ * On {@link #stop()} consumer stores all events that were published before stop. Publishers that passed the check of
+ * running state before stop are counted as in-flight, consumer doesn't exit until they either publish their events or
+ * fail, so successfully published event is never left in ring.
+ */
+public class EventRingDispatcher {
+
+    private final Logger logger = LoggerFactory.getLogger(EventRingDispatcher.class);
+
+    private final EventRingBuffer ring;
+    private final EventLogger eventLogger;
+    private final EventFlushScheduler flushScheduler;
+    private final int batchSize;
+    private final WaitStrategy waitStrategy;
+    private final Thread consumer;
+    private final AtomicInteger inFlightPublishers = new AtomicInteger();
+
+    private volatile boolean running;
+
+    /**
+     * Create dispatcher.
+     * @param ring ring buffer between publishers and consumer.
+     * @param eventLogger logger to store events.
+     * @param flushScheduler scheduler notified about stored events. Might be {@literal null}.
+     * @param batchSize maximum number of events stored at once. Must be positive number.
+     * @param waitStrategy strategy of waiting for free slot or new events.
+     */
+    public EventRingDispatcher(EventRingBuffer ring, EventLogger eventLogger, EventFlushScheduler flushScheduler,
+                               int batchSize, WaitStrategy waitStrategy) {
+        isTrue(ring != null, "'ring' must be initialized!");
+        isTrue(eventLogger != null, "'eventLogger' must be initialized!");
+        isTrue(batchSize > 0, "'batchSize' must be greater than zero!");
+        isTrue(waitStrategy != null, "'waitStrategy' must be initialized!");
+
+        this.ring = ring;
+        this.eventLogger = eventLogger;
+        this.flushScheduler = flushScheduler;
+        this.batchSize = batchSize;
+        this.waitStrategy = waitStrategy;
+        this.consumer = new Thread(this::consume, "event-ring-dispatcher");
+    }
+
+    /**
+     * Start consumer thread.
+     */
+    public void start() {
+        running = true;
+        consumer.start();
+    }
+
+    /**
+     * Stop accepting events and wait until consumer stores all published events, including events of publishers that
+     * were in flight on stop.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        consumer.join();
+    }
+
+    /**
+     * Publish event to ring. Waits for free slot if ring is full.
+     * @param event must not be {@literal null}.
+     * @throws LoggingOperationException if dispatcher is stopped.
+     */
+    public void publish(Event event) throws LoggingOperationException {
+        isTrue(event != null, "'event' must not be null!");
+
+        inFlightPublishers.incrementAndGet();
+        try {
+            if (!running) {
+                throw new LoggingOperationException("Event dispatcher is stopped");
+            }
+            while (!ring.tryPublish(event)) {
+                if (!running) {
+                    throw new LoggingOperationException("Event dispatcher is stopped");
+                }
+                waitStrategy.idle();
+            }
+        } finally {
+            inFlightPublishers.decrementAndGet();
+        }
+    }
+
+    private void consume() {
+        List<Event> batch = new ArrayList<>(batchSize);
+        // publisher registers itself before it checks running state, so after stop consumer sees either in-flight
+        // publisher or its published event
+        while (running || inFlightPublishers.get() > 0 || !ring.isEmpty()) {
+            if (ring.drainTo(batch, batchSize) == 0) {
+                waitStrategy.idle();
+                continue;
+            }
+
+            try {
+                eventLogger.store(batch);
+                if (flushScheduler != null) {
+                    flushScheduler.onStored();
+                }
+            } catch (RuntimeException e) {
+                if (logger.isErrorEnabled()) {
+                    logger.error("Failed to store " + batch.size() + " events: " + e.getMessage(), e);
+                }
+            }
+            batch.clear();
+        }
+    }
+}
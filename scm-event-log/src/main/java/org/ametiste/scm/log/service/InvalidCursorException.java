@@ -0,0 +1,15 @@
+package org.ametiste.scm.log.service;
+
+/**
+ * {@code InvalidCursorException} signals that cursor token taken from client can't be decoded.
+ */
+public class InvalidCursorException extends RuntimeException {
+
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+
+    public InvalidCursorException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
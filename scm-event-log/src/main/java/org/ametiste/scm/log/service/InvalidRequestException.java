@@ -0,0 +1,16 @@
+package org.ametiste.scm.log.service;
+
+/**
+ * {@code InvalidRequestException} signals that request taken from client is not valid: it contains illegal values or
+ * exceeds limits of service (e.g. number of histogram buckets or number of looked up ids).
+ */
+public class InvalidRequestException extends RuntimeException {
+
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+
+    public InvalidRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,150 @@
+package org.ametiste.scm.log.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Filter of recently persisted event ids.
+ * <p>
+ * Filter combines probabilistic Bloom filter that remembers last {@code capacity} ids with exact LRU set of last
+ * {@code confirmSize} ids. Bloom filter answers most of requests for new ids without lookup to LRU set. Positive answer
+ * of Bloom filter is confirmed with LRU set: confirmed id is counted as hit, unconfirmed one is counted as false positive
+ * (it is either real false positive of Bloom filter or id that is already evicted from LRU set). So filter never reports
+ * new id as known, but might miss some old duplicates.
+ * <p>
+ * Bloom filter is split into two generations with {@code capacity} ids each. When current generation is full previous
+ * one is discarded, so memory is bounded and filter remembers from {@code capacity} to {@code 2 * capacity} last ids.
+ */
+public class RecentEventFilter {
+
+    private final int capacity;
+    private final int bits;
+    private final int hashes;
+    private final Map<UUID, Boolean> recent;
+
+    private long[] current;
+    private long[] previous;
+    private int currentCount;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    /**
+     * Create filter.
+     * @param capacity number of ids remembered by Bloom filter generation. Must be positive number.
+     * @param falsePositiveRate expected false positive rate of Bloom filter. Must be in range (0, 1).
+     * @param confirmSize number of ids in exact LRU set. Must be positive number.
+     */
+    public RecentEventFilter(int capacity, double falsePositiveRate, int confirmSize) {
+        isTrue(capacity > 0, "'capacity' must be greater than zero!");
+        isTrue(falsePositiveRate > 0 && falsePositiveRate < 1, "'falsePositiveRate' must be in range (0, 1)!");
+        isTrue(confirmSize > 0, "'confirmSize' must be greater than zero!");
+
+        this.capacity = capacity;
+        this.bits = (int) Math.min(Integer.MAX_VALUE - 63,
+                Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        this.hashes = Math.max(1, (int) Math.round((double) bits / capacity * Math.log(2)));
+        this.recent = new LinkedHashMap<UUID, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+                return size() > confirmSize;
+            }
+        };
+
+        this.current = new long[(bits + 63) / 64];
+        this.previous = new long[current.length];
+    }
+
+    /**
+     * Check if event with specified id is recently persisted.
+     * @param id must not be {@literal null}.
+     * @return {@literal true} if id is confirmed as recently persisted.
+     */
+    public boolean contains(UUID id) {
+        isTrue(id != null, "'id' must not be null!");
+
+        synchronized (this) {
+            if (!mightContain(current, id) && !mightContain(previous, id)) {
+                return false;
+            }
+            if (recent.get(id) != null) {
+                hits.incrementAndGet();
+                return true;
+            }
+        }
+        falsePositives.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Remember id of persisted event.
+     * @param id must not be {@literal null}.
+     */
+    public synchronized void add(UUID id) {
+        isTrue(id != null, "'id' must not be null!");
+
+        if (currentCount == capacity) {
+            long[] discarded = previous;
+            previous = current;
+            current = discarded;
+            Arrays.fill(current, 0L);
+            currentCount = 0;
+        }
+
+        long h1 = mix(id.getMostSignificantBits() ^ id.getLeastSignificantBits());
+        long h2 = mix(id.getLeastSignificantBits() + h1);
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1, h2, i);
+            current[bit >>> 6] |= 1L << bit;
+        }
+        currentCount++;
+        recent.put(id, Boolean.TRUE);
+    }
+
+    /**
+     * @return number of confirmed duplicates.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of ids that passed Bloom filter but were not confirmed with LRU set.
+     */
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    private boolean mightContain(long[] filter, UUID id) {
+        long h1 = mix(id.getMostSignificantBits() ^ id.getLeastSignificantBits());
+        long h2 = mix(id.getLeastSignificantBits() + h1);
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1, h2, i);
+            if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(long h1, long h2, int i) {
+        return (int) Math.floorMod(h1 + i * h2, (long) bits);
+    }
+
+    /**
+     * Finalization step of MurmurHash3 that spreads bits of value.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb93fe53a87c5L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
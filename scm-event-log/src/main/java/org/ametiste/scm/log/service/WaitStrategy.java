@@ -0,0 +1,42 @@
+package org.ametiste.scm.log.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Strategy of waiting used by {@code EventRingBuffer} producers when ring is full and by consumer when ring is empty.
+ * <ul>
+ *     <li><b>BUSY_SPIN</b> - retry immediately. Lowest latency, but waiting thread occupies whole CPU core.</li>
+ *     <li><b>YIELD</b> - give up CPU to other threads before retry.</li>
+ *     <li><b>PARK</b> - sleep for short period before retry. Lowest CPU usage, latency is up to park period.</li>
+ * </ul>
+ */
+public enum WaitStrategy {
+
+    BUSY_SPIN {
+        @Override
+        public void idle() {
+        }
+    },
+
+    YIELD {
+        @Override
+        public void idle() {
+            Thread.yield();
+        }
+    },
+
+    PARK {
+        @Override
+        public void idle() {
+            LockSupport.parkNanos(PARK_PERIOD);
+        }
+    };
+
+    private static final long PARK_PERIOD = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * Wait before next attempt.
+     */
+    public abstract void idle();
+}
@@ -0,0 +1,73 @@
+package org.ametiste.scm.log.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Rate limiter with separate token bucket for each node.
+ * <p>
+ * Bucket of node is filled with {@code rate} tokens per second up to {@code burst} tokens. Each permitted request takes
+ * one token. Buckets are created on first request of node.
+ */
+public class NodeRateLimiter {
+
+    private final double tokensPerNano;
+    private final int burst;
+    private final LongSupplier clock;
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Create rate limiter.
+     * @param rate number of permits per second for one node. Must be positive number.
+     * @param burst maximum number of permits that node can take at once. Must be positive number.
+     */
+    public NodeRateLimiter(double rate, int burst) {
+        this(rate, burst, System::nanoTime);
+    }
+
+    NodeRateLimiter(double rate, int burst, LongSupplier clock) {
+        isTrue(rate > 0, "'rate' must be greater than zero!");
+        isTrue(burst > 0, "'burst' must be greater than zero!");
+        isTrue(clock != null, "'clock' must be initialized!");
+
+        this.tokensPerNano = rate / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.clock = clock;
+    }
+
+    /**
+     * Try take permit for node.
+     * @param node node identifier. Must not be {@literal null}.
+     * @return {@literal 0} if permit is taken, otherwise time (in milliseconds) until permit will be available.
+     */
+    public long tryAcquire(String node) {
+        isTrue(node != null, "'node' must not be null!");
+
+        long now = clock.getAsLong();
+        Bucket bucket = buckets.computeIfAbsent(node, key -> new Bucket(burst, now));
+        synchronized (bucket) {
+            bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.updated) * tokensPerNano);
+            bucket.updated = now;
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis((long) Math.ceil((1 - bucket.tokens) / tokensPerNano)));
+        }
+    }
+
+    private static class Bucket {
+
+        private double tokens;
+        private long updated;
+
+        Bucket(double tokens, long updated) {
+            this.tokens = tokens;
+            this.updated = updated;
+        }
+    }
+}
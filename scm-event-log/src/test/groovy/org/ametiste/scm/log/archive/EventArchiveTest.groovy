@@ -0,0 +1,99 @@
+package org.ametiste.scm.log.archive
+
+import org.ametiste.scm.log.journal.EventSerializer
+import org.ametiste.scm.messaging.data.event.Event
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+import static org.ametiste.scm.log.archive.EventSegmentTest.event
+
+class EventArchiveTest extends Specification {
+
+    private static final int BLOCK_SIZE = 2
+
+    private Path directory
+    private EventSerializer serializer
+
+    def setup() {
+        directory = Files.createTempDirectory("archive")
+        serializer = new EventSegmentTest.IdEventSerializer()
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    def "constructor arguments validation"() {
+        when: "create archive with not initialized directory"
+        new EventArchive(null, BLOCK_SIZE, serializer)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create archive with not positive block size"
+        new EventArchive(directory, 0, serializer)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "segments are restored on start and temporary files are deleted"() {
+        given: "archive with segment and left temporary file"
+        new EventArchive(directory, BLOCK_SIZE, serializer).write([event(10), event(20)].iterator())
+        Files.write(directory.resolve("segment-1.tmp"), [1, 2, 3] as byte[])
+
+        when: "reopen archive"
+        EventArchive archive = new EventArchive(directory, BLOCK_SIZE, serializer)
+
+        then:
+        archive.segments.size() == 1
+        archive.segments[0].file.fileName.toString() == "segment-10-20.seg"
+        !Files.exists(directory.resolve("segment-1.tmp"))
+        archive.count() == 2
+    }
+
+    def "findAll reads disjoint segments one by one and merges overlapping ones"() {
+        given: "two disjoint segments and segment with late events that overlaps first one"
+        EventArchive archive = new EventArchive(directory, BLOCK_SIZE, serializer)
+        List<Event> first = [event(10), event(20), event(30)]
+        List<Event> late = [event(15), event(25)]
+        List<Event> second = [event(100), event(110)]
+        archive.write(first.iterator())
+        archive.write(second.iterator())
+        archive.write(late.iterator())
+
+        expect: "events of range are ordered by timestamp"
+        archive.findAll(0, 200).collect() == (first + late + second).sort { it.timestamp }
+        archive.findAll(20, 100).collect()*.timestamp == [20, 25, 30, 100]
+        archive.count(20, 100) == 4
+    }
+
+    def "findAll skips events archived twice"() {
+        given: "same events written to two segments"
+        EventArchive archive = new EventArchive(directory, BLOCK_SIZE, serializer)
+        List<Event> events = [event(10), event(20), event(20)]
+        archive.write(events.iterator())
+        archive.write(events.iterator())
+
+        expect:
+        archive.findAll(0, 100).collect() == events
+        archive.segments*.file*.fileName*.toString() as Set == ["segment-10-20.seg", "segment-10-20-1.seg"] as Set
+    }
+
+    def "delete removes only segments covered by interval"() {
+        given:
+        EventArchive archive = new EventArchive(directory, BLOCK_SIZE, serializer)
+        EventSegment first = archive.write([event(10), event(20)].iterator())
+        EventSegment second = archive.write([event(30), event(40)].iterator())
+
+        when:
+        int deleted = archive.delete(0, 35)
+
+        then:
+        deleted == 1
+        archive.segments == [second]
+        !Files.exists(first.file)
+    }
+}
@@ -0,0 +1,99 @@
+package org.ametiste.scm.log.archive
+
+import org.ametiste.scm.log.persistent.EventDAO
+import org.ametiste.scm.log.persistent.PartitionPeriod
+import org.ametiste.scm.messaging.data.event.Event
+import org.springframework.data.domain.Sort
+import org.springframework.data.util.CloseableIterator
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit
+
+import static org.ametiste.scm.log.archive.EventSegmentTest.event
+
+class EventArchiverTest extends Specification {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1)
+
+    private Path directory
+    private EventDAO store
+    private EventArchive archive
+    private EventArchiver archiver
+
+    def setup() {
+        directory = Files.createTempDirectory("archive")
+        store = Mock(EventDAO.class)
+        archive = new EventArchive(directory, 10, new EventSegmentTest.IdEventSerializer())
+        archiver = new EventArchiver(store, archive, PartitionPeriod.DAILY, DAY, 1000)
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    def "constructor arguments validation"() {
+        when: "create archiver with not initialized store"
+        new EventArchiver(null, archive, PartitionPeriod.DAILY, DAY, 1000)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create archiver with not positive retention age"
+        new EventArchiver(store, archive, PartitionPeriod.DAILY, 0, 1000)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "archive moves whole windows before time to segments"() {
+        given: "events of first and third day in store"
+        List<Event> first = [event(10), event(DAY - 1)]
+        List<Event> third = [event(2 * DAY + 5)]
+
+        when: "archive events before middle of fourth day"
+        long archived = archiver.archive(3 * DAY + 100)
+
+        then: "oldest event is found before cutoff"
+        1 * store.findAll(Long.MIN_VALUE, 3 * DAY - 1, null, 1, Sort.Direction.ASC) >> [first[0]]
+
+        then: "first window is written to segment and deleted from store"
+        1 * store.findAll(0, DAY - 1) >> iterator(first)
+        1 * store.delete(0, DAY - 1)
+
+        then: "next oldest event is found after window"
+        1 * store.findAll(DAY, 3 * DAY - 1, null, 1, Sort.Direction.ASC) >> third
+
+        then: "third window is archived"
+        1 * store.findAll(2 * DAY, 3 * DAY - 1) >> iterator(third)
+        1 * store.delete(2 * DAY, 3 * DAY - 1)
+        1 * store.findAll(3 * DAY, 3 * DAY - 1, null, 1, Sort.Direction.ASC) >> []
+
+        and:
+        archived == 3
+        archive.segments*.count == [2L, 1L]
+        archive.findAll(0, 3 * DAY).collect() == first + third
+    }
+
+    def "segment is complete before window is deleted"() {
+        given:
+        store.findAll(Long.MIN_VALUE, _, null, 1, Sort.Direction.ASC) >> [event(10)]
+        store.findAll(0, DAY - 1) >> { throw new EventArchiveException("disk is full") }
+
+        when:
+        archiver.archive(3 * DAY)
+
+        then: "failed window is not deleted"
+        thrown(EventArchiveException.class)
+        0 * store.delete(_, _)
+    }
+
+    private CloseableIterator<Event> iterator(List<Event> events) {
+        Iterator<Event> delegate = events.iterator()
+        CloseableIterator<Event> iterator = Mock(CloseableIterator.class)
+        iterator.hasNext() >> { delegate.hasNext() }
+        iterator.next() >> { delegate.next() }
+        return iterator
+    }
+}
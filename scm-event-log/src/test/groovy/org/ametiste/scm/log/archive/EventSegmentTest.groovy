@@ -0,0 +1,145 @@
+package org.ametiste.scm.log.archive
+
+import org.ametiste.scm.log.journal.EventSerializer
+import org.ametiste.scm.log.persistent.MongoEventCountersTest
+import org.ametiste.scm.messaging.data.event.Event
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
+
+class EventSegmentTest extends Specification {
+
+    private static final int BLOCK_SIZE = 3
+
+    private Path directory
+    private EventSerializer serializer
+
+    def setup() {
+        directory = Files.createTempDirectory("archive")
+        serializer = new IdEventSerializer()
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    def "write arguments validation"() {
+        when: "write segment with not positive block size"
+        EventSegment.write(directory.resolve("segment"), [].iterator(), 0, serializer)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "write events that are not ordered by timestamp"
+        EventSegment.write(directory.resolve("segment"), [event(20), event(10)].iterator(), BLOCK_SIZE, serializer)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "write returns null for empty events"() {
+        expect:
+        EventSegment.write(directory.resolve("segment"), [].iterator(), BLOCK_SIZE, serializer) == null
+        !Files.exists(directory.resolve("segment"))
+    }
+
+    def "written segment is read after reopen"() {
+        given: "segment with several blocks"
+        List<Event> events = (0..9).collect { event(it * 10) }
+        EventSegment.write(directory.resolve("segment"), events.iterator(), BLOCK_SIZE, serializer)
+
+        when: "reopen segment"
+        EventSegment segment = EventSegment.open(directory.resolve("segment"), serializer)
+
+        then: "footer is restored"
+        segment.minTimestamp == 0
+        segment.maxTimestamp == 90
+        segment.count == 10
+
+        and: "all events are read in order"
+        segment.read().collect() == events
+    }
+
+    def "read returns events of time range"() {
+        given:
+        List<Event> events = (0..9).collect { event(it * 10) }
+        EventSegment segment = EventSegment.write(directory.resolve("segment"), events.iterator(), BLOCK_SIZE, serializer)
+
+        expect:
+        segment.read(from, to).collect() == events.findAll { it.timestamp >= from && it.timestamp <= to }
+
+        where:
+        from | to
+        0    | 90
+        25   | 65
+        30   | 30
+        91   | 200
+        -10  | -1
+    }
+
+    def "read starts from block that contains first events with equal timestamp"() {
+        given: "events with equal timestamp spanning three blocks"
+        List<Event> events = [event(5)] + (0..6).collect { event(10) } + [event(20)]
+        EventSegment segment = EventSegment.write(directory.resolve("segment"), events.iterator(), BLOCK_SIZE, serializer)
+
+        expect:
+        segment.read(10, 10).collect() == events.findAll { it.timestamp == 10 }
+    }
+
+    def "count uses index for inner blocks"() {
+        given:
+        List<Event> events = (0..9).collect { event(it * 10) }
+        EventSegment segment = EventSegment.write(directory.resolve("segment"), events.iterator(), BLOCK_SIZE, serializer)
+
+        expect:
+        segment.count(from, to) == events.count { it.timestamp >= from && it.timestamp <= to }
+
+        where:
+        from | to
+        0    | 90
+        15   | 75
+        30   | 59
+        100  | 200
+    }
+
+    def "open rejects incomplete segment"() {
+        given: "truncated segment file"
+        Path file = directory.resolve("segment")
+        EventSegment.write(file, [event(1), event(2)].iterator(), BLOCK_SIZE, serializer)
+        byte[] content = Files.readAllBytes(file)
+        Files.write(file, Arrays.copyOf(content, content.length - 1))
+
+        when:
+        EventSegment.open(file, serializer)
+
+        then:
+        thrown(EventArchiveException.class)
+    }
+
+    static Event event(long timestamp) {
+        return new MongoEventCountersTest.TimedEvent(time: timestamp)
+    }
+
+    /**
+     * Serializer that writes only event id and restores event instance from registry.
+     */
+    static class IdEventSerializer implements EventSerializer {
+
+        private static final Map<UUID, Event> REGISTRY = new ConcurrentHashMap<>()
+
+        @Override
+        byte[] serialize(Event event) {
+            REGISTRY.put(event.getId(), event)
+            ByteBuffer.allocate(16).putLong(event.id.mostSignificantBits).putLong(event.id.leastSignificantBits).array()
+        }
+
+        @Override
+        Event deserialize(byte[] data) {
+            ByteBuffer buffer = ByteBuffer.wrap(data)
+            REGISTRY.get(new UUID(buffer.getLong(), buffer.getLong()))
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.ametiste.scm.log.archive
+
+import org.ametiste.scm.log.persistent.EventDAO
+import org.ametiste.scm.log.persistent.EventFilter
+import org.ametiste.scm.log.persistent.EventGrouping
+import org.ametiste.scm.log.persistent.EventHistogram
+import org.ametiste.scm.messaging.data.event.Event
+import org.springframework.data.util.CloseableIterator
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+import static org.ametiste.scm.log.archive.EventSegmentTest.event
+
+class TieredEventDAOTest extends Specification {
+
+    private Path directory
+    private EventDAO store
+    private EventArchive archive
+    private TieredEventDAO dao
+
+    def setup() {
+        directory = Files.createTempDirectory("archive")
+        store = Mock(EventDAO.class)
+        archive = new EventArchive(directory, 10, new EventSegmentTest.IdEventSerializer())
+        dao = new TieredEventDAO(store, archive)
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    def "constructor arguments validation"() {
+        when: "create dao with not initialized store"
+        new TieredEventDAO(null, archive)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create dao with not initialized archive"
+        new TieredEventDAO(store, null)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "writes and lookups go to store"() {
+        given:
+        Event event = event(10)
+        UUID id = UUID.randomUUID()
+
+        when:
+        dao.insert([event])
+        dao.save(event)
+        dao.findOne(id)
+
+        then:
+        1 * store.insert([event])
+        1 * store.save(event)
+        1 * store.findOne(id)
+    }
+
+    def "range after archive is read from store only"() {
+        given:
+        archive.write([event(10), event(20)].iterator())
+        CloseableIterator<Event> hot = iterator([])
+
+        when:
+        CloseableIterator<Event> result = dao.findAll(30, 100)
+
+        then:
+        1 * store.findAll(30, 100) >> hot
+        result == hot
+    }
+
+    def "archived part of range is merged with store and rest is read from store"() {
+        given: "archive with events until 30 and store with late and new events"
+        List<Event> archived = [event(10), event(30)]
+        archive.write(archived.iterator())
+        Event late = event(20)
+        Event fresh = event(40)
+
+        when:
+        List<Event> result = dao.findAll(0, 100).collect()
+
+        then:
+        1 * store.findAll(0, 30) >> iterator([late])
+        1 * store.findAll(31, 100) >> iterator([fresh])
+
+        and:
+        result == [archived[0], late, archived[1], fresh]
+    }
+
+    def "count sums archived part of range and store after archive"() {
+        given:
+        archive.write([event(10), event(20), event(30)].iterator())
+        store.count(31, 100) >> 5L
+        store.count(31, Long.MAX_VALUE) >> 7L
+
+        expect:
+        dao.count(15, 100) == 7L
+        dao.count() == 10L
+    }
+
+    def "events left in both tiers by interrupted archive run are counted once"() {
+        given: "archive with events until 30 and store that still has one of them and late event"
+        List<Event> archived = [event(10), event(20), event(30)]
+        archive.write(archived.iterator())
+        Event late = event(25)
+
+        when:
+        long count = dao.count(0, 100)
+
+        then:
+        1 * store.count(0, 30) >> 2L
+        1 * store.findAll(0, 30) >> iterator([archived[1], late])
+        1 * store.count(31, 100) >> 4L
+
+        and:
+        count == 8L
+    }
+
+    def "histogram counts events left in both tiers once"() {
+        given:
+        List<Event> archived = [event(10), event(20), event(30)]
+        archive.write(archived.iterator())
+        EventHistogram stored = new EventHistogram(31, 100, 100)
+        stored.add(null, 40, 4)
+
+        when:
+        EventHistogram histogram = dao.histogram(0, 100, 100, EventGrouping.TYPE, EventFilter.NONE)
+
+        then:
+        1 * store.findAll(0, 30) >> iterator([archived[1]])
+        1 * store.histogram(31, 100, 100, EventGrouping.TYPE, EventFilter.NONE) >> stored
+
+        and:
+        histogram.series[EventHistogram.NO_GROUP] == [7L, 0L] as long[]
+    }
+
+    private CloseableIterator<Event> iterator(List<Event> events) {
+        Iterator<Event> delegate = events.iterator()
+        CloseableIterator<Event> iterator = Mock(CloseableIterator.class)
+        iterator.hasNext() >> { delegate.hasNext() }
+        iterator.next() >> { delegate.next() }
+        return iterator
+    }
+}
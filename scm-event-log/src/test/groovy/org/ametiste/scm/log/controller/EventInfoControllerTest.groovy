@@ -0,0 +1,137 @@
+package org.ametiste.scm.log.controller
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.ametiste.scm.log.data.info.EventInfoResponse
+import org.ametiste.scm.log.persistent.EventFilter
+import org.ametiste.scm.log.persistent.EventGrouping
+import org.ametiste.scm.log.persistent.EventHistogram
+import org.ametiste.scm.log.service.EventInformer
+import org.ametiste.scm.log.service.InvalidRequestException
+import org.ametiste.scm.messaging.data.InstanceLifecycleEventGenerator
+import org.ametiste.scm.messaging.data.event.Event
+import org.springframework.data.util.CloseableIterator
+import org.springframework.mock.web.MockHttpServletResponse
+import spock.lang.Specification
+
+import java.util.zip.GZIPInputStream
+
+class EventInfoControllerTest extends Specification {
+
+    private static final InstanceLifecycleEventGenerator EVENT_GENERATOR = new InstanceLifecycleEventGenerator()
+
+    private EventInformer informer = Mock(EventInformer.class)
+    private EventInfoController controller = new EventInfoController()
+    private MockHttpServletResponse response = new MockHttpServletResponse()
+
+    def setup() {
+        controller.informer = informer
+    }
+
+    def "export should write events as newline-delimited JSON"() {
+        given:
+        List<Event> events = [EVENT_GENERATOR.generate(), EVENT_GENERATOR.generate()]
+        CloseableIterator<Event> cursor = iterator(events)
+
+        when:
+        controller.exportEventsForTimePeriod(10, 20, "STARTUP", null, null, null, response)
+
+        then: "filtered events are streamed and cursor is closed"
+        1 * informer.streamEventsForTime(10, 20, new EventFilter("STARTUP", null, null)) >> cursor
+        1 * cursor.close()
+
+        and: "each event is written as separate line"
+        response.contentType.startsWith(EventInfoController.NDJSON_CONTENT_TYPE)
+        response.getHeader("Content-Encoding") == null
+        ids(response.contentAsString) == events*.id*.toString()
+        response.contentAsString.endsWith("\n")
+    }
+
+    def "export should compress response if client accepts gzip"() {
+        given:
+        Event event = EVENT_GENERATOR.generate()
+
+        when:
+        controller.exportEventsForTimePeriod(-1, -1, null, null, null, "gzip, deflate", response)
+
+        then:
+        1 * informer.streamEventsForTime(-1, -1, _) >> iterator([event])
+
+        and: "response is compressed"
+        response.getHeader("Content-Encoding") == "gzip"
+        ids(new GZIPInputStream(new ByteArrayInputStream(response.contentAsByteArray)).getText("UTF-8")) ==
+                [event.id.toString()]
+    }
+
+    def "export of empty period should write empty response"() {
+        when:
+        controller.exportEventsForTimePeriod(10, 20, null, null, null, null, response)
+
+        then:
+        1 * informer.streamEventsForTime(10, 20, _) >> iterator([])
+
+        and:
+        response.contentAsString.isEmpty()
+    }
+
+    def "lookup should return event infos in order of ids"() {
+        given:
+        Event event = EVENT_GENERATOR.generate()
+        UUID missing = UUID.randomUUID()
+
+        when:
+        List<EventInfoResponse> result = controller.getEventInfos([missing, event.id])
+
+        then:
+        1 * informer.find([missing, event.id]) >> [null, event]
+
+        and: "missing event has response with null fields"
+        result*.event == [null, event]
+        result*.type == [null, event.class.simpleName]
+
+        when: "look up too many ids"
+        controller.getEventInfos((0..EventInfoController.MAX_LOOKUP_IDS).collect { UUID.randomUUID() })
+
+        then: "expect InvalidRequestException thrown"
+        thrown(InvalidRequestException.class)
+
+        when: "look up null id"
+        controller.getEventInfos([event.id, null])
+
+        then: "expect InvalidRequestException thrown"
+        thrown(InvalidRequestException.class)
+    }
+
+    def "histogram should be requested with filter of parameters"() {
+        given:
+        EventHistogram stored = new EventHistogram(0, 100, 10)
+
+        when:
+        EventHistogram histogram = controller.getHistogramForTimePeriod(0, 100, 10, EventGrouping.INSTANCE, null, null,
+                "node-1")
+
+        then:
+        1 * informer.getHistogramForTime(0, 100, 10, EventGrouping.INSTANCE, new EventFilter(null, null, "node-1")) >>
+                stored
+        histogram.is(stored)
+
+        when: "request histogram with not positive bucket size"
+        controller.getHistogramForTimePeriod(0, 100, 0, EventGrouping.TYPE, null, null, null)
+
+        then: "expect InvalidRequestException thrown and informer is not requested"
+        thrown(InvalidRequestException.class)
+        0 * informer.getHistogramForTime(*_)
+    }
+
+    private static List<String> ids(String content) {
+        ObjectMapper mapper = new ObjectMapper()
+        return content.readLines().collect { mapper.readTree(it).get("event").get("id").asText() }
+    }
+
+    private CloseableIterator<Event> iterator(List<Event> events) {
+        Iterator<Event> delegate = events.iterator()
+        CloseableIterator<Event> iterator = Mock(CloseableIterator.class)
+        iterator.hasNext() >> { delegate.hasNext() }
+        iterator.next() >> { delegate.next() }
+        return iterator
+    }
+}
@@ -0,0 +1,76 @@
+package org.ametiste.scm.log.controller
+
+import org.ametiste.scm.log.service.EventLogger
+import org.ametiste.scm.log.util.NodeRateLimiter
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import spock.lang.Specification
+
+class ReceiverBackpressureInterceptorTest extends Specification {
+
+    private EventLogger eventLogger = Mock(EventLogger.class)
+    private NodeRateLimiter rateLimiter = Mock(NodeRateLimiter.class)
+    private MockHttpServletRequest request = new MockHttpServletRequest("POST", "/event-receiver")
+    private MockHttpServletResponse response = new MockHttpServletResponse()
+
+    def "constructor arguments validation"() {
+        when: "create interceptor without logger"
+        new ReceiverBackpressureInterceptor(null, null, true, 503, 1)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create interceptor with not positive retry after"
+        new ReceiverBackpressureInterceptor(eventLogger, null, true, 503, 0)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "should pass request when logger is not saturated"() {
+        given:
+        ReceiverBackpressureInterceptor interceptor = new ReceiverBackpressureInterceptor(eventLogger, null, true, 503, 1)
+        eventLogger.isSaturated() >> false
+
+        expect:
+        interceptor.preHandle(request, response, null)
+        response.getStatus() == 200
+    }
+
+    def "should reject request when logger is saturated"() {
+        given:
+        ReceiverBackpressureInterceptor interceptor = new ReceiverBackpressureInterceptor(eventLogger, null, true, 429, 5)
+        eventLogger.isSaturated() >> true
+
+        expect: "request rejected with configured status and retry after"
+        !interceptor.preHandle(request, response, null)
+        response.getStatus() == 429
+        response.getHeader("Retry-After") == "5"
+    }
+
+    def "should pass request when rejection is disabled"() {
+        given:
+        ReceiverBackpressureInterceptor interceptor = new ReceiverBackpressureInterceptor(eventLogger, null, false, 503, 1)
+        eventLogger.isSaturated() >> true
+
+        expect:
+        interceptor.preHandle(request, response, null)
+    }
+
+    def "should reject request above node rate limit"() {
+        given:
+        ReceiverBackpressureInterceptor interceptor = new ReceiverBackpressureInterceptor(eventLogger, rateLimiter, true, 503, 1)
+        request.setRemoteAddr("10.0.0.1")
+
+        when:
+        boolean passed = interceptor.preHandle(request, response, null)
+
+        then: "limiter asked with sender address"
+        1 * rateLimiter.tryAcquire("10.0.0.1") >> 1500
+
+        and: "request rejected with retry after rounded up to seconds"
+        !passed
+        response.getStatus() == 429
+        response.getHeader("Retry-After") == "2"
+    }
+}
@@ -0,0 +1,217 @@
+package org.ametiste.scm.log.filestore
+
+import org.ametiste.scm.log.archive.EventSegmentTest
+import org.ametiste.scm.log.persistent.DuplicateEventsException
+import org.ametiste.scm.log.persistent.EventKey
+import org.ametiste.scm.messaging.data.event.Event
+import org.springframework.data.domain.Page
+import org.springframework.data.domain.PageRequest
+import org.springframework.data.domain.Sort
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+import static org.ametiste.scm.log.archive.EventSegmentTest.event
+
+class FileEventDAOTest extends Specification {
+
+    private static final int SEGMENT_SIZE = 200
+
+    private Path directory
+    private FileEventDAO dao
+
+    def setup() {
+        directory = Files.createTempDirectory("store")
+        dao = open()
+    }
+
+    def cleanup() {
+        dao.close()
+        directory.toFile().deleteDir()
+    }
+
+    def "constructor arguments validation"() {
+        when: "create dao with not initialized directory"
+        new FileEventDAO(null, SEGMENT_SIZE, 2, new EventSegmentTest.IdEventSerializer())
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create dao with segment smaller than record header"
+        new FileEventDAO(directory, LogSegment.HEADER_SIZE, 2, new EventSegmentTest.IdEventSerializer())
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create dao with not positive index interval"
+        new FileEventDAO(directory, SEGMENT_SIZE, 0, new EventSegmentTest.IdEventSerializer())
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create dao with not initialized serializer"
+        new FileEventDAO(directory, SEGMENT_SIZE, 2, null)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "inserted events are found by id and range in timestamp order"() {
+        given: "events are inserted out of order into several segments"
+        List<Event> events = [50, 10, 40, 20, 30, 60, 0].collect { event(it) }
+        dao.insert(events)
+
+        expect:
+        events.every { dao.findOne(it.id) == it }
+        dao.findOne(UUID.randomUUID()) == null
+        dao.findAll(10, 50).collect()*.timestamp == [10, 20, 30, 40, 50]
+        dao.findAll().collect()*.timestamp == [0, 10, 20, 30, 40, 50, 60]
+        dao.count() == 7
+        dao.count(10, 50) == 5
+        Files.list(directory).count() > 1
+    }
+
+    def "insert reports duplicates and stores other events"() {
+        given:
+        Event stored = event(10)
+        dao.insert(stored)
+        Event fresh = event(20)
+
+        when:
+        dao.insert([stored, fresh])
+
+        then:
+        DuplicateEventsException e = thrown(DuplicateEventsException.class)
+        e.duplicates == [stored]
+        dao.findOne(fresh.id) == fresh
+        dao.count() == 2
+    }
+
+    def "save supersedes previous record"() {
+        given:
+        Event stored = event(10)
+        dao.insert(stored)
+
+        when:
+        dao.save(stored)
+
+        then:
+        dao.findAll().collect() == [stored]
+        dao.count(0, 100) == 1
+    }
+
+    def "index is restored after reopen and torn tail is discarded"() {
+        given: "store with saved, removed and inserted events"
+        List<Event> events = (0..5).collect { event(it * 10) }
+        dao.insert(events)
+        dao.save(events[1])
+        dao.delete(20, 20)
+        dao.close()
+
+        and: "partially written record at the end of last segment"
+        Path last = Files.list(directory).sorted().toArray()[-1] as Path
+        long size = Files.size(last)
+        Files.write(last, [0, 0, 0, 100, 1, 2] as byte[], StandardOpenOption.APPEND)
+
+        when:
+        dao = open()
+
+        then:
+        dao.findAll().collect()*.timestamp == [0, 10, 30, 40, 50]
+        dao.count() == 5
+        dao.count(0, 50) == 5
+        Files.size(last) == size
+
+        when: "append after reopen"
+        Event fresh = event(60)
+        dao.insert(fresh)
+
+        then:
+        dao.findOne(fresh.id) == fresh
+    }
+
+    def "delete drops covered segments and writes tombstones for others"() {
+        given:
+        List<Event> events = (0..9).collect { event(it * 10) }
+        dao.insert(events)
+        long segments = Files.list(directory).count()
+
+        when:
+        dao.delete(0, 45)
+
+        then:
+        dao.findAll().collect()*.timestamp == [50, 60, 70, 80, 90]
+        dao.count() == 5
+        dao.count(0, 100) == 5
+        events.take(5).every { dao.findOne(it.id) == null }
+        Files.list(directory).count() < segments
+    }
+
+    def "events removed with dropped segment stay removed after reopen"() {
+        given: "event saved again into segment that is covered by delete while its first record is not"
+        Event saved = event(0)
+        dao.insert([saved, event(100), event(110), event(120)])
+        dao.save(saved)
+        dao.insert([event(5), event(6), event(7), event(200)])
+
+        when:
+        dao.delete(0, 10)
+        dao.close()
+        dao = open()
+
+        then:
+        dao.findOne(saved.id) == null
+        dao.findAll().collect()*.timestamp == [100, 110, 120, 200]
+        dao.count() == 4
+    }
+
+    def "range reads merge chunks of overlapping segments in timestamp order"() {
+        given: "events with repeated timestamps inserted in random order"
+        List<Event> events = (0..39).collect { event(it.intdiv(2) * 10) }
+        Collections.shuffle(events, new Random(42))
+        events.each { dao.insert(it) }
+        List<Event> ordered = events.sort(false) { first, second ->
+            first.timestamp <=> second.timestamp ?: first.id <=> second.id
+        }
+
+        expect:
+        dao.findAll().collect() == ordered
+        dao.findAll(25, 144).collect() == ordered.findAll { it.timestamp >= 25 && it.timestamp <= 144 }
+        dao.findAll(0, 1000, null, 40, Sort.Direction.DESC) == ordered.reverse()
+        dao.findAll(0, 1000, EventKey.of(ordered[9]), 5, Sort.Direction.ASC) == ordered[10..14]
+        dao.findAll(0, 1000, new PageRequest(3, 4, new Sort(Sort.Direction.DESC, "timestamp"))).content ==
+                ordered.reverse()[12..15]
+    }
+
+    def "pages are read across segments in requested direction"() {
+        given:
+        dao.insert((0..9).collect { event(it * 10) })
+
+        when:
+        Page<Event> asc = dao.findAll(10, 80, new PageRequest(1, 3, new Sort(Sort.Direction.ASC, "timestamp")))
+        Page<Event> desc = dao.findAll(new PageRequest(0, 4, new Sort(Sort.Direction.DESC, "timestamp")))
+
+        then:
+        asc.content*.timestamp == [40, 50, 60]
+        asc.totalElements == 8
+        desc.content*.timestamp == [90, 80, 70, 60]
+        desc.totalElements == 10
+    }
+
+    def "seek returns events after key in requested direction"() {
+        given:
+        List<Event> events = (0..9).collect { event(it * 10) }
+        dao.insert(events)
+
+        expect:
+        dao.findAll(0, 100, EventKey.of(events[2]), 3, Sort.Direction.ASC)*.timestamp == [30, 40, 50]
+        dao.findAll(0, 100, EventKey.of(events[2]), 3, Sort.Direction.DESC)*.timestamp == [10, 0]
+        dao.findAll(0, 100, null, 2, Sort.Direction.DESC)*.timestamp == [90, 80]
+    }
+
+    private FileEventDAO open() {
+        new FileEventDAO(directory, SEGMENT_SIZE, 2, new EventSegmentTest.IdEventSerializer())
+    }
+}
@@ -0,0 +1,44 @@
+package org.ametiste.scm.log.filestore
+
+import spock.lang.Specification
+
+class UuidIndexTest extends Specification {
+
+    def "constructor arguments validation"() {
+        when: "create index with capacity that is not power of two"
+        new UuidIndex(3)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "put, get and remove entries"() {
+        given:
+        UuidIndex index = new UuidIndex(4)
+        UUID id = UUID.randomUUID()
+
+        expect:
+        index.put(id, 10) == UuidIndex.ABSENT
+        index.get(id) == 10
+        index.put(id, 20) == 10
+        index.size() == 1
+        index.remove(id) == 20
+        index.get(id) == UuidIndex.ABSENT
+        index.remove(id) == UuidIndex.ABSENT
+        index.size() == 0
+    }
+
+    def "entries remain reachable after resize and removal of colliding entries"() {
+        given: "index filled far beyond initial capacity"
+        UuidIndex index = new UuidIndex(2)
+        List<UUID> ids = (0..<1000).collect { new UUID(it, it * 31) }
+        ids.eachWithIndex { UUID id, int i -> index.put(id, i) }
+
+        when: "remove every third entry"
+        ids.eachWithIndex { UUID id, int i -> if (i % 3 == 0) index.remove(id) }
+
+        then: "other entries are found"
+        ids.withIndex().every { UUID id, int i -> index.get(id) == (i % 3 == 0 ? UuidIndex.ABSENT : i) }
+        index.size() == 666
+    }
+}
@@ -0,0 +1,134 @@
+package org.ametiste.scm.log.journal
+
+import org.ametiste.scm.messaging.data.InstanceLifecycleEventGenerator
+import org.ametiste.scm.messaging.data.event.Event
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+
+class MappedEventJournalTest extends Specification {
+
+    private static final InstanceLifecycleEventGenerator EVENT_GENERATOR = new InstanceLifecycleEventGenerator();
+    private static final int SEGMENT_SIZE = 64;
+
+    private Path directory;
+    private EventSerializer serializer;
+
+    def setup() {
+        directory = Files.createTempDirectory("journal")
+        serializer = new IndexEventSerializer()
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    def "constructor arguments validation"() {
+        when: "create journal with not initialized directory"
+        new MappedEventJournal(null, SEGMENT_SIZE, serializer)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create journal with too small segment"
+        new MappedEventJournal(directory, 8, serializer)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create journal with not initialized serializer"
+        new MappedEventJournal(directory, SEGMENT_SIZE, null)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "should replay records appended after checkpoint in previous run"() {
+        given: "journal with events and checkpoint after first of them"
+        Collection<Event> events = EVENT_GENERATOR.generate(10)
+        MappedEventJournal journal = new MappedEventJournal(directory, SEGMENT_SIZE, serializer)
+
+        long checkpoint = journal.append(journal.encode(events.getAt(0)))
+        events.drop(1).each { journal.append(journal.encode(it)) }
+        journal.checkpoint(checkpoint)
+        journal.close()
+
+        when: "reopen journal and replay"
+        List<Event> replayed = []
+        new MappedEventJournal(directory, SEGMENT_SIZE, serializer).replay { replayed.add(it) }
+
+        then: "all events after checkpoint replayed in order across segments"
+        replayed == events.drop(1)
+    }
+
+    def "should not replay records before checkpoint and delete completed segments"() {
+        given: "journal with fully checkpointed events"
+        MappedEventJournal journal = new MappedEventJournal(directory, SEGMENT_SIZE, serializer)
+        EVENT_GENERATOR.generate(10).each { journal.append(journal.encode(it)) }
+        journal.checkpoint(journal.position())
+
+        when: "reopen journal and replay"
+        List<Event> replayed = []
+        new MappedEventJournal(directory, SEGMENT_SIZE, serializer).replay { replayed.add(it) }
+
+        then: "nothing replayed"
+        replayed.isEmpty()
+
+        and: "only active segments left"
+        Files.list(directory).filter { it.fileName.toString().endsWith(".log") }.count() <= 2
+    }
+
+    def "should stop segment replay on broken record"() {
+        given: "journal with two events"
+        MappedEventJournal journal = new MappedEventJournal(directory, 1024, serializer)
+        Event first = EVENT_GENERATOR.generate()
+        long position = journal.append(journal.encode(first))
+        journal.append(journal.encode(EVENT_GENERATOR.generate()))
+        journal.close()
+
+        and: "content of second record corrupted"
+        Path segment = Files.list(directory).filter { it.fileName.toString().endsWith(".log") }.findFirst().get()
+        byte[] content = Files.readAllBytes(segment)
+        content[(int) position + 8] = (byte) (content[(int) position + 8] + 1)
+        Files.write(segment, content)
+
+        when: "reopen journal and replay"
+        List<Event> replayed = []
+        new MappedEventJournal(directory, 1024, serializer).replay { replayed.add(it) }
+
+        then: "only first event replayed"
+        replayed == [first]
+    }
+
+    def "should reject record greater than segment"() {
+        given:
+        MappedEventJournal journal = new MappedEventJournal(directory, SEGMENT_SIZE, serializer)
+
+        when:
+        journal.append(new byte[SEGMENT_SIZE])
+
+        then:
+        thrown(IllegalArgumentException.class)
+    }
+
+    /**
+     * Serializer that writes index of event in registry, so tests don't depend on event binary format.
+     */
+    private static class IndexEventSerializer implements EventSerializer {
+
+        private static final List<Event> REGISTRY = Collections.synchronizedList([])
+
+        @Override
+        byte[] serialize(Event event) {
+            REGISTRY.add(event)
+            ByteBuffer.allocate(12).putInt(REGISTRY.size() - 1).putLong(event.getTimestamp()).array()
+        }
+
+        @Override
+        Event deserialize(byte[] data) {
+            REGISTRY.get(ByteBuffer.wrap(data).getInt())
+        }
+    }
+}
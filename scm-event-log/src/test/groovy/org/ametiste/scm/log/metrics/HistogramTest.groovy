@@ -0,0 +1,60 @@
+package org.ametiste.scm.log.metrics
+
+import spock.lang.Specification
+
+class HistogramTest extends Specification {
+
+    def "constructor arguments validation"() {
+        when: "create histogram without bounds"
+        new Histogram()
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create histogram with bounds not in ascending order"
+        new Histogram(10, 5)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "empty histogram returns zeros"() {
+        given:
+        Histogram histogram = new Histogram(1, 10, 100)
+
+        expect:
+        histogram.getCount() == 0
+        histogram.getMean() == 0
+        histogram.getMax() == 0
+        histogram.getPercentile(0.99) == 0
+    }
+
+    def "should estimate statistics of recorded values"() {
+        given:
+        Histogram histogram = new Histogram(1, 10, 100)
+
+        when: "record 90 small values and 10 large"
+        90.times { histogram.record(5) }
+        10.times { histogram.record(50) }
+
+        then:
+        histogram.getCount() == 100
+        histogram.getMean() == 9.5
+        histogram.getMax() == 50
+
+        and: "percentiles are bounded by bucket bounds and max"
+        histogram.getPercentile(0.5) == 10
+        histogram.getPercentile(0.99) == 50
+    }
+
+    def "should count values above last bound in overflow bucket"() {
+        given:
+        Histogram histogram = new Histogram(1, 10)
+
+        when:
+        histogram.record(1000)
+
+        then:
+        histogram.getPercentile(0.5) == 1000
+    }
+}
@@ -0,0 +1,43 @@
+package org.ametiste.scm.log.persistent
+
+import org.ametiste.scm.messaging.data.event.Event
+import org.ametiste.scm.messaging.data.event.InstanceLifecycleEvent
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class EventFilterTest extends Specification {
+
+    private static final InstanceLifecycleEvent EVENT = InstanceLifecycleEvent.builder()
+            .id(UUID.randomUUID())
+            .timestamp(100)
+            .type(InstanceLifecycleEvent.Type.STARTUP)
+            .instanceId("RAIN")
+            .nodeId("node-1")
+            .build()
+
+    @Unroll
+    def "filter #filter matches lifecycle event: #matches"() {
+        expect:
+        filter.test(EVENT) == matches
+
+        where:
+        filter                                     | matches
+        EventFilter.NONE                           | true
+        new EventFilter("STARTUP", null, null)     | true
+        new EventFilter("SHUTDOWN", null, null)    | false
+        new EventFilter(null, "RAIN", "node-1")    | true
+        new EventFilter("STARTUP", "RAIN", "node") | false
+        new EventFilter(null, "BROKER", null)      | false
+    }
+
+    def "other events match only empty filter"() {
+        given:
+        Event event = new Event(UUID.randomUUID(), 100)
+
+        expect:
+        EventFilter.NONE.isEmpty()
+        EventFilter.NONE.test(event)
+        !new EventFilter(null, "RAIN", null).isEmpty()
+        !new EventFilter(null, "RAIN", null).test(event)
+    }
+}
@@ -0,0 +1,100 @@
+package org.ametiste.scm.log.persistent
+
+import org.ametiste.scm.messaging.data.InstanceLifecycleEventGenerator
+import org.ametiste.scm.messaging.data.event.InstanceLifecycleEvent
+import spock.lang.Specification
+
+class EventHistogramTest extends Specification {
+
+    def "constructor arguments validation"() {
+        when: "create histogram with not positive bucket size"
+        new EventHistogram(0, 100, 0)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create histogram with inverted interval"
+        new EventHistogram(100, 0, 10)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create histogram with too many buckets"
+        new EventHistogram(0, EventHistogram.MAX_BUCKETS * 10L, 10)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "buckets are aligned to multiples of bucket size"() {
+        when:
+        EventHistogram histogram = new EventHistogram(15, 42, 10)
+
+        then:
+        histogram.buckets == [10L, 20L, 30L, 40L] as long[]
+        histogram.series.isEmpty()
+    }
+
+    def "events are counted in series of group"() {
+        given:
+        EventHistogram histogram = new EventHistogram(0, 39, 10)
+
+        when:
+        histogram.add("STARTUP", 5, 1)
+        histogram.add("STARTUP", 7, 2)
+        histogram.add("SHUTDOWN", 35, 1)
+        histogram.add(null, 20, 4)
+
+        then:
+        histogram.series["STARTUP"] == [3L, 0L, 0L, 0L] as long[]
+        histogram.series["SHUTDOWN"] == [0L, 0L, 0L, 1L] as long[]
+        histogram.series[EventHistogram.NO_GROUP] == [0L, 0L, 4L, 0L] as long[]
+    }
+
+    def "events outside of interval are ignored"() {
+        given:
+        EventHistogram histogram = new EventHistogram(10, 29, 10)
+
+        when:
+        histogram.add("STARTUP", 9, 1)
+        histogram.add("STARTUP", 30, 1)
+
+        then:
+        histogram.series.isEmpty()
+    }
+
+    def "addAll adds counts by bucket time"() {
+        given: "histogram of whole interval and histogram of its part"
+        EventHistogram histogram = new EventHistogram(0, 39, 10)
+        histogram.add("STARTUP", 25, 1)
+        EventHistogram part = new EventHistogram(20, 39, 10)
+        part.add("STARTUP", 25, 2)
+        part.add("SHUTDOWN", 30, 1)
+
+        when:
+        histogram.addAll(part)
+
+        then:
+        histogram.series["STARTUP"] == [0L, 0L, 3L, 0L] as long[]
+        histogram.series["SHUTDOWN"] == [0L, 0L, 0L, 1L] as long[]
+
+        when: "add histogram with other bucket size"
+        histogram.addAll(new EventHistogram(0, 39, 20))
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "events are grouped by lifecycle event fields"() {
+        given:
+        InstanceLifecycleEvent event = new InstanceLifecycleEventGenerator().generate()
+
+        expect:
+        EventGrouping.TYPE.groupOf(event) == event.type.name()
+        EventGrouping.INSTANCE.groupOf(event) == event.instanceId
+        EventGrouping.NODE.groupOf(event) == event.nodeId
+
+        and: "other events have no group"
+        EventGrouping.TYPE.groupOf(new MongoEventCountersTest.TimedEvent(time: 5)) == null
+    }
+}
@@ -0,0 +1,212 @@
+package org.ametiste.scm.log.persistent
+
+import org.ametiste.scm.messaging.data.event.Event
+import spock.lang.Specification
+
+import java.util.function.Function
+
+class EventLookupCacheTest extends Specification {
+
+    private long now
+    private Function<UUID, Event> loader
+
+    def setup() {
+        now = 1000
+        loader = Mock(Function.class)
+    }
+
+    def "constructor arguments validation"() {
+        when: "create cache with zero size"
+        new EventLookupCache(0, 100, 0, { 1L })
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create cache without weigher"
+        new EventLookupCache(10, 100, 0, null)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "found event is cached"() {
+        given:
+        EventLookupCache cache = cache(10, 100, 0)
+        Event event = event(10)
+
+        when: "look up event twice"
+        Event first = cache.find(event.id, loader)
+        Event second = cache.find(event.id, loader)
+
+        then: "store is requested once"
+        1 * loader.apply(event.id) >> event
+
+        and:
+        first.is(event)
+        second.is(event)
+        cache.hits == 1
+        cache.misses == 1
+    }
+
+    def "miss is cached until negative entry expires"() {
+        given:
+        EventLookupCache cache = cache(10, 100, 500)
+        UUID id = UUID.randomUUID()
+
+        when: "look up missing event twice"
+        cache.find(id, loader)
+        Event result = cache.find(id, loader)
+
+        then:
+        1 * loader.apply(id) >> null
+        result == null
+        cache.negativeHits == 1
+
+        when: "negative entry expires"
+        now += 500
+        cache.find(id, loader)
+
+        then: "store is requested again"
+        1 * loader.apply(id) >> null
+    }
+
+    def "least recently used entries are evicted by size and weight"() {
+        given: "cache of three entries with weight of event equal to its timestamp"
+        EventLookupCache cache = cache(3, 100, 0)
+        Event e1 = event(10)
+        Event e2 = event(20)
+        Event e3 = event(30)
+        Event e4 = event(70)
+        loader.apply(_) >> { UUID id -> [e1, e2, e3, e4].find { it.id == id } }
+
+        when: "first event is used after second one"
+        [e1, e2, e3, e1].each { cache.find(it.id, loader) }
+
+        and: "heavy event is cached"
+        cache.find(e4.id, loader)
+
+        then: "second and third events are evicted to fit weight"
+        cache.size() == 2
+        cache.weight() == 80
+        cache.evictions == 2
+    }
+
+    def "event heavier than weight bound is not cached"() {
+        given:
+        EventLookupCache cache = cache(3, 100, 0)
+        Event event = event(200)
+
+        when:
+        cache.find(event.id, loader)
+        cache.find(event.id, loader)
+
+        then:
+        2 * loader.apply(event.id) >> event
+        cache.size() == 0
+    }
+
+    def "saved events are invalidated and inserted ones are not"() {
+        given:
+        EventLookupCache cache = cache(10, 100, 500)
+        Event event = event(10)
+        EventDAO eventDAO = Mock(EventDAO.class)
+        EventDAO cachingDAO = new LookupCachingEventDAO(eventDAO, cache)
+
+        when: "look up event before it is inserted"
+        Event missing = cachingDAO.findOne(event.id)
+        cachingDAO.insert([event])
+
+        then: "miss stays cached after insert"
+        1 * eventDAO.findOne(event.id) >> null
+        missing == null
+        cachingDAO.findOne(event.id) == null
+
+        when: "negative entry expires and event is saved again"
+        now += 500
+        Event found = cachingDAO.findOne(event.id)
+        cachingDAO.save([event])
+        Event reloaded = cachingDAO.findOne(event.id)
+
+        then: "saved event is loaded again"
+        2 * eventDAO.findOne(event.id) >> event
+        found.is(event)
+        reloaded.is(event)
+    }
+
+    def "load is not cached only if its id is invalidated while it runs"() {
+        given:
+        EventLookupCache cache = cache(10, 100, 500)
+        Event other = event(20)
+        Event loaded = event(10)
+
+        when: "other event is saved while event is loaded"
+        cache.find(loaded.id, { cache.invalidate([other]); loaded })
+
+        then: "loaded event is cached"
+        cache.find(loaded.id, loader).is(loaded)
+        0 * loader.apply(_)
+
+        when: "event is saved while it is loaded"
+        cache.invalidate([loaded])
+        cache.find(loaded.id, { cache.invalidate([loaded]); loaded })
+        cache.find(loaded.id, loader)
+
+        then: "result of load is not cached"
+        1 * loader.apply(loaded.id) >> loaded
+    }
+
+    def "failed load is not cached"() {
+        given:
+        EventLookupCache cache = cache(10, 100, 500)
+        UUID id = UUID.randomUUID()
+
+        when:
+        cache.find(id, { throw new IllegalStateException() })
+
+        then:
+        thrown(IllegalStateException.class)
+        cache.size() == 0
+
+        when: "load succeeds after failure"
+        cache.find(id, { event(10) })
+
+        then:
+        cache.size() == 1
+    }
+
+    def "batch lookup loads only missed ids with one request"() {
+        given: "cache with one found and one missing id"
+        EventLookupCache cache = cache(10, 100, 500)
+        Event cached = event(10)
+        Event loaded = event(20)
+        UUID missing = UUID.randomUUID()
+        UUID unknown = UUID.randomUUID()
+        cache.find(cached.id, { cached })
+        cache.find(missing, { null })
+        Function<Collection<UUID>, List<Event>> batchLoader = Mock(Function.class)
+
+        when:
+        Map<UUID, Event> result = cache.findAll([cached.id, missing, loaded.id, unknown], batchLoader)
+
+        then: "store is requested for ids that are not cached"
+        1 * batchLoader.apply([loaded.id, unknown]) >> [loaded]
+
+        and: "ids of missing events are absent"
+        result == [(cached.id): cached, (loaded.id): loaded]
+
+        when: "look up the same ids again"
+        result = cache.findAll([cached.id, missing, loaded.id, unknown], batchLoader)
+
+        then: "loaded event and miss are cached"
+        0 * batchLoader.apply(_)
+        result == [(cached.id): cached, (loaded.id): loaded]
+    }
+
+    private EventLookupCache cache(int size, long weight, long negativeTtl) {
+        return new EventLookupCache(size, weight, negativeTtl, { Event event -> event.timestamp }, { now })
+    }
+
+    private static Event event(long timestamp) {
+        return new MongoEventCountersTest.TimedEvent(time: timestamp)
+    }
+}
@@ -0,0 +1,140 @@
+package org.ametiste.scm.log.persistent
+
+import org.ametiste.scm.messaging.data.event.Event
+import org.springframework.data.domain.PageImpl
+import org.springframework.data.domain.Pageable
+import org.springframework.data.domain.Sort
+import spock.lang.Specification
+
+class EventTailCacheTest extends Specification {
+
+    def "constructor arguments validation"() {
+        when: "create cache with zero capacity"
+        new EventTailCache(0)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "cache doesn't answer requests before warm up"() {
+        given:
+        EventTailCache cache = new EventTailCache(10)
+        cache.addAll([event(10)])
+
+        expect:
+        cache.last(1) == null
+        cache.find(0, 100) == null
+    }
+
+    def "warm up loads the most recent events of store"() {
+        given:
+        EventTailCache cache = new EventTailCache(3)
+        EventDAO eventDAO = Mock(EventDAO.class)
+        Event e1 = event(10)
+        Event e2 = event(20)
+        Event e3 = event(30)
+
+        when:
+        cache.warm(eventDAO)
+
+        then: "store is requested for capacity of events in descending order"
+        1 * eventDAO.findAll(_ as Pageable) >> { Pageable pageable ->
+            assert pageable.pageSize == 3
+            assert pageable.sort.getOrderFor("timestamp").direction == Sort.Direction.DESC
+            new PageImpl<Event>([e3, e2, e1], pageable, 5)
+        }
+
+        and: "cache doesn't cover older events and events with timestamp of the oldest loaded one"
+        cache.last(2) == [e3, e2]
+        cache.last(3) == null
+        cache.find(11, 100) == [e2, e3]
+        cache.find(10, 100) == null
+    }
+
+    def "cache of small store covers all events"() {
+        given:
+        EventTailCache cache = new EventTailCache(10)
+        Event e1 = event(10)
+        cache.warm(store([e1]))
+
+        expect:
+        cache.last(5) == [e1]
+        cache.find(0, 100) == [e1]
+    }
+
+    def "written events evict the oldest ones and move horizon"() {
+        given:
+        EventTailCache cache = new EventTailCache(2)
+        cache.warm(store([]))
+        Event e1 = event(10)
+        Event e2 = event(30)
+        Event e3 = event(20)
+
+        when:
+        cache.addAll([e1, e2, e3])
+
+        then:
+        cache.size() == 2
+        cache.last(2) == [e2, e3]
+        cache.find(11, 100) == [e3, e2]
+        cache.find(10, 100) == null
+
+        when: "event older than horizon is written"
+        cache.addAll([event(5)])
+
+        then: "it is ignored"
+        cache.size() == 2
+    }
+
+    def "removed interval is removed from cache"() {
+        given:
+        EventTailCache cache = new EventTailCache(10)
+        cache.warm(store([]))
+        Event e1 = event(10)
+        Event e2 = event(20)
+        cache.addAll([e1, e2])
+
+        when:
+        cache.remove(0, 15)
+
+        then:
+        cache.find(0, 100) == [e2]
+    }
+
+    def "tail caching DAO adds written events except duplicates"() {
+        given:
+        EventTailCache cache = new EventTailCache(10)
+        cache.warm(store([]))
+        EventDAO eventDAO = Mock(EventDAO.class)
+        EventDAO cachingDAO = new TailCachingEventDAO(eventDAO, cache)
+        Event e1 = event(10)
+        Event e2 = event(20)
+
+        when: "insert events and one of them is duplicate"
+        cachingDAO.insert([e1, e2])
+
+        then:
+        1 * eventDAO.insert([e1, e2]) >> { throw new DuplicateEventsException("dup", [e2]) }
+        thrown(DuplicateEventsException.class)
+
+        and: "only inserted event is cached"
+        cache.last(10) == [e1]
+
+        when: "save duplicate"
+        cachingDAO.save([e2])
+
+        then:
+        1 * eventDAO.save([e2]) >> [e2]
+        cache.last(10) == [e2, e1]
+    }
+
+    private EventDAO store(List<Event> events) {
+        EventDAO eventDAO = Mock(EventDAO.class)
+        eventDAO.findAll(_ as Pageable) >> { Pageable pageable -> new PageImpl<Event>(events, pageable, events.size()) }
+        return eventDAO
+    }
+
+    private static Event event(long timestamp) {
+        return new MongoEventCountersTest.TimedEvent(time: timestamp)
+    }
+}
@@ -0,0 +1,147 @@
+package org.ametiste.scm.log.persistent
+
+import com.mongodb.BasicDBObject
+import com.mongodb.DBCollection
+import com.mongodb.DBObject
+import com.mongodb.DefaultDBDecoder
+import org.ametiste.scm.messaging.data.InstanceLifecycleEventGenerator
+import org.ametiste.scm.messaging.data.event.InstanceLifecycleEvent
+import org.ametiste.scm.messaging.data.mongo.event.InstanceLifecycleEventDocument
+import org.bson.BSON
+import org.springframework.data.mongodb.MongoDbFactory
+import org.springframework.data.mongodb.core.convert.DefaultDbRefResolver
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext
+import spock.lang.Specification
+
+import static org.ametiste.scm.messaging.data.EventComparator.equals
+
+class InstanceLifecycleEventCodecTest extends Specification {
+
+    private static final InstanceLifecycleEventGenerator EVENT_GENERATOR = new InstanceLifecycleEventGenerator();
+
+    private InstanceLifecycleEventCodec codec = new InstanceLifecycleEventCodec()
+
+    def "encode writes document layout of InstanceLifecycleEventDocument"() {
+        given: "event with dots in property keys"
+        InstanceLifecycleEvent event = InstanceLifecycleEvent.builder()
+                .type(InstanceLifecycleEvent.Type.STARTUP)
+                .instanceId("BROKER")
+                .version("0.2.6.RELEASE")
+                .properties(["server.port": 8080, "nested": ["a.b": "c"]])
+                .uri(URI.create("http://localhost:8080"))
+                .build()
+
+        when: "encode event"
+        DBObject document = codec.encode(event)
+
+        then: "document has type hint and all not null fields"
+        document.get("_id") == event.getId()
+        document.get("_class") == InstanceLifecycleEventDocument.class.getName()
+        document.get("timestamp") == event.getTimestamp()
+        document.get("type") == "STARTUP"
+        document.get("instanceId") == "BROKER"
+        document.get("version") == "0.2.6.RELEASE"
+        document.get("uri").get("string") == "http://localhost:8080"
+        !document.containsField("nodeId")
+
+        and: "dots in map keys are replaced"
+        document.get("properties") == new BasicDBObject("server+port", 8080)
+                .append("nested", new BasicDBObject("a+b", "c"))
+    }
+
+    def "encode writes the same document as converter except internal fields of uri"() {
+        given: "converter configured as in MongoDbConfiguration"
+        MappingMongoConverter converter = new MappingMongoConverter(new DefaultDbRefResolver(Mock(MongoDbFactory.class)),
+                new MongoMappingContext())
+        converter.setMapKeyDotReplacement("\\+")
+        converter.afterPropertiesSet()
+
+        when: "event is written by codec and by converter"
+        DBObject written = new BasicDBObject()
+        converter.write(new InstanceLifecycleEventDocument(event), written)
+
+        then: "documents are equal, uri has only string field of converter document"
+        DBObject encoded = codec.encode(event)
+        encoded.get("uri") == (written.get("uri") != null
+                ? new BasicDBObject("string", written.get("uri").get("string")) : null)
+        withoutUri(encoded) == withoutUri(written)
+
+        where:
+        event << [
+                EVENT_GENERATOR.generate(),
+                InstanceLifecycleEvent.builder()
+                        .type(InstanceLifecycleEvent.Type.STARTUP)
+                        .instanceId("BROKER")
+                        .version("0.2.6.RELEASE")
+                        .properties(["server.port": 8080, "nested": ["a.b": "c"], "list": [1, ["x.y": 2]]])
+                        .nodeId("data-node")
+                        .uri(URI.create("http://localhost:8080/event-receiver"))
+                        .build(),
+                InstanceLifecycleEvent.builder().type(InstanceLifecycleEvent.Type.SHUTDOWN).build()
+        ]
+    }
+
+    def "decoded event is equal to encoded one"() {
+        given: "some event"
+        InstanceLifecycleEvent event = InstanceLifecycleEvent.builder()
+                .type(InstanceLifecycleEvent.Type.SHUTDOWN)
+                .instanceId("RAIN")
+                .version("0.1.0")
+                .properties(["server.port": 8080])
+                .nodeId("data-node")
+                .uri(URI.create("http://localhost"))
+                .build()
+
+        when: "encode event to BSON and decode it back"
+        DBObject document = new DefaultDBDecoder().decode(BSON.encode(codec.encode(event)), (DBCollection) null)
+        InstanceLifecycleEvent decoded = codec.decode(document)
+
+        then: "events are equal"
+        equals(decoded, event)
+        decoded.getProperties() == ["server.port": 8080]
+    }
+
+    def "uri created from components is written with its string form"() {
+        given: "uri that has not built its string form yet"
+        URI uri = new URI("http", null, "localhost", 8080, "/event-receiver", null, null)
+        InstanceLifecycleEvent event = InstanceLifecycleEvent.builder().uri(uri).build()
+
+        when:
+        DBObject document = codec.encode(event)
+
+        then:
+        document.get("uri") == new BasicDBObject("string", "http://localhost:8080/event-receiver")
+        codec.decode(document).getUri() == uri
+    }
+
+    def "decode reads uri written as string"() {
+        given: "document with uri written as string by earlier version of codec"
+        DBObject document = codec.encode(EVENT_GENERATOR.generate())
+        document.put("uri", "http://peer1:8085/event-receiver")
+
+        expect:
+        codec.decode(document).getUri() == URI.create("http://peer1:8085/event-receiver")
+    }
+
+    def "registry chooses codec by event class and document type"() {
+        given: "default registry"
+        EventCodecRegistry registry = new EventCodecRegistry()
+        InstanceLifecycleEvent event = EVENT_GENERATOR.generate()
+
+        expect: "registry supports lifecycle events"
+        registry.canEncode(InstanceLifecycleEvent.class)
+        registry.canDecode(registry.encode(event))
+        equals(registry.decode(registry.encode(event)), event)
+
+        and: "doesn't support other documents"
+        !registry.canDecode(new BasicDBObject("_class", "SomeDocument"))
+        !registry.canDecode(new BasicDBObject())
+    }
+
+    private static DBObject withoutUri(DBObject document) {
+        DBObject copy = new BasicDBObject(document.toMap())
+        copy.removeField("uri")
+        return copy
+    }
+}
@@ -0,0 +1,279 @@
+package org.ametiste.scm.log.persistent
+
+import com.mongodb.BasicDBObject
+import com.mongodb.BulkUpdateRequestBuilder
+import com.mongodb.BulkWriteOperation
+import com.mongodb.BulkWriteRequestBuilder
+import com.mongodb.DBCollection
+import com.mongodb.DBCursor
+import com.mongodb.DBObject
+import com.mongodb.WriteResult
+import org.ametiste.scm.messaging.data.event.Event
+import org.ametiste.scm.messaging.data.event.InstanceLifecycleEvent
+import org.springframework.data.domain.Sort
+import org.springframework.data.mongodb.core.MongoOperations
+import spock.lang.Specification
+
+class MongoEventCountersTest extends Specification {
+
+    private static final long BUCKET_SIZE = 1000L
+
+    private MongoOperations mongoOperations
+    private DBCollection dbCollection
+    private BulkWriteOperation bulk
+    private MongoEventCounters counters
+
+    def setup() {
+        mongoOperations = Mock(MongoOperations.class)
+        dbCollection = Mock(DBCollection.class)
+        bulk = Mock(BulkWriteOperation.class)
+        mongoOperations.getCollection(MongoEventCounters.COLLECTION_NAME) >> dbCollection
+        dbCollection.initializeUnorderedBulkOperation() >> bulk
+
+        counters = new MongoEventCounters(mongoOperations, BUCKET_SIZE)
+    }
+
+    def "constructor arguments validation"() {
+        when: "create counters with not initialized mongo operations"
+        new MongoEventCounters(null, BUCKET_SIZE)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create counters with not positive bucket size"
+        new MongoEventCounters(mongoOperations, 0)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create counters with not positive pending timeout"
+        new MongoEventCounters(mongoOperations, BUCKET_SIZE, 0)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "bucketOf returns start of bucket"() {
+        expect:
+        counters.bucketOf(timestamp) == bucket
+
+        where:
+        timestamp | bucket
+        0         | 0
+        999       | 0
+        1000      | 1000
+        2500      | 2000
+        -1        | -1000
+    }
+
+    def "reserve sends one update per bucket"() {
+        given: "events in two buckets"
+        List<Event> events = [event(100), event(200), event(1500)]
+        Map<Object, DBObject> updates = [:]
+
+        when: "reserve buckets"
+        counters.reserve(events)
+
+        then: "each bucket is upserted with increment of pending events and time of reservation"
+        2 * bulk.find(_ as DBObject) >> { DBObject query ->
+            BulkWriteRequestBuilder requestBuilder = Mock(BulkWriteRequestBuilder.class)
+            BulkUpdateRequestBuilder updateBuilder = Mock(BulkUpdateRequestBuilder.class)
+            requestBuilder.upsert() >> updateBuilder
+            updateBuilder.updateOne(_ as DBObject) >> { DBObject update -> updates[query.get("_id")] = update }
+            return requestBuilder
+        }
+        1 * bulk.execute()
+
+        and:
+        updates[0L].get('$inc') == new BasicDBObject("pending", 2)
+        updates[1000L].get('$inc') == new BasicDBObject("pending", 1)
+        updates[0L].get('$set').get("reserved") > 0
+    }
+
+    def "increment moves reserved events from pending to total of written events"() {
+        given: "reserved events in two buckets, second event is not written"
+        List<Event> events = [event(100), event(200), event(1500)]
+        Map<Object, DBObject> updates = [:]
+
+        when: "increment counters"
+        counters.increment(events, [events[0], events[2]])
+
+        then: "each bucket is updated without upsert"
+        2 * bulk.find(_ as DBObject) >> { DBObject query ->
+            BulkWriteRequestBuilder requestBuilder = Mock(BulkWriteRequestBuilder.class)
+            0 * requestBuilder.upsert()
+            requestBuilder.updateOne(_ as DBObject) >> { DBObject update -> updates[query.get("_id")] = update.get('$inc') }
+            return requestBuilder
+        }
+        1 * bulk.execute()
+
+        and:
+        updates[0L] == new BasicDBObject("pending", -2).append("total", 1)
+        updates[1000L] == new BasicDBObject("pending", -1).append("total", 1)
+    }
+
+    def "increment counts written lifecycle events by type"() {
+        given: "lifecycle events of two types in one bucket"
+        List<Event> events = [lifecycleEvent(100, InstanceLifecycleEvent.Type.STARTUP),
+                              lifecycleEvent(200, InstanceLifecycleEvent.Type.STARTUP),
+                              lifecycleEvent(300, InstanceLifecycleEvent.Type.SHUTDOWN), event(400)]
+        DBObject update = null
+
+        when: "increment counters"
+        counters.increment(events, events)
+
+        then:
+        1 * bulk.find(_ as DBObject) >> {
+            BulkWriteRequestBuilder requestBuilder = Mock(BulkWriteRequestBuilder.class)
+            requestBuilder.updateOne(_ as DBObject) >> { DBObject increment -> update = increment.get('$inc') }
+            return requestBuilder
+        }
+
+        and: "event without type is counted in total only"
+        update == new BasicDBObject("pending", -4).append("total", 4).append("types.STARTUP", 2)
+                .append("types.SHUTDOWN", 1)
+    }
+
+    def "reserve with empty collection does nothing"() {
+        when:
+        counters.reserve([])
+
+        then:
+        0 * dbCollection.initializeUnorderedBulkOperation()
+    }
+
+    def "count sums totals of verified buckets and counts other buckets exactly"() {
+        given: "counters verified until 3000"
+        dbCollection.findOne(new BasicDBObject("_id", "verified")) >> new BasicDBObject("until", 3000L)
+
+        and: "cursor with two buckets, second one has pending events"
+        DBCursor cursor = Mock(DBCursor.class)
+        cursor.iterator() >> [
+                new BasicDBObject("_id", 1000L).append("total", 3).append("pending", 0),
+                new BasicDBObject("_id", 2000L).append("total", 4L).append("pending", 1)
+        ].iterator()
+        List<List<Long>> exact = []
+
+        when: "count range"
+        long result = counters.count(1000, 5000, { long from, long to -> exact << [from, to]; 10L })
+
+        then: "verified buckets are requested by id range"
+        1 * dbCollection.find({ it.get("_id") == new BasicDBObject('$gte', 1000L).append('$lt', 3000L) }) >> cursor
+
+        and: "pending bucket and time after verified are counted exactly"
+        exact == [[2000L, 3000L], [3000L, 5000L]]
+        result == 23L
+    }
+
+    def "count of type sums type counters of verified buckets"() {
+        given: "counters verified until 3000"
+        dbCollection.findOne(new BasicDBObject("_id", "verified")) >> new BasicDBObject("until", 3000L)
+
+        and: "cursor with two buckets, second one has no events of type"
+        DBCursor cursor = Mock(DBCursor.class)
+        cursor.iterator() >> [
+                new BasicDBObject("_id", 1000L).append("total", 7).append("pending", 0)
+                        .append("types", new BasicDBObject("STARTUP", 3).append("SHUTDOWN", 4)),
+                new BasicDBObject("_id", 2000L).append("total", 4L).append("pending", 0)
+                        .append("types", new BasicDBObject("SHUTDOWN", 4))
+        ].iterator()
+        dbCollection.find(_ as DBObject) >> cursor
+
+        expect:
+        counters.count(1000, 3000, "STARTUP", { long from, long to -> throw new IllegalStateException() }) == 3L
+    }
+
+    def "count without verification counts whole range exactly"() {
+        when:
+        long result = counters.count(1000, 3000, { long from, long to -> to - from })
+
+        then:
+        0 * dbCollection.find(_)
+        result == 2000L
+    }
+
+    def "reconcile replaces counters of unchanged buckets with exact counts"() {
+        given: "stored events of two buckets"
+        EventDAO eventDAO = Mock(EventDAO.class)
+        EventHistogram histogram = new EventHistogram(0, 2999, BUCKET_SIZE)
+        histogram.add("STARTUP", 100, 5)
+        histogram.add("SHUTDOWN", 1100, 2)
+
+        and: "document of first bucket, in-flight write to third bucket"
+        DBObject first = new BasicDBObject("_id", 0L).append("total", 7).append("pending", 0)
+        DBObject third = new BasicDBObject("_id", 2000L).append("total", 1).append("pending", 1)
+                .append("reserved", System.currentTimeMillis())
+        DBCursor cursor = Mock(DBCursor.class)
+        cursor.iterator() >> [first, third].iterator()
+        dbCollection.find(_ as DBObject) >> cursor
+        eventDAO.histogram(0, 2999, BUCKET_SIZE, EventGrouping.TYPE, EventFilter.NONE) >> histogram
+
+        when: "reconcile buckets"
+        long result = counters.reconcile(eventDAO, 0, 3000)
+
+        then: "first bucket is replaced only if it wasn't changed"
+        1 * dbCollection.update(new BasicDBObject("_id", 0L).append("total", 7).append("pending", 0)
+                .append("reserved", null), new BasicDBObject('$set', new BasicDBObject("total", 5L)
+                .append("types", new BasicDBObject("STARTUP", 5L)).append("pending", 0))) >>
+                Stub(WriteResult.class) { getN() >> 1 }
+
+        and: "bucket without document is inserted"
+        1 * dbCollection.insert(new BasicDBObject("_id", 1000L).append("total", 2L)
+                .append("types", new BasicDBObject("SHUTDOWN", 2L)).append("pending", 0))
+
+        and: "bucket with in-flight write is skipped"
+        result == 2000L
+    }
+
+    def "reconcile skips bucket changed while events are counted"() {
+        given:
+        EventDAO eventDAO = Mock(EventDAO.class)
+        eventDAO.histogram(_, _, _, _, _) >> new EventHistogram(0, 999, BUCKET_SIZE)
+        DBCursor cursor = Mock(DBCursor.class)
+        cursor.iterator() >> [new BasicDBObject("_id", 0L).append("total", 1).append("pending", 0)].iterator()
+        dbCollection.find(_ as DBObject) >> cursor
+        dbCollection.update(_, _) >> Stub(WriteResult.class) { getN() >> 0 }
+
+        expect:
+        counters.reconcile(eventDAO, 0, 1000) == 0L
+    }
+
+    def "verify reconciles buckets from the oldest event and marks them verified"() {
+        given: "counters never verified and the oldest event in bucket 1000"
+        EventDAO eventDAO = Mock(EventDAO.class)
+        eventDAO.findAll(Long.MIN_VALUE, Long.MAX_VALUE, null, 1, Sort.Direction.ASC) >> [event(1500)]
+        DBCursor cursor = Mock(DBCursor.class)
+        cursor.iterator() >> [].iterator()
+        dbCollection.find(_) >> cursor
+        dbCollection.find(_, _) >> cursor
+
+        when: "verify until time inside bucket 3000"
+        counters.verify(eventDAO, 3500)
+
+        then: "closed buckets are counted"
+        1 * eventDAO.histogram(1000, 2999, BUCKET_SIZE, EventGrouping.TYPE, EventFilter.NONE) >>
+                new EventHistogram(1000, 2999, BUCKET_SIZE)
+
+        and: "marker is moved forward"
+        1 * dbCollection.update(new BasicDBObject("_id", "verified"),
+                new BasicDBObject('$max', new BasicDBObject("until", 3000L)), true, false)
+    }
+
+    private static Event event(long timestamp) {
+        return new TimedEvent(time: timestamp)
+    }
+
+    private static Event lifecycleEvent(long timestamp, InstanceLifecycleEvent.Type type) {
+        return InstanceLifecycleEvent.builder().id(UUID.randomUUID()).timestamp(timestamp).type(type).build()
+    }
+
+    static class TimedEvent extends Event {
+
+        long time
+
+        @Override
+        long getTimestamp() {
+            return time
+        }
+    }
+}
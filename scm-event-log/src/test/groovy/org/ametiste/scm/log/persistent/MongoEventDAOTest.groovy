@@ -1,8 +1,19 @@
 package org.ametiste.scm.log.persistent
 
+import com.mongodb.AggregationOptions
 import com.mongodb.BasicDBObject
+import com.mongodb.BulkUpdateRequestBuilder
+import com.mongodb.BulkWriteError
+import com.mongodb.BulkWriteException
+import com.mongodb.BulkWriteOperation
+import com.mongodb.BulkWriteRequestBuilder
+import com.mongodb.BulkWriteResult
+import com.mongodb.BulkWriteUpsert
+import com.mongodb.Cursor
 import org.ametiste.scm.messaging.data.InstanceLifecycleEventGenerator
 import com.mongodb.DBCollection
+import com.mongodb.DBCursor
+import com.mongodb.DBObject
 import org.ametiste.scm.messaging.data.event.Event
 import org.ametiste.scm.messaging.data.event.InstanceLifecycleEvent
 import org.ametiste.scm.messaging.data.mongo.event.EventDocument
@@ -12,7 +23,10 @@ import org.ametiste.scm.messaging.data.mongo.event.factory.EventToDocumentConver
 import org.springframework.data.domain.Page
 import org.springframework.data.domain.PageRequest
 import org.springframework.data.domain.Pageable
+import org.springframework.data.domain.Sort
+import org.springframework.dao.DataAccessResourceFailureException
 import org.springframework.data.mongodb.core.MongoOperations
+import org.springframework.data.mongodb.core.convert.MongoConverter
 import org.springframework.data.mongodb.core.query.Query
 import org.springframework.data.util.CloseableIterator
 import spock.lang.Specification
@@ -28,6 +42,10 @@ class MongoEventDAOTest extends Specification {
     private MongoEventDAO eventDAO;
     private MongoOperations mongoOperations;
     private DBCollection dbCollection;
+    private BulkWriteOperation bulk;
+    private BulkWriteRequestBuilder requestBuilder;
+    private BulkUpdateRequestBuilder updateBuilder;
+    private BulkWriteResult bulkResult;
     private EventToDocumentConverterMapFactory factory = new DefaultEventToDocumentConverterMapFactory();
 
     /**
@@ -35,10 +53,20 @@ class MongoEventDAOTest extends Specification {
      */
     def setup() {
         dbCollection = Mock(DBCollection.class)
+        bulk = Mock(BulkWriteOperation.class)
+        requestBuilder = Mock(BulkWriteRequestBuilder.class)
+        updateBuilder = Mock(BulkUpdateRequestBuilder.class)
+        bulkResult = Mock(BulkWriteResult.class)
         mongoOperations = Mock(MongoOperations.class)
         eventDAO = new MongoEventDAO(mongoOperations, factory);
 
         dbCollection.count() >> COLLECTION_COUNT
+        dbCollection.initializeUnorderedBulkOperation() >> bulk
+        bulk.execute() >> bulkResult
+        bulkResult.getUpserts() >> []
+        bulk.find(_) >> requestBuilder
+        requestBuilder.upsert() >> updateBuilder
+        mongoOperations.getConverter() >> Mock(MongoConverter.class)
         mongoOperations.getCollectionName(EventDocument.class) >> "evenDocument"
         mongoOperations.getCollection(_ as String) >> dbCollection
     }
@@ -77,7 +105,7 @@ class MongoEventDAOTest extends Specification {
         Event returnedEvent = eventDAO.insert(event)
 
         then: "expect correct call to mongo operations"
-        1 * mongoOperations.insert(_ as EventDocument)
+        1 * mongoOperations.insert(_ as EventDocument, "evenDocument")
 
         and: "return correct event"
         equals(returnedEvent, event);
@@ -97,7 +125,7 @@ class MongoEventDAOTest extends Specification {
         Event returnedEvent = eventDAO.save(event)
 
         then: "expect correct call to mongo operations"
-        1 * mongoOperations.save(_ as EventDocument)
+        1 * mongoOperations.save(_ as EventDocument, "evenDocument")
 
         and: "return correct event"
         equals(returnedEvent, event);
@@ -116,8 +144,9 @@ class MongoEventDAOTest extends Specification {
         when: "insert given collection"
         Collection<Event> returnedEvents = eventDAO.insert(events)
 
-        then: "expect correct call to mongo operations"
-        1 * mongoOperations.insert(_ as Collection<EventDocument>, EventDocument.class)
+        then: "expect all events inserted with one unordered bulk operation"
+        events.size() * bulk.insert(_)
+        1 * bulk.execute()
 
         and: "return correct collection"
         returnedEvents.size() == events.size()
@@ -137,8 +166,10 @@ class MongoEventDAOTest extends Specification {
         when: "save given collection"
         Collection<Event> returnedEvents = eventDAO.save(events)
 
-        then: "expect correct calls to mongo operations"
-        events.size() * mongoOperations.save(_ as EventDocument)
+        then: "expect all events upserted with one unordered bulk operation"
+        events.size() * updateBuilder.replaceOne(_)
+        1 * bulk.execute() >> bulkResult
+        0 * mongoOperations.save(_)
 
         and: "return correct collection"
         returnedEvents.size() == events.size()
@@ -146,6 +177,38 @@ class MongoEventDAOTest extends Specification {
         equals(returnedEvents.getAt(1), events.get(1))
     }
 
+    def "insert collection reports duplicated events"() {
+        given: "some event collection"
+        List<Event> events = EVENT_GENERATOR.generate(3)
+
+        and: "bulk write failed for second event with duplicate key error"
+        BulkWriteException bulkException = Mock(BulkWriteException.class)
+        bulkException.getWriteErrors() >> [new BulkWriteError(11000, "duplicate key", new BasicDBObject(), 1)]
+
+        when: "insert given collection"
+        eventDAO.insert(events)
+
+        then: "expect exception with duplicated event only"
+        1 * bulk.execute() >> { throw bulkException }
+        DuplicateEventsException e = thrown(DuplicateEventsException.class)
+        e.getDuplicates() == [events.get(1)]
+    }
+
+    def "insert collection translates other bulk errors"() {
+        given: "bulk write failed with error that is not duplicate key"
+        BulkWriteException bulkException = Mock(BulkWriteException.class)
+        bulkException.getWriteErrors() >> [new BulkWriteError(11000, "duplicate key", new BasicDBObject(), 0),
+                                           new BulkWriteError(2, "bad value", new BasicDBObject(), 1)]
+
+        when: "insert collection"
+        eventDAO.insert(EVENT_GENERATOR.generate(2))
+
+        then: "expect exception is not reported as duplicates"
+        1 * bulk.execute() >> { throw bulkException }
+        RuntimeException e = thrown(RuntimeException.class)
+        !(e instanceof DuplicateEventsException)
+    }
+
     def "findOne argument validation"() {
         given: "some event"
         InstanceLifecycleEvent event = EVENT_GENERATOR.generate()
@@ -162,7 +225,7 @@ class MongoEventDAOTest extends Specification {
         Event event = eventDAO.findOne(UUID.randomUUID())
 
         then: "mongo operations return null"
-        mongoOperations.findById(_ as Query, EventDocument.class) >> null
+        mongoOperations.findById(_ as Query, EventDocument.class, _) >> null
 
         and: "method return it too"
         event == null
@@ -175,7 +238,7 @@ class MongoEventDAOTest extends Specification {
         Event returnedEvent = eventDAO.findOne(event.getId())
 
         then: "mongo return correct event"
-        mongoOperations.findById(_ as UUID, EventDocument.class) >> { new InstanceLifecycleEventDocument(event) }
+        mongoOperations.findById(_ as UUID, EventDocument.class, "evenDocument") >> { new InstanceLifecycleEventDocument(event) }
 
         and: "event is same"
         equals(returnedEvent, event)
@@ -224,6 +287,110 @@ class MongoEventDAOTest extends Specification {
         }
     }
 
+    def "findAll with filter pushes filter down to query"() {
+        when:
+        eventDAO.findAll(100, 200, new EventFilter("STARTUP", "RAIN", null))
+
+        then:
+        1 * mongoOperations.stream(_ as Query, EventDocument) >> { Query query, Class documentClass ->
+            DBObject queryObject = query.getQueryObject()
+            assert queryObject.get("timestamp").get('$gte') == 100L
+            assert queryObject.get("type") == "STARTUP"
+            assert queryObject.get("instanceId") == "RAIN"
+            assert !queryObject.containsField("nodeId")
+
+            return Mock(CloseableIterator.class)
+        }
+    }
+
+    def "count with filter by node queries collection instead of counters"() {
+        given:
+        MongoEventCounters counters = Mock(MongoEventCounters.class)
+        counters.getBucketSize() >> 100L
+        eventDAO = new MongoEventDAO(mongoOperations, factory, counters)
+
+        when:
+        long count = eventDAO.count(0, 1000, new EventFilter("STARTUP", null, "node-1"))
+
+        then:
+        1 * mongoOperations.count({ Query query -> query.getQueryObject().get("nodeId") == "node-1" },
+                EventDocument.class, "evenDocument") >> 3L
+        0 * counters.count(_, _, _, _)
+
+        and:
+        count == 3L
+    }
+
+    def "count with filter by type takes whole buckets from type counters"() {
+        given: "DAO with counters of 100 ms buckets"
+        MongoEventCounters counters = Mock(MongoEventCounters.class)
+        counters.getBucketSize() >> 100L
+        counters.bucketOf(_ as Long) >> { long timestamp -> Math.floorDiv(timestamp, 100L) * 100L }
+        eventDAO = new MongoEventDAO(mongoOperations, factory, counters)
+
+        when:
+        long count = eventDAO.count(150, 520, new EventFilter("STARTUP", null, null))
+
+        then: "whole buckets are taken from counters of type"
+        1 * counters.count(200, 500, "STARTUP", _) >> 30L
+
+        and: "edges are counted in collection with type condition"
+        2 * mongoOperations.count({ Query query -> query.getQueryObject().get("type") == "STARTUP" },
+                EventDocument.class, "evenDocument") >> 1L
+
+        and:
+        count == 32L
+    }
+
+    def "histogram aggregates events in collection"() {
+        given: "aggregation result for two buckets"
+        Cursor cursor = Mock(Cursor.class)
+        Iterator<DBObject> results = [
+                new BasicDBObject("_id", new BasicDBObject("bucket", 0L).append("group", "STARTUP")).append("count", 2),
+                new BasicDBObject("_id", new BasicDBObject("bucket", 100L).append("group", null)).append("count", 1)
+        ].iterator()
+        cursor.hasNext() >> { results.hasNext() }
+        cursor.next() >> { results.next() }
+
+        when:
+        EventHistogram histogram = eventDAO.histogram(0, 199, 100, EventGrouping.TYPE, new EventFilter(null, "RAIN", null))
+
+        then: "filter is matched and events are grouped by bucket and field"
+        1 * dbCollection.aggregate(_ as List, _ as AggregationOptions) >> { List<DBObject> pipeline, options ->
+            assert pipeline[0].get('$match').get("instanceId") == "RAIN"
+            assert pipeline[1].get('$group').get("_id").get("group") == '$type'
+            return cursor
+        }
+        1 * cursor.close()
+
+        and:
+        histogram.series["STARTUP"] == [2L, 0L] as long[]
+        histogram.series[EventHistogram.NO_GROUP] == [0L, 1L] as long[]
+    }
+
+    def "batch lookup queries ids with chunked in queries"() {
+        given: "more ids than one chunk"
+        List<UUID> ids = (1..1500).collect { UUID.randomUUID() }
+
+        when:
+        List<Event> result = eventDAO.findAll(ids + ids[0..9])
+
+        then: "distinct ids are split into two queries"
+        1 * mongoOperations.find({ Query query -> query.getQueryObject().get("_id").get('$in').size() == 1000 },
+                EventDocument.class, "evenDocument") >> []
+        1 * mongoOperations.find({ Query query -> query.getQueryObject().get("_id").get('$in').size() == 500 },
+                EventDocument.class, "evenDocument") >> []
+
+        and:
+        result.isEmpty()
+
+        when: "look up ids with null"
+        eventDAO.findAll([UUID.randomUUID(), null])
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
     def "findAll method with pageable parameter"() {
         given: "pageable parameter"
         Pageable parameter = new PageRequest(5, 50)
@@ -232,7 +399,7 @@ class MongoEventDAOTest extends Specification {
         Page<Event> page = eventDAO.findAll(parameter)
 
         then: "mongoOperations return empty collection"
-        1 * mongoOperations.find(_ as Query, _ as Class) >> Collections.emptyList()
+        1 * mongoOperations.find(_ as Query, _ as Class, "evenDocument") >> Collections.emptyList()
 
         and: "event dao return valid page without content"
         page != null
@@ -249,13 +416,373 @@ class MongoEventDAOTest extends Specification {
         Page<Event> page = eventDAO.findAll(from, to, parameter)
 
         then: "mongoOperations return empty collection"
-        1 * mongoOperations.find(_ as Query, _ as Class) >> Collections.emptyList()
+        1 * mongoOperations.find(_ as Query, _ as Class, "evenDocument") >> Collections.emptyList()
 
         and: "event dao return valid page without content"
         page != null
         !page.hasContent()
     }
 
+    def "findAll with key seeks after key in ascending order"() {
+        given: "time range and key of last received event"
+        EventKey key = new EventKey(150, UUID.randomUUID())
+
+        when: "invoke findAll method"
+        List<Event> events = eventDAO.findAll(100, 200, key, 10, Sort.Direction.ASC)
+
+        then: "query starts from key timestamp and resolves equal timestamps by id"
+        1 * mongoOperations.find(_ as Query, EventDocument.class, "evenDocument") >> { Query query, Class documentClass, String collectionName ->
+            DBObject queryObject = query.getQueryObject()
+            assert queryObject.get("timestamp").get('$gte') == 150L
+            assert queryObject.get("timestamp").get('$lte') == 200L
+            assert queryObject.get('$or')[0].get("timestamp").get('$gt') == 150L
+            assert queryObject.get('$or')[1].get("_id").get('$gt') == key.getId()
+
+            assert query.getSortObject().get("timestamp") == 1
+            assert query.getSortObject().get("_id") == 1
+            assert query.getLimit() == 10
+
+            return [new InstanceLifecycleEventDocument(EVENT_GENERATOR.generate())]
+        }
+
+        and: "documents are converted to events"
+        events.size() == 1
+    }
+
+    def "findAll with key seeks after key in descending order"() {
+        given: "time range and key of last received event"
+        EventKey key = new EventKey(150, UUID.randomUUID())
+
+        when: "invoke findAll method"
+        eventDAO.findAll(100, 200, key, 10, Sort.Direction.DESC)
+
+        then: "query ends at key timestamp and resolves equal timestamps by id"
+        1 * mongoOperations.find(_ as Query, EventDocument.class, "evenDocument") >> { Query query, Class documentClass, String collectionName ->
+            DBObject queryObject = query.getQueryObject()
+            assert queryObject.get("timestamp").get('$gte') == 100L
+            assert queryObject.get("timestamp").get('$lte') == 150L
+            assert queryObject.get('$or')[0].get("timestamp").get('$lt') == 150L
+            assert queryObject.get('$or')[1].get("_id").get('$lt') == key.getId()
+
+            assert query.getSortObject().get("timestamp") == -1
+            assert query.getSortObject().get("_id") == -1
+
+            return []
+        }
+    }
+
+    def "findAll without key returns start of time range"() {
+        when: "invoke findAll method without key"
+        eventDAO.findAll(100, 200, null, 10, Sort.Direction.ASC)
+
+        then: "query contains only time range"
+        1 * mongoOperations.find(_ as Query, EventDocument.class, "evenDocument") >> { Query query, Class documentClass, String collectionName ->
+            DBObject queryObject = query.getQueryObject()
+            assert queryObject.get("timestamp").get('$gte') == 100L
+            assert queryObject.get("timestamp").get('$lte') == 200L
+            assert !queryObject.containsField('$or')
+
+            return []
+        }
+    }
+
+    def "findAll with key argument validation"() {
+        when: "call method with not positive limit"
+        eventDAO.findAll(100, 200, null, 0, Sort.Direction.ASC)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "call method without direction"
+        eventDAO.findAll(100, 200, null, 10, null)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "insert collection increments counters for inserted events"() {
+        given: "DAO with counters"
+        MongoEventCounters counters = Mock(MongoEventCounters.class)
+        eventDAO = new MongoEventDAO(mongoOperations, factory, counters)
+        List<Event> events = EVENT_GENERATOR.generate(3)
+
+        when: "insert collection"
+        eventDAO.insert(events)
+
+        then: "buckets are reserved before write"
+        1 * counters.reserve(events)
+
+        then: "counters are incremented for all events"
+        1 * counters.increment(events, events)
+    }
+
+    def "insert collection fails if buckets can't be reserved"() {
+        given: "DAO with failing counters"
+        MongoEventCounters counters = Mock(MongoEventCounters.class)
+        counters.reserve(_) >> { throw new DataAccessResourceFailureException("counters are unavailable") }
+        eventDAO = new MongoEventDAO(mongoOperations, factory, counters)
+
+        when: "insert collection"
+        eventDAO.insert(EVENT_GENERATOR.generate(2))
+
+        then: "events are not written"
+        thrown(DataAccessResourceFailureException.class)
+        0 * bulk.execute()
+    }
+
+    def "save of single event only reserves its bucket"() {
+        given: "DAO with counters"
+        MongoEventCounters counters = Mock(MongoEventCounters.class)
+        eventDAO = new MongoEventDAO(mongoOperations, factory, counters)
+        Event event = EVENT_GENERATOR.generate()
+
+        when: "save event"
+        eventDAO.save(event)
+
+        then: "bucket stays pending"
+        1 * counters.reserve([event])
+        0 * counters.increment(_, _)
+    }
+
+    def "insert collection increments counters for not duplicated events only"() {
+        given: "DAO with counters"
+        MongoEventCounters counters = Mock(MongoEventCounters.class)
+        eventDAO = new MongoEventDAO(mongoOperations, factory, counters)
+        List<Event> events = EVENT_GENERATOR.generate(3)
+
+        and: "bulk write failed for second event with duplicate key error"
+        BulkWriteException bulkException = Mock(BulkWriteException.class)
+        bulkException.getWriteErrors() >> [new BulkWriteError(11000, "duplicate key", new BasicDBObject(), 1)]
+
+        when: "insert collection"
+        eventDAO.insert(events)
+
+        then: "duplicates are reported"
+        1 * bulk.execute() >> { throw bulkException }
+        thrown(DuplicateEventsException.class)
+
+        and: "counters are incremented for written events"
+        1 * counters.increment(events, [events.get(0), events.get(2)])
+    }
+
+    def "insert collection doesn't fail if counters failed"() {
+        given: "DAO with failing counters"
+        MongoEventCounters counters = Mock(MongoEventCounters.class)
+        counters.increment(_, _) >> { throw new DataAccessResourceFailureException("counters are unavailable") }
+        eventDAO = new MongoEventDAO(mongoOperations, factory, counters)
+
+        when: "insert collection"
+        eventDAO.insert(EVENT_GENERATOR.generate(2))
+
+        then: "no exception thrown"
+        noExceptionThrown()
+    }
+
+    def "save collection increments counters for upserted events"() {
+        given: "DAO with counters"
+        MongoEventCounters counters = Mock(MongoEventCounters.class)
+        eventDAO = new MongoEventDAO(mongoOperations, factory, counters)
+        List<Event> events = EVENT_GENERATOR.generate(3)
+
+        and: "only second event is new"
+        BulkWriteUpsert upsert = new BulkWriteUpsert(1, events.get(1).getId())
+
+        when: "save collection"
+        eventDAO.save(events)
+
+        then: "counters are incremented for upserted event"
+        1 * bulk.execute() >> bulkResult
+        bulkResult.getUpserts() >> [upsert]
+        1 * counters.increment(events, [events.get(1)])
+    }
+
+    def "count for time range without counters"() {
+        when: "count events in time range"
+        long result = eventDAO.count(100, 200)
+
+        then: "events are counted in collection"
+        1 * mongoOperations.count(_ as Query, EventDocument.class, "evenDocument") >> { Query query, Class documentClass, String collectionName ->
+            assert query.getQueryObject().get("timestamp").get('$gte') == 100L
+            assert query.getQueryObject().get("timestamp").get('$lte') == 200L
+            return 7L
+        }
+
+        and:
+        result == 7L
+    }
+
+    def "count for time range with counters"() {
+        given: "DAO with counters of 100 ms buckets"
+        MongoEventCounters counters = Mock(MongoEventCounters.class)
+        counters.getBucketSize() >> 100L
+        counters.bucketOf(_ as Long) >> { long timestamp -> Math.floorDiv(timestamp, 100L) * 100L }
+        eventDAO = new MongoEventDAO(mongoOperations, factory, counters)
+
+        when: "count events in range that covers several buckets"
+        long result = eventDAO.count(150, 520)
+
+        then: "whole buckets are taken from counters"
+        1 * counters.count(200, 500, null, _) >> 30L
+
+        and: "edges are counted in collection"
+        1 * mongoOperations.count({ it.getQueryObject().get("timestamp").get('$lt') == 200L }, EventDocument.class, "evenDocument") >> 1L
+        1 * mongoOperations.count({ it.getQueryObject().get("timestamp").get('$gte') == 500L }, EventDocument.class, "evenDocument") >> 2L
+
+        and:
+        result == 33L
+
+        when: "count events in range inside one bucket"
+        result = eventDAO.count(110, 190)
+
+        then: "events are counted in collection only"
+        0 * counters.count(_, _, _, _)
+        1 * mongoOperations.count(_ as Query, EventDocument.class, "evenDocument") >> 5L
+
+        and:
+        result == 5L
+    }
+
+    def "delete removes events of time range and counters of whole buckets"() {
+        given: "DAO with counters of 100 ms buckets"
+        MongoEventCounters counters = Mock(MongoEventCounters.class)
+        counters.getBucketSize() >> 100L
+        counters.bucketOf(_ as Long) >> { long timestamp -> Math.floorDiv(timestamp, 100L) * 100L }
+        eventDAO = new MongoEventDAO(mongoOperations, factory, counters)
+
+        when: "delete events of range with partial edge buckets"
+        eventDAO.delete(150, 498)
+
+        then: "events are removed by timestamp range"
+        1 * mongoOperations.remove({ Query query ->
+            query.queryObject.get("timestamp") == new BasicDBObject('$gte', 150L).append('$lte', 498L)
+        }, EventDocument.class, "evenDocument")
+
+        and: "only counters of buckets inside range are removed"
+        1 * counters.remove(200, 400)
+    }
+
+    def "insert collection writes documents with codecs"() {
+        given: "DAO with codecs"
+        eventDAO = new MongoEventDAO(mongoOperations, factory, null, new EventCodecRegistry())
+        List<Event> events = EVENT_GENERATOR.generate(2)
+
+        when: "insert collection"
+        eventDAO.insert(events)
+
+        then: "documents are encoded with codec without converter"
+        2 * bulk.insert({ it.get("_class") == InstanceLifecycleEventDocument.class.getName() })
+        0 * mongoOperations.getConverter()
+    }
+
+    def "findAll with time range reads documents with codecs"() {
+        given: "DAO with codecs and stored event"
+        EventCodecRegistry codecs = new EventCodecRegistry()
+        eventDAO = new MongoEventDAO(mongoOperations, factory, null, codecs)
+        InstanceLifecycleEvent event = EVENT_GENERATOR.generate()
+
+        and: "cursor over collection"
+        DBCursor cursor = Mock(DBCursor.class)
+        cursor.sort(_) >> cursor
+        cursor.skip(_) >> cursor
+        cursor.hasNext() >>> [true, false]
+        cursor.next() >> codecs.encode(event)
+
+        when: "iterate events of time range"
+        CloseableIterator<Event> iterator = eventDAO.findAll(100, 200)
+        List<Event> events = iterator.collect()
+        iterator.close()
+
+        then: "collection is queried directly"
+        1 * dbCollection.find({ it.get("timestamp").get('$gte') == 100L }) >> cursor
+        0 * mongoOperations.stream(_, _)
+        1 * cursor.close()
+
+        and: "event is decoded"
+        events.size() == 1
+        equals(events.get(0), event)
+    }
+
+    def "findAll with time range reads stream ahead with cursor batch size"() {
+        given: "DAO with batch size and read ahead"
+        EventCodecRegistry codecs = new EventCodecRegistry()
+        eventDAO = new MongoEventDAO(mongoOperations, factory, null, codecs, null, 50, 10)
+        List<InstanceLifecycleEvent> stored = (1..3).collect { EVENT_GENERATOR.generate() }
+
+        and: "cursor over collection"
+        Iterator<InstanceLifecycleEvent> documents = stored.iterator()
+        DBCursor cursor = Mock(DBCursor.class)
+        cursor.sort(_) >> cursor
+        cursor.skip(_) >> cursor
+        cursor.hasNext() >> { documents.hasNext() }
+        cursor.next() >> { codecs.encode(documents.next()) }
+
+        when: "iterate events of time range"
+        CloseableIterator<Event> iterator = eventDAO.findAll(100, 200)
+        List<Event> events = iterator.collect()
+        iterator.close()
+
+        then: "cursor is read with batch size and closed"
+        1 * dbCollection.find(_) >> cursor
+        1 * cursor.batchSize(50) >> cursor
+        1 * cursor.close()
+
+        and: "events are decoded in cursor order"
+        iterator instanceof PrefetchingIterator
+        events.size() == 3
+        (0..2).every { equals(events[it], stored[it]) }
+    }
+
+    def "findSummaries reads only summary fields"() {
+        given: "projected document"
+        UUID id = UUID.randomUUID()
+        DBObject document = new BasicDBObject("_id", id)
+                .append("_class", "org.ametiste.scm.messaging.data.mongo.event.InstanceLifecycleEventDocument")
+                .append("timestamp", 150L)
+                .append("instanceId", "instance")
+
+        and: "cursor over collection"
+        DBCursor cursor = Mock(DBCursor.class)
+        cursor.sort(_) >> cursor
+        cursor.skip(_) >> cursor
+        cursor.limit(_) >> cursor
+        cursor.iterator() >> [document].iterator()
+
+        when:
+        Page<EventSummary> page = eventDAO.findSummaries(100, 200, new PageRequest(0, 10))
+
+        then: "collection is queried with projection"
+        1 * mongoOperations.count(_, EventDocument.class, "evenDocument") >> 1L
+        1 * dbCollection.find({ it.get("timestamp").get('$gte') == 100L },
+                { it.keySet() == ["_id", "_class", "timestamp", "instanceId"] as Set }) >> cursor
+        0 * mongoOperations.getConverter()
+
+        and: "summary is built from document"
+        page.totalElements == 1
+        page.content == [new EventSummary(id, "InstanceLifecycleEvent", 150L, "instance")]
+    }
+
+    def "findOne reads document with codecs"() {
+        given: "DAO with codecs and stored event"
+        EventCodecRegistry codecs = new EventCodecRegistry()
+        eventDAO = new MongoEventDAO(mongoOperations, factory, null, codecs)
+        InstanceLifecycleEvent event = EVENT_GENERATOR.generate()
+
+        and: "cursor over collection"
+        DBCursor cursor = Mock(DBCursor.class)
+        cursor.sort(_) >> cursor
+        cursor.skip(_) >> cursor
+        cursor.iterator() >> [codecs.encode(event)].iterator()
+
+        when: "find event by id"
+        Event found = eventDAO.findOne(event.getId())
+
+        then: "collection is queried by document id"
+        1 * dbCollection.find({ it.get("_id") == event.getId() }) >> cursor
+
+        and:
+        equals(found, event)
+    }
+
     def "count for target collection"() {
         when: "get count for target collection"
         def result = eventDAO.count()
@@ -0,0 +1,50 @@
+package org.ametiste.scm.log.persistent
+
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+import java.time.ZoneOffset
+
+class PartitionPeriodTest extends Specification {
+
+    def "start returns start of partition"() {
+        expect:
+        period.start(time(timestamp)) == time(start)
+
+        where:
+        period                 | timestamp             | start
+        PartitionPeriod.DAILY  | "2015-10-14T00:00:00" | "2015-10-14T00:00:00"
+        PartitionPeriod.DAILY  | "2015-10-14T23:59:59" | "2015-10-14T00:00:00"
+        PartitionPeriod.DAILY  | "1969-12-31T12:00:00" | "1969-12-31T00:00:00"
+        PartitionPeriod.WEEKLY | "2015-10-12T00:00:00" | "2015-10-12T00:00:00"
+        PartitionPeriod.WEEKLY | "2015-10-14T10:00:00" | "2015-10-12T00:00:00"
+        PartitionPeriod.WEEKLY | "2015-10-18T23:59:59" | "2015-10-12T00:00:00"
+        PartitionPeriod.WEEKLY | "1970-01-01T00:00:00" | "1969-12-29T00:00:00"
+    }
+
+    def "format and parse partition identifier"() {
+        expect:
+        period.format(time(start)) == id
+        period.parse(id) == time(start)
+
+        where:
+        period                 | start                 | id
+        PartitionPeriod.DAILY  | "2015-10-14T00:00:00" | "20151014"
+        PartitionPeriod.WEEKLY | "2015-10-12T00:00:00" | "20151012"
+    }
+
+    def "parse rejects invalid or misaligned identifiers"() {
+        expect:
+        period.parse(id) == -1L
+
+        where:
+        period                 | id
+        PartitionPeriod.DAILY  | "2015-10-14"
+        PartitionPeriod.DAILY  | "counters"
+        PartitionPeriod.WEEKLY | "20151014"
+    }
+
+    private static long time(String dateTime) {
+        return LocalDateTime.parse(dateTime).toInstant(ZoneOffset.UTC).toEpochMilli()
+    }
+}
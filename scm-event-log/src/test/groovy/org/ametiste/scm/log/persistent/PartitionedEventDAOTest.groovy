@@ -0,0 +1,263 @@
+package org.ametiste.scm.log.persistent
+
+import org.ametiste.scm.messaging.data.event.Event
+import org.springframework.data.domain.Sort
+import org.springframework.data.mongodb.core.MongoOperations
+import org.springframework.data.util.CloseableIterator
+import spock.lang.Specification
+
+import java.time.LocalDate
+import java.time.ZoneOffset
+
+class PartitionedEventDAOTest extends Specification {
+
+    private static final long DAY_1 = day("2015-10-12")
+    private static final long DAY_2 = day("2015-10-13")
+    private static final long DAY_3 = day("2015-10-14")
+
+    private MongoOperations mongoOperations
+    private MongoEventCounters counters
+    private Map<String, MongoEventDAO> partitions
+    private PartitionedEventDAO dao
+
+    def setup() {
+        mongoOperations = Mock(MongoOperations.class)
+        counters = Mock(MongoEventCounters.class)
+        partitions = [:]
+        mongoOperations.getCollectionNames() >> (["events_20151012", "events_20151013", "events_20151014",
+                                                  "eventCounters", "events_backup"] as Set)
+
+        dao = new PartitionedEventDAO(mongoOperations, PartitionPeriod.DAILY, "events",
+                { name -> partitions.computeIfAbsent(name, { Mock(MongoEventDAO.class) }) }, counters)
+    }
+
+    def "constructor arguments validation"() {
+        when: "create dao with not initialized mongo operations"
+        new PartitionedEventDAO(null, PartitionPeriod.DAILY, "events", { null }, counters)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create dao with empty prefix"
+        new PartitionedEventDAO(mongoOperations, PartitionPeriod.DAILY, "", { null }, counters)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create dao without partition factory"
+        new PartitionedEventDAO(mongoOperations, PartitionPeriod.DAILY, "events", null, counters)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "existing partitions are parsed from collection names"() {
+        expect:
+        dao.existingPartitions() as List == [DAY_1, DAY_2, DAY_3]
+    }
+
+    def "insert routes events to partitions by timestamp"() {
+        given: "events of two days"
+        Event first = event(DAY_1 + 10)
+        Event second = event(DAY_3 + 20)
+        Event third = event(DAY_1 + 30)
+
+        when: "insert events"
+        dao.insert([first, second, third])
+
+        then: "each partition receives own events"
+        1 * partition("events_20151012").insert([first, third])
+        1 * partition("events_20151014").insert([second])
+        partitions.size() == 2
+    }
+
+    def "insert reports duplicates of all partitions"() {
+        given:
+        Event first = event(DAY_1 + 10)
+        Event second = event(DAY_2 + 20)
+
+        when: "insert events and both partitions report duplicates"
+        dao.insert([first, second])
+
+        then:
+        1 * partition("events_20151012").insert(_) >> { throw new DuplicateEventsException("dup", [first]) }
+        1 * partition("events_20151013").insert(_) >> { throw new DuplicateEventsException("dup", [second]) }
+
+        and: "one exception with all duplicates is thrown"
+        DuplicateEventsException e = thrown(DuplicateEventsException.class)
+        e.duplicates as Set == [first, second] as Set
+    }
+
+    def "count for range touches only overlapping partitions with clipped range"() {
+        when:
+        long count = dao.count(DAY_2 + 100, DAY_3 + 200)
+
+        then:
+        1 * partition("events_20151013").count(DAY_2 + 100, DAY_3 - 1) >> 5L
+        1 * partition("events_20151014").count(DAY_3, DAY_3 + 200) >> 7L
+        !partitions.containsKey("events_20151012")
+
+        and:
+        count == 12L
+    }
+
+    def "seek continues in next partition when current one is exhausted"() {
+        given:
+        Event first = event(DAY_2 + 10)
+        Event second = event(DAY_3 + 10)
+        EventKey after = new EventKey(DAY_2 + 5, UUID.randomUUID())
+
+        when: "seek two events after key"
+        List<Event> result = dao.findAll(DAY_1, DAY_3 + 100, after, 2, Sort.Direction.ASC)
+
+        then: "partitions before key are skipped"
+        1 * partition("events_20151013").findAll(DAY_1, DAY_3 + 100, after, 2, Sort.Direction.ASC) >> [first]
+        1 * partition("events_20151014").findAll(DAY_1, DAY_3 + 100, after, 1, Sort.Direction.ASC) >> [second]
+        !partitions.containsKey("events_20151012")
+
+        and:
+        result == [first, second]
+    }
+
+    def "findOne searches partitions from newest"() {
+        given:
+        UUID id = UUID.randomUUID()
+        Event event = event(DAY_2)
+
+        when:
+        Event result = dao.findOne(id)
+
+        then:
+        1 * partition("events_20151014").findOne(id) >> null
+
+        then:
+        1 * partition("events_20151013").findOne(id) >> event
+        !partitions.containsKey("events_20151012")
+
+        and:
+        result == event
+    }
+
+    def "batch lookup requests older partitions only for ids not found yet"() {
+        given:
+        Event newer = event(DAY_3)
+        Event older = event(DAY_2)
+        Set<UUID> allIds = [newer.id, older.id] as Set
+        Set<UUID> notFoundIds = [older.id] as Set
+
+        when:
+        List<Event> result = dao.findAll([newer.id, older.id])
+
+        then:
+        1 * partition("events_20151014").findAll(allIds) >> [newer]
+
+        then:
+        1 * partition("events_20151013").findAll(notFoundIds) >> [older]
+        !partitions.containsKey("events_20151012")
+
+        and:
+        result == [newer, older]
+    }
+
+    def "findAll streams partitions one by one"() {
+        given:
+        Event first = event(DAY_1)
+        Event second = event(DAY_3)
+        CloseableIterator<Event> firstIterator = iterator([first])
+        CloseableIterator<Event> secondIterator = iterator([second])
+
+        when: "read all events of range"
+        CloseableIterator<Event> result = dao.findAll(DAY_1, DAY_3 + 100)
+
+        then: "no partition is opened before iteration"
+        partitions.isEmpty()
+
+        when:
+        List<Event> events = result.collect()
+
+        then:
+        1 * partition("events_20151012").findAll(DAY_1, DAY_3 + 100) >> firstIterator
+        1 * partition("events_20151013").findAll(DAY_1, DAY_3 + 100) >> iterator([])
+        1 * partition("events_20151014").findAll(DAY_1, DAY_3 + 100) >> secondIterator
+        1 * firstIterator.close()
+        1 * secondIterator.close()
+
+        and:
+        events == [first, second]
+    }
+
+    def "drop partitions before time"() {
+        when:
+        int dropped = dao.dropPartitionsBefore(DAY_3 + 100)
+
+        then: "collections of older partitions are dropped with their counters"
+        1 * mongoOperations.dropCollection("events_20151012")
+        1 * mongoOperations.dropCollection("events_20151013")
+        0 * mongoOperations.dropCollection("events_20151014")
+        1 * counters.remove(DAY_1, DAY_2)
+        1 * counters.remove(DAY_2, DAY_3)
+
+        and:
+        dropped == 2
+    }
+
+    def "set of partitions is cached between refreshes and follows writes and drops"() {
+        given: "dao with long refresh period"
+        MongoOperations operations = Mock(MongoOperations.class)
+        dao = new PartitionedEventDAO(operations, PartitionPeriod.DAILY, "events",
+                { name -> partitions.computeIfAbsent(name, { Mock(MongoEventDAO.class) }) }, counters, 3600000)
+
+        when: "partitions are requested, written and dropped"
+        List<Long> loaded = dao.existingPartitions() as List
+        dao.insert([event(DAY_3 + 10)])
+        List<Long> written = dao.existingPartitions() as List
+        dao.dropPartitionsBefore(DAY_2)
+        List<Long> dropped = dao.existingPartitions() as List
+
+        then: "collection names are read once"
+        1 * operations.getCollectionNames() >> (["events_20151012", "events_20151013"] as Set)
+
+        and:
+        loaded == [DAY_1, DAY_2]
+        written == [DAY_1, DAY_2, DAY_3]
+        dropped == [DAY_2, DAY_3]
+
+        when: "partitions are refreshed"
+        dao.refreshPartitions()
+
+        then: "partitions dropped by other instances disappear"
+        1 * operations.getCollectionNames() >> (["events_20151014"] as Set)
+        dao.existingPartitions() as List == [DAY_3]
+    }
+
+    def "delete drops covered partitions and deletes events of partial ones"() {
+        when:
+        dao.delete(DAY_1, DAY_2 + 100)
+
+        then:
+        1 * mongoOperations.dropCollection("events_20151012")
+        1 * counters.remove(DAY_1, DAY_2)
+        1 * partition("events_20151013").delete(DAY_2, DAY_2 + 100)
+        0 * mongoOperations.dropCollection("events_20151013")
+    }
+
+    private MongoEventDAO partition(String name) {
+        return partitions.computeIfAbsent(name, { Mock(MongoEventDAO.class) })
+    }
+
+    private CloseableIterator<Event> iterator(List<Event> events) {
+        Iterator<Event> delegate = events.iterator()
+        CloseableIterator<Event> iterator = Mock(CloseableIterator.class)
+        iterator.hasNext() >> { delegate.hasNext() }
+        iterator.next() >> { delegate.next() }
+        return iterator
+    }
+
+    private static Event event(long timestamp) {
+        return new MongoEventCountersTest.TimedEvent(time: timestamp)
+    }
+
+    private static long day(String date) {
+        return LocalDate.parse(date).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli()
+    }
+}
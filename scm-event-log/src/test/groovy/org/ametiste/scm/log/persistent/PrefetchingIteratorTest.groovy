@@ -0,0 +1,131 @@
+package org.ametiste.scm.log.persistent
+
+import org.springframework.data.util.CloseableIterator
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class PrefetchingIteratorTest extends Specification {
+
+    def "constructor arguments validation"() {
+        when: "create iterator with not initialized source"
+        new PrefetchingIterator(null, 1)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create iterator with not positive depth"
+        new PrefetchingIterator(new SourceIterator(0..1), 0)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "elements are returned in source order and source is closed"() {
+        given:
+        SourceIterator source = new SourceIterator(0..99)
+
+        when:
+        PrefetchingIterator<Integer> iterator = new PrefetchingIterator<>(source, 8)
+        List<Integer> elements = iterator.collect()
+
+        then:
+        elements == (0..99).toList()
+        !iterator.hasNext()
+        source.closed.await(1, TimeUnit.SECONDS)
+
+        when:
+        iterator.next()
+
+        then:
+        thrown(NoSuchElementException.class)
+    }
+
+    def "source is read ahead up to depth"() {
+        given:
+        SourceIterator source = new SourceIterator(0..99)
+
+        when: "iterator is created and nothing is consumed"
+        PrefetchingIterator<Integer> iterator = new PrefetchingIterator<>(source, 5)
+        Thread.sleep(200)
+
+        then: "queue is filled and reader waits for consumer"
+        source.read == 6
+
+        cleanup:
+        iterator.close()
+    }
+
+    def "source exception is thrown after elements read before it"() {
+        given:
+        SourceIterator source = new SourceIterator(0..2, new IllegalStateException("cursor failed"))
+        PrefetchingIterator<Integer> iterator = new PrefetchingIterator<>(source, 10)
+
+        expect:
+        iterator.next() == 0
+        iterator.next() == 1
+        iterator.next() == 2
+
+        when:
+        iterator.hasNext()
+
+        then:
+        IllegalStateException e = thrown(IllegalStateException.class)
+        e.message == "cursor failed"
+        !iterator.hasNext()
+        source.closed.await(1, TimeUnit.SECONDS)
+    }
+
+    def "close cancels reading and closes source"() {
+        given: "endless source"
+        SourceIterator source = new SourceIterator((0..Integer.MAX_VALUE - 1))
+        PrefetchingIterator<Integer> iterator = new PrefetchingIterator<>(source, 5)
+
+        when:
+        iterator.next()
+        iterator.close()
+
+        then:
+        source.closed.count == 0
+        !iterator.hasNext()
+
+        when: "close again"
+        iterator.close()
+
+        then:
+        noExceptionThrown()
+    }
+
+    private static class SourceIterator implements CloseableIterator<Integer> {
+
+        private final Iterator<Integer> elements
+        private final RuntimeException failure
+        private final CountDownLatch closed = new CountDownLatch(1)
+        private volatile int read
+
+        SourceIterator(Iterable<Integer> elements, RuntimeException failure = null) {
+            this.elements = elements.iterator()
+            this.failure = failure
+        }
+
+        @Override
+        boolean hasNext() {
+            if (!elements.hasNext() && failure != null) {
+                throw failure
+            }
+            elements.hasNext()
+        }
+
+        @Override
+        Integer next() {
+            read++
+            elements.next()
+        }
+
+        @Override
+        void close() {
+            closed.countDown()
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.ametiste.scm.log.persistent
+
+import org.ametiste.scm.messaging.data.event.Event
+import org.springframework.data.domain.PageImpl
+import org.springframework.data.domain.PageRequest
+import org.springframework.data.domain.Sort
+import org.springframework.data.util.CloseableIterator
+import spock.lang.Specification
+
+class ShardedEventDAOTest extends Specification {
+
+    private EventDAO first
+    private EventDAO second
+    private ShardedEventDAO dao
+
+    def setup() {
+        first = Mock(EventDAO.class)
+        second = Mock(EventDAO.class)
+        dao = new ShardedEventDAO([first, second])
+    }
+
+    def cleanup() {
+        dao.close()
+    }
+
+    def "constructor arguments validation"() {
+        when: "create dao without shards"
+        new ShardedEventDAO([])
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create dao with null shard"
+        new ShardedEventDAO([first, null])
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "insert routes events to shards by id"() {
+        given: "events of both shards"
+        Event firstEvent = event(10, 0)
+        Event secondEvent = event(20, 1)
+        Event thirdEvent = event(30, 0)
+
+        when:
+        dao.insert([firstEvent, secondEvent, thirdEvent])
+
+        then: "each shard receives own events"
+        1 * first.insert([firstEvent, thirdEvent])
+        1 * second.insert([secondEvent])
+    }
+
+    def "insert reports duplicates of all shards"() {
+        given:
+        Event firstEvent = event(10, 0)
+        Event secondEvent = event(20, 1)
+
+        when: "insert events and both shards report duplicates"
+        dao.insert([firstEvent, secondEvent])
+
+        then:
+        1 * first.insert(_) >> { throw new DuplicateEventsException("dup", [firstEvent]) }
+        1 * second.insert(_) >> { throw new DuplicateEventsException("dup", [secondEvent]) }
+
+        and: "one exception with all duplicates is thrown"
+        DuplicateEventsException e = thrown(DuplicateEventsException.class)
+        e.duplicates as Set == [firstEvent, secondEvent] as Set
+    }
+
+    def "findOne reads only shard of id"() {
+        given:
+        Event event = event(10, 1)
+
+        when:
+        Event result = dao.findOne(event.id)
+
+        then:
+        0 * first.findOne(_)
+        1 * second.findOne(event.id) >> event
+
+        and:
+        result == event
+    }
+
+    def "batch lookup requests each shard with its ids"() {
+        given:
+        Event firstEvent = event(10, 0)
+        Event secondEvent = event(20, 1)
+        Event thirdEvent = event(30, 0)
+
+        when:
+        List<Event> result = dao.findAll([firstEvent.id, secondEvent.id, thirdEvent.id, firstEvent.id])
+
+        then:
+        1 * first.findAll([firstEvent.id, thirdEvent.id]) >> [firstEvent, thirdEvent]
+        1 * second.findAll([secondEvent.id]) >> [secondEvent]
+
+        and:
+        result as Set == [firstEvent, secondEvent, thirdEvent] as Set
+    }
+
+    def "findAll merges shard streams by timestamp"() {
+        given:
+        Event e1 = event(10, 0)
+        Event e2 = event(20, 1)
+        Event e3 = event(30, 0)
+        CloseableIterator<Event> firstIterator = iterator([e1, e3])
+        CloseableIterator<Event> secondIterator = iterator([e2])
+
+        when:
+        List<Event> events = dao.findAll(0L, 100L).collect()
+
+        then:
+        1 * first.findAll(0L, 100L) >> firstIterator
+        1 * second.findAll(0L, 100L) >> secondIterator
+
+        and:
+        events == [e1, e2, e3]
+    }
+
+    def "page is merged from heads of shard pages"() {
+        given:
+        Event e1 = event(10, 0)
+        Event e2 = event(20, 1)
+        Event e3 = event(30, 0)
+        Event e4 = event(40, 1)
+        PageRequest head = new PageRequest(0, 4, Sort.Direction.DESC, "timestamp")
+
+        when: "request second page of two events"
+        def page = dao.findAll(0L, 100L, new PageRequest(1, 2, Sort.Direction.DESC, "timestamp"))
+
+        then: "each shard returns heads of requested order"
+        1 * first.findAll(0L, 100L, head) >> new PageImpl<>([e3, e1], head, 2)
+        1 * second.findAll(0L, 100L, head) >> new PageImpl<>([e4, e2], head, 2)
+
+        and:
+        page.content == [e2, e1]
+        page.totalElements == 4
+    }
+
+    def "seek merges shard results by timestamp and id"() {
+        given:
+        Event e1 = event(10, 0)
+        Event e2 = event(20, 1)
+        Event e3 = event(30, 0)
+
+        when:
+        List<Event> result = dao.findAll(0L, 100L, null, 2, Sort.Direction.ASC)
+
+        then:
+        1 * first.findAll(0L, 100L, null, 2, Sort.Direction.ASC) >> [e1, e3]
+        1 * second.findAll(0L, 100L, null, 2, Sort.Direction.ASC) >> [e2]
+
+        and:
+        result == [e1, e2]
+    }
+
+    def "ids are compared in order of Mongo binary representation"() {
+        expect: "most significant bits are compared as little-endian unsigned bytes"
+        ShardedEventDAO.compareIds(new UUID(0x01L, 0), new UUID(0x0100L, 0)) > 0
+        ShardedEventDAO.compareIds(new UUID(0x7FL, 0), new UUID(0x80L, 0)) < 0
+        ShardedEventDAO.compareIds(new UUID(5, 1), new UUID(5, 2)) < 0
+    }
+
+    def "count sums shard counts"() {
+        when:
+        long count = dao.count(0L, 100L)
+
+        then:
+        1 * first.count(0L, 100L) >> 3L
+        1 * second.count(0L, 100L) >> 4L
+
+        and:
+        count == 7L
+    }
+
+    def "histogram sums shard histograms"() {
+        given:
+        EventHistogram firstHistogram = new EventHistogram(0, 19, 10)
+        firstHistogram.add("STARTUP", 5, 2)
+        EventHistogram secondHistogram = new EventHistogram(0, 19, 10)
+        secondHistogram.add("STARTUP", 15, 1)
+
+        when:
+        EventHistogram histogram = dao.histogram(0L, 19L, 10L, EventGrouping.TYPE, EventFilter.NONE)
+
+        then:
+        1 * first.histogram(0L, 19L, 10L, EventGrouping.TYPE, EventFilter.NONE) >> firstHistogram
+        1 * second.histogram(0L, 19L, 10L, EventGrouping.TYPE, EventFilter.NONE) >> secondHistogram
+
+        and:
+        histogram.series["STARTUP"] == [2L, 1L] as long[]
+    }
+
+    /**
+     * Create event with id that is routed to specified shard.
+     */
+    private Event event(long timestamp, int shard) {
+        while (true) {
+            Event event = new MongoEventCountersTest.TimedEvent(time: timestamp)
+            if (dao.shard(event.id).is(shard == 0 ? first : second)) {
+                return event
+            }
+        }
+    }
+
+    private CloseableIterator<Event> iterator(List<Event> events) {
+        Iterator<Event> delegate = events.iterator()
+        CloseableIterator<Event> iterator = Mock(CloseableIterator.class)
+        iterator.hasNext() >> { delegate.hasNext() }
+        iterator.next() >> { delegate.next() }
+        return iterator
+    }
+}
@@ -0,0 +1,57 @@
+package org.ametiste.scm.log.persistent
+
+import org.ametiste.scm.log.metrics.Histogram
+import org.ametiste.scm.messaging.data.InstanceLifecycleEventGenerator
+import org.ametiste.scm.messaging.data.event.Event
+import org.springframework.dao.DataAccessResourceFailureException
+import spock.lang.Specification
+
+class TimedEventDAOTest extends Specification {
+
+    private static final InstanceLifecycleEventGenerator EVENT_GENERATOR = new InstanceLifecycleEventGenerator();
+
+    private EventDAO eventDAO = Mock(EventDAO.class)
+    private Histogram insertLatency = new Histogram(Histogram.LATENCY_BOUNDS)
+    private Histogram saveLatency = new Histogram(Histogram.LATENCY_BOUNDS)
+    private TimedEventDAO timedEventDAO = new TimedEventDAO(eventDAO, insertLatency, saveLatency)
+
+    def "should record latency of write operations"() {
+        given:
+        Collection<Event> events = EVENT_GENERATOR.generate(2)
+
+        when:
+        timedEventDAO.insert(events)
+        timedEventDAO.save(events)
+        timedEventDAO.save(events.getAt(0))
+
+        then: "operations delegated"
+        1 * eventDAO.insert(events) >> events
+        1 * eventDAO.save(events) >> events
+        1 * eventDAO.save(events.getAt(0))
+
+        and: "latencies recorded"
+        insertLatency.getCount() == 1
+        saveLatency.getCount() == 2
+    }
+
+    def "should record latency of failed operation"() {
+        when:
+        timedEventDAO.insert(EVENT_GENERATOR.generate(1))
+
+        then:
+        1 * eventDAO.insert(_) >> { throw new DataAccessResourceFailureException("unavailable") }
+        thrown(DataAccessResourceFailureException.class)
+        insertLatency.getCount() == 1
+    }
+
+    def "should delegate read operations without measurement"() {
+        when:
+        long count = timedEventDAO.count()
+
+        then:
+        1 * eventDAO.count() >> 3L
+        count == 3L
+        insertLatency.getCount() == 0
+        saveLatency.getCount() == 0
+    }
+}
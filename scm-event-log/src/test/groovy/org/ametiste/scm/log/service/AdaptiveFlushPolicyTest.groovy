@@ -0,0 +1,76 @@
+package org.ametiste.scm.log.service
+
+import spock.lang.Specification
+
+class AdaptiveFlushPolicyTest extends Specification {
+
+    def "constructor arguments validation"() {
+        when: "create policy with max period less than min"
+        new AdaptiveFlushPolicy(100, 50, 10, 100, 10)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create policy with max flush size less than min"
+        new AdaptiveFlushPolicy(100, 1000, 100, 10, 10)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create policy with not positive latency factor"
+        new AdaptiveFlushPolicy(100, 1000, 10, 100, 0)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "fixed policy keeps period and flush size"() {
+        given:
+        AdaptiveFlushPolicy policy = new AdaptiveFlushPolicy(1000, 5000)
+
+        when:
+        policy.update(100000, 3000, 1000)
+
+        then:
+        policy.getPeriod() == 1000
+        policy.getFlushSize() == 5000
+    }
+
+    def "should shorten period when storage is fast"() {
+        given:
+        AdaptiveFlushPolicy policy = new AdaptiveFlushPolicy(100, 5000, 10, 10000, 10)
+
+        when: "flush takes 1 ms"
+        policy.update(5, 1, 1000)
+
+        then: "period goes to minimum"
+        policy.getPeriod() == 100
+        policy.getFlushSize() == 10
+    }
+
+    def "should grow period and flush size under load"() {
+        given:
+        AdaptiveFlushPolicy policy = new AdaptiveFlushPolicy(100, 5000, 10, 10000, 10)
+
+        when: "flushes take 200 ms and 20 events arrive each millisecond"
+        5.times { policy.update(4000, 200, 200) }
+
+        then: "period is proportional to flush duration"
+        policy.getPeriod() == 2000
+
+        and: "flush size covers events arrived during period"
+        policy.getFlushSize() == 10000
+    }
+
+    def "should keep values within bounds"() {
+        given:
+        AdaptiveFlushPolicy policy = new AdaptiveFlushPolicy(100, 5000, 10, 1000, 10)
+
+        when: "flush takes very long"
+        policy.update(1000000, 60000, 1000)
+
+        then:
+        policy.getPeriod() == 5000
+        policy.getFlushSize() == 1000
+    }
+}
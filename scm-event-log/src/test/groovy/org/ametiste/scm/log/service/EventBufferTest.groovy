@@ -0,0 +1,84 @@
+package org.ametiste.scm.log.service
+
+import org.ametiste.scm.log.journal.EventJournal
+import org.ametiste.scm.messaging.data.InstanceLifecycleEventGenerator
+import org.ametiste.scm.messaging.data.event.Event
+import spock.lang.Specification
+
+class EventBufferTest extends Specification {
+
+    private static final InstanceLifecycleEventGenerator EVENT_GENERATOR = new InstanceLifecycleEventGenerator();
+
+    private EventBuffer buffer;
+
+    def setup() {
+        buffer = new EventBuffer()
+    }
+
+    def "should reject not initialized arguments"() {
+        when:
+        buffer.add(null)
+
+        then:
+        thrown(IllegalArgumentException.class)
+
+        when:
+        buffer.addAll(null)
+
+        then:
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "drain should return all appended events in order"() {
+        given:
+        Event first = EVENT_GENERATOR.generate()
+        Collection<Event> rest = EVENT_GENERATOR.generate(2)
+
+        when:
+        buffer.add(first)
+        buffer.addAll(rest)
+        List<Event> drained = buffer.drain().getEvents()
+
+        then:
+        drained.size() == 3
+        drained.getAt(0) == first
+        drained.subList(1, 3) == rest
+    }
+
+    def "drain should hand off segment and start new one"() {
+        given:
+        buffer.add(EVENT_GENERATOR.generate())
+        List<Event> sealed = buffer.drain().getEvents()
+
+        when: "append event after drain"
+        Event event = EVENT_GENERATOR.generate()
+        buffer.add(event)
+
+        then: "sealed segment is not changed"
+        sealed.size() == 1
+
+        and: "new event is in next segment"
+        buffer.drain().getEvents() == [event]
+        buffer.drain().getEvents().isEmpty()
+    }
+
+    def "should append events to journal and capture journal position on drain"() {
+        given: "buffer with journal"
+        EventJournal journal = Mock(EventJournal.class)
+        buffer = new EventBuffer(journal)
+
+        when:
+        buffer.add(EVENT_GENERATOR.generate())
+        buffer.addAll(EVENT_GENERATOR.generate(2))
+        EventBuffer.Segment segment = buffer.drain()
+
+        then:
+        3 * journal.encode(_) >> new byte[1]
+        3 * journal.append(_)
+        1 * journal.position() >> 27L
+
+        and:
+        segment.getEvents().size() == 3
+        segment.getJournalPosition() == 27L
+    }
+}
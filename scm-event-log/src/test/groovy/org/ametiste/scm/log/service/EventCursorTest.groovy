@@ -0,0 +1,43 @@
+package org.ametiste.scm.log.service
+
+import org.ametiste.scm.log.persistent.EventKey
+import spock.lang.Specification
+
+class EventCursorTest extends Specification {
+
+    def "encoded key is decoded back"() {
+        given: "some key"
+        EventKey key = new EventKey(timestamp, UUID.randomUUID())
+
+        when: "encode and decode it"
+        String token = EventCursor.encode(key)
+
+        then: "token is URL-safe"
+        token ==~ /[A-Za-z0-9_-]+/
+
+        and: "decoded key is equal to source one"
+        EventCursor.decode(token) == key
+
+        where:
+        timestamp << [0L, 1420070400000L, Long.MAX_VALUE, -1L]
+    }
+
+    def "empty token means absent cursor"() {
+        expect:
+        EventCursor.decode(token) == null
+
+        where:
+        token << [null, ""]
+    }
+
+    def "malformed token is rejected"() {
+        when:
+        EventCursor.decode(token)
+
+        then:
+        thrown(InvalidCursorException.class)
+
+        where:
+        token << ["not a cursor", "AAAA", EventCursor.encode(new EventKey(1L, UUID.randomUUID())) + "AAAA"]
+    }
+}
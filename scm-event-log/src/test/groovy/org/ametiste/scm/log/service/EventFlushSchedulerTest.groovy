@@ -0,0 +1,94 @@
+package org.ametiste.scm.log.service
+
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.atomic.AtomicInteger
+
+class EventFlushSchedulerTest extends Specification {
+
+    private EventLogger eventLogger;
+
+    def setup() {
+        eventLogger = Mock(EventLogger.class)
+    }
+
+    def "constructor arguments validation"() {
+        when: "create scheduler with not initialized logger"
+        new EventFlushScheduler(null, 1000, 10)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create scheduler with not positive flush period"
+        new EventFlushScheduler(eventLogger, 0, 10)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create scheduler with not positive flush size"
+        new EventFlushScheduler(eventLogger, 1000, 0)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "should flush when buffer reach flush size"() {
+        given: "scheduler with flush size 10 and buffer that reached flush size"
+        EventFlushScheduler scheduler = new EventFlushScheduler(eventLogger, 60000, 10)
+        AtomicInteger flushes = new AtomicInteger()
+        eventLogger.bufferSize() >> 10
+        eventLogger.flush() >> { flushes.incrementAndGet(); null }
+
+        when: "notify about stored events"
+        scheduler.onStored()
+
+        then: "flush executed by scheduler thread"
+        new PollingConditions(timeout: 5).eventually {
+            assert flushes.get() == 1
+        }
+    }
+
+    def "should not flush when buffer below flush size"() {
+        given: "scheduler with flush size 10"
+        EventFlushScheduler scheduler = new EventFlushScheduler(eventLogger, 60000, 10)
+
+        when: "notify about stored events"
+        scheduler.onStored()
+
+        then: "buffer below flush size"
+        1 * eventLogger.bufferSize() >> 9
+
+        and: "flush is not submitted"
+        0 * eventLogger.flush()
+    }
+
+    def "should flush buffer on stop"() {
+        given:
+        EventFlushScheduler scheduler = new EventFlushScheduler(eventLogger, 60000, 10)
+
+        when:
+        scheduler.stop()
+
+        then:
+        1 * eventLogger.flush()
+    }
+
+    def "should update policy with flush results"() {
+        given: "scheduler with adaptive policy"
+        AdaptiveFlushPolicy policy = new AdaptiveFlushPolicy(100, 60000, 10, 1000, 10)
+        EventFlushScheduler scheduler = new EventFlushScheduler(eventLogger, policy)
+
+        expect: "scheduler starts with maximum period"
+        scheduler.getFlushPeriod() == 60000
+
+        when: "fast flush executed"
+        scheduler.stop()
+
+        then:
+        1 * eventLogger.flush()
+
+        and: "period adapted to flush duration"
+        scheduler.getFlushPeriod() == 100
+    }
+}
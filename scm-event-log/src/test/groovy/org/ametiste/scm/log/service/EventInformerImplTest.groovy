@@ -1,11 +1,20 @@
 package org.ametiste.scm.log.service
 
 import org.ametiste.scm.messaging.data.InstanceLifecycleEventGenerator
+import org.ametiste.scm.log.data.info.CursorPage
 import org.ametiste.scm.log.persistent.EventDAO
+import org.ametiste.scm.log.persistent.EventFilter
+import org.ametiste.scm.log.persistent.EventGrouping
+import org.ametiste.scm.log.persistent.EventHistogram
+import org.ametiste.scm.log.persistent.EventKey
+import org.ametiste.scm.log.persistent.EventSummary
+import org.ametiste.scm.log.persistent.EventTailCache
+import org.ametiste.scm.log.persistent.MongoEventCountersTest
 import org.ametiste.scm.messaging.data.event.Event
 import org.springframework.data.domain.PageImpl
 import org.springframework.data.domain.Pageable
 import org.springframework.data.domain.Sort
+import org.springframework.data.util.CloseableIterator
 import spock.lang.Specification
 
 import static org.ametiste.scm.messaging.data.EventComparator.equals
@@ -46,6 +55,118 @@ class EventInformerImplTest extends Specification {
         equals(returnedEvent, event)
     }
 
+    def "streamEventsForTime() should return storage cursor of time period"() {
+        given:
+        CloseableIterator<Event> cursor = Mock(CloseableIterator.class)
+        EventFilter filter = new EventFilter("STARTUP", null, null)
+
+        when: "stream events without filter"
+        def result = eventInformer.streamEventsForTime(10, 20, new EventFilter(null, null, null))
+
+        then: "cursor of unfiltered query is returned"
+        1 * eventDAO.findAll(10000L, 20000L) >> cursor
+        result.is(cursor)
+
+        when: "stream filtered events"
+        result = eventInformer.streamEventsForTime(10, 20, filter)
+
+        then: "filter is passed to storage"
+        1 * eventDAO.findAll(10000L, 20000L, filter) >> cursor
+        result.is(cursor)
+    }
+
+    def "getHistogramForTime() should request histogram from storage"() {
+        given:
+        EventHistogram stored = new EventHistogram(10000, 20000, 5000)
+        EventFilter filter = new EventFilter(null, "RAIN", null)
+
+        when:
+        def histogram = eventInformer.getHistogramForTime(10, 20, 5, EventGrouping.NODE, filter)
+
+        then: "bounds and bucket size are passed in milliseconds"
+        1 * eventDAO.histogram(10000L, 20000L, 5000L, EventGrouping.NODE, filter) >> stored
+        histogram.is(stored)
+
+        when: "request histogram with not positive bucket size"
+        eventInformer.getHistogramForTime(10, 20, 0, EventGrouping.NODE, filter)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "request histogram with too many buckets"
+        eventInformer.getHistogramForTime(10, 10 + EventHistogram.MAX_BUCKETS, 1, EventGrouping.NODE, filter)
+
+        then: "expect InvalidRequestException thrown and storage is not requested"
+        thrown(InvalidRequestException.class)
+        0 * eventDAO.histogram(*_)
+
+        when: "request histogram with start greater than end"
+        eventInformer.getHistogramForTime(20, 10, 5, EventGrouping.NODE, filter)
+
+        then: "expect InvalidRequestException thrown and storage is not requested"
+        thrown(InvalidRequestException.class)
+        0 * eventDAO.histogram(*_)
+    }
+
+    def "getHistogramForTime() without start should cover the last buckets before end"() {
+        given:
+        long bucket = 3600000L
+        long end = 1445000000000L
+
+        when: "request histogram without start and with default bucket size"
+        eventInformer.getHistogramForTime(-1, (int) (end / 1000), 3600, EventGrouping.TYPE, EventFilter.NONE)
+
+        then: "start is aligned so that histogram contains maximal number of buckets"
+        1 * eventDAO.histogram((Math.floorDiv(end, bucket) - EventHistogram.MAX_BUCKETS + 1) * bucket, end, bucket,
+                EventGrouping.TYPE, EventFilter.NONE) >> { long from, long to, long size, grouping, filter ->
+            assert EventHistogram.buckets(from, to, size) == EventHistogram.MAX_BUCKETS
+            return new EventHistogram(from, to, size)
+        }
+
+        when: "request histogram without start and end"
+        eventInformer.getHistogramForTime(-1, -1, 3600, EventGrouping.TYPE, EventFilter.NONE)
+
+        then: "request is not rejected"
+        1 * eventDAO.histogram(_, _, bucket, EventGrouping.TYPE, EventFilter.NONE) >> { long from, long to, long size,
+                                                                                       grouping, filter ->
+            new EventHistogram(from, to, size)
+        }
+    }
+
+    def "getHistogramForTime() should count cached events if cache covers period"() {
+        given: "informer with warmed tail cache"
+        EventTailCache cache = new EventTailCache(10)
+        eventDAO.findAll(_ as Pageable) >> new PageImpl<>([new MongoEventCountersTest.TimedEvent(time: 12000),
+                                                           new MongoEventCountersTest.TimedEvent(time: 17000)])
+        cache.warm(eventDAO)
+        eventInformer = new EventInformerImpl(eventDAO, cache)
+
+        when:
+        def histogram = eventInformer.getHistogramForTime(10, 20, 5, EventGrouping.TYPE, EventFilter.NONE)
+
+        then: "storage is not requested"
+        0 * eventDAO.histogram(*_)
+
+        and:
+        histogram.series[EventHistogram.NO_GROUP] == [1L, 1L, 0L] as long[]
+    }
+
+    def "find() by ids should return events in order of ids"() {
+        given:
+        Event first = EVENT_GENERATOR.generate()
+        Event second = EVENT_GENERATOR.generate()
+        UUID missing = UUID.randomUUID()
+
+        when:
+        List<Event> events = eventInformer.find([second.id, missing, first.id])
+
+        then: "storage is requested once for all ids"
+        1 * eventDAO.findAll([second.id, missing, first.id]) >> [first, second]
+
+        and: "missing event is represented by null"
+        events == [second, null, first]
+    }
+
     def "getLastEvents() should send correct request to get last events"() {
         def count = 10;
 
@@ -64,6 +185,26 @@ class EventInformerImplTest extends Specification {
         }
     }
 
+    def "getLastEvents() should serve events from warmed tail cache"() {
+        given: "informer with cache that holds two events"
+        Event first = new MongoEventCountersTest.TimedEvent(time: 10)
+        Event second = new MongoEventCountersTest.TimedEvent(time: 20)
+        EventTailCache cache = new EventTailCache(10)
+        EventDAO warmDAO = Mock(EventDAO.class)
+        warmDAO.findAll(_ as Pageable) >> { Pageable pageable -> new PageImpl<Event>([second, first], pageable, 2) }
+        cache.warm(warmDAO)
+        eventInformer = new EventInformerImpl(eventDAO, cache)
+
+        when:
+        def result = eventInformer.getLastEvents(2, Sort.Direction.ASC)
+
+        then: "repository is not requested"
+        0 * eventDAO._
+
+        and:
+        result as List == [first, second]
+    }
+
     def "should request all event with default parameters"() {
         def page = 2;
         def count = 10;
@@ -104,8 +245,8 @@ class EventInformerImplTest extends Specification {
             long end = arguments[1]
             final Pageable pageable = arguments[2];
 
-            assert start == startTime * 1000
-            assert end == endTime * 1000
+            assert start == startTime * 1000L
+            assert end == endTime * 1000L
             assert pageable.getPageNumber() == page
             assert pageable.getPageSize() == count
             assert pageable.getSort().getOrderFor("timestamp").getDirection().equals(direction)
@@ -113,4 +254,94 @@ class EventInformerImplTest extends Specification {
             new PageImpl<Event>(Collections.emptyList(), pageable, 0)
         }
     }
+
+    def "getLastEventSummaries() should request last summaries and sort them"() {
+        given:
+        List<EventSummary> summaries = (3..1).collect { new EventSummary(UUID.randomUUID(), "Event", it, null) }
+
+        when: "send request with ASC sort"
+        Collection<EventSummary> result = eventInformer.getLastEventSummaries(3, Sort.Direction.ASC)
+
+        then: "must send DESC sort request to get last summaries"
+        1 * eventDAO.findSummaries(_ as Pageable) >> { arguments ->
+            final Pageable pageable = arguments[0];
+
+            assert pageable.getPageSize() == 3
+            assert pageable.getSort().getOrderFor("timestamp").getDirection().equals(Sort.Direction.DESC)
+
+            new PageImpl<EventSummary>(summaries, pageable, 3)
+        }
+        0 * eventDAO.findAll(_ as Pageable)
+
+        and: "summaries are returned in requested order"
+        result*.timestamp == [1L, 2L, 3L]
+    }
+
+    def "getEventSummariesForTime() should request summaries for specified time period"() {
+        when:
+        eventInformer.getEventSummariesForTime(1000, 2000, 1, 10, Sort.Direction.ASC)
+
+        then:
+        1 * eventDAO.findSummaries(1000000, 2000000, _ as Pageable) >> { arguments ->
+            final Pageable pageable = arguments[2];
+
+            assert pageable.getPageNumber() == 1
+            assert pageable.getPageSize() == 10
+            assert pageable.getSort().getOrderFor("timestamp").getDirection().equals(Sort.Direction.ASC)
+
+            new PageImpl<EventSummary>(Collections.emptyList(), pageable, 0)
+        }
+        0 * eventDAO.findAll(_, _, _)
+    }
+
+    def "time period in epoch seconds is converted to milliseconds without overflow"() {
+        when:
+        eventInformer.getEventsForTime(1420070400, 1420074000, 0, 10, Sort.Direction.ASC)
+        eventInformer.getEventSummariesForTime(1420070400, 1420074000, 0, 10, Sort.Direction.ASC)
+
+        then:
+        1 * eventDAO.findAll(1420070400000L, 1420074000000L, _ as Pageable) >> new PageImpl<Event>([])
+        1 * eventDAO.findSummaries(1420070400000L, 1420074000000L, _ as Pageable) >> new PageImpl<EventSummary>([])
+    }
+
+    def "getEventsForTime() with cursor should return cursor of last event if next page exists"() {
+        List<Event> events = new ArrayList<>(EVENT_GENERATOR.generate(3))
+
+        when:
+        CursorPage<Event> result = eventInformer.getEventsForTime(-1, -1, null, 2, Sort.Direction.ASC)
+
+        then: "one extra event is requested from the start of range"
+        1 * eventDAO.findAll(0, _ as Long, null, 3, Sort.Direction.ASC) >> events
+
+        and:
+        result.getContent() == events.subList(0, 2)
+        !result.isLast()
+        EventCursor.decode(result.getNext()) == EventKey.of(events.get(1))
+    }
+
+    def "getEventsForTime() with cursor should resume after key encoded in cursor"() {
+        List<Event> events = new ArrayList<>(EVENT_GENERATOR.generate(2))
+        EventKey key = new EventKey(15000000000L, UUID.randomUUID())
+
+        when:
+        CursorPage<Event> result = eventInformer.getEventsForTime(15000000, 16000000, EventCursor.encode(key), 2,
+                Sort.Direction.DESC)
+
+        then:
+        1 * eventDAO.findAll(15000000000L, 16000000000L, key, 3, Sort.Direction.DESC) >> events
+
+        and: "page is last"
+        result.getContent() == events
+        result.isLast()
+        result.getNext() == null
+    }
+
+    def "getEventsForTime() with malformed cursor should throw exception"() {
+        when:
+        eventInformer.getEventsForTime(-1, -1, "not a cursor", 2, Sort.Direction.DESC)
+
+        then:
+        thrown(InvalidCursorException.class)
+        0 * eventDAO.findAll(*_)
+    }
 }
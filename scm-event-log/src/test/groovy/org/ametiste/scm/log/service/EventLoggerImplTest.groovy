@@ -1,9 +1,14 @@
 package org.ametiste.scm.log.service
 
 import org.ametiste.scm.messaging.data.InstanceLifecycleEventGenerator
+import org.ametiste.scm.log.journal.EventJournal
+import org.ametiste.scm.log.metrics.IngestionMetrics
+import org.ametiste.scm.log.persistent.DuplicateEventsException
 import org.ametiste.scm.log.persistent.EventDAO
 import org.ametiste.scm.messaging.data.event.Event
 import org.ametiste.scm.messaging.data.event.InstanceLifecycleEvent
+import org.springframework.dao.DataAccessResourceFailureException
+import org.springframework.dao.DuplicateKeyException
 import spock.lang.Specification
 
 class EventLoggerImplTest extends Specification {
@@ -56,4 +61,380 @@ class EventLoggerImplTest extends Specification {
             bulk
         }
     }
+
+    def "constructor arguments validation"() {
+        when: "create logger with not positive batch size"
+        new EventLoggerImpl(eventDAO, 0, 10, 5)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create logger with low watermark greater than high"
+        new EventLoggerImpl(eventDAO, 10, 10, 20)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create logger without stripes"
+        EventLoggerImpl.builder(eventDAO).stripes(0).build()
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create logger without flush workers"
+        EventLoggerImpl.builder(eventDAO).stripes(2).flushWorkers(0).build()
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "should split flush into bulks of batch size"() {
+        given: "logger with batch size 2"
+        eventLogger = new EventLoggerImpl(eventDAO, 2, 100, 50)
+        Collection<Event> events = EVENT_GENERATOR.generate(5)
+
+        when: "store events and flush"
+        eventLogger.store(events)
+        eventLogger.flush()
+
+        then: "expect three insert operations"
+        3 * eventDAO.insert(_) >> { args ->
+            Collection<Event> bulk = args[0];
+            assert bulk.size() <= 2
+            new ArrayList<>(bulk)
+        }
+
+        and: "buffer is empty"
+        eventLogger.bufferSize() == 0
+    }
+
+    def "should retry bulk with save operation on duplicate"() {
+        given:
+        InstanceLifecycleEvent event = EVENT_GENERATOR.generate()
+
+        when: "store event and flush"
+        eventLogger.store(event)
+        eventLogger.flush()
+
+        then: "insert failed with duplicate key"
+        1 * eventDAO.insert(_) >> { throw new DuplicateKeyException("duplicate") }
+
+        and: "event saved with save operation"
+        1 * eventDAO.save(_ as Collection) >> { args -> new ArrayList<>(args[0]) }
+
+        and: "buffer is empty"
+        eventLogger.bufferSize() == 0
+    }
+
+    def "should save only reported duplicates"() {
+        given:
+        Collection<Event> events = EVENT_GENERATOR.generate(3)
+
+        when: "store events and flush"
+        eventLogger.store(events)
+        eventLogger.flush()
+
+        then: "insert reports one duplicated event"
+        1 * eventDAO.insert(_) >> { throw new DuplicateEventsException("duplicate", [events.getAt(1)]) }
+
+        and: "only duplicated event saved"
+        1 * eventDAO.save([events.getAt(1)])
+
+        and: "buffer is empty"
+        eventLogger.bufferSize() == 0
+    }
+
+    def "should keep events in buffer when flush failed"() {
+        given:
+        InstanceLifecycleEvent event = EVENT_GENERATOR.generate()
+
+        when: "store event and flush with failed insert"
+        eventLogger.store(event)
+        eventLogger.flush()
+
+        then:
+        1 * eventDAO.insert(_) >> { throw new DataAccessResourceFailureException("unavailable") }
+        thrown(DataAccessResourceFailureException.class)
+
+        and: "event is still buffered"
+        eventLogger.bufferSize() == 1
+    }
+
+    def "should become saturated on high watermark and leave on low watermark"() {
+        given: "logger with watermarks"
+        eventLogger = new EventLoggerImpl(eventDAO, 2, 4, 2)
+
+        when: "store events below high watermark"
+        eventLogger.store(EVENT_GENERATOR.generate(3))
+
+        then:
+        !eventLogger.isSaturated()
+
+        when: "store events up to high watermark"
+        eventLogger.store(EVENT_GENERATOR.generate())
+
+        then:
+        eventLogger.isSaturated()
+
+        when: "flush buffer"
+        eventLogger.flush()
+
+        then:
+        2 * eventDAO.insert(_) >> { args -> new ArrayList<>(args[0]) }
+        !eventLogger.isSaturated()
+        eventLogger.bufferSize() == 0
+    }
+
+    def "should write retained events before new events on next flush"() {
+        given: "event that failed to write"
+        InstanceLifecycleEvent failed = EVENT_GENERATOR.generate()
+        InstanceLifecycleEvent next = EVENT_GENERATOR.generate()
+        eventLogger.store(failed)
+
+        when: "flush failed"
+        eventLogger.flush()
+
+        then:
+        1 * eventDAO.insert(_) >> { throw new DataAccessResourceFailureException("unavailable") }
+        thrown(DataAccessResourceFailureException.class)
+
+        when: "store new event and flush again"
+        eventLogger.store(next)
+        eventLogger.flush()
+
+        then: "both events written in original order"
+        1 * eventDAO.insert(_) >> { args ->
+            Collection<Event> bulk = args[0];
+
+            assert bulk.size() == 2
+            assert bulk.getAt(0) == failed
+            assert bulk.getAt(1) == next
+
+            new ArrayList<>(bulk)
+        }
+
+        and:
+        eventLogger.bufferSize() == 0
+    }
+
+    def "should append stored events to journal and checkpoint after flush"() {
+        given: "logger with journal"
+        EventJournal journal = Mock(EventJournal.class)
+        eventLogger = new EventLoggerImpl(eventDAO, journal, 10, 100, 50)
+        InstanceLifecycleEvent event = EVENT_GENERATOR.generate()
+
+        when: "store event"
+        eventLogger.store(event)
+
+        then: "event appended to journal"
+        1 * journal.encode(event) >> new byte[1]
+        1 * journal.append(_) >> 9L
+
+        when: "flush events"
+        eventLogger.flush()
+
+        then: "journal checkpoint made at position of drain"
+        1 * journal.position() >> 9L
+        1 * eventDAO.insert(_) >> { args -> new ArrayList<>(args[0]) }
+        1 * journal.checkpoint(9L)
+    }
+
+    def "should not checkpoint journal when flush failed"() {
+        given: "logger with journal"
+        EventJournal journal = Mock(EventJournal.class)
+        eventLogger = new EventLoggerImpl(eventDAO, journal, 10, 100, 50)
+
+        when: "store event and flush with failed insert"
+        eventLogger.store(EVENT_GENERATOR.generate())
+        eventLogger.flush()
+
+        then:
+        1 * eventDAO.insert(_) >> { throw new DataAccessResourceFailureException("unavailable") }
+        thrown(DataAccessResourceFailureException.class)
+        0 * journal.checkpoint(_)
+    }
+
+    def "should save events recovered from journal"() {
+        given: "journal with events left after previous run"
+        EventJournal journal = Mock(EventJournal.class)
+        eventLogger = new EventLoggerImpl(eventDAO, journal, 2, 100, 50)
+        Collection<Event> events = EVENT_GENERATOR.generate(3)
+
+        when: "recover logger"
+        int recovered = eventLogger.recover()
+
+        then: "journal replayed"
+        1 * journal.replay(_) >> { args -> events.each { args[0].accept(it) } }
+
+        and: "events saved with bulks of batch size"
+        2 * eventDAO.save(_ as Collection)
+
+        and: "journal checkpoint made"
+        1 * journal.position() >> 42L
+        1 * journal.checkpoint(42L)
+
+        and:
+        recovered == events.size()
+    }
+
+    def "should write stripes concurrently"() {
+        given: "logger with 4 stripes and 4 flush workers"
+        eventLogger = EventLoggerImpl.builder(eventDAO).stripes(4).flushWorkers(4).build()
+        Collection<Event> events = EVENT_GENERATOR.generate(100)
+        Collection<Event> written = Collections.synchronizedList(new ArrayList<>())
+
+        when: "store events and flush"
+        eventLogger.store(events)
+        eventLogger.flush()
+
+        then: "each stripe written with separate bulk"
+        (2..4) * eventDAO.insert(_) >> { args -> written.addAll(args[0]); new ArrayList<>(args[0]) }
+
+        and: "all events written"
+        written.size() == events.size()
+        written.containsAll(events)
+        eventLogger.bufferSize() == 0
+
+        cleanup:
+        eventLogger.close()
+    }
+
+    def "should retain only events of failed stripe"() {
+        given: "logger with 2 stripes"
+        eventLogger = EventLoggerImpl.builder(eventDAO).stripes(2).build()
+        Collection<Event> events = EVENT_GENERATOR.generate(50)
+
+        when: "store events and flush with one failed stripe"
+        eventLogger.store(events)
+        eventLogger.flush()
+
+        then: "failure is propagated after all stripes are written"
+        1 * eventDAO.insert(_) >> { throw new DataAccessResourceFailureException("unavailable") }
+        1 * eventDAO.insert(_) >> { args -> new ArrayList<>(args[0]) }
+        thrown(DataAccessResourceFailureException.class)
+
+        and: "events of failed stripe retained"
+        eventLogger.bufferSize() > 0
+        eventLogger.bufferSize() < events.size()
+
+        when: "flush again"
+        eventLogger.flush()
+
+        then: "retained events written"
+        1 * eventDAO.insert(_) >> { args -> new ArrayList<>(args[0]) }
+        eventLogger.bufferSize() == 0
+    }
+
+    def "should checkpoint journal at position persisted by all stripes"() {
+        given: "logger with journal and 2 stripes"
+        EventJournal journal = Mock(EventJournal.class)
+        eventLogger = EventLoggerImpl.builder(eventDAO).journal(journal).stripes(2).build()
+
+        when: "flush stripes drained at different positions"
+        eventLogger.flush()
+
+        then: "checkpoint made at minimal drain position"
+        2 * journal.position() >>> [5L, 7L]
+        0 * eventDAO.insert(_)
+        1 * journal.checkpoint(5L)
+
+        when: "flush again"
+        eventLogger.flush()
+
+        then: "checkpoint made at minimal stripe position"
+        2 * journal.position() >>> [12L, 11L]
+        1 * journal.checkpoint(11L)
+    }
+
+    def "should drop events recently persisted"() {
+        given: "logger with duplicate filter"
+        eventLogger = EventLoggerImpl.builder(eventDAO).duplicateFilter(new RecentEventFilter(100, 0.01, 100)).build()
+        InstanceLifecycleEvent event = EVENT_GENERATOR.generate()
+
+        when: "store and flush event"
+        eventLogger.store(event)
+        eventLogger.flush()
+
+        then:
+        1 * eventDAO.insert(_) >> { args -> new ArrayList<>(args[0]) }
+
+        when: "store the same event again"
+        eventLogger.store(event)
+        eventLogger.store([event])
+        eventLogger.flush()
+
+        then: "event is dropped"
+        eventLogger.bufferSize() == 0
+        0 * eventDAO.insert(_)
+    }
+
+    def "should count ingestion metrics"() {
+        given: "logger with metrics and duplicate filter"
+        IngestionMetrics metrics = new IngestionMetrics()
+        eventLogger = EventLoggerImpl.builder(eventDAO)
+                .metrics(metrics)
+                .duplicateFilter(new RecentEventFilter(100, 0.01, 100))
+                .build()
+        List<Event> events = EVENT_GENERATOR.generate(3)
+
+        when: "store events, flush and store one of them again"
+        eventLogger.store(events)
+        eventLogger.flush()
+        eventLogger.store(events.getAt(0))
+
+        then: "insert failed with duplicate key"
+        1 * eventDAO.insert(_) >> { throw new DuplicateKeyException("duplicate") }
+
+        and:
+        metrics.getReceived() == 4
+        metrics.getPersisted() == 3
+        metrics.getDeduplicated() == 1
+        metrics.getDuplicateFallbacks() == 1
+        metrics.getFlushDuration().getCount() == 1
+        metrics.getBatchSize().getMax() == 3
+    }
+
+    def "should count failed flushes"() {
+        given:
+        IngestionMetrics metrics = new IngestionMetrics()
+        eventLogger = EventLoggerImpl.builder(eventDAO).metrics(metrics).build()
+
+        when:
+        eventLogger.store(EVENT_GENERATOR.generate())
+        eventLogger.flush()
+
+        then:
+        1 * eventDAO.insert(_) >> { throw new DataAccessResourceFailureException("unavailable") }
+        thrown(DataAccessResourceFailureException.class)
+        metrics.getFailedFlushes() == 1
+        metrics.getPersisted() == 0
+    }
+
+    def "should report time of oldest buffered event"() {
+        expect: "empty buffer has no oldest event"
+        eventLogger.oldestBufferedTime() == -1
+
+        when: "store event"
+        long before = System.currentTimeMillis()
+        eventLogger.store(EVENT_GENERATOR.generate())
+
+        then:
+        eventLogger.oldestBufferedTime() >= before
+
+        when: "flush failed"
+        long stored = eventLogger.oldestBufferedTime()
+        eventLogger.flush()
+
+        then: "retained event keeps its time"
+        1 * eventDAO.insert(_) >> { throw new DataAccessResourceFailureException("unavailable") }
+        thrown(DataAccessResourceFailureException.class)
+        eventLogger.oldestBufferedTime() == stored
+
+        when: "flush succeeded"
+        eventLogger.flush()
+
+        then:
+        1 * eventDAO.insert(_) >> { args -> new ArrayList<>(args[0]) }
+        eventLogger.oldestBufferedTime() == -1
+    }
 }
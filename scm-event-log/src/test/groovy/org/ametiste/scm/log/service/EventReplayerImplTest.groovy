@@ -1,15 +1,16 @@
 package org.ametiste.scm.log.service
 
 import org.ametiste.scm.log.persistent.EventDAO
+import org.ametiste.scm.log.persistent.EventFilter
 import org.ametiste.scm.log.util.EventReceiverURLBuilder
 import org.ametiste.scm.messaging.data.InstanceLifecycleEventGenerator
 import org.ametiste.scm.messaging.sender.EventSenderMock
 import org.ametiste.scm.log.data.replay.ReplayTaskStatus
 import org.ametiste.scm.messaging.data.event.Event
 import org.ametiste.scm.messaging.sender.EventSender
-import org.springframework.data.domain.PageImpl
 import org.springframework.data.util.CloseableIterator
 import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
 
 class EventReplayerImplTest extends Specification {
 
@@ -33,14 +34,14 @@ class EventReplayerImplTest extends Specification {
         def events = EVENT_GENERATOR.generate(3)
         def receiver = URI.create("http://localhost")
 
-        eventDAO.findAll(_,_,_) >> { args ->
+        eventDAO.count(_,_) >> { args ->
             def start = args[0]
             def end = args[1]
 
             assert start == 0
             assert end > 0
 
-            new PageImpl<Event>(Collections.emptyList(), null, events.size())
+            events.size()
         }
 
         eventDAO.findAll(_,_) >> { args ->
@@ -70,6 +71,31 @@ class EventReplayerImplTest extends Specification {
     }
 
 
+    def "should replay events that match filter"() {
+
+        given: "stored events of filter"
+        def events = EVENT_GENERATOR.generate(3)
+        def receiver = URI.create("http://localhost")
+        def filter = new EventFilter(null, "RAIN", null)
+
+        when: "request replay with filter"
+        UUID id = eventReplayer.replay(receiver, 10, 20, filter)
+
+        and: "wait for worker done"
+        new PollingConditions(timeout: 5).eventually {
+            assert eventSender.totalSendEvents() == events.size()
+        }
+
+        then: "filter is passed to storage"
+        1 * eventDAO.count(10000, 20000, filter) >> events.size()
+        1 * eventDAO.findAll(10000, 20000, filter) >> new CloseableIteratorMock<Event>(events)
+        0 * eventDAO.findAll(_, _)
+
+        and:
+        eventReplayer.status(id).getTotalEvents() == events.size()
+        eventSender.totalSendEvents() == events.size()
+    }
+
     private class CloseableIteratorMock<T> implements CloseableIterator<T>{
 
         private Collection<T> events;
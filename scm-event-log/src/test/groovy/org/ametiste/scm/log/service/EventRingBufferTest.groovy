@@ -0,0 +1,95 @@
+package org.ametiste.scm.log.service
+
+import org.ametiste.scm.messaging.data.InstanceLifecycleEventGenerator
+import org.ametiste.scm.messaging.data.event.Event
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+
+class EventRingBufferTest extends Specification {
+
+    private static final InstanceLifecycleEventGenerator EVENT_GENERATOR = new InstanceLifecycleEventGenerator();
+
+    def "constructor arguments validation"() {
+        when: "create ring with capacity that is not power of two"
+        new EventRingBuffer(10)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "should drain published events in order"() {
+        given:
+        EventRingBuffer ring = new EventRingBuffer(4)
+        List<Event> events = EVENT_GENERATOR.generate(3)
+        List<Event> drained = []
+
+        when:
+        events.each { ring.tryPublish(it) }
+        int count = ring.drainTo(drained, 10)
+
+        then:
+        count == 3
+        drained == events
+        ring.isEmpty()
+    }
+
+    def "should reject publish when ring is full"() {
+        given:
+        EventRingBuffer ring = new EventRingBuffer(2)
+
+        expect: "two events published"
+        ring.tryPublish(EVENT_GENERATOR.generate())
+        ring.tryPublish(EVENT_GENERATOR.generate())
+
+        and: "third is rejected"
+        !ring.tryPublish(EVENT_GENERATOR.generate())
+
+        and: "slot is free after drain"
+        ring.drainTo([], 1) == 1
+        ring.tryPublish(EVENT_GENERATOR.generate())
+    }
+
+    def "should drain not more than requested"() {
+        given:
+        EventRingBuffer ring = new EventRingBuffer(8)
+        List<Event> events = EVENT_GENERATOR.generate(20)
+        List<Event> drained = []
+
+        when: "publish and drain with wrap around ring"
+        events.each {
+            assert ring.tryPublish(it)
+            ring.drainTo(drained, 1)
+        }
+
+        then:
+        drained == events
+    }
+
+    def "should not lose events of concurrent producers"() {
+        given:
+        EventRingBuffer ring = new EventRingBuffer(64)
+        int producers = 4
+        int perProducer = 1000
+        CountDownLatch done = new CountDownLatch(producers)
+        Set<Event> drained = new HashSet<>()
+
+        when: "producers publish concurrently"
+        producers.times {
+            Thread.start {
+                EVENT_GENERATOR.generate(perProducer).each { event ->
+                    while (!ring.tryPublish(event)) {
+                        Thread.yield()
+                    }
+                }
+                done.countDown()
+            }
+        }
+        while (done.getCount() > 0 || !ring.isEmpty()) {
+            ring.drainTo(drained, 16)
+        }
+
+        then: "consumer receives all events"
+        drained.size() == producers * perProducer
+    }
+}
@@ -0,0 +1,102 @@
+package org.ametiste.scm.log.service
+
+import org.ametiste.scm.messaging.data.InstanceLifecycleEventGenerator
+import org.ametiste.scm.messaging.data.event.Event
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+class EventRingDispatcherTest extends Specification {
+
+    private static final InstanceLifecycleEventGenerator EVENT_GENERATOR = new InstanceLifecycleEventGenerator();
+
+    private EventLogger eventLogger = Mock(EventLogger.class)
+    private EventFlushScheduler flushScheduler = Mock(EventFlushScheduler.class)
+
+    def "constructor arguments validation"() {
+        when: "create dispatcher without ring"
+        new EventRingDispatcher(null, eventLogger, flushScheduler, 10, WaitStrategy.PARK)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create dispatcher with not positive batch size"
+        new EventRingDispatcher(new EventRingBuffer(8), eventLogger, flushScheduler, 0, WaitStrategy.PARK)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "should store published events before stop"() {
+        given:
+        EventRingDispatcher dispatcher = new EventRingDispatcher(new EventRingBuffer(8), eventLogger, flushScheduler,
+                4, WaitStrategy.YIELD)
+        List<Event> events = EVENT_GENERATOR.generate(50)
+        List<Event> stored = Collections.synchronizedList([])
+
+        when: "publish events with ring smaller than events count and stop"
+        dispatcher.start()
+        events.each { dispatcher.publish(it) }
+        dispatcher.stop()
+
+        then: "all events stored with batches and scheduler notified"
+        (13.._) * eventLogger.store(_ as Collection) >> { args ->
+            assert args[0].size() <= 4
+            stored.addAll(args[0])
+        }
+        (13.._) * flushScheduler.onStored()
+
+        and:
+        stored == events
+    }
+
+    def "should reject events after stop"() {
+        given:
+        EventRingDispatcher dispatcher = new EventRingDispatcher(new EventRingBuffer(8), eventLogger, null,
+                4, WaitStrategy.PARK)
+        dispatcher.start()
+        dispatcher.stop()
+
+        when:
+        dispatcher.publish(EVENT_GENERATOR.generate())
+
+        then:
+        thrown(LoggingOperationException.class)
+    }
+
+    def "should store every successfully published event when stopped concurrently with publishers"() {
+        given:
+        EventLogger logger = Stub(EventLogger.class)
+        AtomicInteger stored = new AtomicInteger()
+        logger.store(_ as Collection) >> { args -> stored.addAndGet(args[0].size()) }
+
+        expect: "events published without exception are stored, the rest is rejected"
+        20.times {
+            stored.set(0)
+            AtomicInteger published = new AtomicInteger()
+            EventRingDispatcher dispatcher = new EventRingDispatcher(new EventRingBuffer(8), logger, null, 4,
+                    WaitStrategy.YIELD)
+            dispatcher.start()
+
+            CountDownLatch started = new CountDownLatch(4)
+            List<Thread> publishers = (1..4).collect {
+                Thread.start {
+                    started.countDown()
+                    try {
+                        while (true) {
+                            dispatcher.publish(EVENT_GENERATOR.generate())
+                            published.incrementAndGet()
+                        }
+                    } catch (LoggingOperationException ignored) {
+                    }
+                }
+            }
+            started.await()
+            dispatcher.stop()
+            publishers.each { it.join() }
+
+            assert stored.get() == published.get()
+        }
+    }
+}
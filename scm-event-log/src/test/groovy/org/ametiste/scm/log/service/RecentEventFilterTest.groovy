@@ -0,0 +1,83 @@
+package org.ametiste.scm.log.service
+
+import spock.lang.Specification
+
+class RecentEventFilterTest extends Specification {
+
+    def "constructor arguments validation"() {
+        when: "create filter with not positive capacity"
+        new RecentEventFilter(0, 0.01, 10)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create filter with false positive rate out of range"
+        new RecentEventFilter(10, 1.0, 10)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create filter with not positive confirm size"
+        new RecentEventFilter(10, 0.01, 0)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "should confirm added ids"() {
+        given:
+        RecentEventFilter filter = new RecentEventFilter(1000, 0.01, 1000)
+        List<UUID> added = (1..500).collect { UUID.randomUUID() }
+
+        when: "add ids"
+        added.each { filter.add(it) }
+
+        then: "all added ids are confirmed as hits"
+        added.every { filter.contains(it) }
+        filter.getHits() == added.size()
+    }
+
+    def "should not report new ids as known"() {
+        given:
+        RecentEventFilter filter = new RecentEventFilter(1000, 0.01, 1000)
+        (1..1000).each { filter.add(UUID.randomUUID()) }
+
+        when: "check new ids"
+        List<UUID> checked = (1..1000).collect { UUID.randomUUID() }
+
+        then: "no one is reported as known"
+        checked.every { !filter.contains(it) }
+        filter.getHits() == 0
+
+        and: "false positives are counted within expected rate"
+        filter.getFalsePositives() < 50
+    }
+
+    def "should count evicted ids as false positives"() {
+        given: "filter with LRU smaller than Bloom filter"
+        RecentEventFilter filter = new RecentEventFilter(100, 0.01, 10)
+        UUID evicted = UUID.randomUUID()
+        filter.add(evicted)
+
+        when: "add more ids than LRU holds"
+        (1..10).each { filter.add(UUID.randomUUID()) }
+
+        then: "evicted id passes filter and is counted"
+        !filter.contains(evicted)
+        filter.getFalsePositives() == 1
+    }
+
+    def "should forget ids of discarded generation"() {
+        given:
+        RecentEventFilter filter = new RecentEventFilter(10, 0.01, 10)
+        UUID oldest = UUID.randomUUID()
+        filter.add(oldest)
+
+        when: "fill two generations after id"
+        (1..20).each { filter.add(UUID.randomUUID()) }
+
+        then: "id is unknown"
+        !filter.contains(oldest)
+        filter.getHits() == 0
+    }
+}
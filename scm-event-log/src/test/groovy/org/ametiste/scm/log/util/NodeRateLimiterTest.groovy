@@ -0,0 +1,56 @@
+package org.ametiste.scm.log.util
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+import java.util.function.LongSupplier
+
+class NodeRateLimiterTest extends Specification {
+
+    private long now = 0
+    private NodeRateLimiter limiter = new NodeRateLimiter(10, 2, { now } as LongSupplier)
+
+    def "constructor arguments validation"() {
+        when: "create limiter with not positive rate"
+        new NodeRateLimiter(0, 1)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+
+        when: "create limiter with not positive burst"
+        new NodeRateLimiter(1, 0)
+
+        then: "expect IllegalArgumentException thrown"
+        thrown(IllegalArgumentException.class)
+    }
+
+    def "should permit burst and reject above it"() {
+        expect: "burst is permitted"
+        limiter.tryAcquire("node1") == 0
+        limiter.tryAcquire("node1") == 0
+
+        and: "next request must wait for one token"
+        limiter.tryAcquire("node1") == 100
+    }
+
+    def "should refill tokens with time"() {
+        given: "exhausted bucket"
+        2.times { limiter.tryAcquire("node1") }
+
+        when: "wait for one token"
+        now += TimeUnit.MILLISECONDS.toNanos(100)
+
+        then:
+        limiter.tryAcquire("node1") == 0
+        limiter.tryAcquire("node1") > 0
+    }
+
+    def "should limit nodes independently"() {
+        given: "exhausted bucket of first node"
+        2.times { limiter.tryAcquire("node1") }
+
+        expect: "other node is permitted"
+        limiter.tryAcquire("node1") > 0
+        limiter.tryAcquire("node2") == 0
+    }
+}